@@ -0,0 +1,382 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes the commands of a CommandQueue to the serial port from a dedicated thread, so the threads that send
+ * commands do not wait for the serial transmission
+ * @author Rodrigo Monsalve Lagos
+ */
+class AsyncWriter implements Runnable {
+
+    static final private long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    static final private long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final Communication communication;
+    private final CommandQueue queue;
+    private final BackpressurePolicy policy;
+    private final Thread thread;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final MessageGenerator messageGenerator = new MessageGenerator();
+    private final byte[] coalescedMessage = new byte[MessageGenerator.maxMessageLength(MotorCoalescer.PIN_COUNT)];
+    private final MessageParser lostParser = new MessageParser();
+    private byte[] command = new byte[MessageGenerator.maxMessageLength(16)];
+    private volatile MotorCoalescer coalescer;
+    private volatile MotorCoalescer retired;
+    private volatile PinStateCache pinStates;
+    private volatile boolean running = true;
+    private volatile boolean waiting;
+
+    /**
+     * Initialize a writer and start its thread
+     * @param communication Communication where the commands are written
+     * @param capacity Maximum number of commands waiting to be written
+     * @param policy Behaviour when the queue is full
+     */
+    AsyncWriter(Communication communication, int capacity, BackpressurePolicy policy)
+    {
+        this.communication = communication;
+        this.queue = new CommandQueue(capacity);
+        this.policy = policy;
+        thread = new Thread(this, "OpenGlove writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Add a command to the queue, applying the backpressure policy if the queue is full
+     * @param data Array with the command bytes. It is copied, so the array can be reused after the call
+     * @param length Number of bytes of the command
+     * @param confirm True to return a future completed when the command is written
+     * @return The completion of the command, or null if confirm is false
+     */
+    CompletableFuture<Void> submit(byte[] data, int length, boolean confirm)
+    {
+        if (!running)
+        {
+            throw new IllegalStateException("The writer is closed");
+        }
+
+        CompletableFuture<Void> completion = confirm ? new CompletableFuture<Void>() : null;
+        long enqueued = communication.metrics.startTimer();
+
+        while (!queue.offer(data, length, completion, enqueued))
+        {
+            if (policy == BackpressurePolicy.FAIL_FAST)
+            {
+                rejected.incrementAndGet();
+                throw new RejectedExecutionException("Command queue is full");
+            }
+
+            else if (policy == BackpressurePolicy.DROP_OLDEST && dropOldest())
+            {
+                continue;
+            }
+
+            else
+            {
+                LockSupport.parkNanos(FULL_PARK_NANOS);
+            }
+        }
+
+        wake();
+        return completion;
+    }
+
+    /**
+     * Wake up the writer thread if it is waiting for commands
+     */
+    void wake()
+    {
+        if (waiting)
+        {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Set the coalescer whose pending intensities are written by this writer. The intensities of the previous
+     * coalescer are still written, including the ones added by the threads that read it before the change
+     * @param coalescer The coalescer, or null to stop writing coalesced intensities
+     */
+    void setCoalescer(MotorCoalescer coalescer)
+    {
+        retired = this.coalescer;
+        this.coalescer = coalescer;
+        wake();
+    }
+
+    /**
+     * Set the pin state cache that forgets the pins of the commands discarded or not written
+     * @param cache The cache, or null if the pin state cache is disabled
+     */
+    void setPinStateCache(PinStateCache cache)
+    {
+        pinStates = cache;
+    }
+
+    /**
+     * Returns the number of commands submitted since the writer was created
+     */
+    long submitted()
+    {
+        return queue.added();
+    }
+
+    /**
+     * Returns a future completed when all the commands submitted before the call have been written
+     */
+    CompletableFuture<Void> confirm()
+    {
+        return submit(null, 0, true);
+    }
+
+    /**
+     * Wait until all the commands submitted before the call have been written or discarded
+     */
+    void flush()
+    {
+        long target = queue.added();
+
+        while ((processed.get() < target || hasCoalesced()) && thread.isAlive())
+        {
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Returns the number of commands discarded by the DROP_OLDEST policy
+     */
+    long droppedCommands()
+    {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the number of commands rejected by the FAIL_FAST policy
+     */
+    long rejectedCommands()
+    {
+        return rejected.get();
+    }
+
+    /**
+     * Returns the number of commands waiting to be written
+     */
+    int pendingCommands()
+    {
+        return queue.size();
+    }
+
+    /**
+     * Write the pending commands and stop the writer thread
+     */
+    void close()
+    {
+        running = false;
+        LockSupport.unpark(thread);
+
+        if (Thread.currentThread() == thread)
+        {
+            return;
+        }
+
+        try
+        {
+            thread.join();
+        }
+
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        while (running || !queue.isEmpty() || hasCoalesced())
+        {
+            MotorCoalescer current = coalescer;
+
+            if (current != null && current.hasPending() && processed.get() >= current.barrier())
+            {
+                writeCoalesced(current);
+                continue;
+            }
+
+            MotorCoalescer old = retired;
+
+            if (old != null && old.hasPending() && processed.get() >= old.barrier())
+            {
+                writeCoalesced(old);
+                continue;
+            }
+
+            long position = queue.claim();
+
+            if (position < 0)
+            {
+                waiting = true;
+
+                if (running && queue.isEmpty() && !hasCoalesced())
+                {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+
+                waiting = false;
+                continue;
+            }
+
+            write(position);
+        }
+    }
+
+    private boolean hasCoalesced()
+    {
+        MotorCoalescer current = coalescer;
+        MotorCoalescer old = retired;
+        return (current != null && current.hasPending()) || (old != null && old.hasPending());
+    }
+
+    private void writeCoalesced(MotorCoalescer current)
+    {
+        int length = current.drain(messageGenerator, coalescedMessage);
+
+        if (length > 0)
+        {
+            try
+            {
+                communication.write(coalescedMessage, length);
+            }
+
+            catch (RuntimeException e)
+            {
+                // The intensities are not retried, the next updates of the pins replace them
+                lost(coalescedMessage, length);
+            }
+        }
+    }
+
+    private void write(long position)
+    {
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Void> completion = (CompletableFuture<Void>) queue.completion(position);
+        int length = queue.length(position);
+        long enqueued = queue.enqueued(position);
+
+        if (command.length < length)
+        {
+            command = new byte[length];
+        }
+
+        // The place is freed before the write, so a full queue has only commands that DROP_OLDEST can discard
+        System.arraycopy(queue.command(position), 0, command, 0, length);
+        queue.release(position);
+
+        try
+        {
+            if (length > 0)
+            {
+                communication.metrics.stopTimer(LatencyMetric.QUEUE_WAIT, MessageGenerator.functionNumber(command, length), enqueued);
+                communication.write(command, length);
+            }
+
+            processed.incrementAndGet();
+
+            if (completion != null)
+            {
+                completion.complete(null);
+            }
+        }
+
+        catch (RuntimeException e)
+        {
+            lost(command, length);
+            processed.incrementAndGet();
+
+            if (completion != null)
+            {
+                completion.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Discard the oldest command waiting in the queue
+     * @return False if no command was ready, because its place is still being written by another thread
+     */
+    private boolean dropOldest()
+    {
+        long position = queue.claim();
+
+        if (position < 0)
+        {
+            return false;
+        }
+
+        CompletableFuture<?> completion = queue.completion(position);
+        lost(queue.command(position), queue.length(position));
+        queue.release(position);
+        dropped.incrementAndGet();
+        processed.incrementAndGet();
+
+        if (completion != null)
+        {
+            completion.completeExceptionally(new CancellationException("Command dropped because the queue was full"));
+        }
+
+        return true;
+    }
+
+    /**
+     * Mark in the pin state cache the pins of a command that was not written, so their next write is sent
+     */
+    private void lost(byte[] command, int length)
+    {
+        PinStateCache cache = pinStates;
+
+        if (cache == null || length == 0)
+        {
+            return;
+        }
+
+        // The commands are dropped by the threads that submit them, so the parser is shared
+        synchronized (lostParser)
+        {
+            for (int i = 0; i < length; i++)
+            {
+                if (!lostParser.receive(command[i]))
+                {
+                    continue;
+                }
+
+                int[] fields = lostParser.fields();
+
+                if (fields[0] == MessageGenerator.ACTIVATE_MOTOR_FUNCTION_NUMBER || fields[0] == MessageGenerator.DIGITAL_WRITE_FUNCTION_NUMBER
+                    || fields[0] == MessageGenerator.ANALOG_WRITE_FUNCTION_NUMBER)
+                {
+                    int count = lostParser.count(2);
+
+                    for (int j = 0; j < count; j++)
+                    {
+                        cache.lost(fields[2 + j * 2]);
+                    }
+                }
+            }
+        }
+    }
+
+}
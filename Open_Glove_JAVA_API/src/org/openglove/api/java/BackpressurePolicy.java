@@ -0,0 +1,29 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+/**
+ * Behaviour of the asynchronous write mode when the command queue is full
+ * @author Rodrigo Monsalve Lagos
+ */
+public enum BackpressurePolicy {
+
+    /**
+     * Wait until the writer thread frees a place in the queue
+     */
+    BLOCK,
+
+    /**
+     * Discard the oldest queued command to make place for the new one
+     */
+    DROP_OLDEST,
+
+    /**
+     * Reject the new command throwing a RejectedExecutionException
+     */
+    FAIL_FAST
+
+}
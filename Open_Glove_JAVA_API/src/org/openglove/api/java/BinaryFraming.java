@@ -0,0 +1,237 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.Arrays;
+
+/**
+ * Compact binary form of the messages, used after the glove accepts the protocol version 1. A frame is the sync
+ * byte 0xA5, the number of payload bytes, the function number, the payload and a CRC-8 of the length, the
+ * function number and the payload. Each pin and each value uses one byte. The messages are encoded in ASCII by
+ * the API and translated to frames on their way to the transport, so every write path uses the binary form. A
+ * message whose numbers do not fit in a byte, or whose frame would be longer, is sent in ASCII, which the glove
+ * keeps accepting
+ * @author Rodrigo Monsalve Lagos
+ */
+class BinaryFraming {
+
+    /**
+     * First byte of a frame. It is not a character of the ASCII messages
+     */
+    static final byte SYNC = (byte) 0xA5;
+
+    /**
+     * Protocol version that uses the binary frames
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Payload of the functions without binary form
+     */
+    static final int NONE = 0;
+
+    /**
+     * Payload of one pin, like analogRead
+     */
+    static final int SINGLE = 1;
+
+    /**
+     * Payload of a list of pins, like initializeMotor
+     */
+    static final int LIST = 2;
+
+    /**
+     * Payload of pairs of pin and value, like activateMotor
+     */
+    static final int PAIRS = 3;
+
+    static final private int MAX_PAYLOAD = 255;
+    static final private int OVERHEAD = 4;
+    static final private int POLYNOMIAL = 0x07;
+    static final private byte[] CRC_TABLE = new byte[256];
+
+    static
+    {
+        for (int i = 0; i < 256; i++)
+        {
+            int crc = i;
+
+            for (int bit = 0; bit < 8; bit++)
+            {
+                crc = (crc & 0x80) != 0 ? (crc << 1) ^ POLYNOMIAL : crc << 1;
+            }
+
+            CRC_TABLE[i] = (byte) crc;
+        }
+    }
+
+    private final MessageParser parser = new MessageParser();
+    private final byte[] frame = new byte[MAX_PAYLOAD + OVERHEAD];
+    private byte[] frames = new byte[256];
+    private boolean continued;
+
+    /**
+     * Translate the ASCII messages of a write to frames. A message split across writes is sent in ASCII
+     * @param data Array with the messages
+     * @param length Number of bytes to take from the array
+     * @return The number of bytes of the translation, stored in the array returned by frames
+     */
+    int translate(byte[] data, int length)
+    {
+        int start = 0;
+        int output = 0;
+
+        for (int i = 0; i < length; i++)
+        {
+            boolean complete = parser.receive(data[i]);
+
+            if (data[i] != MessageGenerator.TERMINAL)
+            {
+                continue;
+            }
+
+            int frameLength = complete && !continued ? encode(parser.fields(), parser.fieldCount(), frame) : -1;
+
+            if (frameLength > 0 && frameLength < i + 1 - start)
+            {
+                output = append(frame, 0, frameLength, output);
+            }
+
+            else
+            {
+                output = append(data, start, i + 1 - start, output);
+            }
+
+            start = i + 1;
+            continued = false;
+        }
+
+        if (start < length)
+        {
+            output = append(data, start, length - start, output);
+            continued = true;
+        }
+
+        return output;
+    }
+
+    /**
+     * Returns the array with the last translation
+     */
+    byte[] frames()
+    {
+        return frames;
+    }
+
+    /**
+     * Returns the form of the payload of a function: NONE, SINGLE, LIST or PAIRS
+     * @param functionNumber Function number of the message
+     */
+    static int payload(int functionNumber)
+    {
+        switch (functionNumber)
+        {
+            case MessageGenerator.ANALOG_READ_FUNCTION_NUMBER:
+            case MessageGenerator.DIGITAL_READ_FUNCTION_NUMBER:
+                return SINGLE;
+
+            case MessageGenerator.INITIALIZE_MOTOR_FUNCTION_NUMBER:
+            case MessageGenerator.INITIALIZE_DIGITAL_INPUT_FUNCTION_NUMBER:
+            case MessageGenerator.ANALOG_READ_MULTIPLE_FUNCTION_NUMBER:
+            case MessageGenerator.DIGITAL_READ_MULTIPLE_FUNCTION_NUMBER:
+                return LIST;
+
+            case MessageGenerator.ACTIVATE_MOTOR_FUNCTION_NUMBER:
+            case MessageGenerator.PIN_MODE_FUNCTION_NUMBER:
+            case MessageGenerator.DIGITAL_WRITE_FUNCTION_NUMBER:
+            case MessageGenerator.ANALOG_WRITE_FUNCTION_NUMBER:
+                return PAIRS;
+
+            default:
+                return NONE;
+        }
+    }
+
+    /**
+     * Encode the fields of a message as a frame
+     * @param fields Fields of the message, like the ones of MessageParser
+     * @param fieldCount Number of fields
+     * @param buffer Array where the frame is written, with place for 259 bytes
+     * @return The length of the frame, or -1 if the message has no binary form
+     */
+    static int encode(int[] fields, int fieldCount, byte[] buffer)
+    {
+        int payload = payload(fields[0]);
+        int first;
+        int length;
+
+        if (payload == SINGLE)
+        {
+            first = 1;
+            length = 1;
+        }
+
+        else if (payload == LIST || payload == PAIRS)
+        {
+            first = 2;
+            length = fields[1] * (payload == PAIRS ? 2 : 1);
+        }
+
+        else
+        {
+            return -1;
+        }
+
+        if (fieldCount != first + length || length < 0 || length > MAX_PAYLOAD)
+        {
+            return -1;
+        }
+
+        buffer[0] = SYNC;
+        buffer[1] = (byte) length;
+        buffer[2] = (byte) fields[0];
+        byte crc = crc(crc((byte) 0, buffer[1]), buffer[2]);
+
+        for (int i = 0; i < length; i++)
+        {
+            int value = fields[first + i];
+
+            if (value < 0 || value > 255)
+            {
+                return -1;
+            }
+
+            buffer[3 + i] = (byte) value;
+            crc = crc(crc, buffer[3 + i]);
+        }
+
+        buffer[3 + length] = crc;
+        return length + OVERHEAD;
+    }
+
+    /**
+     * Add a byte to a CRC-8 with the polynomial 0x07
+     * @param crc CRC of the previous bytes, 0 for the first byte
+     * @param value Byte to add
+     * @return The CRC including the byte
+     */
+    static byte crc(byte crc, byte value)
+    {
+        return CRC_TABLE[(crc ^ value) & 0xFF];
+    }
+
+    private int append(byte[] data, int offset, int length, int output)
+    {
+        if (frames.length < output + length)
+        {
+            frames = Arrays.copyOf(frames, Math.max(frames.length * 2, output + length));
+        }
+
+        System.arraycopy(data, offset, frames, output, length);
+        return output + length;
+    }
+
+}
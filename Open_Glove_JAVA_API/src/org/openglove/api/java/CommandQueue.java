@@ -0,0 +1,243 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free queue of encoded commands. Each place of the queue owns a byte array where the command is
+ * copied, so enqueuing a command does not allocate objects. Any thread can add or take commands
+ * @author Rodrigo Monsalve Lagos
+ */
+class CommandQueue {
+
+    static final private int INITIAL_COMMAND_LENGTH = MessageGenerator.maxMessageLength(16);
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final byte[][] commands;
+    private final int[] lengths;
+    private final long[] enqueued;
+    private final CompletableFuture<?>[] completions;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Initialize an empty queue
+     * @param capacity Maximum number of commands in the queue. It is rounded up to a power of two
+     */
+    CommandQueue(int capacity)
+    {
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+
+        int size = Integer.highestOneBit(capacity);
+        size = size < capacity ? size << 1 : size;
+        mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        commands = new byte[size][];
+        lengths = new int[size];
+        enqueued = new long[size];
+        completions = new CompletableFuture<?>[size];
+
+        for (int i = 0; i < size; i++)
+        {
+            sequences.set(i, i);
+            commands[i] = new byte[INITIAL_COMMAND_LENGTH];
+        }
+    }
+
+    /**
+     * Copy a command at the end of the queue
+     * @param data Array with the command bytes
+     * @param length Number of bytes of the command
+     * @param completion Future completed when the command is written, or null
+     * @param enqueuedNanos Time when the command was queued, kept to measure its wait
+     * @return False if the queue is full
+     */
+    boolean offer(byte[] data, int length, CompletableFuture<?> completion, long enqueuedNanos)
+    {
+        return add(data, 0, length, completion, enqueuedNanos) >= 0;
+    }
+
+    /**
+     * Copy a command at the end of the queue and return its position, so the caller can know when it was taken
+     * @param data Array with the command bytes
+     * @param offset Position of the array where the command starts
+     * @param length Number of bytes of the command
+     * @param completion Future completed when the command is written, or null
+     * @param enqueuedNanos Time when the command was queued, kept to measure its wait
+     * @return The position of the command, or -1 if the queue is full
+     */
+    long add(byte[] data, int offset, int length, CompletableFuture<?> completion, long enqueuedNanos)
+    {
+        long position = tail.get();
+
+        while (true)
+        {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+
+            if (difference == 0)
+            {
+                if (tail.compareAndSet(position, position + 1))
+                {
+                    break;
+                }
+            }
+
+            else if (difference < 0)
+            {
+                return -1;
+            }
+
+            position = tail.get();
+        }
+
+        int index = (int) (position & mask);
+
+        if (commands[index].length < length)
+        {
+            commands[index] = new byte[length];
+        }
+
+        if (length > 0)
+        {
+            System.arraycopy(data, offset, commands[index], 0, length);
+        }
+
+        lengths[index] = length;
+        enqueued[index] = enqueuedNanos;
+        completions[index] = completion;
+        sequences.lazySet(index, position + 1);
+        return position;
+    }
+
+    /**
+     * Take the command at the head of the queue. The command stays reserved until release is called
+     * @return The position of the command, or -1 if the queue is empty
+     */
+    long claim()
+    {
+        long position = head.get();
+
+        while (true)
+        {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+
+            if (difference == 0)
+            {
+                if (head.compareAndSet(position, position + 1))
+                {
+                    return position;
+                }
+            }
+
+            else if (difference < 0)
+            {
+                return -1;
+            }
+
+            position = head.get();
+        }
+    }
+
+    /**
+     * Returns the bytes of a claimed command
+     */
+    byte[] command(long position)
+    {
+        return commands[(int) (position & mask)];
+    }
+
+    /**
+     * Returns the length of a claimed command
+     */
+    int length(long position)
+    {
+        return lengths[(int) (position & mask)];
+    }
+
+    /**
+     * Returns the time when a claimed command was queued
+     */
+    long enqueued(long position)
+    {
+        return enqueued[(int) (position & mask)];
+    }
+
+    /**
+     * Returns the completion of a claimed command, or null if the command has no completion
+     */
+    CompletableFuture<?> completion(long position)
+    {
+        return completions[(int) (position & mask)];
+    }
+
+    /**
+     * Free the place of a claimed command for a new command
+     */
+    void release(long position)
+    {
+        int index = (int) (position & mask);
+        completions[index] = null;
+        sequences.lazySet(index, position + mask + 1);
+    }
+
+    /**
+     * Returns the position of the next command to take
+     */
+    long head()
+    {
+        return head.get();
+    }
+
+    /**
+     * Returns the place of a position in the arrays of the queue, so a user can keep data for each command
+     */
+    int index(long position)
+    {
+        return (int) (position & mask);
+    }
+
+    /**
+     * Returns true if there are no commands waiting in the queue
+     */
+    boolean isEmpty()
+    {
+        return head.get() >= tail.get();
+    }
+
+    /**
+     * Returns the number of commands waiting in the queue
+     */
+    int size()
+    {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    /**
+     * Returns the number of commands added to the queue since it was created
+     */
+    long added()
+    {
+        return tail.get();
+    }
+
+    /**
+     * Returns the maximum number of commands in the queue
+     */
+    int capacity()
+    {
+        return mask + 1;
+    }
+
+}
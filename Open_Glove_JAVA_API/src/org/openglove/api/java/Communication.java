@@ -5,17 +5,49 @@
  */
 package org.openglove.api.java;
 
-import com.fazecast.jSerialComm.*;
-import java.util.Scanner;
+import java.nio.ByteBuffer;
 
 /**
  * Represents  a comunication instance between the API and the glove.
- * Provide methods for send and receive data through serial port
+ * Provide methods for send and receive data through a serial port or another transport.
+ * The write methods can be called from many threads; each message is written whole
  * @author Rodrigo Monsalve Lagos
  */
 public class Communication {
+
+    /**
+     * Receives the lines read by the data listener of the transport
+     */
+    interface LineHandler {
+
+        /**
+         * Called from the event thread of the transport for each received line
+         * @param line Buffer with the line, valid only during the call
+         * @param length Length of the line without the next line character
+         */
+        void onLine(byte[] line, int length);
+
+    }
     
-    SerialPort port;
+    /**
+     * Value returned by readInt when no number was received before the timeout
+     */
+    public static final int NO_VALUE = Integer.MIN_VALUE;
+
+    static final private int BLOCKING_READ_TIMEOUT_MILLIS = 1000;
+
+    final GloveMetrics metrics = new GloveMetrics();
+    Transport transport;
+    volatile LineReader reader;
+    private final FrameCombiner combiner = new FrameCombiner(this);
+    private final ThreadLocal<byte[]> writeBuffers = new ThreadLocal<byte[]>();
+    private volatile boolean listening;
+    private volatile LineHandler lineHandler;
+    private volatile DeviceState deviceState;
+    private volatile Runnable failureListener;
+    private volatile TransmitBudget transmitBudget;
+    private volatile BinaryFraming binaryFraming;
+    private volatile SessionRecorder recorder;
     
     /**
      * Initialize an instance of Communication class without open the communication with the device
@@ -31,11 +63,16 @@ public class Communication {
      */
     public Communication(String portName, int baudRate)  
     {
-        port = SerialPort.getCommPort(portName);
-        port.setBaudRate(baudRate);
-        port.openPort();
-        port.setComPortTimeouts(SerialPort.TIMEOUT_READ_BLOCKING, 1000, 0);
-        
+        open(new SerialTransport(portName, baudRate, BLOCKING_READ_TIMEOUT_MILLIS));
+    }
+
+    /**
+     * Initialize an instance of Communication class, opening the communication using the specified transport
+     * @param transport Transport used to communicate with the glove
+     */
+    public Communication(Transport transport)
+    {
+        open(transport);
     }
 
     /**
@@ -44,13 +81,7 @@ public class Communication {
      */
     public String[] getPortNames() {
 
-        String [] portNames = new String [SerialPort.getCommPorts().length];
-        for (int i=0; i < SerialPort.getCommPorts().length; i++){
-        
-            portNames[i] = SerialPort.getCommPorts()[i].getSystemPortName();
-            
-        }
-        return portNames;      
+        return DeviceRegistry.getDefault().refresh();
     }
 
     /**
@@ -61,43 +92,276 @@ public class Communication {
      */
     public boolean openPort(String portName, int baudRate)
     {
-        
-        port = SerialPort.getCommPort(portName);
-        port.setBaudRate(baudRate);
-        boolean portOpen = port.openPort();
-        port.setComPortTimeouts(SerialPort.TIMEOUT_READ_SEMI_BLOCKING, 200, 0);
-        return portOpen;
-        
+        return open(new SerialTransport(portName, baudRate));
+    }
+
+    /**
+     * Open a new connection using the specified transport
+     * @param transport Transport used to communicate with the glove
+     * @return Return true if the transport is opened sucessfully
+     */
+    public boolean open(Transport transport)
+    {
+        this.transport = transport;
+        binaryFraming = null;
 
+        if (deviceState != null)
+        {
+            deviceState = new DeviceState();
+        }
+
+        boolean open = transport.isOpen() || transport.open();
+        reader = newReader();
+        return open;
+    }
+
+    /**
+     * Returns true if the transport is open
+     */
+    public boolean isOpen()
+    {
+        return transport != null && transport.isOpen();
     }
 
     /**
-     * Send the string to the serial port
+     * Send the string through the transport
      * @param data String data to send
      */
     public void write(String data)
     {
         byte[] buffer = data.getBytes();
-        port.writeBytes(buffer, buffer.length);
+        transmit(buffer, buffer.length);
     }
 
     /**
-     * Read the input buffet until a next line character
+     * Send the first bytes of the array through the transport
+     * @param data Array with the bytes to send
+     * @param length Number of bytes to send, starting at the first element of the array
+     */
+    public void write(byte[] data, int length)
+    {
+        transmit(data, length);
+    }
+
+    /**
+     * Send the remaining bytes of the buffer through the transport. The position of the buffer is advanced to its limit
+     * @param data Buffer with the bytes to send
+     */
+    public void write(ByteBuffer data)
+    {
+        int length = data.remaining();
+
+        if (data.hasArray())
+        {
+            combiner.write(data.array(), data.arrayOffset() + data.position(), length);
+            data.position(data.limit());
+            return;
+        }
+
+        byte[] writeBuffer = writeBuffers.get();
+
+        if (writeBuffer == null || writeBuffer.length < length)
+        {
+            writeBuffer = new byte[length];
+            writeBuffers.set(writeBuffer);
+        }
+
+        data.get(writeBuffer, 0, length);
+        transmit(writeBuffer, length);
+    }
+
+    /**
+     * Read the input buffet until a next line character. The bytes received after the line are kept for the next call
      * @return A string without the next line character
      */
     public String readLine()
     {
-        Scanner scanner = new Scanner(port.getInputStream());
-        String line="";
-		
-	if(scanner.hasNextLine()){
-        
-            line = scanner.nextLine();
-        }
-        
-        scanner.close();	
+        LineReader lineReader = reader;
+        String line = lineReader.readLine();
+        checkRead(lineReader);
         return line;
-        
+    }
+
+    /**
+     * Read the input buffer until a next line character and parse the line like a number, without creating a string
+     * @return The number received, or NO_VALUE if the timeout expired or the line is not a number
+     */
+    public int readInt()
+    {
+        LineReader lineReader = reader;
+        int value = lineReader.readInt();
+        checkRead(lineReader);
+        return value;
+    }
+
+    /**
+     * Read the input buffer until a next line character and parse the line like a list of numbers separated by commas, without creating a string
+     * @param values Array where the numbers are stored. The places without a number are set to NO_VALUE
+     * @param count Number of values expected
+     * @return The number of values received, or -1 if the timeout expired
+     */
+    public int readInts(int[] values, int count)
+    {
+        LineReader lineReader = reader;
+        int received = lineReader.readInts(values, count);
+        checkRead(lineReader);
+        return received;
+    }
+
+    /**
+     * Read the received lines from the event thread of the transport, instead of waiting for them with readLine
+     * @param handler Handler called for each received line
+     * @return True if the listener was registered in the transport
+     */
+    boolean startListening(final LineHandler handler)
+    {
+        final LineReader lineReader = reader;
+        lineHandler = handler;
+        listening = transport.setDataListener(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                boolean failed;
+
+                // The reader thread of the pipelined reads may be reading a line when the listening starts
+                synchronized (lineReader)
+                {
+                    int read;
+
+                    do
+                    {
+                        read = lineReader.fillAvailable();
+                        int length;
+
+                        while ((length = lineReader.pollLine()) >= 0)
+                        {
+                            handler.onLine(lineReader.line(), length);
+                        }
+                    }
+                    while (read > 0);
+
+                    failed = lineReader.failed();
+                }
+
+                if (failed)
+                {
+                    failed();
+                }
+            }
+        });
+        return listening;
+    }
+
+    /**
+     * Stop reading the received lines from the event thread of the transport
+     */
+    void stopListening()
+    {
+        lineHandler = null;
+
+        if (listening)
+        {
+            transport.removeDataListener();
+            listening = false;
+        }
+    }
+
+    /**
+     * Returns true if the received lines are read by a data listener
+     */
+    boolean isListening()
+    {
+        return listening;
+    }
+
+    /**
+     * Start or stop keeping the state configured by the written messages, so it can be sent again by reconnect
+     * @param enabled True to keep the state of the device
+     */
+    void setStateTracking(boolean enabled)
+    {
+        if (enabled != (deviceState != null))
+        {
+            deviceState = enabled ? new DeviceState() : null;
+        }
+    }
+
+    /**
+     * Set the listener called each time a write or a read fails because the transport is disconnected
+     * @param listener Listener called from the thread that found the failure, or null to remove it
+     */
+    void setFailureListener(Runnable listener)
+    {
+        failureListener = listener;
+    }
+
+    /**
+     * Count a failed write or read and tell the failure listener
+     */
+    void failed()
+    {
+        metrics.error();
+        Runnable listener = failureListener;
+
+        if (listener != null)
+        {
+            listener.run();
+        }
+    }
+
+    /**
+     * Close the transport and open it again with the same settings. The data listener is registered again and
+     * the state of the device, if it is kept, is written before any other message
+     * @return True if the transport was opened again
+     */
+    boolean reconnect()
+    {
+        DeviceState state = deviceState;
+
+        if (state == null)
+        {
+            return reopen();
+        }
+
+        synchronized (state)
+        {
+            if (!reopen())
+            {
+                return false;
+            }
+
+            byte[] burst = state.replay();
+
+            if (burst.length > 0)
+            {
+                TransmitBudget budget = transmitBudget;
+
+                if (budget != null)
+                {
+                    budget.charge(burst.length);
+                }
+
+                SessionRecorder sessionRecorder = recorder;
+
+                if (sessionRecorder != null)
+                {
+                    sessionRecorder.record(SessionRecorder.OUTBOUND, burst, 0, burst.length);
+                }
+
+                return send(burst, burst.length, 1) >= 0;
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Returns the metrics of the communication: write latencies, transferred bytes, timeouts and errors
+     */
+    public GloveMetrics getMetrics()
+    {
+        return metrics;
     }
 
     /**
@@ -105,7 +369,239 @@ public class Communication {
      */
     public void closePort()
     {
-        port.closePort();
+        stopListening();
+        transport.close();
+        reader.clear();
     }
    
+    /**
+     * Write messages to the transport with one write. Called by the consumer thread of the frame combiner
+     * @param data Array with the messages
+     * @param length Number of bytes to send
+     * @param messages Number of messages in the bytes
+     */
+    void writeFrames(byte[] data, int length, int messages)
+    {
+        SessionRecorder sessionRecorder = recorder;
+
+        if (sessionRecorder != null)
+        {
+            sessionRecorder.record(SessionRecorder.OUTBOUND, data, 0, length);
+        }
+
+        DeviceState state = deviceState;
+
+        if (state == null)
+        {
+            frame(data, length, messages);
+            return;
+        }
+
+        // The state is recorded even if the write fails, so the last values are sent after the reconnection
+        synchronized (state)
+        {
+            state.record(data, length);
+            frame(data, length, messages);
+        }
+    }
+
+    /**
+     * Start or stop translating the messages to binary frames. The glove must have accepted the protocol version 1
+     * @param enabled True to send binary frames
+     */
+    void setBinaryFraming(boolean enabled)
+    {
+        binaryFraming = enabled ? new BinaryFraming() : null;
+    }
+
+    /**
+     * Returns true if the messages are sent as binary frames
+     */
+    boolean isBinaryFraming()
+    {
+        return binaryFraming != null;
+    }
+
+    /**
+     * Set the recorder of the messages written and the lines received. Before a port is opened, the recorder is
+     * given to the reader of the port when it is opened
+     * @param sessionRecorder The recorder, or null to stop recording
+     */
+    void setRecorder(SessionRecorder sessionRecorder)
+    {
+        recorder = sessionRecorder;
+        LineReader lineReader = reader;
+
+        if (lineReader != null)
+        {
+            lineReader.setRecorder(sessionRecorder);
+        }
+    }
+
+    /**
+     * Returns the recorder of the session, or null if the session is not recorded
+     */
+    SessionRecorder recorder()
+    {
+        return recorder;
+    }
+
+    /**
+     * Read the input buffer until a next line character, without creating a string
+     * @return True if a line was received before the timeout
+     */
+    boolean skipLine()
+    {
+        LineReader lineReader = reader;
+        int length = lineReader.nextLine();
+        checkRead(lineReader);
+        return length >= 0;
+    }
+
+    /**
+     * Set the budget that paces the writes to the rate of the link
+     * @param budget The budget, or null to write without waiting
+     */
+    void setTransmitBudget(TransmitBudget budget)
+    {
+        transmitBudget = budget;
+    }
+
+    /**
+     * Returns the budget that paces the writes, or null if the writes are not paced
+     */
+    TransmitBudget transmitBudget()
+    {
+        return transmitBudget;
+    }
+
+    /**
+     * Returns the number of writes of the transport that carried the messages of more than one thread
+     */
+    long combinedWrites()
+    {
+        return combiner.batches();
+    }
+
+    /**
+     * Returns the number of messages written in the writes that carried the messages of more than one thread
+     */
+    long combinedMessages()
+    {
+        return combiner.combinedFrames();
+    }
+
+    /**
+     * Translate the messages to binary frames if they are enabled, wait for the link and write them
+     */
+    private void frame(byte[] data, int length, int messages)
+    {
+        BinaryFraming framing = binaryFraming;
+
+        if (framing != null)
+        {
+            length = framing.translate(data, length);
+            data = framing.frames();
+        }
+
+        TransmitBudget budget = transmitBudget;
+
+        if (budget != null)
+        {
+            long start = metrics.startTimer();
+
+            if (budget.acquire(length) > 0)
+            {
+                metrics.stopTimer(LatencyMetric.PACING, MessageGenerator.functionNumber(data, length), start);
+            }
+        }
+
+        send(data, length, messages);
+    }
+
+    private void transmit(byte[] data, int length)
+    {
+        combiner.write(data, 0, length);
+    }
+
+    private int send(byte[] data, int length, int messages)
+    {
+        long start = metrics.startTimer();
+        int written;
+
+        try
+        {
+            written = transport.write(data, length);
+        }
+
+        catch (RuntimeException e)
+        {
+            failed();
+            throw e;
+        }
+
+        metrics.stopTimer(LatencyMetric.WRITE, MessageGenerator.functionNumber(data, length), start);
+
+        if (written < 0)
+        {
+            failed();
+        }
+
+        else
+        {
+            metrics.written(written, messages);
+        }
+
+        return written;
+    }
+
+    private boolean reopen()
+    {
+        // The glove starts again with the ASCII messages
+        binaryFraming = null;
+
+        if (listening)
+        {
+            transport.removeDataListener();
+            listening = false;
+        }
+
+        transport.close();
+
+        if (!transport.open())
+        {
+            return false;
+        }
+
+        reader = newReader();
+        LineHandler handler = lineHandler;
+
+        if (handler != null)
+        {
+            startListening(handler);
+        }
+
+        return true;
+    }
+
+    private LineReader newReader()
+    {
+        LineReader lineReader = new LineReader(transport, metrics);
+        lineReader.setRecorder(recorder);
+        return lineReader;
+    }
+
+    private void checkRead(LineReader lineReader)
+    {
+        if (lineReader.timedOut())
+        {
+            metrics.timeout();
+        }
+
+        else if (lineReader.failed())
+        {
+            failed();
+        }
+    }
+
 }
@@ -0,0 +1,26 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+/**
+ * Receives the serial ports connected and disconnected, found by a DeviceRegistry
+ * @author Rodrigo Monsalve Lagos
+ */
+public interface DeviceListener {
+
+    /**
+     * Called when a port appears in the enumeration
+     * @param portName Name of the serial port
+     */
+    void portAdded(String portName);
+
+    /**
+     * Called when a port disappears from the enumeration
+     * @param portName Name of the serial port
+     */
+    void portRemoved(String portName);
+
+}
@@ -0,0 +1,392 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import com.fazecast.jSerialComm.SerialPort;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Keeps the names of the serial ports, so they are not enumerated each time they are needed. Each enumeration
+ * rescans the ports of the operating system, so the ports are enumerated once and the result is cached. A
+ * watcher thread can enumerate them periodically to tell the listeners which ports were connected and
+ * disconnected. The registry also remembers the ports where gloves were opened, so a glove can be opened again
+ * without enumerating the ports
+ * @author Rodrigo Monsalve Lagos
+ */
+public class DeviceRegistry {
+
+    /**
+     * Lists the names of the ports connected
+     */
+    public interface Scanner {
+
+        /**
+         * Returns the names of the ports connected now
+         */
+        String[] scan();
+
+    }
+
+    static final private int MAX_GLOVE_PORTS = 8;
+
+    static final private Scanner SERIAL_PORTS = new Scanner()
+    {
+        @Override
+        public String[] scan()
+        {
+            SerialPort[] ports = SerialPort.getCommPorts();
+            String[] names = new String[ports.length];
+
+            for (int i = 0; i < ports.length; i++)
+            {
+                names[i] = ports[i].getSystemPortName();
+            }
+
+            return names;
+        }
+    };
+
+    private static DeviceRegistry defaultRegistry;
+
+    private final Scanner scanner;
+    private final List<DeviceListener> listeners = new CopyOnWriteArrayList<DeviceListener>();
+    private final List<String> glovePorts = new ArrayList<String>();
+    private final Object watchers = new Object();
+    private volatile String[] portNames;
+    private volatile long scanCount;
+    private volatile Thread watcher;
+
+    /**
+     * Initialize a registry of the serial ports of the computer, without enumerating them
+     */
+    public DeviceRegistry()
+    {
+        this(SERIAL_PORTS);
+    }
+
+    /**
+     * Initialize a registry of the ports listed by a scanner, without enumerating them
+     * @param scanner Scanner that lists the names of the ports
+     */
+    public DeviceRegistry(Scanner scanner)
+    {
+        this.scanner = scanner;
+    }
+
+    /**
+     * Returns the registry of the serial ports shared by the instances of the API
+     */
+    public static synchronized DeviceRegistry getDefault()
+    {
+        if (defaultRegistry == null)
+        {
+            defaultRegistry = new DeviceRegistry();
+        }
+
+        return defaultRegistry;
+    }
+
+    /**
+     * Returns the names of the ports from the last enumeration. The ports are enumerated only if they were never enumerated
+     * @return An array with the names of the ports
+     */
+    public String[] getPortNames()
+    {
+        String[] names = portNames;
+        return names == null ? refresh() : names.clone();
+    }
+
+    /**
+     * Returns true if a port was in the last enumeration. The ports are enumerated only if they were never enumerated
+     * @param portName Name of the serial port
+     */
+    public boolean isConnected(String portName)
+    {
+        return Arrays.asList(getPortNames()).contains(portName);
+    }
+
+    /**
+     * Enumerate the ports now and tell the listeners which ports were connected and disconnected since the last enumeration
+     * @return An array with the names of the ports
+     */
+    public synchronized String[] refresh()
+    {
+        String[] names = scanner.scan();
+        String[] previous = portNames;
+        portNames = names;
+        scanCount++;
+
+        if (previous != null)
+        {
+            Set<String> current = new HashSet<String>(Arrays.asList(names));
+            Set<String> old = new HashSet<String>(Arrays.asList(previous));
+
+            for (String name : previous)
+            {
+                if (!current.contains(name))
+                {
+                    firePortRemoved(name);
+                }
+            }
+
+            for (String name : names)
+            {
+                if (!old.contains(name))
+                {
+                    firePortAdded(name);
+                }
+            }
+        }
+
+        return names.clone();
+    }
+
+    /**
+     * Returns the number of enumerations made by the registry
+     */
+    public long getScanCount()
+    {
+        return scanCount;
+    }
+
+    /**
+     * Add a listener of the connected and disconnected ports. The listeners are called from the thread that
+     * enumerates the ports, usually the watcher thread
+     * @param listener Listener to add
+     */
+    public void addListener(DeviceListener listener)
+    {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener of the connected and disconnected ports
+     * @param listener Listener to remove
+     */
+    public void removeListener(DeviceListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Start a thread that enumerates the ports periodically. The first enumeration is made at once
+     * @param intervalMillis Time between enumerations
+     */
+    public void startWatching(long intervalMillis)
+    {
+        final long intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        Thread thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                watch(intervalNanos);
+            }
+        }, "OpenGlove device watcher");
+        thread.setDaemon(true);
+        Thread previous;
+
+        synchronized (watchers)
+        {
+            previous = watcher;
+            watcher = thread;
+            thread.start();
+        }
+
+        join(previous);
+    }
+
+    /**
+     * Stop the thread that enumerates the ports
+     */
+    public void stopWatching()
+    {
+        Thread previous;
+
+        synchronized (watchers)
+        {
+            previous = watcher;
+            watcher = null;
+        }
+
+        join(previous);
+    }
+
+    /**
+     * Returns true if the watcher thread is running
+     */
+    public boolean isWatching()
+    {
+        return watcher != null;
+    }
+
+    /**
+     * Remember that a glove was opened in a port. The port is tried first by openGlove
+     * @param portName Name of the serial port
+     */
+    public void rememberGlovePort(String portName)
+    {
+        synchronized (glovePorts)
+        {
+            glovePorts.remove(portName);
+            glovePorts.add(0, portName);
+
+            if (glovePorts.size() > MAX_GLOVE_PORTS)
+            {
+                glovePorts.remove(glovePorts.size() - 1);
+            }
+        }
+    }
+
+    /**
+     * Returns the ports where gloves were opened, from the most recent. They can be saved and restored with
+     * setGlovePorts, so they are known at the next startup
+     */
+    public String[] getGlovePorts()
+    {
+        synchronized (glovePorts)
+        {
+            return glovePorts.toArray(new String[glovePorts.size()]);
+        }
+    }
+
+    /**
+     * Replace the remembered ports where gloves were opened
+     * @param portNames Names of the ports, from the most recent
+     */
+    public void setGlovePorts(String[] portNames)
+    {
+        synchronized (glovePorts)
+        {
+            glovePorts.clear();
+
+            for (int i = portNames.length - 1; i >= 0; i--)
+            {
+                rememberGlovePort(portNames[i]);
+            }
+        }
+    }
+
+    /**
+     * Open a glove in a port and remember the port if it was opened
+     * @param portName Name of the serial port
+     * @param baudRate Data rate in bits per second
+     * @return The glove, or null if the port could not be opened
+     */
+    public OpenGlove openGlove(String portName, int baudRate)
+    {
+        OpenGlove glove = new OpenGlove();
+
+        if (!glove.openPort(portName, baudRate))
+        {
+            return null;
+        }
+
+        rememberGlovePort(portName);
+        return glove;
+    }
+
+    /**
+     * Open a glove in the port where a glove was opened most recently, trying the remembered ports in order. The
+     * ports are not enumerated, but the ports missing from the last enumeration are skipped
+     * @param baudRate Data rate in bits per second
+     * @return The glove, or null if no remembered port could be opened
+     */
+    public OpenGlove openGlove(int baudRate)
+    {
+        String[] names = portNames;
+        List<String> connected = names == null ? null : Arrays.asList(names);
+
+        for (String portName : getGlovePorts())
+        {
+            if (connected != null && !connected.contains(portName))
+            {
+                continue;
+            }
+
+            OpenGlove glove = openGlove(portName, baudRate);
+
+            if (glove != null)
+            {
+                return glove;
+            }
+        }
+
+        return null;
+    }
+
+    private void watch(long intervalNanos)
+    {
+        Thread self = Thread.currentThread();
+
+        while (watcher == self)
+        {
+            try
+            {
+                refresh();
+            }
+
+            catch (RuntimeException e)
+            {
+                // A failed enumeration is retried at the next interval
+            }
+
+            long deadline = System.nanoTime() + intervalNanos;
+
+            while (watcher == self && deadline - System.nanoTime() > 0)
+            {
+                LockSupport.parkNanos(this, deadline - System.nanoTime());
+            }
+        }
+    }
+
+    /**
+     * Wait for a watcher thread that was replaced or stopped. A thread can not wait for itself, so a listener can stop the watcher
+     */
+    private static void join(Thread thread)
+    {
+        if (thread == null || thread == Thread.currentThread())
+        {
+            return;
+        }
+
+        LockSupport.unpark(thread);
+
+        try
+        {
+            thread.join();
+        }
+
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void firePortAdded(String portName)
+    {
+        for (DeviceListener listener : listeners)
+        {
+            listener.portAdded(portName);
+        }
+    }
+
+    private void firePortRemoved(String portName)
+    {
+        for (DeviceListener listener : listeners)
+        {
+            listener.portRemoved(portName);
+        }
+    }
+
+}
@@ -0,0 +1,283 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the state that the messages sent to the device have configured: the mode of each pin, the last value
+ * written to each output and the sensor stream. The messages are parsed from the bytes written to the
+ * transport, so the state includes the messages sent with write(String) and by the asynchronous writer. After
+ * the device is reconnected, the state is sent again in one burst, so the device is configured like before
+ * @author Rodrigo Monsalve Lagos
+ */
+class DeviceState {
+
+    static final private int MODE_MOTOR = 3;
+    static final private int[] WRITE_FUNCTIONS = {
+        MessageGenerator.ACTIVATE_MOTOR_FUNCTION_NUMBER,
+        MessageGenerator.ANALOG_WRITE_FUNCTION_NUMBER,
+        MessageGenerator.DIGITAL_WRITE_FUNCTION_NUMBER
+    };
+
+    /**
+     * Maximum length of a message header: the function number, the count and the separators
+     */
+    static final private int MAX_HEADER_LENGTH = 3 * (MessageGenerator.MAX_FIELD_LENGTH + 1);
+
+    private final MessageParser parser = new MessageParser();
+    private final int[] modes = new int[PinStateCache.PIN_COUNT];
+    private final PinStateCache outputs = new PinStateCache();
+    private int[] pins = new int[16];
+    private int[] values = new int[16];
+    private int streamRate;
+    private int[] streamPins = new int[0];
+
+    /**
+     * Parse bytes written to the device and apply the complete messages to the state
+     * @param data Array with the bytes
+     * @param length Number of bytes to take from the array
+     */
+    synchronized void record(byte[] data, int length)
+    {
+        for (int i = 0; i < length; i++)
+        {
+            if (parser.receive(data[i]))
+            {
+                apply();
+            }
+        }
+    }
+
+    /**
+     * Encode the messages that configure the device like the state: initializeMotor for the motors, pinMode for
+     * the other pins, the last value of the outputs with one message for each write function and the sensor stream
+     * @return An array with the messages, empty if nothing was configured
+     */
+    synchronized byte[] replay()
+    {
+        int pinCount = PinStateCache.PIN_COUNT;
+        int[] replayPins = new int[pinCount];
+        int[] replayValues = new int[pinCount];
+        int maxPairLength = 2 * (MessageGenerator.MAX_FIELD_LENGTH + 1);
+        byte[] buffer = new byte[(WRITE_FUNCTIONS.length + 3) * MAX_HEADER_LENGTH
+            + (WRITE_FUNCTIONS.length + 2) * pinCount * maxPairLength
+            + streamPins.length * (MessageGenerator.MAX_FIELD_LENGTH + 1)];
+        int position = 0;
+        int count = 0;
+
+        for (int pin = 0; pin < pinCount; pin++)
+        {
+            if (modes[pin] == MODE_MOTOR)
+            {
+                replayPins[count++] = pin;
+            }
+        }
+
+        position = putList(MessageGenerator.INITIALIZE_MOTOR_FUNCTION_NUMBER, count, replayPins, count, buffer, position);
+        count = 0;
+
+        for (int pin = 0; pin < pinCount; pin++)
+        {
+            if (modes[pin] == MessageGenerator.MODE_INPUT || modes[pin] == MessageGenerator.MODE_OUTPUT)
+            {
+                replayPins[count] = pin;
+                replayValues[count] = modes[pin];
+                count++;
+            }
+        }
+
+        position = putPairs(MessageGenerator.PIN_MODE_FUNCTION_NUMBER, replayPins, replayValues, count, buffer, position);
+
+        for (int function : WRITE_FUNCTIONS)
+        {
+            count = outputs.collect(function, replayPins, replayValues);
+            position = putPairs(function, replayPins, replayValues, count, buffer, position);
+        }
+
+        if (streamPins.length > 0)
+        {
+            position = putList(MessageGenerator.START_STREAM_FUNCTION_NUMBER, streamRate, streamPins, streamPins.length, buffer, position);
+        }
+
+        return Arrays.copyOf(buffer, position);
+    }
+
+    private void apply()
+    {
+        int[] fields = parser.fields();
+
+        switch (fields[0])
+        {
+            case MessageGenerator.INITIALIZE_MOTOR_FUNCTION_NUMBER:
+            case MessageGenerator.INITIALIZE_MOTOR_TIME_TEST_FUNCTION_NUMBER:
+                setModes(MODE_MOTOR);
+                break;
+
+            case MessageGenerator.INITIALIZE_DIGITAL_INPUT_FUNCTION_NUMBER:
+                setModes(MessageGenerator.MODE_INPUT);
+                break;
+
+            case MessageGenerator.PIN_MODE_FUNCTION_NUMBER:
+                setPinModes();
+                break;
+
+            case MessageGenerator.ACTIVATE_MOTOR_FUNCTION_NUMBER:
+            case MessageGenerator.DIGITAL_WRITE_FUNCTION_NUMBER:
+            case MessageGenerator.ANALOG_WRITE_FUNCTION_NUMBER:
+                int count = copyPairs();
+                outputs.record(fields[0], pins, values, count);
+                break;
+
+            case MessageGenerator.START_STREAM_FUNCTION_NUMBER:
+                startStream();
+                break;
+
+            case MessageGenerator.STOP_STREAM_FUNCTION_NUMBER:
+                streamPins = new int[0];
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    private void setModes(int mode)
+    {
+        int count = parser.count(1);
+        ensureCapacity(count);
+        System.arraycopy(parser.fields(), 2, pins, 0, count);
+
+        for (int i = 0; i < count; i++)
+        {
+            if (validPin(pins[i]))
+            {
+                modes[pins[i]] = mode;
+            }
+        }
+
+        // The device sets the initialized pins low
+        outputs.invalidate(pins, count);
+    }
+
+    private void setPinModes()
+    {
+        int count = copyPairs();
+
+        for (int i = 0; i < count; i++)
+        {
+            if (validPin(pins[i]))
+            {
+                modes[pins[i]] = values[i];
+            }
+        }
+    }
+
+    private void startStream()
+    {
+        int[] fields = parser.fields();
+        int fieldCount = parser.fieldCount();
+
+        if (fieldCount < 3 || fields[1] < 1)
+        {
+            return;
+        }
+
+        int count = Math.max(0, Math.min(fields[2], fieldCount - 3));
+        streamRate = fields[1];
+        streamPins = Arrays.copyOfRange(fields, 3, 3 + count);
+    }
+
+    /**
+     * Copy the pins and values of the last message, with pairs of pin and value after the count
+     * @return The number of pairs
+     */
+    private int copyPairs()
+    {
+        int[] fields = parser.fields();
+        int count = parser.count(2);
+        ensureCapacity(count);
+
+        for (int i = 0; i < count; i++)
+        {
+            pins[i] = fields[2 + i * 2];
+            values[i] = fields[3 + i * 2];
+        }
+
+        return count;
+    }
+
+    private void ensureCapacity(int count)
+    {
+        if (pins.length < count)
+        {
+            pins = new int[count];
+            values = new int[count];
+        }
+    }
+
+    /**
+     * Write a message with a number followed by a list of numbers. Nothing is written if the list is empty
+     */
+    private static int putList(int function, int argument, int[] list, int count, byte[] buffer, int position)
+    {
+        if (count == 0)
+        {
+            return position;
+        }
+
+        position = MessageGenerator.putInt(function, buffer, position);
+        buffer[position++] = MessageGenerator.SEPARATOR;
+        position = MessageGenerator.putInt(argument, buffer, position);
+
+        if (function == MessageGenerator.START_STREAM_FUNCTION_NUMBER)
+        {
+            buffer[position++] = MessageGenerator.SEPARATOR;
+            position = MessageGenerator.putInt(count, buffer, position);
+        }
+
+        for (int i = 0; i < count; i++)
+        {
+            buffer[position++] = MessageGenerator.SEPARATOR;
+            position = MessageGenerator.putInt(list[i], buffer, position);
+        }
+
+        buffer[position++] = MessageGenerator.TERMINAL;
+        return position;
+    }
+
+    /**
+     * Write a message with pairs of pin and value. Nothing is written if there are no pairs
+     */
+    private static int putPairs(int function, int[] pins, int[] values, int count, byte[] buffer, int position)
+    {
+        if (count == 0)
+        {
+            return position;
+        }
+
+        position = MessageGenerator.putInt(function, buffer, position);
+        buffer[position++] = MessageGenerator.SEPARATOR;
+        position = MessageGenerator.putInt(count, buffer, position);
+
+        for (int i = 0; i < count; i++)
+        {
+            buffer[position++] = MessageGenerator.SEPARATOR;
+            position = MessageGenerator.putInt(pins[i], buffer, position);
+            buffer[position++] = MessageGenerator.SEPARATOR;
+            position = MessageGenerator.putInt(values[i], buffer, position);
+        }
+
+        buffer[position++] = MessageGenerator.TERMINAL;
+        return position;
+    }
+
+    private static boolean validPin(int pin)
+    {
+        return pin >= 0 && pin < PinStateCache.PIN_COUNT;
+    }
+
+}
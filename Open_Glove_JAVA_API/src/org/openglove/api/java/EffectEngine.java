@@ -0,0 +1,279 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays haptic effects from one thread at a fixed frame rate. In each frame the intensities of the effects
+ * playing on the same pin are added and limited to 255, and the pins whose intensity changed are sent in one
+ * "activateMotor" message. The pins left without effects are turned off. The frames are timed from a fixed
+ * origin; when the thread is late the frames in between are skipped, so the effects keep their duration. The
+ * frames only read the precomputed tables and reuse the arrays of the engine, so they do not allocate objects
+ * @author Rodrigo Monsalve Lagos
+ */
+class EffectEngine implements Runnable {
+
+    static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(HapticEffect.FRAME_MILLIS);
+    static final private long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    static final private int MAX_INTENSITY = 255;
+
+    private final OpenGlove glove;
+    private final ConcurrentLinkedQueue<EffectPlayback> incoming = new ConcurrentLinkedQueue<EffectPlayback>();
+    private final byte[] message = new byte[MessageGenerator.maxMessageLength(MotorCoalescer.PIN_COUNT)];
+    private final int[] mix = new int[MotorCoalescer.PIN_COUNT];
+    private final long[] mixFrame = new long[MotorCoalescer.PIN_COUNT];
+    private final int[] sent = new int[MotorCoalescer.PIN_COUNT];
+    private final int[] mixedPins = new int[MotorCoalescer.PIN_COUNT];
+    private final int[] onPins = new int[MotorCoalescer.PIN_COUNT];
+    private final int[] framePins = new int[MotorCoalescer.PIN_COUNT];
+    private final int[] frameValues = new int[MotorCoalescer.PIN_COUNT];
+    private final Thread thread;
+    private volatile boolean running = true;
+    private EffectPlayback[] voices = new EffectPlayback[16];
+    private int voiceCount;
+    private int onCount;
+    private long origin;
+    private long frame;
+
+    /**
+     * Initialize the engine and start its thread
+     * @param glove Glove where the frames are sent
+     */
+    EffectEngine(OpenGlove glove)
+    {
+        this.glove = glove;
+        Arrays.fill(mixFrame, -1);
+        thread = new Thread(this, "OpenGlove effect engine");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Start playing an effect in the next frame
+     * @param effect Effect to play
+     * @param pins Pins where the effect is played
+     * @return The handle of the playing effect
+     */
+    EffectPlayback play(HapticEffect effect, int[] pins)
+    {
+        EffectPlayback playback = new EffectPlayback(effect, pins.clone());
+        incoming.add(playback);
+        LockSupport.unpark(thread);
+        return playback;
+    }
+
+    /**
+     * Stop the engine and wait for its thread. The effects that were playing are finished, and the motors keep
+     * their last intensities
+     */
+    void close()
+    {
+        running = false;
+        LockSupport.unpark(thread);
+
+        if (Thread.currentThread() == thread)
+        {
+            return;
+        }
+
+        try
+        {
+            thread.join();
+        }
+
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        origin = System.nanoTime();
+
+        while (running)
+        {
+            if (voiceCount == 0 && onCount == 0 && incoming.isEmpty())
+            {
+                LockSupport.park(this);
+                origin = System.nanoTime();
+                frame = 0;
+                Arrays.fill(mixFrame, -1);
+                continue;
+            }
+
+            acceptIncoming();
+            waitFrame(origin + frame * FRAME_NANOS);
+
+            if (!running)
+            {
+                break;
+            }
+
+            runFrame();
+            long late = (System.nanoTime() - origin) / FRAME_NANOS;
+            frame = Math.max(frame + 1, late);
+        }
+
+        acceptIncoming();
+
+        for (int i = 0; i < voiceCount; i++)
+        {
+            voices[i].finish();
+            voices[i] = null;
+        }
+
+        voiceCount = 0;
+    }
+
+    private void acceptIncoming()
+    {
+        EffectPlayback playback;
+
+        while ((playback = incoming.poll()) != null)
+        {
+            if (voiceCount == voices.length)
+            {
+                voices = Arrays.copyOf(voices, voices.length * 2);
+            }
+
+            playback.startFrame = frame;
+            voices[voiceCount++] = playback;
+        }
+    }
+
+    private void waitFrame(long deadline)
+    {
+        long remaining = deadline - System.nanoTime();
+
+        while (remaining > SPIN_NANOS && running)
+        {
+            LockSupport.parkNanos(this, remaining - SPIN_NANOS);
+            remaining = deadline - System.nanoTime();
+        }
+
+        while (remaining > 0 && running)
+        {
+            Thread.yield();
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    private void runFrame()
+    {
+        int mixedCount = 0;
+        int i = 0;
+
+        while (i < voiceCount)
+        {
+            EffectPlayback playback = voices[i];
+            long position = frame - playback.startFrame;
+            int[] levels = playback.effect.levels();
+
+            if (playback.isCancelled() || position >= levels.length)
+            {
+                playback.finish();
+                voices[i] = voices[--voiceCount];
+                voices[voiceCount] = null;
+                continue;
+            }
+
+            int level = levels[(int) position];
+
+            for (int pin : playback.pins)
+            {
+                if (mixFrame[pin] != frame)
+                {
+                    mixFrame[pin] = frame;
+                    mix[pin] = 0;
+                    mixedPins[mixedCount++] = pin;
+                }
+
+                mix[pin] = Math.min(MAX_INTENSITY, mix[pin] + level);
+            }
+
+            i++;
+        }
+
+        int count = 0;
+
+        for (int j = 0; j < mixedCount; j++)
+        {
+            int pin = mixedPins[j];
+            count = put(pin, mix[pin], count);
+        }
+
+        // The pins that are on without an effect in this frame are turned off
+        for (int j = 0; j < onCount; j++)
+        {
+            int pin = onPins[j];
+
+            if (mixFrame[pin] != frame)
+            {
+                count = put(pin, 0, count);
+            }
+        }
+
+        if (count > 0)
+        {
+            try
+            {
+                glove.sendMotorFrame(framePins, frameValues, count, message);
+            }
+
+            catch (RuntimeException e)
+            {
+                // A failed frame does not stop the effects, and its pins are sent again in the next frame
+                for (int j = 0; j < count; j++)
+                {
+                    sent[framePins[j]] = -1;
+                }
+            }
+        }
+
+        // The pins stay in the list until an intensity of 0 was sent, also if the frame that turns them off failed
+        int previousCount = onCount;
+        onCount = 0;
+
+        for (int j = 0; j < previousCount; j++)
+        {
+            int pin = onPins[j];
+
+            if (mixFrame[pin] != frame && sent[pin] != 0)
+            {
+                onPins[onCount++] = pin;
+            }
+        }
+
+        for (int j = 0; j < mixedCount; j++)
+        {
+            if (sent[mixedPins[j]] != 0)
+            {
+                onPins[onCount++] = mixedPins[j];
+            }
+        }
+    }
+
+    private int put(int pin, int value, int count)
+    {
+        if (sent[pin] == value)
+        {
+            return count;
+        }
+
+        sent[pin] = value;
+        framePins[count] = pin;
+        frameValues[count] = value;
+        return count + 1;
+    }
+
+}
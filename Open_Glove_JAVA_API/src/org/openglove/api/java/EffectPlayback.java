@@ -0,0 +1,55 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+/**
+ * Represents a playing HapticEffect. Allows to know when the effect ends and to cancel it
+ * @author Rodrigo Monsalve Lagos
+ */
+public class EffectPlayback {
+
+    final HapticEffect effect;
+    final int[] pins;
+    long startFrame;
+    private volatile boolean cancelled;
+    private volatile boolean done;
+
+    EffectPlayback(HapticEffect effect, int[] pins)
+    {
+        this.effect = effect;
+        this.pins = pins;
+    }
+
+    /**
+     * Stop the effect. From the next frame its pins have the intensities of the other effects, or 0
+     */
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    /**
+     * Returns true if the effect was cancelled
+     */
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    /**
+     * Returns true if all the frames were played or the effect was cancelled
+     */
+    public boolean isDone()
+    {
+        return done || cancelled;
+    }
+
+    void finish()
+    {
+        done = true;
+    }
+
+}
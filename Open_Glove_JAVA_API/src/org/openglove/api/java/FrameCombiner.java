@@ -0,0 +1,286 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lets many threads write whole frames to one Communication without interleaving their bytes and without a
+ * lock. The threads copy their frames to a lock-free queue with many producers, and a single consumer thread
+ * takes all the queued frames and writes them together with one write of the transport. The threads whose
+ * frames were queued yield a few times and then park until the consumer wrote them and unparks them, so each
+ * call returns after its frame was written. The consumer stores the failure of a batch in the place of each of
+ * its frames; each thread frees the place of its frame after reading the failure, so a later frame can not
+ * replace it. The consumer thread is started by the first frame and stops after one second without frames
+ * @author Rodrigo Monsalve Lagos
+ */
+class FrameCombiner implements Runnable {
+
+    static final private int QUEUE_CAPACITY = 128;
+    static final private int MAX_BATCH_LENGTH = 4096;
+    static final private int YIELDS_BEFORE_PARK = 16;
+    static final private long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    static final private long IDLE_STOP_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Communication communication;
+    private final CommandQueue queue = new CommandQueue(QUEUE_CAPACITY);
+    private final AtomicReferenceArray<Thread> waiters = new AtomicReferenceArray<Thread>(queue.capacity());
+    private final RuntimeException[] failures = new RuntimeException[queue.capacity()];
+    private final ConcurrentLinkedQueue<Thread> blocked = new ConcurrentLinkedQueue<Thread>();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong combinedFrames = new AtomicLong();
+    private volatile Thread consumer;
+    private volatile boolean waiting;
+    private byte[] batch = new byte[MAX_BATCH_LENGTH];
+
+    /**
+     * Initialize a combiner of the frames written to a communication
+     * @param communication Communication whose frames are written with writeFrames
+     */
+    FrameCombiner(Communication communication)
+    {
+        this.communication = communication;
+    }
+
+    /**
+     * Write a frame, waiting until it is written to the transport. The frame is never split or mixed with the
+     * bytes of other frames. If the write of the transport fails, its exception is thrown to all the threads
+     * whose frames were in the failed write
+     * @param data Array with the frame
+     * @param offset Position of the array where the frame starts
+     * @param length Number of bytes of the frame
+     */
+    void write(byte[] data, int offset, int length)
+    {
+        long position = add(data, offset, length);
+        int index = queue.index(position);
+        waiters.set(index, Thread.currentThread());
+        wakeConsumer();
+        int yields = 0;
+
+        while (written.get() <= position)
+        {
+            // A fast transport writes the batch in less time than a park, so the thread yields a few times first
+            if (yields < YIELDS_BEFORE_PARK)
+            {
+                yields++;
+                Thread.yield();
+            }
+
+            else
+            {
+                LockSupport.park(this);
+            }
+        }
+
+        // The failure is read before the place is freed, because a new frame in the place clears it
+        waiters.set(index, null);
+        RuntimeException failure = failures[index];
+        failures[index] = null;
+        queue.release(position);
+        wakeBlocked();
+
+        if (failure != null)
+        {
+            throw failure;
+        }
+    }
+
+    /**
+     * Returns the number of writes of the transport made with more than one frame
+     */
+    long batches()
+    {
+        return batches.get();
+    }
+
+    /**
+     * Returns the number of frames written in the batches
+     */
+    long combinedFrames()
+    {
+        return combinedFrames.get();
+    }
+
+    @Override
+    public void run()
+    {
+        long idleSince = System.nanoTime();
+
+        while (true)
+        {
+            if (writeBatch())
+            {
+                idleSince = System.nanoTime();
+                continue;
+            }
+
+            if (!queue.isEmpty())
+            {
+                // A frame is being copied to the queue
+                Thread.yield();
+                continue;
+            }
+
+            if (System.nanoTime() - idleSince >= IDLE_STOP_NANOS)
+            {
+                running.set(false);
+
+                // A frame added before the flag was cleared found the consumer running and did not start another
+                if (queue.isEmpty() || !running.compareAndSet(false, true))
+                {
+                    return;
+                }
+
+                continue;
+            }
+
+            waiting = true;
+
+            if (queue.isEmpty())
+            {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+
+            waiting = false;
+        }
+    }
+
+    /**
+     * Copy a frame to the queue, parking while the queue is full
+     * @return The position of the frame
+     */
+    private long add(byte[] data, int offset, int length)
+    {
+        long position;
+
+        while ((position = queue.add(data, offset, length, null, 0)) < 0)
+        {
+            Thread current = Thread.currentThread();
+            blocked.add(current);
+
+            // A place freed before the thread was added to the blocked threads did not unpark it
+            if ((position = queue.add(data, offset, length, null, 0)) >= 0)
+            {
+                blocked.remove(current);
+                return position;
+            }
+
+            LockSupport.park(this);
+            blocked.remove(current);
+        }
+
+        return position;
+    }
+
+    /**
+     * Start the consumer thread if it is stopped, or unpark it if it is waiting for frames
+     */
+    private void wakeConsumer()
+    {
+        if (running.compareAndSet(false, true))
+        {
+            Thread thread = new Thread(this, "OpenGlove frame writer");
+            thread.setDaemon(true);
+            consumer = thread;
+            thread.start();
+        }
+
+        else if (waiting)
+        {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * Write the queued frames with one write of the transport. Called only by the consumer thread
+     * @return False if no frame was ready
+     */
+    private boolean writeBatch()
+    {
+        long first = -1;
+        int length = 0;
+        int frames = 0;
+        long position;
+
+        while (length < MAX_BATCH_LENGTH && (position = queue.claim()) >= 0)
+        {
+            int frameLength = queue.length(position);
+
+            if (batch.length < length + frameLength)
+            {
+                batch = Arrays.copyOf(batch, length + frameLength);
+            }
+
+            // The place stays claimed until the thread of the frame reads the result of the write
+            System.arraycopy(queue.command(position), 0, batch, length, frameLength);
+            first = frames == 0 ? position : first;
+            length += frameLength;
+            frames++;
+        }
+
+        if (frames == 0)
+        {
+            return false;
+        }
+
+        try
+        {
+            communication.writeFrames(batch, length, frames);
+        }
+
+        catch (RuntimeException e)
+        {
+            for (long i = first; i < first + frames; i++)
+            {
+                failures[queue.index(i)] = e;
+            }
+        }
+
+        if (frames > 1)
+        {
+            batches.incrementAndGet();
+            combinedFrames.addAndGet(frames);
+        }
+
+        // The positions are claimed in order, so the frames before first + frames are written
+        written.set(first + frames);
+
+        for (long i = first; i < first + frames; i++)
+        {
+            Thread waiter = waiters.get(queue.index(i));
+
+            if (waiter != null)
+            {
+                LockSupport.unpark(waiter);
+            }
+        }
+
+        return true;
+    }
+
+    private void wakeBlocked()
+    {
+        if (blocked.isEmpty())
+        {
+            return;
+        }
+
+        for (Thread thread : blocked)
+        {
+            LockSupport.unpark(thread);
+        }
+    }
+
+}
@@ -0,0 +1,393 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends the intensities of a set of motors at a fixed rate, so an application only writes the intensity it wants
+ * for each motor. The intensities are kept in an array protected by a sequence lock: a writer makes the sequence
+ * odd, writes and makes it even again, and the loop copies the array until it reads the same even sequence before
+ * and after the copy. The loop never blocks the writers and always sends intensities written together. Each tick
+ * the motors whose intensity changed since the last frame are sent in one "activateMotor" message. The ticks
+ * are timed from a fixed origin; a tick that ends after the next one was due is an overrun, and the ticks
+ * missed are skipped
+ * @author Rodrigo Monsalve Lagos
+ */
+public class FrameLoop {
+
+    /**
+     * Highest tick rate accepted
+     */
+    public static final int MAX_RATE_HZ = 10000;
+
+    static final private long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final OpenGlove glove;
+    private final int[] pins;
+    private final int[] slots = new int[MotorCoalescer.PIN_COUNT];
+    private final AtomicIntegerArray intensities;
+    private final AtomicLong sequence = new AtomicLong();
+    private final long periodNanos;
+    private final int[] snapshot;
+    private final int[] sent;
+    private final int[] framePins;
+    private final int[] frameValues;
+    private final byte[] message;
+    private final LatencyHistogram jitter = new LatencyHistogram();
+    private final AtomicLong ticks = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong overruns = new AtomicLong();
+    private final AtomicLong skippedTicks = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * Initialize the loop with all the intensities at 0 and start its thread
+     * @param glove Glove where the frames are sent
+     * @param pins Array of pins where are connected the motors
+     * @param rateHz Ticks each second
+     */
+    FrameLoop(OpenGlove glove, int[] pins, int rateHz)
+    {
+        if (rateHz < 1 || rateHz > MAX_RATE_HZ)
+        {
+            throw new IllegalArgumentException("Rate must be between 1 and " + MAX_RATE_HZ);
+        }
+
+        Arrays.fill(slots, -1);
+
+        for (int i = 0; i < pins.length; i++)
+        {
+            if (pins[i] < 0 || pins[i] >= MotorCoalescer.PIN_COUNT || slots[pins[i]] >= 0)
+            {
+                throw new IllegalArgumentException("Pins must be different and between 0 and " + (MotorCoalescer.PIN_COUNT - 1));
+            }
+
+            slots[pins[i]] = i;
+        }
+
+        this.glove = glove;
+        this.pins = pins.clone();
+        this.periodNanos = TimeUnit.SECONDS.toNanos(1) / rateHz;
+        intensities = new AtomicIntegerArray(pins.length);
+        snapshot = new int[pins.length];
+        sent = new int[pins.length];
+        framePins = new int[pins.length];
+        frameValues = new int[pins.length];
+        message = new byte[MessageGenerator.maxMessageLength(pins.length)];
+        thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                loop();
+            }
+        }, "OpenGlove frame loop");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Set the intensity of a motor, sent in the next tick
+     * @param pin Pin of the motor, one of the pins of the loop
+     * @param value Intensity between 0 and 255
+     */
+    public void setIntensity(int pin, int value)
+    {
+        int slot = slot(pin);
+        checkIntensity(value);
+        long current = beginWrite();
+        intensities.set(slot, value);
+        sequence.set(current + 2);
+    }
+
+    /**
+     * Set the intensities of all the motors. The loop sends all of them in the same frame
+     * @param values Array with an intensity between 0 and 255 for each pin, in the order of the pins of the loop
+     */
+    public void setIntensities(int[] values)
+    {
+        if (values.length != pins.length)
+        {
+            throw new IllegalArgumentException("Arrays length must be equal");
+        }
+
+        for (int value : values)
+        {
+            checkIntensity(value);
+        }
+
+        long current = beginWrite();
+
+        for (int i = 0; i < values.length; i++)
+        {
+            intensities.set(i, values[i]);
+        }
+
+        sequence.set(current + 2);
+    }
+
+    /**
+     * Returns the intensity last written for a motor
+     * @param pin Pin of the motor, one of the pins of the loop
+     */
+    public int getIntensity(int pin)
+    {
+        return intensities.get(slot(pin));
+    }
+
+    /**
+     * Returns the time between the ticks in nanoseconds
+     */
+    public long getPeriodNanos()
+    {
+        return periodNanos;
+    }
+
+    /**
+     * Returns the number of ticks run
+     */
+    public long getTickCount()
+    {
+        return ticks.get();
+    }
+
+    /**
+     * Returns the number of frames sent, one for each tick where an intensity changed
+     */
+    public long getFrameCount()
+    {
+        return frames.get();
+    }
+
+    /**
+     * Returns the number of ticks that ended after the next tick was due
+     */
+    public long getOverruns()
+    {
+        return overruns.get();
+    }
+
+    /**
+     * Returns the number of ticks that were not run because the loop was late
+     */
+    public long getSkippedTicks()
+    {
+        return skippedTicks.get();
+    }
+
+    /**
+     * Returns the number of times that the loop copied the intensities again because they were being written
+     */
+    public long getSnapshotRetries()
+    {
+        return retries.get();
+    }
+
+    /**
+     * Returns the percentiles of the delay between the time when each tick was due and the time when it started
+     */
+    public LatencySummary getJitter()
+    {
+        long[] counts = new long[LatencyHistogram.BUCKET_COUNT];
+        long count = jitter.addCounts(counts);
+        return new LatencySummary(counts, count, jitter.max());
+    }
+
+    /**
+     * Stop the loop and wait for its thread. The motors keep their last intensities
+     */
+    public void stop()
+    {
+        running = false;
+        LockSupport.unpark(thread);
+
+        if (Thread.currentThread() == thread)
+        {
+            return;
+        }
+
+        try
+        {
+            thread.join();
+        }
+
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns true if the loop was not stopped
+     */
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    private void loop()
+    {
+        long origin = System.nanoTime();
+        long tick = 0;
+
+        while (running)
+        {
+            long deadline = origin + tick * periodNanos;
+            waitTick(deadline);
+
+            if (!running)
+            {
+                return;
+            }
+
+            jitter.record(System.nanoTime() - deadline);
+            ticks.incrementAndGet();
+            runTick();
+            long next = (System.nanoTime() - origin) / periodNanos + 1;
+
+            if (next > tick + 1)
+            {
+                overruns.incrementAndGet();
+                skippedTicks.addAndGet(next - tick - 1);
+                tick = next;
+            }
+
+            else
+            {
+                tick++;
+            }
+        }
+    }
+
+    private void runTick()
+    {
+        copyIntensities();
+        int count = 0;
+
+        for (int i = 0; i < pins.length; i++)
+        {
+            if (snapshot[i] != sent[i])
+            {
+                sent[i] = snapshot[i];
+                framePins[count] = pins[i];
+                frameValues[count] = snapshot[i];
+                count++;
+            }
+        }
+
+        if (count == 0)
+        {
+            return;
+        }
+
+        try
+        {
+            glove.sendMotorFrame(framePins, frameValues, count, message);
+            frames.incrementAndGet();
+        }
+
+        catch (RuntimeException e)
+        {
+            // The intensities of a failed frame are sent again in the next tick
+            for (int i = 0; i < count; i++)
+            {
+                sent[slots[framePins[i]]] = -1;
+            }
+        }
+    }
+
+    /**
+     * Copy the intensities to the snapshot, retrying while a writer changes them
+     */
+    private void copyIntensities()
+    {
+        while (true)
+        {
+            long before = sequence.get();
+
+            if ((before & 1) == 0)
+            {
+                for (int i = 0; i < snapshot.length; i++)
+                {
+                    snapshot[i] = intensities.get(i);
+                }
+
+                if (sequence.get() == before)
+                {
+                    return;
+                }
+            }
+
+            retries.incrementAndGet();
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Make the sequence odd, waiting for the other writer if there is one
+     * @return The even sequence before the write
+     */
+    private long beginWrite()
+    {
+        while (true)
+        {
+            long current = sequence.get();
+
+            if ((current & 1) == 0 && sequence.compareAndSet(current, current + 1))
+            {
+                return current;
+            }
+
+            Thread.yield();
+        }
+    }
+
+    private void waitTick(long deadline)
+    {
+        long remaining = deadline - System.nanoTime();
+
+        while (remaining > SPIN_NANOS && running)
+        {
+            LockSupport.parkNanos(this, remaining - SPIN_NANOS);
+            remaining = deadline - System.nanoTime();
+        }
+
+        while (remaining > 0 && running)
+        {
+            Thread.yield();
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    private int slot(int pin)
+    {
+        int slot = pin >= 0 && pin < MotorCoalescer.PIN_COUNT ? slots[pin] : -1;
+
+        if (slot < 0)
+        {
+            throw new IllegalArgumentException("Pin " + pin + " is not driven by the frame loop");
+        }
+
+        return slot;
+    }
+
+    private static void checkIntensity(int value)
+    {
+        if (value < 0 || value > 255)
+        {
+            throw new IllegalArgumentException("Intensities must be between 0 and 255");
+        }
+    }
+
+}
@@ -0,0 +1,268 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Drives many gloves at the same time. Each glove has its own Communication and its own writer thread, and the
+ * motor intensities are coalesced, so activating the motors of a glove only stores the intensities and wakes
+ * its writer. A slow or blocked port delays only its own writer, and the other gloves keep receiving their
+ * frames. The methods of the manager can be called from many threads; to use a glove directly at the same
+ * time, synchronize on it
+ * @author Rodrigo Monsalve Lagos
+ */
+public class GloveManager {
+
+    static final private int DEFAULT_QUEUE_CAPACITY = 64;
+
+    private final List<OpenGlove> gloves = new CopyOnWriteArrayList<OpenGlove>();
+    private final int queueCapacity;
+    private final BackpressurePolicy policy;
+
+    /**
+     * Initialize a manager whose gloves queue up to 64 commands and drop the oldest one when the queue is full
+     */
+    public GloveManager()
+    {
+        this(DEFAULT_QUEUE_CAPACITY, BackpressurePolicy.DROP_OLDEST);
+    }
+
+    /**
+     * Initialize a manager with the queue of the writer of each glove specified
+     * @param queueCapacity Maximum number of commands waiting to be written to each glove
+     * @param policy Behaviour when the queue of a glove is full
+     */
+    public GloveManager(int queueCapacity, BackpressurePolicy policy)
+    {
+        this.queueCapacity = queueCapacity;
+        this.policy = policy;
+    }
+
+    /**
+     * Open a glove connected to a serial port and add it to the manager
+     * @param portName Name of the serial port
+     * @param baudRate Data rate in bits per second
+     * @return The glove, or null if the port could not be opened
+     */
+    public OpenGlove add(String portName, int baudRate)
+    {
+        OpenGlove glove = new OpenGlove();
+
+        if (!glove.openPort(portName, baudRate))
+        {
+            return null;
+        }
+
+        return add(glove);
+    }
+
+    /**
+     * Open a glove that communicates through the transport specified, like a SimulatedTransport, and add it to the manager
+     * @param transport Transport used to communicate with the glove
+     * @return The glove, or null if the transport could not be opened
+     */
+    public OpenGlove add(Transport transport)
+    {
+        OpenGlove glove = new OpenGlove();
+
+        if (!glove.open(transport))
+        {
+            return null;
+        }
+
+        return add(glove);
+    }
+
+    /**
+     * Close the communication with a glove and remove it from the manager
+     * @param glove Glove to remove
+     * @return True if the glove was in the manager
+     */
+    public boolean remove(OpenGlove glove)
+    {
+        if (!gloves.remove(glove))
+        {
+            return false;
+        }
+
+        close(glove);
+        return true;
+    }
+
+    /**
+     * Returns the number of gloves in the manager
+     */
+    public int getGloveCount()
+    {
+        return gloves.size();
+    }
+
+    /**
+     * Returns a glove of the manager
+     * @param index Index of the glove, in the order they were added
+     */
+    public OpenGlove getGlove(int index)
+    {
+        return gloves.get(index);
+    }
+
+    /**
+     * Returns a list with the gloves of the manager, in the order they were added
+     */
+    public List<OpenGlove> getGloves()
+    {
+        return new ArrayList<OpenGlove>(gloves);
+    }
+
+    /**
+     * Activate the same motors with the same intensities in all the gloves
+     * @param pins Array of pins where are connected the motors
+     * @param values Array with the intensities, between 0 and 255, or MessageGenerator.MOTOR_HIGH or MessageGenerator.MOTOR_LOW in digital mode
+     */
+    public void broadcast(int[] pins, int[] values)
+    {
+        for (OpenGlove glove : gloves)
+        {
+            activateMotor(glove, pins, values);
+        }
+    }
+
+    /**
+     * Activate different motors in each glove with one call. The arrays at each index are sent to the glove
+     * with the same index; a null array or an index without glove is skipped
+     * @param pins Array with the pins of each glove
+     * @param values Array with the intensities of each glove
+     */
+    public void fanOut(int[][] pins, int[][] values)
+    {
+        if (pins.length != values.length)
+        {
+            throw new IllegalArgumentException("Arrays length must be equal");
+        }
+
+        int index = 0;
+
+        for (OpenGlove glove : gloves)
+        {
+            if (index == pins.length)
+            {
+                break;
+            }
+
+            if (pins[index] != null && values[index] != null)
+            {
+                activateMotor(glove, pins[index], values[index]);
+            }
+
+            index++;
+        }
+    }
+
+    /**
+     * Returns a handle to know when the commands sent before the call have been written to all the gloves
+     */
+    public CompletableFuture<Void> confirmWrites()
+    {
+        List<CompletableFuture<Void>> confirmations = new ArrayList<CompletableFuture<Void>>();
+
+        for (OpenGlove glove : gloves)
+        {
+            synchronized (glove)
+            {
+                confirmations.add(glove.confirmWrites());
+            }
+        }
+
+        return CompletableFuture.allOf(confirmations.toArray(new CompletableFuture<?>[confirmations.size()]));
+    }
+
+    /**
+     * Returns the metrics of all the gloves added together
+     */
+    public MetricsSnapshot getMetrics()
+    {
+        List<GloveMetrics> metrics = new ArrayList<GloveMetrics>();
+
+        for (OpenGlove glove : gloves)
+        {
+            metrics.add(glove.getMetrics());
+        }
+
+        return GloveMetrics.snapshot(metrics);
+    }
+
+    /**
+     * Returns the number of commands discarded by all the gloves because their queue was full
+     */
+    public long getDroppedCommands()
+    {
+        long dropped = 0;
+
+        for (OpenGlove glove : gloves)
+        {
+            dropped += glove.getDroppedCommands();
+        }
+
+        return dropped;
+    }
+
+    /**
+     * Returns the number of motor intensities replaced by a newer one before being sent, in all the gloves
+     */
+    public long getMergedUpdates()
+    {
+        long merged = 0;
+
+        for (OpenGlove glove : gloves)
+        {
+            merged += glove.getMergedUpdates();
+        }
+
+        return merged;
+    }
+
+    /**
+     * Write the queued commands and close the communication with all the gloves
+     */
+    public void close()
+    {
+        for (OpenGlove glove : gloves)
+        {
+            gloves.remove(glove);
+            close(glove);
+        }
+    }
+
+    private OpenGlove add(OpenGlove glove)
+    {
+        glove.enableAsyncWrites(queueCapacity, policy);
+        glove.setMotorCoalescing(true);
+        gloves.add(glove);
+        return glove;
+    }
+
+    private static void activateMotor(OpenGlove glove, int[] pins, int[] values)
+    {
+        synchronized (glove)
+        {
+            glove.activateMotor(pins, values);
+        }
+    }
+
+    private static void close(OpenGlove glove)
+    {
+        synchronized (glove)
+        {
+            glove.disableAsyncWrites();
+            glove.closePort();
+        }
+    }
+
+}
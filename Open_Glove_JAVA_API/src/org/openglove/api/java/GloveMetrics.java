@@ -0,0 +1,435 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Latencies, transferred bytes and errors of the communication with a glove. The latencies are kept in a
+ * histogram for each LatencyMetric and function number; recording a value does not lock or allocate objects,
+ * and when the metrics are disabled the measured code only reads one volatile field. Most of the cost of a
+ * latency is reading the clock twice, so the latencies can be sampled while the counters stay exact. The
+ * metrics can be read with a snapshot or through JMX
+ * @author Rodrigo Monsalve Lagos
+ */
+public class GloveMetrics implements GloveMetricsMBean {
+
+    /**
+     * Number of function numbers with their own histograms. Messages with a larger function number are counted as 0
+     */
+    public static final int FUNCTION_COUNT = 16;
+
+    static final private String DOMAIN = "org.openglove.api.java";
+
+    private final AtomicReferenceArray<LatencyHistogram> histograms =
+        new AtomicReferenceArray<LatencyHistogram>(LatencyMetric.values().length * FUNCTION_COUNT);
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong messagesWritten = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+    private volatile boolean enabled = true;
+    private volatile int samplingMask;
+    private int sampleCount;
+    private volatile long startNanos = System.nanoTime();
+    private ObjectName objectName;
+
+    /**
+     * Returns the current values of the metrics
+     */
+    public MetricsSnapshot snapshot()
+    {
+        return snapshot(Collections.singletonList(this));
+    }
+
+    /**
+     * Returns the metrics of many gloves added together. The histograms are merged, so the percentiles are
+     * those of all the latencies, and the elapsed time is the longest one
+     * @param sources Metrics of the gloves
+     */
+    public static MetricsSnapshot snapshot(Collection<GloveMetrics> sources)
+    {
+        LatencyMetric[] metrics = LatencyMetric.values();
+        LatencySummary[][] latencies = new LatencySummary[metrics.length][FUNCTION_COUNT];
+        LatencySummary[] totals = new LatencySummary[metrics.length];
+        long[] counts = new long[LatencyHistogram.BUCKET_COUNT];
+        long[] totalCounts = new long[LatencyHistogram.BUCKET_COUNT];
+
+        for (LatencyMetric metric : metrics)
+        {
+            long total = 0;
+            long totalMax = 0;
+
+            for (int function = 0; function < FUNCTION_COUNT; function++)
+            {
+                Arrays.fill(counts, 0);
+                long count = 0;
+                long max = 0;
+
+                for (GloveMetrics source : sources)
+                {
+                    LatencyHistogram histogram = source.histograms.get(metric.ordinal() * FUNCTION_COUNT + function);
+
+                    if (histogram != null)
+                    {
+                        count += histogram.addCounts(counts);
+                        max = Math.max(max, histogram.max());
+                        histogram.addCounts(totalCounts);
+                    }
+                }
+
+                latencies[metric.ordinal()][function] = new LatencySummary(counts, count, max);
+                total += count;
+                totalMax = Math.max(totalMax, max);
+            }
+
+            totals[metric.ordinal()] = new LatencySummary(totalCounts, total, totalMax);
+            Arrays.fill(totalCounts, 0);
+        }
+
+        long now = System.nanoTime();
+        long elapsed = 0;
+        long written = 0;
+        long read = 0;
+        long messages = 0;
+        long timeoutCount = 0;
+        long errorCount = 0;
+        long reconnectCount = 0;
+
+        for (GloveMetrics source : sources)
+        {
+            elapsed = Math.max(elapsed, now - source.startNanos);
+            written += source.bytesWritten.get();
+            read += source.bytesRead.get();
+            messages += source.messagesWritten.get();
+            timeoutCount += source.timeouts.get();
+            errorCount += source.errors.get();
+            reconnectCount += source.reconnects.get();
+        }
+
+        return new MetricsSnapshot(elapsed, written, read, messages, timeoutCount, errorCount, reconnectCount, latencies,
+            totals);
+    }
+
+    /**
+     * Register the metrics in the platform MBean server, with the name "org.openglove.api.java:type=GloveMetrics,name=" and the name specified
+     * @param name Name that identifies the glove, like the name of its port
+     * @return The name of the registered MBean
+     */
+    public synchronized ObjectName register(String name)
+    {
+        unregister();
+
+        try
+        {
+            ObjectName newName = new ObjectName(DOMAIN + ":type=GloveMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, newName);
+            objectName = newName;
+            return newName;
+        }
+
+        catch (JMException e)
+        {
+            throw new IllegalStateException("The metrics could not be registered", e);
+        }
+    }
+
+    /**
+     * Remove the metrics from the platform MBean server if they were registered
+     */
+    public synchronized void unregister()
+    {
+        if (objectName == null)
+        {
+            return;
+        }
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try
+        {
+            server.unregisterMBean(objectName);
+        }
+
+        catch (JMException e)
+        {
+            // It was already unregistered
+        }
+
+        objectName = null;
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public int getSamplingInterval()
+    {
+        return samplingMask + 1;
+    }
+
+    @Override
+    public void setSamplingInterval(int interval)
+    {
+        if (interval < 1 || Integer.bitCount(interval) != 1)
+        {
+            throw new IllegalArgumentException("Sampling interval must be a power of two");
+        }
+
+        samplingMask = interval - 1;
+    }
+
+    @Override
+    public long getBytesWritten()
+    {
+        return bytesWritten.get();
+    }
+
+    @Override
+    public long getBytesRead()
+    {
+        return bytesRead.get();
+    }
+
+    @Override
+    public double getBytesWrittenPerSecond()
+    {
+        return perSecond(bytesWritten.get());
+    }
+
+    @Override
+    public double getBytesReadPerSecond()
+    {
+        return perSecond(bytesRead.get());
+    }
+
+    @Override
+    public long getMessagesWritten()
+    {
+        return messagesWritten.get();
+    }
+
+    @Override
+    public long getTimeouts()
+    {
+        return timeouts.get();
+    }
+
+    @Override
+    public long getErrors()
+    {
+        return errors.get();
+    }
+
+    @Override
+    public long getReconnects()
+    {
+        return reconnects.get();
+    }
+
+    @Override
+    public String[] getLatencies()
+    {
+        MetricsSnapshot snapshot = snapshot();
+        List<String> lines = new ArrayList<String>();
+
+        for (LatencyMetric metric : LatencyMetric.values())
+        {
+            for (int function = 0; function < FUNCTION_COUNT; function++)
+            {
+                LatencySummary summary = snapshot.getLatency(metric, function);
+
+                if (summary.getCount() > 0)
+                {
+                    lines.add(metric + " " + function + ": " + summary);
+                }
+            }
+        }
+
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    @Override
+    public long getLatencyPercentileNanos(String metric, int functionNumber, double percentile)
+    {
+        int ordinal = LatencyMetric.valueOf(metric).ordinal();
+        long[] counts = new long[LatencyHistogram.BUCKET_COUNT];
+        long total = 0;
+        long max = 0;
+
+        for (int function = 0; function < FUNCTION_COUNT; function++)
+        {
+            LatencyHistogram histogram = histograms.get(ordinal * FUNCTION_COUNT + function);
+
+            if (histogram != null && (functionNumber < 0 || functionNumber == function))
+            {
+                total += histogram.addCounts(counts);
+                max = Math.max(max, histogram.max());
+            }
+        }
+
+        return LatencyHistogram.valueAt(counts, total, max, percentile);
+    }
+
+    @Override
+    public void reset()
+    {
+        for (int i = 0; i < histograms.length(); i++)
+        {
+            LatencyHistogram histogram = histograms.get(i);
+
+            if (histogram != null)
+            {
+                histogram.reset();
+            }
+        }
+
+        bytesWritten.set(0);
+        bytesRead.set(0);
+        messagesWritten.set(0);
+        timeouts.set(0);
+        errors.set(0);
+        reconnects.set(0);
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Returns the current time to measure a latency, or 0 if the metrics are disabled or the latency is not sampled
+     */
+    long startTimer()
+    {
+        if (!enabled)
+        {
+            return 0;
+        }
+
+        int mask = samplingMask;
+
+        // The count is not atomic, a race only moves the next sample
+        if (mask != 0 && (sampleCount++ & mask) != 0)
+        {
+            return 0;
+        }
+
+        return System.nanoTime();
+    }
+
+    /**
+     * Record the latency from a start time returned by startTimer
+     * @param metric Latency measured
+     * @param functionNumber Function number of the message
+     * @param startNanos Time returned by startTimer. Nothing is recorded if it is 0
+     */
+    void stopTimer(LatencyMetric metric, int functionNumber, long startNanos)
+    {
+        if (startNanos != 0)
+        {
+            histogram(metric, functionNumber).record(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Count a write of bytes to the transport
+     * @param length Number of bytes written
+     * @param messages Number of messages in the bytes
+     */
+    void written(int length, int messages)
+    {
+        if (enabled)
+        {
+            bytesWritten.addAndGet(length);
+            messagesWritten.addAndGet(messages);
+        }
+    }
+
+    /**
+     * Count bytes received from the transport
+     */
+    void read(int length)
+    {
+        if (enabled)
+        {
+            bytesRead.addAndGet(length);
+        }
+    }
+
+    /**
+     * Count a read without answer before the timeout
+     */
+    void timeout()
+    {
+        if (enabled)
+        {
+            timeouts.incrementAndGet();
+        }
+    }
+
+    /**
+     * Count a reconnection and record the time it took to recover
+     * @param failureNanos Time of the failure, from System.nanoTime
+     */
+    void reconnected(long failureNanos)
+    {
+        if (enabled)
+        {
+            reconnects.incrementAndGet();
+            histogram(LatencyMetric.RECOVERY, 0).record(System.nanoTime() - failureNanos);
+        }
+    }
+
+    /**
+     * Count a failed write or read
+     */
+    void error()
+    {
+        if (enabled)
+        {
+            errors.incrementAndGet();
+        }
+    }
+
+    private LatencyHistogram histogram(LatencyMetric metric, int functionNumber)
+    {
+        int function = functionNumber > 0 && functionNumber < FUNCTION_COUNT ? functionNumber : 0;
+        int index = metric.ordinal() * FUNCTION_COUNT + function;
+        LatencyHistogram histogram = histograms.get(index);
+
+        if (histogram == null)
+        {
+            histograms.compareAndSet(index, null, new LatencyHistogram());
+            histogram = histograms.get(index);
+        }
+
+        return histogram;
+    }
+
+    private double perSecond(long count)
+    {
+        long elapsed = System.nanoTime() - startNanos;
+        return elapsed <= 0 ? 0 : count * 1e9 / elapsed;
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+/**
+ * JMX interface of the metrics of a glove
+ * @author Rodrigo Monsalve Lagos
+ */
+public interface GloveMetricsMBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    int getSamplingInterval();
+
+    /**
+     * Measure only one of each interval latencies. The counters of bytes, timeouts and errors are not sampled
+     * @param interval Power of two, 1 to measure all the latencies
+     */
+    void setSamplingInterval(int interval);
+
+    long getBytesWritten();
+
+    long getBytesRead();
+
+    double getBytesWrittenPerSecond();
+
+    double getBytesReadPerSecond();
+
+    long getMessagesWritten();
+
+    long getTimeouts();
+
+    long getErrors();
+
+    long getReconnects();
+
+    /**
+     * Returns one line for each latency and function number with measurements
+     */
+    String[] getLatencies();
+
+    /**
+     * Returns a percentile of a latency in nanoseconds
+     * @param metric Name of a LatencyMetric
+     * @param functionNumber Function number, or -1 for all the function numbers together
+     * @param percentile Percentage between 0 and 100
+     */
+    long getLatencyPercentileNanos(String metric, int functionNumber, double percentile);
+
+    void reset();
+
+}
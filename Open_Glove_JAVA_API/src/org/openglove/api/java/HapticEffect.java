@@ -0,0 +1,237 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.Arrays;
+
+/**
+ * Represents a vibration effect as a table with the intensity of each frame, one frame each FRAME_MILLIS
+ * milliseconds. The table is computed once when the effect is created, so playing it only reads the table. An
+ * effect is played with OpenGlove.play on many pins, and the effects playing on the same pin are added. Effects
+ * can not be modified, so they can be played many times, also at the same time
+ * @author Rodrigo Monsalve Lagos
+ */
+public class HapticEffect {
+
+    /**
+     * Time between the frames of the effects, in milliseconds
+     */
+    public static final int FRAME_MILLIS = 10;
+
+    static final private int MAX_INTENSITY = 255;
+
+    private final int[] levels;
+
+    /**
+     * Initialize an effect with the intensities of its frames
+     * @param levels Array with the intensity of each frame, between 0 and 255
+     */
+    public HapticEffect(int[] levels)
+    {
+        for (int level : levels)
+        {
+            if (level < 0 || level > MAX_INTENSITY)
+            {
+                throw new IllegalArgumentException("Intensities must be between 0 and 255");
+            }
+        }
+
+        this.levels = levels.clone();
+    }
+
+    /**
+     * Returns an effect that changes the intensity linearly
+     * @param from Intensity of the first frame, between 0 and 255
+     * @param to Intensity of the last frame, between 0 and 255
+     * @param durationMillis Time from the first to the last frame
+     */
+    public static HapticEffect ramp(int from, int to, long durationMillis)
+    {
+        checkIntensity(from);
+        checkIntensity(to);
+        int[] table = new int[frames(durationMillis) + 1];
+        fillRamp(table, 0, table.length - 1, from, to);
+        table[table.length - 1] = to;
+        return new HapticEffect(table);
+    }
+
+    /**
+     * Returns an effect with an ADSR envelope: the intensity rises from 0 to the peak, decays to the sustain
+     * level, stays there and falls to 0
+     * @param peak Intensity at the end of the attack, between 0 and 255
+     * @param sustain Intensity after the decay, between 0 and 255
+     * @param attackMillis Time to rise from 0 to the peak
+     * @param decayMillis Time to fall from the peak to the sustain level
+     * @param sustainMillis Time at the sustain level
+     * @param releaseMillis Time to fall from the sustain level to 0
+     */
+    public static HapticEffect adsr(int peak, int sustain, long attackMillis, long decayMillis, long sustainMillis, long releaseMillis)
+    {
+        checkIntensity(peak);
+        checkIntensity(sustain);
+        int attack = frames(attackMillis);
+        int decay = frames(decayMillis);
+        int hold = frames(sustainMillis);
+        int release = frames(releaseMillis);
+        int[] table = new int[attack + decay + hold + release + 1];
+        int position = fillRamp(table, 0, attack, 0, peak);
+        position = fillRamp(table, position, decay, peak, sustain);
+        Arrays.fill(table, position, position + hold, sustain);
+        fillRamp(table, position + hold, release, sustain, 0);
+        return new HapticEffect(table);
+    }
+
+    /**
+     * Returns an effect that turns the motors on and off, ending with the motors off
+     * @param intensity Intensity of the pulses, between 0 and 255
+     * @param onMillis Duration of each pulse
+     * @param offMillis Time between the pulses
+     * @param count Number of pulses
+     */
+    public static HapticEffect pulse(int intensity, long onMillis, long offMillis, int count)
+    {
+        checkIntensity(intensity);
+
+        if (count < 1)
+        {
+            throw new IllegalArgumentException("Count must be positive");
+        }
+
+        int on = Math.max(1, frames(onMillis));
+        int off = Math.max(1, frames(offMillis));
+        int[] table = new int[count * (on + off)];
+
+        for (int i = 0; i < count; i++)
+        {
+            Arrays.fill(table, i * (on + off), i * (on + off) + on, intensity);
+        }
+
+        return new HapticEffect(table);
+    }
+
+    /**
+     * Returns an effect whose intensity oscillates around a center, ending with the motors off. The intensities
+     * outside 0 and 255 are limited to the range
+     * @param center Intensity around which the effect oscillates
+     * @param amplitude Maximum difference with the center
+     * @param frequencyHz Oscillations each second, up to half the frame rate
+     * @param durationMillis Duration of the effect
+     */
+    public static HapticEffect sine(int center, int amplitude, double frequencyHz, long durationMillis)
+    {
+        int[] table = new int[frames(durationMillis) + 1];
+
+        for (int i = 0; i < table.length - 1; i++)
+        {
+            table[i] = clamp((int) Math.round(center + amplitude * Math.sin(phase(frequencyHz, i))));
+        }
+
+        return new HapticEffect(table);
+    }
+
+    /**
+     * Returns an effect with the intensities of this one modulated by a sine, like a tremolo
+     * @param frequencyHz Oscillations each second, up to half the frame rate
+     * @param depth Fraction of the intensity that oscillates, between 0 and 1
+     */
+    public HapticEffect modulate(double frequencyHz, double depth)
+    {
+        if (depth < 0 || depth > 1)
+        {
+            throw new IllegalArgumentException("Depth must be between 0 and 1");
+        }
+
+        int[] table = new int[levels.length];
+
+        for (int i = 0; i < table.length; i++)
+        {
+            double gain = 1 - depth * (1 - Math.cos(phase(frequencyHz, i))) / 2;
+            table[i] = (int) Math.round(levels[i] * gain);
+        }
+
+        return new HapticEffect(table);
+    }
+
+    /**
+     * Returns the number of frames of the effect
+     */
+    public int getFrameCount()
+    {
+        return levels.length;
+    }
+
+    /**
+     * Returns the duration of the effect in milliseconds
+     */
+    public long getDurationMillis()
+    {
+        return (long) levels.length * FRAME_MILLIS;
+    }
+
+    /**
+     * Returns the intensity of a frame
+     * @param frame Number of the frame, from 0
+     */
+    public int getLevel(int frame)
+    {
+        return levels[frame];
+    }
+
+    int[] levels()
+    {
+        return levels;
+    }
+
+    /**
+     * Write a linear ramp in the table, without its last value
+     * @return The position after the ramp
+     */
+    private static int fillRamp(int[] table, int position, int frames, int from, int to)
+    {
+        for (int i = 0; i < frames; i++)
+        {
+            table[position + i] = from + (int) Math.round((to - from) * (double) i / frames);
+        }
+
+        return position + frames;
+    }
+
+    private static int frames(long millis)
+    {
+        if (millis < 0)
+        {
+            throw new IllegalArgumentException("Time must be positive");
+        }
+
+        long frames = (millis + FRAME_MILLIS - 1) / FRAME_MILLIS;
+
+        if (frames > Integer.MAX_VALUE / 4)
+        {
+            throw new IllegalArgumentException("Effect is too long");
+        }
+
+        return (int) frames;
+    }
+
+    private static double phase(double frequencyHz, int frame)
+    {
+        return 2 * Math.PI * frequencyHz * frame * FRAME_MILLIS / 1000.0;
+    }
+
+    private static void checkIntensity(int intensity)
+    {
+        if (intensity < 0 || intensity > MAX_INTENSITY)
+        {
+            throw new IllegalArgumentException("Intensities must be between 0 and 255");
+        }
+    }
+
+    private static int clamp(int intensity)
+    {
+        return Math.max(0, Math.min(MAX_INTENSITY, intensity));
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.Arrays;
+
+/**
+ * Represents a vibration pattern, a sequence of motor activations at fixed times from the start of the pattern.
+ * A pattern is played with OpenGlove.play and can be played many times, also overlapped with other patterns.
+ * It must not be modified while it is playing
+ * @author Rodrigo Monsalve Lagos
+ */
+public class HapticPattern {
+
+    private long[] times = new long[8];
+    private int[] starts = new int[9];
+    private int[] pins = new int[16];
+    private int[] values = new int[16];
+    private int stepCount;
+
+    /**
+     * Add a step that activates motors at a time from the start of the pattern. Steps at the same time are applied in the order they were added
+     * @param timeMillis Time of the step in milliseconds from the start of the pattern
+     * @param stepPins Array of pins where are connected the motors
+     * @param stepValues Array with the intensities, between 0 and 255, or MessageGenerator.MOTOR_HIGH or MessageGenerator.MOTOR_LOW in digital mode
+     */
+    public void addStep(long timeMillis, int[] stepPins, int[] stepValues)
+    {
+        if (timeMillis < 0)
+        {
+            throw new IllegalArgumentException("Time must be positive");
+        }
+
+        if (!MotorCoalescer.accepts(stepPins, stepValues, true))
+        {
+            throw new IllegalArgumentException("Arrays length must be equal, pins between 0 and "
+                + (MotorCoalescer.PIN_COUNT - 1) + " and values between 0 and 255");
+        }
+
+        long time = timeMillis * 1000000L;
+        int index = stepCount;
+
+        while (index > 0 && times[index - 1] > time)
+        {
+            index--;
+        }
+
+        int used = starts[stepCount];
+        int size = stepPins.length;
+
+        if (stepCount + 1 == times.length)
+        {
+            times = Arrays.copyOf(times, times.length * 2);
+            starts = Arrays.copyOf(starts, starts.length * 2);
+        }
+
+        if (used + size > pins.length)
+        {
+            pins = Arrays.copyOf(pins, Math.max(pins.length * 2, used + size));
+            values = Arrays.copyOf(values, pins.length);
+        }
+
+        int position = starts[index];
+        System.arraycopy(pins, position, pins, position + size, used - position);
+        System.arraycopy(values, position, values, position + size, used - position);
+        System.arraycopy(stepPins, 0, pins, position, size);
+        System.arraycopy(stepValues, 0, values, position, size);
+
+        for (int i = stepCount; i >= index; i--)
+        {
+            starts[i + 1] = starts[i] + size;
+        }
+
+        System.arraycopy(times, index, times, index + 1, stepCount - index);
+        times[index] = time;
+        stepCount++;
+    }
+
+    /**
+     * Returns the number of steps of the pattern
+     */
+    public int getStepCount()
+    {
+        return stepCount;
+    }
+
+    /**
+     * Returns the duration of the pattern in milliseconds, the time of its last step
+     */
+    public long getDurationMillis()
+    {
+        return stepCount == 0 ? 0 : times[stepCount - 1] / 1000000L;
+    }
+
+    long time(int step)
+    {
+        return times[step];
+    }
+
+    int start(int step)
+    {
+        return starts[step];
+    }
+
+    int end(int step)
+    {
+        return starts[step + 1];
+    }
+
+    int pin(int position)
+    {
+        return pins[position];
+    }
+
+    int value(int position)
+    {
+        return values[position];
+    }
+
+}
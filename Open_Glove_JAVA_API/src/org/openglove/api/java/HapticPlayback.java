@@ -0,0 +1,56 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+/**
+ * Represents a playing HapticPattern. Allows to know when the pattern ends and to cancel it
+ * @author Rodrigo Monsalve Lagos
+ */
+public class HapticPlayback {
+
+    final HapticPattern pattern;
+    long startNanos;
+    long deadlineTick;
+    int nextStep;
+    HapticPlayback next;
+    private volatile boolean cancelled;
+    private volatile boolean done;
+
+    HapticPlayback(HapticPattern pattern)
+    {
+        this.pattern = pattern;
+    }
+
+    /**
+     * Stop the pattern. The steps that were not played yet are not sent, the motors keep their current intensities
+     */
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    /**
+     * Returns true if the pattern was cancelled
+     */
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    /**
+     * Returns true if all the steps were played or the pattern was cancelled
+     */
+    public boolean isDone()
+    {
+        return done || cancelled;
+    }
+
+    void finish()
+    {
+        done = true;
+    }
+
+}
@@ -0,0 +1,326 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays haptic patterns from one thread using a hashed timing wheel. The ticks are timed from a fixed origin, so
+ * the delays of one tick are not accumulated, and the thread parks until shortly before each tick and spins the
+ * rest of the time. All the steps due in the same tick are merged in one "activateMotor" message
+ * @author Rodrigo Monsalve Lagos
+ */
+class HapticScheduler implements Runnable {
+
+    static final long TICK_NANOS = TimeUnit.MICROSECONDS.toNanos(250);
+    static final private int WHEEL_SIZE = 1024;
+    static final private long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final OpenGlove glove;
+    private final ConcurrentLinkedQueue<HapticPlayback> incoming = new ConcurrentLinkedQueue<HapticPlayback>();
+    private final HapticPlayback[] wheel = new HapticPlayback[WHEEL_SIZE];
+    private final byte[] message = new byte[MessageGenerator.maxMessageLength(MotorCoalescer.PIN_COUNT)];
+    private final int[] tickValues = new int[MotorCoalescer.PIN_COUNT];
+    private final boolean[] tickUsed = new boolean[MotorCoalescer.PIN_COUNT];
+    private final int[] framePins = new int[MotorCoalescer.PIN_COUNT];
+    private final int[] frameValues = new int[MotorCoalescer.PIN_COUNT];
+    private final Thread thread;
+    private volatile boolean running = true;
+    private int frameCount;
+    private int scheduled;
+    private long origin;
+    private long tick;
+    private long earliest = Long.MAX_VALUE;
+    private boolean earliestValid = true;
+
+    /**
+     * Initialize the scheduler and start its thread
+     * @param glove Glove where the merged messages are sent
+     */
+    HapticScheduler(OpenGlove glove)
+    {
+        this.glove = glove;
+        thread = new Thread(this, "OpenGlove haptic scheduler");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Start playing a pattern
+     * @param pattern Pattern to play
+     * @return The handle of the playing pattern
+     */
+    HapticPlayback play(HapticPattern pattern)
+    {
+        HapticPlayback playback = new HapticPlayback(pattern);
+        playback.startNanos = System.nanoTime();
+        incoming.add(playback);
+        LockSupport.unpark(thread);
+        return playback;
+    }
+
+    /**
+     * Stop the scheduler and wait for its thread. The patterns that were playing are finished, and the motors
+     * keep their last intensities
+     */
+    void close()
+    {
+        running = false;
+        LockSupport.unpark(thread);
+
+        if (Thread.currentThread() == thread)
+        {
+            return;
+        }
+
+        try
+        {
+            thread.join();
+        }
+
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        origin = System.nanoTime();
+
+        while (running)
+        {
+            if (scheduled == 0 && incoming.isEmpty())
+            {
+                LockSupport.park(this);
+                origin = System.nanoTime();
+                tick = 0;
+                continue;
+            }
+
+            acceptIncoming();
+
+            if (scheduled == 0)
+            {
+                continue;
+            }
+
+            long target = Math.max(tick, earliestTick());
+            waitTick(origin + target * TICK_NANOS);
+
+            if (!running)
+            {
+                break;
+            }
+
+            if (!incoming.isEmpty())
+            {
+                continue;
+            }
+
+            tick = target;
+            long now = System.nanoTime();
+
+            while (origin + tick * TICK_NANOS <= now)
+            {
+                runTick();
+                tick++;
+            }
+        }
+
+        acceptIncoming();
+
+        for (int slot = 0; slot < WHEEL_SIZE; slot++)
+        {
+            for (HapticPlayback playback = wheel[slot]; playback != null; playback = playback.next)
+            {
+                playback.finish();
+            }
+
+            wheel[slot] = null;
+        }
+
+        scheduled = 0;
+    }
+
+    private long earliestTick()
+    {
+        if (!earliestValid)
+        {
+            earliest = Long.MAX_VALUE;
+
+            for (HapticPlayback slot : wheel)
+            {
+                for (HapticPlayback playback = slot; playback != null; playback = playback.next)
+                {
+                    earliest = Math.min(earliest, playback.deadlineTick);
+                }
+            }
+
+            earliestValid = true;
+        }
+
+        return earliest;
+    }
+
+    private void acceptIncoming()
+    {
+        HapticPlayback playback;
+
+        while ((playback = incoming.poll()) != null)
+        {
+            if (playback.pattern.getStepCount() == 0)
+            {
+                playback.finish();
+                continue;
+            }
+
+            schedule(playback);
+        }
+    }
+
+    private long stepTick(HapticPlayback playback)
+    {
+        long deadline = playback.startNanos + playback.pattern.time(playback.nextStep);
+        return (deadline - origin + TICK_NANOS - 1) / TICK_NANOS;
+    }
+
+    private void schedule(HapticPlayback playback)
+    {
+        playback.deadlineTick = Math.max(stepTick(playback), tick);
+        int slot = (int) (playback.deadlineTick & (WHEEL_SIZE - 1));
+        playback.next = wheel[slot];
+        wheel[slot] = playback;
+        scheduled++;
+        earliest = Math.min(earliest, playback.deadlineTick);
+    }
+
+    private void waitTick(long deadline)
+    {
+        long remaining = deadline - System.nanoTime();
+
+        while (remaining > SPIN_NANOS && incoming.isEmpty() && running)
+        {
+            LockSupport.parkNanos(this, remaining - SPIN_NANOS);
+            remaining = deadline - System.nanoTime();
+        }
+
+        while (remaining > 0 && incoming.isEmpty() && running)
+        {
+            Thread.yield();
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    private void runTick()
+    {
+        int slot = (int) (tick & (WHEEL_SIZE - 1));
+        HapticPlayback playback = wheel[slot];
+        HapticPlayback previous = null;
+
+        while (playback != null)
+        {
+            HapticPlayback following = playback.next;
+
+            if (playback.isCancelled() || playback.deadlineTick <= tick)
+            {
+                if (previous == null)
+                {
+                    wheel[slot] = following;
+                }
+
+                else
+                {
+                    previous.next = following;
+                }
+
+                playback.next = null;
+                scheduled--;
+                earliestValid = false;
+
+                if (!playback.isCancelled())
+                {
+                    fire(playback);
+                }
+            }
+
+            else
+            {
+                previous = playback;
+            }
+
+            playback = following;
+        }
+
+        sendFrame();
+    }
+
+    private void fire(HapticPlayback playback)
+    {
+        HapticPattern pattern = playback.pattern;
+
+        do
+        {
+            for (int i = pattern.start(playback.nextStep); i < pattern.end(playback.nextStep); i++)
+            {
+                int pin = pattern.pin(i);
+
+                if (!tickUsed[pin])
+                {
+                    tickUsed[pin] = true;
+                    framePins[frameCount++] = pin;
+                }
+
+                tickValues[pin] = pattern.value(i);
+            }
+
+            playback.nextStep++;
+        }
+        while (playback.nextStep < pattern.getStepCount() && stepTick(playback) <= tick);
+
+        if (playback.nextStep == pattern.getStepCount())
+        {
+            playback.finish();
+        }
+
+        else
+        {
+            schedule(playback);
+        }
+    }
+
+    private void sendFrame()
+    {
+        if (frameCount == 0)
+        {
+            return;
+        }
+
+        for (int i = 0; i < frameCount; i++)
+        {
+            frameValues[i] = tickValues[framePins[i]];
+            tickUsed[framePins[i]] = false;
+        }
+
+        int count = frameCount;
+        frameCount = 0;
+
+        try
+        {
+            glove.sendMotorFrame(framePins, frameValues, count, message);
+        }
+
+        catch (RuntimeException e)
+        {
+            // A failed step does not stop the other patterns
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds with a fixed number of buckets. The values below 16 have one bucket
+ * each and each power of two above is split in 16 buckets, so a percentile is reported with an error below
+ * 6.25%. Recording a value increments one counter without locks or allocations, and can be done from many threads
+ * @author Rodrigo Monsalve Lagos
+ */
+class LatencyHistogram {
+
+    static final private int SUB_BUCKET_BITS = 4;
+    static final private int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    static final private int MAX_EXPONENT = 34;
+    static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Add a latency to the histogram
+     * @param nanos Latency in nanoseconds. Values above 2^35 are counted in the last bucket
+     */
+    void record(long nanos)
+    {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(index(value));
+        long current = max.get();
+
+        while (value > current && !max.compareAndSet(current, value))
+        {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Add the counts of the buckets to an array
+     * @param target Array with a place for each bucket
+     * @return The number of values counted
+     */
+    long addCounts(long[] target)
+    {
+        long total = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            long count = counts.get(i);
+            target[i] += count;
+            total += count;
+        }
+
+        return total;
+    }
+
+    /**
+     * Returns the largest value recorded
+     */
+    long max()
+    {
+        return max.get();
+    }
+
+    /**
+     * Remove all the values
+     */
+    void reset()
+    {
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            counts.set(i, 0);
+        }
+
+        max.set(0);
+    }
+
+    /**
+     * Returns the value below which a percentage of the counted values are
+     * @param counts Counts of the buckets
+     * @param total Number of values counted
+     * @param max Largest value counted
+     * @param percentile Percentage between 0 and 100
+     * @return The highest value of the bucket of the percentile, or 0 if no values were counted
+     */
+    static long valueAt(long[] counts, long total, long max, double percentile)
+    {
+        if (total == 0)
+        {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            seen += counts[i];
+
+            if (seen >= rank)
+            {
+                return Math.min(highestValue(i), max);
+            }
+        }
+
+        return max;
+    }
+
+    static int index(long value)
+    {
+        if (value < SUB_BUCKET_COUNT)
+        {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+
+        if (exponent > MAX_EXPONENT)
+        {
+            return BUCKET_COUNT - 1;
+        }
+
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long highestValue(int index)
+    {
+        if (index < SUB_BUCKET_COUNT)
+        {
+            return index;
+        }
+
+        int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        long lowest = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << (exponent - SUB_BUCKET_BITS);
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+}
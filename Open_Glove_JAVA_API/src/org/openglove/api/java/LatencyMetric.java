@@ -0,0 +1,46 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+/**
+ * Latencies measured by GloveMetrics for each function number of the OpenGlove communication protocol
+ * @author Rodrigo Monsalve Lagos
+ */
+public enum LatencyMetric {
+
+    /**
+     * Time that an OpenGlove method waits to send a command. In the asynchronous write mode it is the time to queue the command
+     */
+    COMMAND,
+
+    /**
+     * Time that a command waits in the queue of the asynchronous write mode before it is written
+     */
+    QUEUE_WAIT,
+
+    /**
+     * Time that the transport takes to accept the bytes of a command
+     */
+    WRITE,
+
+    /**
+     * Time from sending a read request until its answer is received
+     */
+    ROUND_TRIP,
+
+    /**
+     * Time that a write waits for the serial link to transmit the bytes written before, when the flow control is
+     * enabled. Only the writes that waited are recorded
+     */
+    PACING,
+
+    /**
+     * Time from a failure of the transport until it is opened again and the state of the glove is sent again.
+     * It is recorded with the function number 0 and it is not sampled
+     */
+    RECOVERY
+
+}
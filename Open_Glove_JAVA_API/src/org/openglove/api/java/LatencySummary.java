@@ -0,0 +1,75 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+/**
+ * Percentiles of a latency measured by GloveMetrics, in nanoseconds
+ * @author Rodrigo Monsalve Lagos
+ */
+public class LatencySummary {
+
+    private final long count;
+    private final long p50;
+    private final long p99;
+    private final long p999;
+    private final long max;
+
+    LatencySummary(long[] counts, long count, long max)
+    {
+        this.count = count;
+        this.p50 = LatencyHistogram.valueAt(counts, count, max, 50);
+        this.p99 = LatencyHistogram.valueAt(counts, count, max, 99);
+        this.p999 = LatencyHistogram.valueAt(counts, count, max, 99.9);
+        this.max = max;
+    }
+
+    /**
+     * Returns the number of latencies measured
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Returns the median latency in nanoseconds
+     */
+    public long getP50Nanos()
+    {
+        return p50;
+    }
+
+    /**
+     * Returns the 99th percentile of the latency in nanoseconds
+     */
+    public long getP99Nanos()
+    {
+        return p99;
+    }
+
+    /**
+     * Returns the 99.9th percentile of the latency in nanoseconds
+     */
+    public long getP999Nanos()
+    {
+        return p999;
+    }
+
+    /**
+     * Returns the largest latency in nanoseconds
+     */
+    public long getMaxNanos()
+    {
+        return max;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "count=" + count + ", p50=" + p50 + "ns, p99=" + p99 + "ns, p999=" + p999 + "ns, max=" + max + "ns";
+    }
+
+}
@@ -0,0 +1,349 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Split the bytes received from a transport in lines. The received bytes are kept in a ring buffer between
+ * calls, so the bytes read ahead of a line are not lost, and the lines are framed without allocating objects
+ * @author Rodrigo Monsalve Lagos
+ */
+class LineReader {
+
+    static final private int RING_SIZE = 4096;
+    static final private int CHUNK_SIZE = 256;
+    static final private byte NEW_LINE = '\n';
+    static final private byte CARRIAGE_RETURN = '\r';
+
+    private final Transport transport;
+    private final GloveMetrics metrics;
+    private final byte[] ring = new byte[RING_SIZE];
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private final byte[] line = new byte[RING_SIZE];
+    private long head;
+    private long tail;
+    private long scanned;
+    private int lineLength;
+    private boolean timedOut;
+    private boolean failed;
+    private volatile SessionRecorder recorder;
+
+    /**
+     * Initialize a reader for the transport
+     * @param transport Opened transport to read from
+     * @param metrics Metrics where the received bytes are counted
+     */
+    LineReader(Transport transport, GloveMetrics metrics)
+    {
+        this.transport = transport;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Read the input until a next line character and copy the line in the line buffer
+     * @return The length of the line without the next line character, or -1 if the read timeout expired or the
+     * transport failed before a complete line was received
+     */
+    int nextLine()
+    {
+        timedOut = false;
+        failed = false;
+
+        while (true)
+        {
+            int length = pollLine();
+
+            if (length >= 0)
+            {
+                return length;
+            }
+
+            int read = fill();
+
+            if (read <= 0)
+            {
+                timedOut = read == 0;
+                failed = read < 0;
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Copy the next complete line already received in the line buffer, without reading the transport
+     * @return The length of the line without the next line character, or -1 if there is no complete line
+     */
+    int pollLine()
+    {
+        for (; scanned < tail; scanned++)
+        {
+            if (ring[(int) (scanned & (RING_SIZE - 1))] == NEW_LINE)
+            {
+                takeLine(scanned);
+                return lineLength;
+            }
+        }
+
+        if (tail - head == RING_SIZE)
+        {
+            takeLine(tail);
+            return lineLength;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Read the bytes available in the transport without waiting
+     * @return The number of bytes read
+     */
+    int fillAvailable()
+    {
+        int total = 0;
+        failed = false;
+
+        while (tail - head < RING_SIZE && transport.bytesAvailable() > 0)
+        {
+            int read = fill();
+
+            if (read <= 0)
+            {
+                failed = read < 0;
+                break;
+            }
+
+            total += read;
+        }
+
+        return total;
+    }
+
+    /**
+     * Set the recorder of the received lines
+     * @param recorder The recorder, or null to stop recording
+     */
+    void setRecorder(SessionRecorder recorder)
+    {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Returns true if the read timeout expired in the last call of nextLine
+     */
+    boolean timedOut()
+    {
+        return timedOut;
+    }
+
+    /**
+     * Returns true if the transport failed in the last call of nextLine or fillAvailable
+     */
+    boolean failed()
+    {
+        return failed;
+    }
+
+    /**
+     * Returns the buffer that holds the last line returned by nextLine
+     */
+    byte[] line()
+    {
+        return line;
+    }
+
+    /**
+     * Read the input until a next line character
+     * @return A string without the next line character, or an empty string if the read timeout expired
+     */
+    String readLine()
+    {
+        int length = nextLine();
+        return length < 0 ? "" : new String(line, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Read the input until a next line character and parse the line like a decimal number
+     * @return The number in the line, or Communication.NO_VALUE if the timeout expired or the line is not a number
+     */
+    int readInt()
+    {
+        int length = nextLine();
+        return length < 0 ? Communication.NO_VALUE : parseInt(line, 0, length);
+    }
+
+    /**
+     * Read the input until a next line character and parse the line like a list of numbers separated by commas
+     * @param values Array where the numbers are stored. The places without a number are set to Communication.NO_VALUE
+     * @param count Number of values expected
+     * @return The number of values parsed, or -1 if the timeout expired
+     */
+    int readInts(int[] values, int count)
+    {
+        int length = nextLine();
+
+        if (length < 0)
+        {
+            for (int i = 0; i < count; i++)
+            {
+                values[i] = Communication.NO_VALUE;
+            }
+
+            return -1;
+        }
+
+        return parseInts(line, 0, length, values, count);
+    }
+
+    /**
+     * Discard all the received bytes
+     */
+    void clear()
+    {
+        head = tail;
+        scanned = tail;
+        lineLength = 0;
+    }
+
+    /**
+     * Parse a decimal number, ignoring the spaces around it
+     * @return The number, or Communication.NO_VALUE if the bytes are not a number
+     */
+    static int parseInt(byte[] buffer, int offset, int length)
+    {
+        int end = offset + length;
+
+        while (offset < end && buffer[offset] <= ' ')
+        {
+            offset++;
+        }
+
+        while (end > offset && buffer[end - 1] <= ' ')
+        {
+            end--;
+        }
+
+        boolean negative = offset < end && buffer[offset] == '-';
+
+        if (negative)
+        {
+            offset++;
+        }
+
+        if (offset == end || end - offset > 10)
+        {
+            return Communication.NO_VALUE;
+        }
+
+        long value = 0;
+
+        for (int i = offset; i < end; i++)
+        {
+            int digit = buffer[i] - '0';
+
+            if (digit < 0 || digit > 9)
+            {
+                return Communication.NO_VALUE;
+            }
+
+            value = value * 10 + digit;
+        }
+
+        value = negative ? -value : value;
+
+        if (value > Integer.MAX_VALUE || value <= Integer.MIN_VALUE)
+        {
+            return Communication.NO_VALUE;
+        }
+
+        return (int) value;
+    }
+
+    /**
+     * Parse a list of decimal numbers separated by commas
+     * @return The number of values parsed
+     */
+    static int parseInts(byte[] buffer, int offset, int length, int[] values, int count)
+    {
+        int end = offset + length;
+        int parsed = 0;
+        int start = offset;
+
+        for (int i = 0; i < count; i++)
+        {
+            if (start > end)
+            {
+                values[i] = Communication.NO_VALUE;
+                continue;
+            }
+
+            int fieldEnd = start;
+
+            while (fieldEnd < end && buffer[fieldEnd] != ',')
+            {
+                fieldEnd++;
+            }
+
+            values[i] = parseInt(buffer, start, fieldEnd - start);
+
+            if (values[i] != Communication.NO_VALUE)
+            {
+                parsed++;
+            }
+
+            start = fieldEnd + 1;
+        }
+
+        return parsed;
+    }
+
+    private void takeLine(long end)
+    {
+        int length = 0;
+
+        for (long i = head; i < end; i++)
+        {
+            line[length++] = ring[(int) (i & (RING_SIZE - 1))];
+        }
+
+        if (length > 0 && line[length - 1] == CARRIAGE_RETURN)
+        {
+            length--;
+        }
+
+        head = end < tail ? end + 1 : end;
+        scanned = head;
+        lineLength = length;
+        SessionRecorder lineRecorder = recorder;
+
+        if (lineRecorder != null)
+        {
+            lineRecorder.record(SessionRecorder.INBOUND, line, 0, length);
+        }
+    }
+
+    private int fill()
+    {
+        int free = (int) (RING_SIZE - (tail - head));
+        int available = transport.bytesAvailable();
+        int request = Math.min(Math.min(Math.max(available, 1), CHUNK_SIZE), free);
+        int read = transport.read(chunk, request);
+
+        for (int i = 0; i < read; i++)
+        {
+            ring[(int) ((tail + i) & (RING_SIZE - 1))] = chunk[i];
+        }
+
+        if (read > 0)
+        {
+            tail += read;
+            metrics.read(read);
+        }
+
+        return read;
+    }
+
+}
@@ -5,26 +5,85 @@
  */
 package org.openglove.api.java;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.List;
 
 /**
- * Provide methods to generate communication message with the glove, following the OpenGlove communication protocol
+ * Provide methods to generate communication message with the glove, following the OpenGlove communication protocol.
+ * The String methods are wrappers over the encode methods, which write the message bytes directly into a
+ * buffer supplied by the caller and do not allocate objects
  * @author Rodrigo Monsalve Lagos
  */
 public class MessageGenerator {
-    
-    static final private String SEPARATOR = ",";
-    static final private String TERMINAL = "s";
-    static final private String INITIALIZE_MOTOR_FUNCTION_NUMBER = "1";
-    static final private String ACTIVATE_MOTOR_FUNCTION_NUMBER = "2";
-    static final private String ANALOG_READ_FUNCTION_NUMBER = "3";
-    static final private String DIGITAL_READ_FUNCTION_NUMBER = "4";
-    static final private String INITIALIZE_DIGITAL_INPUT_FUNCTION_NUMBER = "5";
-    static final private String PIN_MODE_FUNCTION_NUMBER = "6";
-    static final private String DIGITAL_WRITE_FUNCTION_NUMBER = "7";
-    static final private String ANALOG_WRITE_FUNCTION_NUMBER = "8";
-    static final private String INITIALIZE_MOTOR_TIME_TEST_FUNCTION_NUMBER = "9";
+
+    static final byte SEPARATOR = ',';
+    static final byte TERMINAL = 's';
+    static final int INITIALIZE_MOTOR_FUNCTION_NUMBER = 1;
+    static final int ACTIVATE_MOTOR_FUNCTION_NUMBER = 2;
+    static final int ANALOG_READ_FUNCTION_NUMBER = 3;
+    static final int DIGITAL_READ_FUNCTION_NUMBER = 4;
+    static final int INITIALIZE_DIGITAL_INPUT_FUNCTION_NUMBER = 5;
+    static final int PIN_MODE_FUNCTION_NUMBER = 6;
+    static final int DIGITAL_WRITE_FUNCTION_NUMBER = 7;
+    static final int ANALOG_WRITE_FUNCTION_NUMBER = 8;
+    static final int INITIALIZE_MOTOR_TIME_TEST_FUNCTION_NUMBER = 9;
+    static final int ANALOG_READ_MULTIPLE_FUNCTION_NUMBER = 10;
+    static final int DIGITAL_READ_MULTIPLE_FUNCTION_NUMBER = 11;
+    static final int START_STREAM_FUNCTION_NUMBER = 12;
+    static final int STOP_STREAM_FUNCTION_NUMBER = 13;
+    static final int PROTOCOL_FUNCTION_NUMBER = 14;
+
+    /**
+     * Maximum number of characters used by a number in a message
+     */
+    static final public int MAX_FIELD_LENGTH = 11;
+
+    /**
+     * Intensity value to activate a motor in digital mode with "HIGH"
+     */
+    static final public int MOTOR_HIGH = -1;
+
+    /**
+     * Intensity value to activate a motor in digital mode with "LOW"
+     */
+    static final public int MOTOR_LOW = -2;
+
+    /**
+     * Mode value to initialize a pin in "INPUT" mode
+     */
+    static final public int MODE_INPUT = 1;
+
+    /**
+     * Mode value to initialize a pin in "OUTPUT" mode
+     */
+    static final public int MODE_OUTPUT = 2;
+
+    /**
+     * Value to write "LOW" in a digital pin
+     */
+    static final public int DIGITAL_LOW = 0;
+
+    /**
+     * Value to write "HIGH" in a digital pin
+     */
+    static final public int DIGITAL_HIGH = 1;
+
+    /**
+     * Scratch arrays of the ByteBuffer methods, one for each thread, so one generator can be shared by threads
+     */
+    static final private ThreadLocal<byte[]> SCRATCH = new ThreadLocal<byte[]>();
+
+    /**
+     * Returns the maximum length in bytes of a message with the specified number of pins
+     * @param pinCount Number of pins in the message
+     * @return The size that a buffer must have to hold any message with pinCount pins
+     */
+    public static int maxMessageLength(int pinCount)
+    {
+        return 1 + (2 + pinCount * 2) * (MAX_FIELD_LENGTH + 1) + 1;
+    }
 
     /**
      * Generate a message to initialize pins like motors in the control software
@@ -37,18 +96,11 @@ public class MessageGenerator {
         {
             throw new IllegalArgumentException("List must have at least one element");
         }
-        StringBuilder initializeMessage = new StringBuilder();
-
-        initializeMessage.append(INITIALIZE_MOTOR_FUNCTION_NUMBER + SEPARATOR + pins.size());
-
-        for(int pin : pins)
-        {
-            String message = SEPARATOR + pin;
-            initializeMessage.append(message);
-        }
 
-        initializeMessage.append(TERMINAL);
-        return initializeMessage.toString();
+        int[] pinArray = toArray(pins);
+        byte[] buffer = new byte[maxMessageLength(pinArray.length)];
+        int length = encodeInitializeMotor(pinArray, pinArray.length, buffer, 0);
+        return toMessage(buffer, length);
 
     }
 
@@ -66,58 +118,17 @@ public class MessageGenerator {
             throw new IllegalArgumentException("Lists length must be equal");
         }
 
-        StringBuilder activateMessage = new StringBuilder();
+        int[] pinArray = toArray(pins);
+        int[] valueArray = new int[values.size()];
 
-        activateMessage.append(ACTIVATE_MOTOR_FUNCTION_NUMBER + SEPARATOR + pins.size());
-
-        for (int i = 0; i < pins.size(); i++)
+        for (int i = 0; i < valueArray.length; i++)
         {
-            String value = "";
-
-            if (values.get(i).equals("HIGH"))
-            {
-                value = "-1";
-            }
-
-            else if (values.get(i).equals("LOW"))
-            {
-                value = "-2";
-            }
-
-            else
-            {
-                try
-                {
-
-                    int valueAux = Integer.parseInt(values.get(i));
-                    
-                    if ((valueAux < 256) && (valueAux >= 0))
-                    {
-                        value = Integer.toString(valueAux);
-                    }
-
-                    else
-                    {
-                        throw new IllegalArgumentException("Values must be between 0 and 255");
-                    }
-
-                }
-
-                catch (NumberFormatException e)
-                {
-                    
-                    throw new IllegalArgumentException("Invalid value " + values.get(i));
-                }
-
-            }
-
-            String message = SEPARATOR + pins.get(i) + SEPARATOR + value;
-            activateMessage.append(message);
+            valueArray[i] = motorValue(values.get(i));
         }
 
-        activateMessage.append(TERMINAL);
-
-        return activateMessage.toString();
+        byte[] buffer = new byte[maxMessageLength(pinArray.length)];
+        int length = encodeActivateMotor(pinArray, valueArray, pinArray.length, buffer, 0);
+        return toMessage(buffer, length);
 
     }
 
@@ -128,8 +139,9 @@ public class MessageGenerator {
      */
     public String analogRead(int pin)
     {
-        String message = ANALOG_READ_FUNCTION_NUMBER + SEPARATOR + pin + TERMINAL;
-        return message;
+        byte[] buffer = new byte[maxMessageLength(0)];
+        int length = encodeAnalogRead(pin, buffer, 0);
+        return toMessage(buffer, length);
     }
 
     /**
@@ -139,8 +151,60 @@ public class MessageGenerator {
      */
     public String digitalRead(int pin)
     {
-        String message = DIGITAL_READ_FUNCTION_NUMBER + SEPARATOR + pin + TERMINAL;
-        return message;
+        byte[] buffer = new byte[maxMessageLength(0)];
+        int length = encodeDigitalRead(pin, buffer, 0);
+        return toMessage(buffer, length);
+    }
+
+    /**
+     * Generate a message to read from multiple analog pins in one request. Requires a firmware with the protocol extension for multiple reads
+     * @param pins List with the numbers of the pins to be readed
+     * @return A string with the "analogRead" multiple format specified in the OpenGlove communication protocol
+     */
+    public String analogRead(List<Integer> pins)
+    {
+        int[] pinArray = toArray(pins);
+        byte[] buffer = new byte[maxMessageLength(pinArray.length)];
+        int length = encodeAnalogRead(pinArray, pinArray.length, buffer, 0);
+        return toMessage(buffer, length);
+    }
+
+    /**
+     * Generate a message to read from multiple digital pins in one request. Requires a firmware with the protocol extension for multiple reads
+     * @param pins List with the numbers of the pins to be readed
+     * @return A string with the "digitalRead" multiple format specified in the OpenGlove communication protocol
+     */
+    public String digitalRead(List<Integer> pins)
+    {
+        int[] pinArray = toArray(pins);
+        byte[] buffer = new byte[maxMessageLength(pinArray.length)];
+        int length = encodeDigitalRead(pinArray, pinArray.length, buffer, 0);
+        return toMessage(buffer, length);
+    }
+
+    /**
+     * Generate a message to start streaming the values of analog pins. Requires a firmware with the protocol extension for streaming
+     * @param rateHz Number of samples per second sent by the glove
+     * @param pins List with the numbers of the analog pins to be streamed
+     * @return A string with the "startStream" format specified in the OpenGlove communication protocol
+     */
+    public String startStream(int rateHz, List<Integer> pins)
+    {
+        int[] pinArray = toArray(pins);
+        byte[] buffer = new byte[maxMessageLength(pinArray.length + 1)];
+        int length = encodeStartStream(rateHz, pinArray, pinArray.length, buffer, 0);
+        return toMessage(buffer, length);
+    }
+
+    /**
+     * Generate a message to stop streaming the values of pins
+     * @return A string with the "stopStream" format specified in the OpenGlove communication protocol
+     */
+    public String stopStream()
+    {
+        byte[] buffer = new byte[maxMessageLength(0)];
+        int length = encodeStopStream(buffer, 0);
+        return toMessage(buffer, length);
     }
 
     /**
@@ -151,188 +215,814 @@ public class MessageGenerator {
      */
     public String pinMode(int pin, String mode)
     {
-        String modeProtocol = "";
+        byte[] buffer = new byte[maxMessageLength(1)];
+        int length = encodePinMode(pin, modeValue(mode), buffer, 0);
+        return toMessage(buffer, length);
+    }
 
-        if (mode.equals("INPUT"))
+    /**
+     * Generate a message to initialize a pin in input or output mode. Each pin is initialized with the mode in the same index
+     * @param pins List with the numbers of the pins to be initialized
+     * @param modes List with the modes to initialize the pins, it can be "INPUT" or "OUTPUT"
+     * @return A string with the "pinMode" format specified in the OpenGlove communication protocol
+     */
+    public String pinMode(List<Integer> pins, List<String> modes)
+    {
+        if (pins.size() != modes.size())
         {
-            modeProtocol = "1";
+            throw new IllegalArgumentException("Lists length must be equal");
         }
 
-        else if (mode.equals("OUTPUT"))
+        int[] pinArray = toArray(pins);
+        int[] modeArray = new int[modes.size()];
+
+        for (int i = 0; i < modeArray.length; i++)
         {
-            modeProtocol = "2";
+            modeArray[i] = modeValue(modes.get(i));
         }
 
-        else
+        byte[] buffer = new byte[maxMessageLength(pinArray.length)];
+        int length = encodePinMode(pinArray, modeArray, pinArray.length, buffer, 0);
+        return toMessage(buffer, length);
+
+}
+
+    /**
+     * Generate a message to write a value in a digital pin
+     * @param pin Number of the pin to be writed
+     * @param value Value to be write in the pin, it can be "HIGH" or "LOW"
+     * @return A string with the "digitalWrite" format specified in the OpenGlove communication protocol
+     */
+    public String digitalWrite(int pin, String value)
+    {
+        byte[] buffer = new byte[maxMessageLength(1)];
+        int length = encodeDigitalWrite(pin, digitalValue(value), buffer, 0);
+        return toMessage(buffer, length);
+    }
+
+    /**
+     * Generate a message to write a value in a digital pin. Each pin is write with the value in the same index
+     * @param pins List with the numbers of the pins to be writed
+     * @param values Lists with the values to be write in the pins, it can be "HIGH" or "LOW"
+     * @return A string with the "digitalWrite" format specified in the OpenGlove communication protocol
+     */
+    public String digitalWrite(List<Integer> pins, List<String> values)
+    {
+        if (pins.size() != values.size())
         {
-            throw new IllegalArgumentException(mode + " is not a valid mode");
+            throw new IllegalArgumentException("Lists length must be equal");
         }
 
-        String message = PIN_MODE_FUNCTION_NUMBER + SEPARATOR + "1" + SEPARATOR + pin + SEPARATOR 
-            + modeProtocol + TERMINAL;
-        return message;
+        int[] pinArray = toArray(pins);
+        int[] valueArray = new int[values.size()];
+
+        for (int i = 0; i < valueArray.length; i++)
+        {
+            valueArray[i] = digitalValue(values.get(i));
+        }
+
+        byte[] buffer = new byte[maxMessageLength(pinArray.length)];
+        int length = encodeDigitalWrite(pinArray, valueArray, pinArray.length, buffer, 0);
+        return toMessage(buffer, length);
     }
 
     /**
-     * Generate a message to initialize a pin in input or output mode. Each pin is initialized with the mode in the same index
-     * @param pins List with the numbers of the pins to be initialized
-     * @param modes List with the modes to initialize the pins, it can be "INPUT" or "OUTPUT"
-     * @return A string with the "pinMode" format specified in the OpenGlove communication protocol
+     * Generate a message to write a PWM value in a digital pin
+     * @param pin Number of the pin to be writed
+     * @param value Value to be write in the pin, it can be from 0 to 255
+     * @return A string with the "analogWrite" format specified in the OpenGlove communication protocol
      */
-    public String pinMode(List<Integer> pins, List<String> modes)
+    public String analogWrite(int pin, int value)
     {
-        if (pins.size() != modes.size())
+        byte[] buffer = new byte[maxMessageLength(1)];
+        int length = encodeAnalogWrite(pin, value, buffer, 0);
+        return toMessage(buffer, length);
+    }
+
+    /**
+     * Generate a message to write a PWM value in a digital pin.  Each pin is write with the value in the same index
+     * @param pins List with the numbers of the pins to be writed
+     * @param values List with the values to be write in the pins, it can be from 0 to 255
+     * @return A string with the "analogWrite" format specified in the OpenGlove communication protocol
+     */
+    public String analogWrite(List<Integer> pins, List<Integer> values)
+    {
+        if (pins.size() != values.size())
         {
             throw new IllegalArgumentException("Lists length must be equal");
         }
 
-        StringBuilder pinModeMessage = new StringBuilder();
-        pinModeMessage.append(PIN_MODE_FUNCTION_NUMBER + SEPARATOR + pins.size());
+        int[] pinArray = toArray(pins);
+        int[] valueArray = toArray(values);
+        byte[] buffer = new byte[maxMessageLength(pinArray.length)];
+        int length = encodeAnalogWrite(pinArray, valueArray, pinArray.length, buffer, 0);
+        return toMessage(buffer, length);
+
+    }
+
+    /**
+     * Write an "initializeMotor" message in the buffer
+     * @param pins Array of pins that are initialized
+     * @param count Number of pins to take from the array
+     * @param buffer Buffer where the message is written
+     * @param offset Position of the buffer where the message starts
+     * @return The number of bytes written in the buffer
+     */
+    public int encodeInitializeMotor(int[] pins, int count, byte[] buffer, int offset)
+    {
+        checkCount(pins, count);
+        int position = putHeader(INITIALIZE_MOTOR_FUNCTION_NUMBER, count, buffer, offset);
 
-        for (int i = 0; i < pins.size(); i++)
+        for (int i = 0; i < count; i++)
         {
-            String modeProtocol = "";
+            buffer[position++] = SEPARATOR;
+            position = putInt(pins[i], buffer, position);
+        }
 
-            if (modes.get(i).equals("INPUT"))
-            {
-                modeProtocol = "1";
-            }
+        buffer[position++] = TERMINAL;
+        return position - offset;
+    }
 
-            else if (modes.get(i).equals("OUTPUT"))
-            {
-                modeProtocol = "2";
-            }
+    /**
+     * Write an "initializeMotor" message in the buffer, starting at its current position
+     * @param pins Array of pins that are initialized
+     * @param count Number of pins to take from the array
+     * @param buffer Buffer where the message is written. Its position is advanced by the message length
+     * @return The number of bytes written in the buffer
+     */
+    public int encodeInitializeMotor(int[] pins, int count, ByteBuffer buffer)
+    {
+        byte[] target = target(buffer, count);
+        int length = encodeInitializeMotor(pins, count, target, targetOffset(buffer, target));
+        return complete(buffer, target, length);
+    }
+
+    /**
+     * Write an "activateMotor" message in the buffer. Each motor is activated with the value in the same index
+     * @param pins Array of pins where are connected the motors
+     * @param values Array with the intensities, between 0 and 255, or MOTOR_HIGH or MOTOR_LOW in digital mode
+     * @param count Number of pins to take from the arrays
+     * @param buffer Buffer where the message is written
+     * @param offset Position of the buffer where the message starts
+     * @return The number of bytes written in the buffer
+     */
+    public int encodeActivateMotor(int[] pins, int[] values, int count, byte[] buffer, int offset)
+    {
+        checkCount(pins, values, count);
+        int position = putHeader(ACTIVATE_MOTOR_FUNCTION_NUMBER, count, buffer, offset);
 
-            else
+        for (int i = 0; i < count; i++)
+        {
+            int value = values[i];
+
+            if ((value > 255 || value < 0) && value != MOTOR_HIGH && value != MOTOR_LOW)
             {
-                throw new IllegalArgumentException(modes.get(i) + " is not a valid mode");
+                throw new IllegalArgumentException("Values must be between 0 and 255");
             }
 
-            String message = SEPARATOR + pins.get(i) + SEPARATOR + modeProtocol;
-            pinModeMessage.append(message);
+            buffer[position++] = SEPARATOR;
+            position = putInt(pins[i], buffer, position);
+            buffer[position++] = SEPARATOR;
+            position = putInt(value, buffer, position);
+        }
+
+        buffer[position++] = TERMINAL;
+        return position - offset;
+    }
+
+    /**
+     * Write an "activateMotor" message in the buffer, starting at its current position
+     * @param pins Array of pins where are connected the motors
+     * @param values Array with the intensities, between 0 and 255, or MOTOR_HIGH or MOTOR_LOW in digital mode
+     * @param count Number of pins to take from the arrays
+     * @param buffer Buffer where the message is written. Its position is advanced by the message length
+     * @return The number of bytes written in the buffer
+     */
+    public int encodeActivateMotor(int[] pins, int[] values, int count, ByteBuffer buffer)
+    {
+        byte[] target = target(buffer, count);
+        int length = encodeActivateMotor(pins, values, count, target, targetOffset(buffer, target));
+        return complete(buffer, target, length);
+    }
+
+    /**
+     * Write an "analogRead" message in the buffer
+     * @param pin Number of the pin to be readed
+     * @param buffer Buffer where the message is written
+     * @param offset Position of the buffer where the message starts
+     * @return The number of bytes written in the buffer
+     */
+    public int encodeAnalogRead(int pin, byte[] buffer, int offset)
+    {
+        return encodeRead(ANALOG_READ_FUNCTION_NUMBER, pin, buffer, offset);
+    }
+
+    /**
+     * Write an "analogRead" message in the buffer, starting at its current position
+     * @param pin Number of the pin to be readed
+     * @param buffer Buffer where the message is written. Its position is advanced by the message length
+     * @return The number of bytes written in the buffer
+     */
+    public int encodeAnalogRead(int pin, ByteBuffer buffer)
+    {
+        byte[] target = target(buffer, 0);
+        int length = encodeAnalogRead(pin, target, targetOffset(buffer, target));
+        return complete(buffer, target, length);
+    }
+
+    /**
+     * Write a "digitalRead" message in the buffer
+     * @param pin Number of the pin to be readed
+     * @param buffer Buffer where the message is written
+     * @param offset Position of the buffer where the message starts
+     * @return The number of bytes written in the buffer
+     */
+    public int encodeDigitalRead(int pin, byte[] buffer, int offset)
+    {
+        return encodeRead(DIGITAL_READ_FUNCTION_NUMBER, pin, buffer, offset);
+    }
+
+    /**
+     * Write a "digitalRead" message in the buffer, starting at its current position
+     * @param pin Number of the pin to be readed
+     * @param buffer Buffer where the message is written. Its position is advanced by the message length
+     * @return The number of bytes written in the buffer
+     */
+    public int encodeDigitalRead(int pin, ByteBuffer buffer)
+    {
+        byte[] target = target(buffer, 0);
+        int length = encodeDigitalRead(pin, target, targetOffset(buffer, target));
+        return complete(buffer, target, length);
+    }
+
+    /**
+     * Write an "analogRead" message for multiple pins in the buffer. The glove answers with one line with the values separated by commas
+     * @param pins Array with the numbers of the pins to be readed
+     * @param count Number of pins to take from the array
+     * @param buffer Buffer where the message is written
+     * @param offset Position of the buffer where the message starts
+     * @return The number of bytes written in the buffer
+     */
+    public int encodeAnalogRead(int[] pins, int count, byte[] buffer, int offset)
+    {
+        return encodeReadMultiple(ANALOG_READ_MULTIPLE_FUNCTION_NUMBER, pins, count, buffer, offset);
+    }
+
+    /**
+     * Write an "analogRead" message for multiple pins in the buffer, starting at its current position
+     * @param pins Array with the numbers of the pins to be readed
+     * @param count Number of pins to take from the array
+     * @param buffer Buffer where the message is written. Its position is advanced by the message length
+     * @return The number of bytes written in the buffer
+     */
+    public int encodeAnalogRead(int[] pins, int count, ByteBuffer buffer)
+    {
+        byte[] target = target(buffer, count);
+        int length = encodeAnalogRead(pins, count, target, targetOffset(buffer, target));
+        return complete(buffer, target, length);
+    }
+
+    /**
+     * Write a "digitalRead" message for multiple pins in the buffer. The glove answers with one line with the values separated by commas
+     * @param pins Array with the numbers of the pins to be readed
+     * @param count Number of pins to take from the array
+     * @param buffer Buffer where the message is written
+     * @param offset Position of the buffer where the message starts
+     * @return The number of bytes written in the buffer
+     */
+    public int encodeDigitalRead(int[] pins, int count, byte[] buffer, int offset)
+    {
+        return encodeReadMultiple(DIGITAL_READ_MULTIPLE_FUNCTION_NUMBER, pins, count, buffer, offset);
+    }
+
+    /**
+     * Write a "digitalRead" message for multiple pins in the buffer, starting at its current position
+     * @param pins Array with the numbers of the pins to be readed
+     * @param count Number of pins to take from the array
+     * @param buffer Buffer where the message is written. Its position is advanced by the message length
+     * @return The number of bytes written in the buffer
+     */
+    public int encodeDigitalRead(int[] pins, int count, ByteBuffer buffer)
+    {
+        byte[] target = target(buffer, count);
+        int length = encodeDigitalRead(pins, count, target, targetOffset(buffer, target));
+        return complete(buffer, target, length);
+    }
+
+    /**
+     * Write a "startStream" message in the buffer. The glove answers with one line each sample period, with the
+     * sample mark and the values of the pins separated by commas
+     * @param rateHz Number of samples per second sent by the glove
+     * @param pins Array with the numbers of the analog pins to be streamed
+     * @param count Number of pins to take from the array
+     * @param buffer Buffer where the message is written
+     * @param offset Position of the buffer where the message starts
+     * @return The number of bytes written in the buffer
+     */
+    public int encodeStartStream(int rateHz, int[] pins, int count, byte[] buffer, int offset)
+    {
+        if (rateHz < 1)
+        {
+            throw new IllegalArgumentException("Rate must be at least 1");
+        }
+
+        if (count == 0)
+        {
+            throw new IllegalArgumentException("Array must have at least one element");
+        }
+
+        checkCount(pins, count);
+        int position = putHeader(START_STREAM_FUNCTION_NUMBER, rateHz, buffer, offset);
+        buffer[position++] = SEPARATOR;
+        position = putInt(count, buffer, position);
 
+        for (int i = 0; i < count; i++)
+        {
+            buffer[position++] = SEPARATOR;
+            position = putInt(pins[i], buffer, position);
         }
 
-        pinModeMessage.append(TERMINAL);
-        return pinModeMessage.toString();
+        buffer[position++] = TERMINAL;
+        return position - offset;
+    }
 
-}
+    /**
+     * Write a "stopStream" message in the buffer
+     * @param buffer Buffer where the message is written
+     * @param offset Position of the buffer where the message starts
+     * @return The number of bytes written in the buffer
+     */
+    public int encodeStopStream(byte[] buffer, int offset)
+    {
+        int position = putInt(STOP_STREAM_FUNCTION_NUMBER, buffer, offset);
+        buffer[position++] = TERMINAL;
+        return position - offset;
+    }
 
     /**
-     * Generate a message to write a value in a digital pin
+     * Write a "protocol" message in the buffer, that asks the glove to use a version of the protocol. The glove
+     * answers the version it will use, and a firmware without versions does not answer
+     * @param version Version requested, 1 for the binary frames
+     * @param buffer Buffer where the message is written
+     * @param offset Position of the buffer where the message starts
+     * @return The number of bytes written in the buffer
+     */
+    public int encodeProtocol(int version, byte[] buffer, int offset)
+    {
+        int position = putHeader(PROTOCOL_FUNCTION_NUMBER, version, buffer, offset);
+        buffer[position++] = TERMINAL;
+        return position - offset;
+    }
+
+    /**
+     * Write a "pinMode" message for one pin in the buffer
+     * @param pin Number of the pin to be initialized
+     * @param mode MODE_INPUT or MODE_OUTPUT
+     * @param buffer Buffer where the message is written
+     * @param offset Position of the buffer where the message starts
+     * @return The number of bytes written in the buffer
+     */
+    public int encodePinMode(int pin, int mode, byte[] buffer, int offset)
+    {
+        checkMode(mode);
+        return encodePair(PIN_MODE_FUNCTION_NUMBER, pin, mode, buffer, offset);
+    }
+
+    /**
+     * Write a "pinMode" message in the buffer. Each pin is initialized with the mode in the same index
+     * @param pins Array with the numbers of the pins to be initialized
+     * @param modes Array with MODE_INPUT or MODE_OUTPUT for each pin
+     * @param count Number of pins to take from the arrays
+     * @param buffer Buffer where the message is written
+     * @param offset Position of the buffer where the message starts
+     * @return The number of bytes written in the buffer
+     */
+    public int encodePinMode(int[] pins, int[] modes, int count, byte[] buffer, int offset)
+    {
+        checkCount(pins, modes, count);
+
+        for (int i = 0; i < count; i++)
+        {
+            checkMode(modes[i]);
+        }
+
+        return encodePairs(PIN_MODE_FUNCTION_NUMBER, pins, modes, count, buffer, offset);
+    }
+
+    /**
+     * Write a "pinMode" message in the buffer, starting at its current position
+     * @param pins Array with the numbers of the pins to be initialized
+     * @param modes Array with MODE_INPUT or MODE_OUTPUT for each pin
+     * @param count Number of pins to take from the arrays
+     * @param buffer Buffer where the message is written. Its position is advanced by the message length
+     * @return The number of bytes written in the buffer
+     */
+    public int encodePinMode(int[] pins, int[] modes, int count, ByteBuffer buffer)
+    {
+        byte[] target = target(buffer, count);
+        int length = encodePinMode(pins, modes, count, target, targetOffset(buffer, target));
+        return complete(buffer, target, length);
+    }
+
+    /**
+     * Write a "digitalWrite" message for one pin in the buffer
      * @param pin Number of the pin to be writed
-     * @param value Value to be write in the pin, it can be "HIGH" or "LOW"
-     * @return A string with the "digitalWrite" format specified in the OpenGlove communication protocol
+     * @param value DIGITAL_HIGH or DIGITAL_LOW
+     * @param buffer Buffer where the message is written
+     * @param offset Position of the buffer where the message starts
+     * @return The number of bytes written in the buffer
      */
-    public String digitalWrite(int pin, String value)
+    public int encodeDigitalWrite(int pin, int value, byte[] buffer, int offset)
+    {
+        checkDigital(value);
+        return encodePair(DIGITAL_WRITE_FUNCTION_NUMBER, pin, value, buffer, offset);
+    }
+
+    /**
+     * Write a "digitalWrite" message in the buffer. Each pin is write with the value in the same index
+     * @param pins Array with the numbers of the pins to be writed
+     * @param values Array with DIGITAL_HIGH or DIGITAL_LOW for each pin
+     * @param count Number of pins to take from the arrays
+     * @param buffer Buffer where the message is written
+     * @param offset Position of the buffer where the message starts
+     * @return The number of bytes written in the buffer
+     */
+    public int encodeDigitalWrite(int[] pins, int[] values, int count, byte[] buffer, int offset)
+    {
+        checkCount(pins, values, count);
+
+        for (int i = 0; i < count; i++)
+        {
+            checkDigital(values[i]);
+        }
+
+        return encodePairs(DIGITAL_WRITE_FUNCTION_NUMBER, pins, values, count, buffer, offset);
+    }
+
+    /**
+     * Write a "digitalWrite" message in the buffer, starting at its current position
+     * @param pins Array with the numbers of the pins to be writed
+     * @param values Array with DIGITAL_HIGH or DIGITAL_LOW for each pin
+     * @param count Number of pins to take from the arrays
+     * @param buffer Buffer where the message is written. Its position is advanced by the message length
+     * @return The number of bytes written in the buffer
+     */
+    public int encodeDigitalWrite(int[] pins, int[] values, int count, ByteBuffer buffer)
     {
-        String valueProtocol = "";
+        byte[] target = target(buffer, count);
+        int length = encodeDigitalWrite(pins, values, count, target, targetOffset(buffer, target));
+        return complete(buffer, target, length);
+    }
+
+    /**
+     * Write an "analogWrite" message for one pin in the buffer
+     * @param pin Number of the pin to be writed
+     * @param value Value to be write in the pin, it can be from 0 to 255
+     * @param buffer Buffer where the message is written
+     * @param offset Position of the buffer where the message starts
+     * @return The number of bytes written in the buffer
+     */
+    public int encodeAnalogWrite(int pin, int value, byte[] buffer, int offset)
+    {
+        return encodePair(ANALOG_WRITE_FUNCTION_NUMBER, pin, value, buffer, offset);
+    }
+
+    /**
+     * Write an "analogWrite" message in the buffer. Each pin is write with the value in the same index
+     * @param pins Array with the numbers of the pins to be writed
+     * @param values Array with the values to be write in the pins, it can be from 0 to 255
+     * @param count Number of pins to take from the arrays
+     * @param buffer Buffer where the message is written
+     * @param offset Position of the buffer where the message starts
+     * @return The number of bytes written in the buffer
+     */
+    public int encodeAnalogWrite(int[] pins, int[] values, int count, byte[] buffer, int offset)
+    {
+        checkCount(pins, values, count);
+        return encodePairs(ANALOG_WRITE_FUNCTION_NUMBER, pins, values, count, buffer, offset);
+    }
+
+    /**
+     * Write an "analogWrite" message in the buffer, starting at its current position
+     * @param pins Array with the numbers of the pins to be writed
+     * @param values Array with the values to be write in the pins, it can be from 0 to 255
+     * @param count Number of pins to take from the arrays
+     * @param buffer Buffer where the message is written. Its position is advanced by the message length
+     * @return The number of bytes written in the buffer
+     */
+    public int encodeAnalogWrite(int[] pins, int[] values, int count, ByteBuffer buffer)
+    {
+        byte[] target = target(buffer, count);
+        int length = encodeAnalogWrite(pins, values, count, target, targetOffset(buffer, target));
+        return complete(buffer, target, length);
+    }
+
+    /**
+     * Convert an intensity used in the String methods to its protocol value
+     * @param value "HIGH", "LOW" or a number between 0 and 255
+     * @return MOTOR_HIGH, MOTOR_LOW or the intensity number
+     */
+    static int motorValue(String value)
+    {
+        if (value.equals("HIGH"))
+        {
+            return MOTOR_HIGH;
+        }
+
+        else if (value.equals("LOW"))
+        {
+            return MOTOR_LOW;
+        }
 
+        try
+        {
+            int valueAux = Integer.parseInt(value);
+
+            if ((valueAux < 256) && (valueAux >= 0))
+            {
+                return valueAux;
+            }
+
+            throw new IllegalArgumentException("Values must be between 0 and 255");
+        }
+
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Invalid value " + value);
+        }
+    }
+
+    /**
+     * Convert a mode used in the String methods to its protocol value
+     * @param mode "INPUT" or "OUTPUT"
+     * @return MODE_INPUT or MODE_OUTPUT
+     */
+    static int modeValue(String mode)
+    {
+        if (mode.equals("INPUT"))
+        {
+            return MODE_INPUT;
+        }
+
+        else if (mode.equals("OUTPUT"))
+        {
+            return MODE_OUTPUT;
+        }
+
+        throw new IllegalArgumentException(mode + " is not a valid mode");
+    }
+
+    /**
+     * Convert a digital value used in the String methods to its protocol value
+     * @param value "HIGH" or "LOW"
+     * @return DIGITAL_HIGH or DIGITAL_LOW
+     */
+    static int digitalValue(String value)
+    {
         if (value.equals("LOW"))
         {
-            valueProtocol = "0";
+            return DIGITAL_LOW;
         }
 
         else if (value.equals("HIGH"))
         {
-            valueProtocol = "1";
+            return DIGITAL_HIGH;
         }
 
-        else
+        throw new IllegalArgumentException(value + " is not a valid value");
+    }
+
+    static int[] toArray(Collection<Integer> list)
+    {
+        int[] array = new int[list.size()];
+        int i = 0;
+
+        for (int element : list)
+        {
+            array[i++] = element;
+        }
+
+        return array;
+    }
+
+    private static String toMessage(byte[] buffer, int length)
+    {
+        return new String(buffer, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    private static void checkCount(int[] pins, int count)
+    {
+        if (count < 0 || count > pins.length)
+        {
+            throw new IllegalArgumentException("Count must be between 0 and the array length");
+        }
+    }
+
+    private static void checkCount(int[] pins, int[] values, int count)
+    {
+        if (count < 0 || count > pins.length || count > values.length)
+        {
+            throw new IllegalArgumentException("Count must be between 0 and the arrays length");
+        }
+    }
+
+    private static void checkMode(int mode)
+    {
+        if (mode != MODE_INPUT && mode != MODE_OUTPUT)
+        {
+            throw new IllegalArgumentException(mode + " is not a valid mode");
+        }
+    }
+
+    private static void checkDigital(int value)
+    {
+        if (value != DIGITAL_LOW && value != DIGITAL_HIGH)
         {
             throw new IllegalArgumentException(value + " is not a valid value");
         }
+    }
+
+    private static int encodeRead(int function, int pin, byte[] buffer, int offset)
+    {
+        int position = putHeader(function, pin, buffer, offset);
+        buffer[position++] = TERMINAL;
+        return position - offset;
+    }
+
+    private static int encodeReadMultiple(int function, int[] pins, int count, byte[] buffer, int offset)
+    {
+        if (count == 0)
+        {
+            throw new IllegalArgumentException("Array must have at least one element");
+        }
+
+        checkCount(pins, count);
+        int position = putHeader(function, count, buffer, offset);
+
+        for (int i = 0; i < count; i++)
+        {
+            buffer[position++] = SEPARATOR;
+            position = putInt(pins[i], buffer, position);
+        }
+
+        buffer[position++] = TERMINAL;
+        return position - offset;
+    }
+
+    private static int encodePair(int function, int pin, int value, byte[] buffer, int offset)
+    {
+        int position = putHeader(function, 1, buffer, offset);
+        buffer[position++] = SEPARATOR;
+        position = putInt(pin, buffer, position);
+        buffer[position++] = SEPARATOR;
+        position = putInt(value, buffer, position);
+        buffer[position++] = TERMINAL;
+        return position - offset;
+    }
+
+    private static int encodePairs(int function, int[] pins, int[] values, int count, byte[] buffer, int offset)
+    {
+        int position = putHeader(function, count, buffer, offset);
+
+        for (int i = 0; i < count; i++)
+        {
+            buffer[position++] = SEPARATOR;
+            position = putInt(pins[i], buffer, position);
+            buffer[position++] = SEPARATOR;
+            position = putInt(values[i], buffer, position);
+        }
+
+        buffer[position++] = TERMINAL;
+        return position - offset;
+    }
 
-        String message = DIGITAL_WRITE_FUNCTION_NUMBER + SEPARATOR + "1" + SEPARATOR +
-            pin + SEPARATOR + valueProtocol + TERMINAL;
-        return message;
+    private static int putHeader(int function, int argument, byte[] buffer, int offset)
+    {
+        int position = putInt(function, buffer, offset);
+        buffer[position++] = SEPARATOR;
+        return putInt(argument, buffer, position);
     }
 
     /**
-     * Generate a message to write a value in a digital pin. Each pin is write with the value in the same index
-     * @param pins List with the numbers of the pins to be writed
-     * @param values Lists with the values to be write in the pins, it can be "HIGH" or "LOW"
-     * @return A string with the "digitalWrite" format specified in the OpenGlove communication protocol
+     * Returns the function number at the start of an encoded message
+     * @param message Array with the message
+     * @param length Length of the message
+     * @return The function number, or 0 if the message does not start with a number
      */
-    public String digitalWrite(List<Integer> pins, List<String> values)
+    static int functionNumber(byte[] message, int length)
     {
-        if (pins.size() != values.size())
+        if (length > 2 && message[0] == BinaryFraming.SYNC)
         {
-            throw new IllegalArgumentException("Lists length must be equal");
+            return message[2] & 0xFF;
         }
 
-        StringBuilder digitalWriteMessage = new StringBuilder();
-        digitalWriteMessage.append(DIGITAL_WRITE_FUNCTION_NUMBER + SEPARATOR + pins.size());
+        int number = 0;
 
-        for (int i = 0; i < pins.size(); i++)
+        for (int i = 0; i < length && i < 4; i++)
         {
-            String valueProtocol = "";
+            int digit = message[i] - '0';
 
-            if (values.get(i).equals("LOW") )
+            if (digit < 0 || digit > 9)
             {
-                valueProtocol = "0";
+                break;
             }
 
-            else if (values.get(i).equals("HIGH") )
-            {
-                valueProtocol = "1";
-            }
+            number = number * 10 + digit;
+        }
 
-            else
-            {
-                throw new IllegalArgumentException(values.get(i) + " is not a valid value");
-            }
+        return number;
+    }
 
-            String message = SEPARATOR + pins.get(i) + SEPARATOR + valueProtocol;
-            digitalWriteMessage.append(message);
+    /**
+     * Returns the number of bytes written by putInt for a number
+     */
+    static int intLength(int value)
+    {
+        long number = Math.abs((long) value);
+        int digits = 1;
 
+        for (long limit = 10; number >= limit && digits < 10; limit *= 10)
+        {
+            digits++;
         }
 
-        digitalWriteMessage.append(TERMINAL);
-        return digitalWriteMessage.toString();
+        return value < 0 ? digits + 1 : digits;
     }
 
     /**
-     * Generate a message to write a PWM value in a digital pin
-     * @param pin Number of the pin to be writed
-     * @param value Value to be write in the pin, it can be from 0 to 255
-     * @return
+     * Write the decimal digits of a number in the buffer
+     * @return The position after the last digit
      */
-    public String analogWrite(int pin, int value)
+    static int putInt(int value, byte[] buffer, int position)
     {
-        String message = ANALOG_WRITE_FUNCTION_NUMBER + SEPARATOR + "1" + SEPARATOR + pin 
-            + SEPARATOR + value + TERMINAL;
-        return message;
+        long number = value;
+
+        if (number < 0)
+        {
+            buffer[position++] = '-';
+            number = -number;
+        }
+
+        int digits = 1;
+
+        for (long limit = 10; number >= limit && digits < 10; limit *= 10)
+        {
+            digits++;
+        }
+
+        int end = position + digits;
+
+        for (int i = end - 1; i >= position; i--)
+        {
+            buffer[i] = (byte) ('0' + number % 10);
+            number /= 10;
+        }
+
+        return end;
     }
 
     /**
-     * Generate a message to write a PWM value in a digital pin.  Each pin is write with the value in the same index
-     * @param pins List with the numbers of the pins to be writed
-     * @param values List with the values to be write in the pins, it can be from 0 to 255
-     * @return A string with the "analogWrite" format specified in the OpenGlove communication protocol
+     * Select the array where a message for a ByteBuffer is encoded. Heap buffers with enough room are written
+     * in place, otherwise the message is encoded in the scratch array of the calling thread and copied
      */
-    public String analogWrite(List<Integer> pins, List<Integer> values)
+    private byte[] target(ByteBuffer buffer, int pinCount)
     {
-        if (pins.size() != values.size())
+        int maxLength = maxMessageLength(pinCount);
+
+        if (buffer.hasArray() && !buffer.isReadOnly() && buffer.remaining() >= maxLength)
         {
-            throw new IllegalArgumentException("Lists length must be equal");
+            return buffer.array();
         }
 
-        StringBuilder analogWriteMessage = new StringBuilder();
-        analogWriteMessage.append(ANALOG_WRITE_FUNCTION_NUMBER + SEPARATOR + pins.size());
+        byte[] scratch = SCRATCH.get();
 
-        for (int i = 0; i < pins.size(); i++)
+        if (scratch == null || scratch.length < maxLength)
         {
+            scratch = new byte[maxLength];
+            SCRATCH.set(scratch);
+        }
 
-            String message = SEPARATOR + pins.get(i) + SEPARATOR + values.get(i);
-            analogWriteMessage.append(message);
+        return scratch;
+    }
 
+    private int targetOffset(ByteBuffer buffer, byte[] target)
+    {
+        return target == SCRATCH.get() ? 0 : buffer.arrayOffset() + buffer.position();
+    }
+
+    private int complete(ByteBuffer buffer, byte[] target, int length)
+    {
+        if (target == SCRATCH.get())
+        {
+            buffer.put(target, 0, length);
         }
 
-        analogWriteMessage.append(TERMINAL);
-        return analogWriteMessage.toString();
+        else
+        {
+            buffer.position(buffer.position() + length);
+        }
 
+        return length;
     }
-    
-    
-}
\ No newline at end of file
+
+}
@@ -0,0 +1,245 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.Arrays;
+
+/**
+ * Splits the bytes of the messages of the OpenGlove communication protocol in their numeric fields, one byte at
+ * a time, so the messages can be split across many writes. A message with a field that is not a number is discarded.
+ * When the binary frames are enabled they are decoded to the same fields as the ASCII message, and a frame with a
+ * wrong CRC is discarded
+ * @author Rodrigo Monsalve Lagos
+ */
+class MessageParser {
+
+    static final private int NO_FRAME = 0;
+    static final private int FRAME_LENGTH = 1;
+    static final private int FRAME_FUNCTION = 2;
+    static final private int FRAME_PAYLOAD = 3;
+    static final private int FRAME_CRC = 4;
+
+    private int[] fields = new int[16];
+    private int fieldCount;
+    private long number;
+    private boolean negative;
+    private boolean digits;
+    private boolean invalid;
+    private boolean complete;
+    private boolean binary;
+    private int frameState = NO_FRAME;
+    private int frameLength;
+    private int frameFunction;
+    private int payloadLength;
+    private byte crc;
+    private final byte[] payload = new byte[256];
+
+    /**
+     * Accept or not the binary frames, like the firmware after the protocol version 1 was negotiated
+     * @param enabled True to decode the binary frames
+     */
+    void setBinary(boolean enabled)
+    {
+        binary = enabled;
+        frameState = NO_FRAME;
+    }
+
+    /**
+     * Returns true if the binary frames are decoded
+     */
+    boolean isBinary()
+    {
+        return binary;
+    }
+
+    /**
+     * Add a byte to the message being received
+     * @param value Byte received
+     * @return True if the byte completed a valid message, whose fields can be read until the next call
+     */
+    boolean receive(byte value)
+    {
+        if (complete)
+        {
+            fieldCount = 0;
+            complete = false;
+        }
+
+        if (frameState != NO_FRAME)
+        {
+            return receiveFrame(value);
+        }
+
+        if (binary && value == BinaryFraming.SYNC)
+        {
+            // A frame discards the ASCII message that was not ended
+            fieldCount = 0;
+            number = 0;
+            negative = false;
+            digits = false;
+            invalid = false;
+            crc = 0;
+            frameState = FRAME_LENGTH;
+            return false;
+        }
+
+        if (value >= '0' && value <= '9')
+        {
+            number = Math.min(number * 10 + (value - '0'), Integer.MAX_VALUE);
+            digits = true;
+        }
+
+        else if (value == '-' && !digits && !negative)
+        {
+            negative = true;
+        }
+
+        else if (value == MessageGenerator.SEPARATOR)
+        {
+            addField();
+        }
+
+        else if (value == MessageGenerator.TERMINAL)
+        {
+            addField();
+            complete = !invalid;
+
+            if (!complete)
+            {
+                fieldCount = 0;
+            }
+
+            invalid = false;
+            return complete;
+        }
+
+        else if (value > ' ')
+        {
+            invalid = true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the array with the fields of the last complete message. The first field is the function number
+     */
+    int[] fields()
+    {
+        return fields;
+    }
+
+    /**
+     * Returns the number of fields of the last complete message
+     */
+    int fieldCount()
+    {
+        return fieldCount;
+    }
+
+    /**
+     * Returns the number of entries of a message with a count in its second field, limited to the fields received
+     * @param fieldsPerEntry Number of fields of each entry, like 1 for a pin or 2 for a pin and its value
+     */
+    int count(int fieldsPerEntry)
+    {
+        if (fieldCount < 2)
+        {
+            return 0;
+        }
+
+        return Math.max(0, Math.min(fields[1], (fieldCount - 2) / fieldsPerEntry));
+    }
+
+    private boolean receiveFrame(byte value)
+    {
+        switch (frameState)
+        {
+            case FRAME_LENGTH:
+                frameLength = value & 0xFF;
+                crc = BinaryFraming.crc(crc, value);
+                frameState = FRAME_FUNCTION;
+                return false;
+
+            case FRAME_FUNCTION:
+                frameFunction = value & 0xFF;
+                crc = BinaryFraming.crc(crc, value);
+                payloadLength = 0;
+                frameState = frameLength == 0 ? FRAME_CRC : FRAME_PAYLOAD;
+                return false;
+
+            case FRAME_PAYLOAD:
+                payload[payloadLength++] = value;
+                crc = BinaryFraming.crc(crc, value);
+
+                if (payloadLength == frameLength)
+                {
+                    frameState = FRAME_CRC;
+                }
+
+                return false;
+
+            default:
+                frameState = NO_FRAME;
+                complete = value == crc && decodeFrame();
+                return complete;
+        }
+    }
+
+    /**
+     * Store the fields of the received frame like the ones of its ASCII message
+     * @return False if the function has no binary form or the payload has a wrong length
+     */
+    private boolean decodeFrame()
+    {
+        int form = BinaryFraming.payload(frameFunction);
+
+        if (form == BinaryFraming.NONE || (form == BinaryFraming.SINGLE && frameLength != 1)
+            || (form == BinaryFraming.PAIRS && frameLength % 2 != 0))
+        {
+            return false;
+        }
+
+        if (fields.length < frameLength + 2)
+        {
+            fields = Arrays.copyOf(fields, frameLength + 2);
+        }
+
+        fields[0] = frameFunction;
+        fieldCount = 1;
+
+        if (form != BinaryFraming.SINGLE)
+        {
+            fields[fieldCount++] = form == BinaryFraming.PAIRS ? frameLength / 2 : frameLength;
+        }
+
+        for (int i = 0; i < frameLength; i++)
+        {
+            fields[fieldCount++] = payload[i] & 0xFF;
+        }
+
+        return true;
+    }
+
+    private void addField()
+    {
+        if (!digits)
+        {
+            invalid = true;
+        }
+
+        if (fieldCount == fields.length)
+        {
+            fields = Arrays.copyOf(fields, fields.length * 2);
+        }
+
+        fields[fieldCount++] = (int) (negative ? -number : number);
+        number = 0;
+        negative = false;
+        digits = false;
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+/**
+ * Values of the metrics of a glove at one moment. The latencies are kept for each function number of the
+ * OpenGlove communication protocol
+ * @author Rodrigo Monsalve Lagos
+ */
+public class MetricsSnapshot {
+
+    private final long elapsedNanos;
+    private final long bytesWritten;
+    private final long bytesRead;
+    private final long messagesWritten;
+    private final long timeouts;
+    private final long errors;
+    private final long reconnects;
+    private final LatencySummary[][] latencies;
+    private final LatencySummary[] totals;
+
+    MetricsSnapshot(long elapsedNanos, long bytesWritten, long bytesRead, long messagesWritten, long timeouts, long errors,
+        long reconnects, LatencySummary[][] latencies, LatencySummary[] totals)
+    {
+        this.elapsedNanos = elapsedNanos;
+        this.bytesWritten = bytesWritten;
+        this.bytesRead = bytesRead;
+        this.messagesWritten = messagesWritten;
+        this.timeouts = timeouts;
+        this.errors = errors;
+        this.reconnects = reconnects;
+        this.latencies = latencies;
+        this.totals = totals;
+    }
+
+    /**
+     * Returns the time measured, since the metrics were created or reset
+     */
+    public long getElapsedNanos()
+    {
+        return elapsedNanos;
+    }
+
+    /**
+     * Returns the number of bytes sent to the glove
+     */
+    public long getBytesWritten()
+    {
+        return bytesWritten;
+    }
+
+    /**
+     * Returns the number of bytes received from the glove
+     */
+    public long getBytesRead()
+    {
+        return bytesRead;
+    }
+
+    /**
+     * Returns the average number of bytes sent each second
+     */
+    public double getBytesWrittenPerSecond()
+    {
+        return perSecond(bytesWritten);
+    }
+
+    /**
+     * Returns the average number of bytes received each second
+     */
+    public double getBytesReadPerSecond()
+    {
+        return perSecond(bytesRead);
+    }
+
+    /**
+     * Returns the number of writes to the transport
+     */
+    public long getMessagesWritten()
+    {
+        return messagesWritten;
+    }
+
+    /**
+     * Returns the number of reads that did not receive an answer before the timeout
+     */
+    public long getTimeouts()
+    {
+        return timeouts;
+    }
+
+    /**
+     * Returns the number of writes that failed
+     */
+    public long getErrors()
+    {
+        return errors;
+    }
+
+    /**
+     * Returns the number of times the transport was opened again after a failure
+     */
+    public long getReconnects()
+    {
+        return reconnects;
+    }
+
+    /**
+     * Returns the latencies of one function number
+     * @param metric Latency measured
+     * @param functionNumber Function number of the OpenGlove communication protocol, or 0 for the messages without a known function number
+     */
+    public LatencySummary getLatency(LatencyMetric metric, int functionNumber)
+    {
+        if (functionNumber < 0 || functionNumber >= GloveMetrics.FUNCTION_COUNT)
+        {
+            throw new IllegalArgumentException("Function number must be between 0 and " + (GloveMetrics.FUNCTION_COUNT - 1));
+        }
+
+        return latencies[metric.ordinal()][functionNumber];
+    }
+
+    /**
+     * Returns the latencies of all the function numbers together
+     * @param metric Latency measured
+     */
+    public LatencySummary getLatency(LatencyMetric metric)
+    {
+        return totals[metric.ordinal()];
+    }
+
+    private double perSecond(long count)
+    {
+        return elapsedNanos <= 0 ? 0 : count * 1e9 / elapsedNanos;
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the newest intensity waiting to be sent for each motor pin. An update replaces the previous value of
+ * the pin if it was not sent yet, and all the pending pins are sent together in one "activateMotor" message
+ * @author Rodrigo Monsalve Lagos
+ */
+class MotorCoalescer {
+
+    /**
+     * Number of pins that can be coalesced, from 0 to PIN_COUNT - 1
+     */
+    static final int PIN_COUNT = 256;
+
+    static final private int EMPTY = Integer.MIN_VALUE;
+
+    private final AtomicIntegerArray pending = new AtomicIntegerArray(PIN_COUNT);
+    private final AtomicLong barrier = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+    private final int[] framePins = new int[PIN_COUNT];
+    private final int[] frameValues = new int[PIN_COUNT];
+    private volatile boolean hasPending;
+
+    MotorCoalescer()
+    {
+        for (int i = 0; i < PIN_COUNT; i++)
+        {
+            pending.set(i, EMPTY);
+        }
+    }
+
+    /**
+     * Check if the updates can be coalesced
+     * @param pins Array of pins
+     * @param values Array with the intensities of the pins
+     * @param digital True if MessageGenerator.MOTOR_HIGH and MessageGenerator.MOTOR_LOW are accepted
+     * @return True if all the pins and values can be sent in an "activateMotor" message
+     */
+    static boolean accepts(int[] pins, int[] values, boolean digital)
+    {
+        return pins.length == values.length && accepts(pins, values, pins.length, digital);
+    }
+
+    /**
+     * Check if the first updates of the arrays can be coalesced
+     * @param pins Array of pins
+     * @param values Array with the intensities of the pins
+     * @param count Number of pins to take from the arrays
+     * @param digital True if MessageGenerator.MOTOR_HIGH and MessageGenerator.MOTOR_LOW are accepted
+     * @return True if the pins and values can be sent in an "activateMotor" message
+     */
+    static boolean accepts(int[] pins, int[] values, int count, boolean digital)
+    {
+        if (count > pins.length || count > values.length)
+        {
+            return false;
+        }
+
+        for (int i = 0; i < count; i++)
+        {
+            int value = values[i];
+            boolean validValue = (value >= 0 && value <= 255)
+                || (digital && (value == MessageGenerator.MOTOR_HIGH || value == MessageGenerator.MOTOR_LOW));
+
+            if (pins[i] < 0 || pins[i] >= PIN_COUNT || !validValue)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Replace the pending intensities of the pins
+     * @param pins Array of pins
+     * @param values Array with the intensities of the pins
+     * @param count Number of pins to take from the arrays
+     * @param after Number of queued commands that must be written before these values
+     */
+    void update(int[] pins, int[] values, int count, long after)
+    {
+        long current = barrier.get();
+
+        while (current < after && !barrier.compareAndSet(current, after))
+        {
+            current = barrier.get();
+        }
+
+        for (int i = 0; i < count; i++)
+        {
+            if (pending.getAndSet(pins[i], values[i]) != EMPTY)
+            {
+                merged.incrementAndGet();
+            }
+        }
+
+        updates.addAndGet(count);
+        hasPending = true;
+    }
+
+    /**
+     * Returns true if there are intensities waiting to be sent
+     */
+    boolean hasPending()
+    {
+        return hasPending;
+    }
+
+    /**
+     * Returns the number of queued commands that must be written before the pending intensities
+     */
+    long barrier()
+    {
+        return barrier.get();
+    }
+
+    /**
+     * Take all the pending intensities and encode them in one "activateMotor" message. Must be called from one thread at a time
+     * @param messageGenerator Generator used to encode the message
+     * @param buffer Buffer where the message is written, with place for PIN_COUNT pins
+     * @return The length of the message, or 0 if there were no pending intensities
+     */
+    int drain(MessageGenerator messageGenerator, byte[] buffer)
+    {
+        hasPending = false;
+        int count = 0;
+
+        for (int pin = 0; pin < PIN_COUNT; pin++)
+        {
+            if (pending.get(pin) != EMPTY)
+            {
+                framePins[count] = pin;
+                frameValues[count] = pending.getAndSet(pin, EMPTY);
+                count++;
+            }
+        }
+
+        if (count == 0)
+        {
+            return 0;
+        }
+
+        frames.incrementAndGet();
+        return messageGenerator.encodeActivateMotor(framePins, frameValues, count, buffer, 0);
+    }
+
+    /**
+     * Returns the number of updates replaced by a newer value before being sent
+     */
+    long mergedUpdates()
+    {
+        return merged.get();
+    }
+
+    /**
+     * Returns the number of pin updates received
+     */
+    long totalUpdates()
+    {
+        return updates.get();
+    }
+
+    /**
+     * Returns the number of combined messages sent
+     */
+    long coalescedFrames()
+    {
+        return frames.get();
+    }
+
+}
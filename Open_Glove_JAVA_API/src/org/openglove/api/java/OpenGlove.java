@@ -5,17 +5,55 @@
  */
 package org.openglove.api.java;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Represents an OpenGlove device instance. Provide methods for communicatiopn with the device, initialize and activate vibration motors, besides others actuators and sensors
+ * Represents an OpenGlove device instance. Provide methods for communicatiopn with the device, initialize and activate vibration motors, besides others actuators and sensors.
+ * The commands can be sent from many threads at the same time; the messages of the threads are never mixed
  * @author Rodrigo Monsalve Lagos
  */
 public class OpenGlove {
     
+    static final private long DEFAULT_READ_TIMEOUT_MILLIS = 1000;
+    static final private int DEFAULT_SAMPLE_CAPACITY = 1024;
     
     Communication communication = new Communication();
     MessageGenerator messageGenerator = new MessageGenerator();
+    private final ThreadLocal<byte[]> messageBuffers = new ThreadLocal<byte[]>();
+    private volatile AsyncWriter asyncWriter;
+    private volatile MotorCoalescer coalescer;
+    private HapticScheduler scheduler;
+    private EffectEngine effectEngine;
+    private FrameLoop frameLoop;
+    private final SensorPublisher[] analogPublishers = new SensorPublisher[MotorCoalescer.PIN_COUNT];
+    private final SensorPublisher[] digitalPublishers = new SensorPublisher[MotorCoalescer.PIN_COUNT];
+    private final SensorPublisher.ReadTurns publisherTurns = new SensorPublisher.ReadTurns();
+    private volatile ReadPipeline readPipeline;
+    private SensorStream sensorStream;
+    private volatile PinStateCache pinStateCache;
+    private ReconnectSupervisor reconnectSupervisor;
+
+    /**
+     * Initialize an OpenGlove instance without open the communication with the device
+     */
+    public OpenGlove()
+    {
+    }
+
+    /**
+     * Initialize an OpenGlove instance that communicates with the device through the transport specified, like a
+     * SimulatedTransport. The transport is opened if it is closed
+     * @param transport Transport used to communicate with the device
+     */
+    public OpenGlove(Transport transport)
+    {
+        communication.open(transport);
+    }
 
     /**
      * Open the communication with the port and baudrate specified
@@ -25,15 +63,96 @@ public class OpenGlove {
      */
     public boolean openPort(String portName, int baudRate)
     {
+        invalidatePinStates();
         return communication.openPort(portName,baudRate);
     }
 
     /**
-     * Close the current active serial communication
+     * Open the communication through the transport specified, like a SimulatedTransport
+     * @param transport Transport used to communicate with the device
+     * @return Return True if the transport was opened sucesfully
+     */
+    public boolean open(Transport transport)
+    {
+        invalidatePinStates();
+        return communication.open(transport);
+    }
+
+    /**
+     * Ask the glove to receive the messages as binary frames, with one byte for each pin and value. Call it after
+     * opening the port, before enabling the pipelined reads or the streaming. A firmware without the binary frames
+     * does not answer, so the messages stay in ASCII after the read timeout. The answers of the glove are ASCII
+     * lines in both cases. The glove goes back to ASCII when it is reconnected or the port is opened again
+     * @return True if the glove accepted the binary frames
+     */
+    public synchronized boolean negotiateBinaryProtocol()
+    {
+        if (readPipeline != null || communication.isListening())
+        {
+            throw new IllegalStateException("The protocol must be negotiated before the pipelined reads are enabled");
+        }
+
+        communication.setBinaryFraming(false);
+        byte[] buffer = messageBuffer(0);
+        sendAndWait(buffer, messageGenerator.encodeProtocol(BinaryFraming.VERSION, buffer, 0));
+        boolean accepted = communication.readInt() == BinaryFraming.VERSION;
+        communication.setBinaryFraming(accepted);
+        return accepted;
+    }
+
+    /**
+     * Returns true if the messages are sent as binary frames
+     */
+    public boolean isBinaryProtocol()
+    {
+        return communication.isBinaryFraming();
+    }
+
+    /**
+     * Record the messages sent and the lines received in a memory-mapped file, which can be sent again with
+     * SessionReplay. A recording in progress is closed
+     * @param fileName Name of the file, which is replaced if it exists
+     * @param capacityBytes Size of the file. The records that do not fit are dropped
+     * @return The recorder, which counts the records
+     * @throws IOException If the file can not be created
+     */
+    public synchronized SessionRecorder startRecording(String fileName, int capacityBytes) throws IOException
+    {
+        SessionRecorder recorder = new SessionRecorder(fileName, capacityBytes);
+        stopRecording();
+        communication.setRecorder(recorder);
+        return recorder;
+    }
+
+    /**
+     * Stop recording and write the recording to the disk
+     */
+    public synchronized void stopRecording()
+    {
+        SessionRecorder recorder = communication.recorder();
+
+        if (recorder != null)
+        {
+            communication.setRecorder(null);
+            recorder.close();
+        }
+    }
+
+    /**
+     * Close the current active serial communication. The threads of the patterns, the effects, the asynchronous
+     * writes and the pipelined reads are stopped; the queued commands are written first, and the reads without
+     * answer are completed exceptionally. The patterns and the effects start their threads again when played,
+     * and the asynchronous writes must be enabled again after opening a port
      */
     public void closePort()
     {
+        disableAutoReconnect();
+        stopFrameLoop();
+        stopPlayers();
+        disableAsyncWrites();
         communication.closePort();
+        stopReadPipeline();
+        stopRecording();
     }
 
     /**
@@ -52,7 +171,8 @@ public class OpenGlove {
     public void initializeMotor(List<Integer> pins)
     {
         String message = messageGenerator.initializeMotor(pins);
-        communication.write(message);
+        invalidatePinStates(MessageGenerator.toArray(pins));
+        send(message);
     }
 
     /**
@@ -62,8 +182,83 @@ public class OpenGlove {
      */
     public void activateMotor(List<Integer> pins, List<String> values)
     {
+        if ((pinStateCache != null || (coalescer != null && asyncWriter != null)) && pins.size() == values.size()
+            && !pins.isEmpty())
+        {
+            int[] valueArray = new int[values.size()];
+
+            for (int i = 0; i < valueArray.length; i++)
+            {
+                valueArray[i] = MessageGenerator.motorValue(values.get(i));
+            }
+
+            writePins(MessageGenerator.ACTIVATE_MOTOR_FUNCTION_NUMBER, MessageGenerator.toArray(pins), valueArray, true);
+            return;
+        }
+
         String message = messageGenerator.activateMotor(pins,values);
-        communication.write(message);
+        send(message);
+    }
+
+    /**
+     * Initialize pins like motors in the control software, without allocating objects
+     * @param pins Array of pins that are initialized
+     */
+    public void initializeMotor(int[] pins)
+    {
+        if (pins.length == 0)
+        {
+            throw new IllegalArgumentException("Array must have at least one element");
+        }
+
+        byte[] buffer = messageBuffer(pins.length);
+        int length = messageGenerator.encodeInitializeMotor(pins, pins.length, buffer, 0);
+        invalidatePinStates(pins);
+        send(buffer, length);
+    }
+
+    /**
+     * Activate motors with analog or digital values, without allocating objects. Each motor is activated with the value with the same index
+     * @param pins Array of pins where are connected the motors
+     * @param values Array with the intensities to activate the motors, between 0 and 255, or MessageGenerator.MOTOR_HIGH or MessageGenerator.MOTOR_LOW in digital mode
+     */
+    public void activateMotor(int[] pins, int[] values)
+    {
+        checkLength(pins, values);
+        writePins(MessageGenerator.ACTIVATE_MOTOR_FUNCTION_NUMBER, pins, values, true);
+    }
+
+    /**
+     * Prepare an "activateMotor" command for a fixed list of pins. The pins are validated and encoded once, so
+     * each send of the command only writes the new intensities
+     * @param pins Array of pins where are connected the motors
+     * @return The prepared command
+     */
+    public PreparedCommand prepareActivate(int[] pins)
+    {
+        return new PreparedCommand(this, MessageGenerator.ACTIVATE_MOTOR_FUNCTION_NUMBER, pins);
+    }
+
+    /**
+     * Prepare an "analogWrite" command for a fixed list of pins. The pins are validated and encoded once, so
+     * each send of the command only writes the new values
+     * @param pins Array with the numbers of the pins to be writed
+     * @return The prepared command
+     */
+    public PreparedCommand prepareAnalogWrite(int[] pins)
+    {
+        return new PreparedCommand(this, MessageGenerator.ANALOG_WRITE_FUNCTION_NUMBER, pins);
+    }
+
+    /**
+     * Prepare a "digitalWrite" command for a fixed list of pins. The pins are validated and encoded once, so
+     * each send of the command only writes the new values
+     * @param pins Array with the numbers of the pins to be writed
+     * @return The prepared command
+     */
+    public PreparedCommand prepareDigitalWrite(int[] pins)
+    {
+        return new PreparedCommand(this, MessageGenerator.DIGITAL_WRITE_FUNCTION_NUMBER, pins);
     }
 
     /**
@@ -72,16 +267,22 @@ public class OpenGlove {
      */
     public String readLine()
     {
+        if (readPipeline != null)
+        {
+            throw new IllegalStateException("The lines are read by the pipelined reads");
+        }
+
         return communication.readLine();
     }
 
     /**
-     * 
-     * @param message
+     * Send a message as it is. The pin state cache does not know the changes made by these messages, so call
+     * invalidatePinStates after writing pins with this method
+     * @param message Message in the format of the OpenGlove communication protocol
      */
     public void write(String message)
     {
-        communication.write(message);
+        send(message);
     }
 
     /**
@@ -91,9 +292,16 @@ public class OpenGlove {
      */
     public String analogRead(int pin)
     {
+        if (readPipeline != null)
+        {
+            return toText(analogReadAsync(pin));
+        }
+
         String message = messageGenerator.analogRead(pin);
-        communication.write(message);
+        long start = communication.metrics.startTimer();
+        sendAndWait(message);
         String value = communication.readLine();
+        communication.metrics.stopTimer(LatencyMetric.ROUND_TRIP, MessageGenerator.ANALOG_READ_FUNCTION_NUMBER, start);
         return value;
     }
 
@@ -104,12 +312,386 @@ public class OpenGlove {
      */
     public String digitalRead(int pin)
     {
+        if (readPipeline != null)
+        {
+            return toText(digitalReadAsync(pin));
+        }
+
         String message = messageGenerator.digitalRead(pin);
-        communication.write(message);
+        long start = communication.metrics.startTimer();
+        sendAndWait(message);
         String value = communication.readLine();
+        communication.metrics.stopTimer(LatencyMetric.ROUND_TRIP, MessageGenerator.DIGITAL_READ_FUNCTION_NUMBER, start);
         return value;
     }
 
+    /**
+     * Returns the input voltage from an analog pin, parsed from the received bytes without creating strings
+     * @param pin Number of the analog pin to be readed
+     * @return The input voltage readed from the analog pin, between 0 and 1023, or Communication.NO_VALUE if there was no answer
+     */
+    public int analogReadInt(int pin)
+    {
+        return readValue(true, pin);
+    }
+
+    /**
+     * Returns the value from a digital pin, parsed from the received bytes without creating strings
+     * @param pin Number of the digital pin to be readed
+     * @return 1 for "HIGH" or 0 for "LOW", or Communication.NO_VALUE if there was no answer
+     */
+    public int digitalReadInt(int pin)
+    {
+        return readValue(false, pin);
+    }
+
+    /**
+     * Returns the value from a digital pin, parsed from the received bytes without creating strings. Use
+     * digitalReadInt to tell a "LOW" value from a missing answer
+     * @param pin Number of the digital pin to be readed
+     * @return True for "HIGH", false for "LOW" or if there was no answer
+     */
+    public boolean digitalReadBoolean(int pin)
+    {
+        return readValue(false, pin) == 1;
+    }
+
+    /**
+     * Returns the input voltages from multiple analog pins with one request. Requires a firmware with the protocol extension for multiple reads
+     * @param pins Array with the numbers of the analog pins to be readed
+     * @return An array with the value of each pin, between 0 and 1023, or Communication.NO_VALUE for the pins without answer
+     */
+    public int[] analogRead(int[] pins)
+    {
+        int[] values = new int[pins.length];
+        analogRead(pins, values);
+        return values;
+    }
+
+    /**
+     * Read the input voltages from multiple analog pins with one request, without allocating objects. Requires a firmware with the protocol extension for multiple reads
+     * @param pins Array with the numbers of the analog pins to be readed
+     * @param values Array where the value of each pin is stored, between 0 and 1023, or Communication.NO_VALUE for the pins without answer
+     * @return The number of values received
+     */
+    public int analogRead(int[] pins, int[] values)
+    {
+        checkReadLength(pins, values);
+
+        if (readPipeline != null)
+        {
+            return count(readValues(true, pins, values), pins.length);
+        }
+
+        byte[] buffer = messageBuffer(pins.length);
+        int length = messageGenerator.encodeAnalogRead(pins, pins.length, buffer, 0);
+        long start = communication.metrics.startTimer();
+        sendAndWait(buffer, length);
+        int received = communication.readInts(values, pins.length);
+        communication.metrics.stopTimer(LatencyMetric.ROUND_TRIP, MessageGenerator.ANALOG_READ_MULTIPLE_FUNCTION_NUMBER, start);
+        return Math.max(0, received);
+    }
+
+    /**
+     * Returns the values from multiple digital pins with one request. Requires a firmware with the protocol extension for multiple reads
+     * @param pins Array with the numbers of the digital pins to be readed
+     * @return An array with 1 for "HIGH" or 0 for "LOW" for each pin, or Communication.NO_VALUE for the pins without answer
+     */
+    public int[] digitalRead(int[] pins)
+    {
+        int[] values = new int[pins.length];
+        digitalRead(pins, values);
+        return values;
+    }
+
+    /**
+     * Read the values from multiple digital pins with one request, without allocating objects. Requires a firmware with the protocol extension for multiple reads
+     * @param pins Array with the numbers of the digital pins to be readed
+     * @param values Array where 1 for "HIGH" or 0 for "LOW" is stored for each pin, or Communication.NO_VALUE for the pins without answer
+     * @return The number of values received
+     */
+    public int digitalRead(int[] pins, int[] values)
+    {
+        checkReadLength(pins, values);
+
+        if (readPipeline != null)
+        {
+            return count(readValues(false, pins, values), pins.length);
+        }
+
+        byte[] buffer = messageBuffer(pins.length);
+        int length = messageGenerator.encodeDigitalRead(pins, pins.length, buffer, 0);
+        long start = communication.metrics.startTimer();
+        sendAndWait(buffer, length);
+        int received = communication.readInts(values, pins.length);
+        communication.metrics.stopTimer(LatencyMetric.ROUND_TRIP, MessageGenerator.DIGITAL_READ_MULTIPLE_FUNCTION_NUMBER, start);
+        return Math.max(0, received);
+    }
+
+    /**
+     * Send many read requests without waiting for the answers. A reader thread gives each answer line to the
+     * oldest request without answer. While the pipelined reads are enabled, readLine can not be used
+     * @param timeoutMillis Time to wait for the answer of each request before completing it with a TimeoutException
+     */
+    public synchronized void enablePipelinedReads(long timeoutMillis)
+    {
+        disablePipelinedReads();
+        readPipeline = new ReadPipeline(communication, timeoutMillis);
+    }
+
+    /**
+     * Stop the reader thread of the pipelined reads. The requests without answer are completed exceptionally
+     */
+    public synchronized void disablePipelinedReads()
+    {
+        if (communication.isListening())
+        {
+            throw new IllegalStateException("The pipelined reads are needed while streaming");
+        }
+
+        stopReadPipeline();
+    }
+
+    private synchronized void stopReadPipeline()
+    {
+        if (readPipeline != null)
+        {
+            readPipeline.close();
+            readPipeline = null;
+        }
+    }
+
+    /**
+     * Request the input voltage from an analog pin without waiting for the answer. Enables the pipelined reads if they are disabled.
+     * The future is completed exceptionally if the answer is lost, and without sending the request while the pipelined reads
+     * synchronize again after a lost answer
+     * @param pin Number of the analog pin to be readed
+     * @return A future completed with the value, between 0 and 1023, or Communication.NO_VALUE if the answer is not a number
+     */
+    public CompletableFuture<Integer> analogReadAsync(int pin)
+    {
+        ReadPipeline pipeline = readPipeline();
+
+        synchronized (pipeline)
+        {
+            CompletableFuture<Integer> future = pipeline.expectValue(MessageGenerator.ANALOG_READ_FUNCTION_NUMBER);
+            byte[] buffer = messageBuffer(0);
+            sendRequest(pipeline, future, buffer, messageGenerator.encodeAnalogRead(pin, buffer, 0));
+            return future;
+        }
+    }
+
+    /**
+     * Request the value from a digital pin without waiting for the answer. Enables the pipelined reads if they are disabled.
+     * The future is completed exceptionally if the answer is lost, and without sending the request while the pipelined reads
+     * synchronize again after a lost answer
+     * @param pin Number of the digital pin to be readed
+     * @return A future completed with 1 for "HIGH" or 0 for "LOW", or Communication.NO_VALUE if the answer is not a number
+     */
+    public CompletableFuture<Integer> digitalReadAsync(int pin)
+    {
+        ReadPipeline pipeline = readPipeline();
+
+        synchronized (pipeline)
+        {
+            CompletableFuture<Integer> future = pipeline.expectValue(MessageGenerator.DIGITAL_READ_FUNCTION_NUMBER);
+            byte[] buffer = messageBuffer(0);
+            sendRequest(pipeline, future, buffer, messageGenerator.encodeDigitalRead(pin, buffer, 0));
+            return future;
+        }
+    }
+
+    /**
+     * Request the input voltages from multiple analog pins without waiting for the answer. Requires a firmware with the protocol extension for multiple reads
+     * @param pins Array with the numbers of the analog pins to be readed
+     * @return A future completed with an array with the value of each pin, or Communication.NO_VALUE for the pins without answer
+     */
+    public CompletableFuture<int[]> analogReadAsync(int[] pins)
+    {
+        return readValuesAsync(true, pins, null);
+    }
+
+    /**
+     * Request the values from multiple digital pins without waiting for the answer. Requires a firmware with the protocol extension for multiple reads
+     * @param pins Array with the numbers of the digital pins to be readed
+     * @return A future completed with an array with the value of each pin, or Communication.NO_VALUE for the pins without answer
+     */
+    public CompletableFuture<int[]> digitalReadAsync(int[] pins)
+    {
+        return readValuesAsync(false, pins, null);
+    }
+
+    /**
+     * Returns true if the pipelined reads are enabled
+     */
+    boolean hasReadPipeline()
+    {
+        return readPipeline != null;
+    }
+
+    /**
+     * Returns the number of pipelined reads completed by timeout
+     */
+    public long getReadTimeouts()
+    {
+        ReadPipeline pipeline = readPipeline;
+        return pipeline == null ? 0 : pipeline.timeouts();
+    }
+
+    /**
+     * Returns the number of times that the pipelined reads synchronized again after a lost or wrong answer
+     */
+    public long getReadSynchronizations()
+    {
+        ReadPipeline pipeline = readPipeline;
+        return pipeline == null ? 0 : pipeline.synchronizations();
+    }
+
+    /**
+     * Returns a future completed when the pipelined reads accept requests, which is already completed unless they
+     * are synchronizing again after a lost answer
+     */
+    CompletableFuture<Void> whenReadsSynchronized()
+    {
+        ReadPipeline pipeline = readPipeline;
+        return pipeline == null ? CompletableFuture.<Void>completedFuture(null) : pipeline.whenSynchronized();
+    }
+
+    /**
+     * Returns the number of answer lines dropped because the pipelined reads were synchronizing again after a
+     * lost or wrong answer
+     */
+    public long getDroppedAnswers()
+    {
+        ReadPipeline pipeline = readPipeline;
+        return pipeline == null ? 0 : pipeline.droppedAnswers();
+    }
+
+    /**
+     * Start receiving the values of analog pins continuously. The glove sends one sample of all the pins each
+     * period, and the samples are read from the event thread of the serial port. The last samples of each pin are
+     * kept in a buffer and given to the sensor listeners. While streaming, the reads use the pipelined reads and
+     * readLine can not be used. Requires a firmware with the protocol extension for streaming
+     * @param pins Array with the numbers of the analog pins to be streamed
+     * @param rateHz Number of samples per second sent by the glove
+     * @return True if the data listener was registered in the port
+     */
+    public synchronized boolean startStreaming(int[] pins, int rateHz)
+    {
+        byte[] buffer = messageBuffer(pins.length + 1);
+        int length = messageGenerator.encodeStartStream(rateHz, pins, pins.length, buffer, 0);
+        SensorStream stream = sensorStream();
+        stream.subscribe(pins);
+        stream.setReadPipeline(readPipeline());
+
+        if (!communication.isListening() && !communication.startListening(stream))
+        {
+            return false;
+        }
+
+        send(buffer, length);
+        return true;
+    }
+
+    /**
+     * Stop receiving the values of the streamed pins. The received samples are kept
+     */
+    public synchronized void stopStreaming()
+    {
+        if (!communication.isListening())
+        {
+            return;
+        }
+
+        try
+        {
+            byte[] buffer = messageBuffer(0);
+            sendAndWait(buffer, messageGenerator.encodeStopStream(buffer, 0));
+        }
+
+        finally
+        {
+            communication.stopListening();
+        }
+    }
+
+    /**
+     * Returns true if the values of the pins are being streamed
+     */
+    public boolean isStreaming()
+    {
+        return communication.isListening();
+    }
+
+    /**
+     * Add a listener called for each streamed sample
+     * @param listener Listener to add
+     */
+    public void addSensorListener(SensorListener listener)
+    {
+        sensorStream().addListener(listener);
+    }
+
+    /**
+     * Remove a listener of the streamed samples
+     * @param listener Listener to remove
+     */
+    public void removeSensorListener(SensorListener listener)
+    {
+        sensorStream().removeListener(listener);
+    }
+
+    /**
+     * Filter the streamed values of a pin before they are stored and given to the sensor listeners. The filter
+     * runs once for each sample on the event thread of the serial port, and the values suppressed by its
+     * deadband or its decimation do not call the listeners
+     * @param pin Number of the analog pin
+     * @param filter Filter of the values, or null to receive the values unchanged
+     */
+    public void setSensorFilter(int pin, SensorFilter filter)
+    {
+        sensorStream().setFilter(pin, filter);
+    }
+
+    /**
+     * Returns the number of streamed samples suppressed by the filters of the pins
+     */
+    public long getSuppressedSamples()
+    {
+        return sensorStream().suppressedSamples();
+    }
+
+    /**
+     * Returns the last streamed value of a pin without waiting
+     * @param pin Number of the analog pin
+     * @return The last value received, or Communication.NO_VALUE if no samples were received
+     */
+    public int getLatestValue(int pin)
+    {
+        return sensorStream().latest(pin);
+    }
+
+    /**
+     * Returns the number of samples streamed from a pin
+     * @param pin Number of the analog pin
+     */
+    public long getSampleCount(int pin)
+    {
+        return sensorStream().count(pin);
+    }
+
+    /**
+     * Copy the last streamed samples of a pin, from the oldest to the newest, without allocating objects
+     * @param pin Number of the analog pin
+     * @param values Array where the values are copied
+     * @param timestampsNanos Array where the reception times are copied, from System.nanoTime, or null
+     * @return The number of samples copied
+     */
+    public int getRecentSamples(int pin, int[] values, long[] timestampsNanos)
+    {
+        return sensorStream().copy(pin, values, timestampsNanos);
+    }
+
     /**
      * Initialize a pin in input or output mode
      * @param pin Number of the pin to be initialized
@@ -118,7 +700,8 @@ public class OpenGlove {
     public void pinMode(int pin, String mode)
     {
         String message = messageGenerator.pinMode(pin,mode);
-        communication.write(message);
+        invalidatePinStates(new int[] {pin});
+        send(message);
     }
 
     /**
@@ -129,7 +712,22 @@ public class OpenGlove {
     public void pinMode(List<Integer> pins, List<String> modes)
     {
         String message = messageGenerator.pinMode(pins, modes);
-        communication.write(message);
+        invalidatePinStates(MessageGenerator.toArray(pins));
+        send(message);
+    }
+
+    /**
+     * Initialize multiples pins in input or output mode, without allocating objects. Each pin is initialized with the mode in the same index
+     * @param pins Array with the numbers of the pins to be initialized
+     * @param modes Array with MessageGenerator.MODE_INPUT or MessageGenerator.MODE_OUTPUT for each pin
+     */
+    public void pinMode(int[] pins, int[] modes)
+    {
+        checkLength(pins, modes);
+        byte[] buffer = messageBuffer(pins.length);
+        int length = messageGenerator.encodePinMode(pins, modes, pins.length, buffer, 0);
+        invalidatePinStates(pins);
+        send(buffer, length);
     }
 
     /**
@@ -139,8 +737,15 @@ public class OpenGlove {
      */
     public void digitalWrite(int pin, String value)
     {
+        if (pinStateCache != null)
+        {
+            writePins(MessageGenerator.DIGITAL_WRITE_FUNCTION_NUMBER, new int[] {pin},
+                new int[] {MessageGenerator.digitalValue(value)}, false);
+            return;
+        }
+
         String message = messageGenerator.digitalWrite(pin, value);
-        communication.write(message);
+        send(message);
     }
 
     /**
@@ -150,8 +755,32 @@ public class OpenGlove {
      */
     public void digitalWrite(List<Integer> pins, List<String> values)
     {
+        if (pinStateCache != null && pins.size() == values.size() && !pins.isEmpty())
+        {
+            int[] valueArray = new int[values.size()];
+
+            for (int i = 0; i < valueArray.length; i++)
+            {
+                valueArray[i] = MessageGenerator.digitalValue(values.get(i));
+            }
+
+            writePins(MessageGenerator.DIGITAL_WRITE_FUNCTION_NUMBER, MessageGenerator.toArray(pins), valueArray, false);
+            return;
+        }
+
         String message = messageGenerator.digitalWrite(pins, values);
-        communication.write(message);
+        send(message);
+    }
+
+    /**
+     * Write values on digital pins, without allocating objects. Each pin is written with the value with the same index
+     * @param pins Array with the numbers of the pins to be writed
+     * @param values Array with MessageGenerator.DIGITAL_HIGH or MessageGenerator.DIGITAL_LOW for each pin
+     */
+    public void digitalWrite(int[] pins, int[] values)
+    {
+        checkLength(pins, values);
+        writePins(MessageGenerator.DIGITAL_WRITE_FUNCTION_NUMBER, pins, values, false);
     }
 
     /**
@@ -161,8 +790,14 @@ public class OpenGlove {
      */
     public void analogWrite(int pin, int value)
     {
+        if (pinStateCache != null || (coalescer != null && asyncWriter != null))
+        {
+            writePins(MessageGenerator.ANALOG_WRITE_FUNCTION_NUMBER, new int[] {pin}, new int[] {value}, true);
+            return;
+        }
+
         String message = messageGenerator.analogWrite(pin, value);
-        communication.write(message);
+        send(message);
     }
 
     /**
@@ -172,9 +807,853 @@ public class OpenGlove {
      */
     public void analogWrite(List<Integer> pins, List<Integer> values)
     {
+        if ((pinStateCache != null || (coalescer != null && asyncWriter != null)) && pins.size() == values.size()
+            && !pins.isEmpty())
+        {
+            writePins(MessageGenerator.ANALOG_WRITE_FUNCTION_NUMBER, MessageGenerator.toArray(pins),
+                MessageGenerator.toArray(values), true);
+            return;
+        }
+
         String message = messageGenerator.analogWrite(pins, values);
-        communication.write(message);
+        send(message);
+
+    }
+
+    /**
+     * Write analog values to pins, without allocating objects. Each pin is written with the value with the same index
+     * @param pins Array with the numbers of the pins to be writed
+     * @param values Array with the values to write on the pins, it can be between 0 (always off) and 255 (always on)
+     */
+    public void analogWrite(int[] pins, int[] values)
+    {
+        checkLength(pins, values);
+        writePins(MessageGenerator.ANALOG_WRITE_FUNCTION_NUMBER, pins, values, true);
+    }
+
+    /**
+     * Send the commands from a dedicated writer thread. The methods that send commands return after adding them
+     * to a queue, without waiting for the serial transmission
+     * @param capacity Maximum number of commands waiting to be written
+     * @param policy Behaviour when the queue is full
+     */
+    public synchronized void enableAsyncWrites(int capacity, BackpressurePolicy policy)
+    {
+        disableAsyncWrites();
+        AsyncWriter writer = new AsyncWriter(communication, capacity, policy);
+        writer.setCoalescer(coalescer);
+        writer.setPinStateCache(pinStateCache);
+        asyncWriter = writer;
+    }
 
+    /**
+     * Write the queued commands and go back to send the commands from the calling thread
+     */
+    public synchronized void disableAsyncWrites()
+    {
+        if (asyncWriter != null)
+        {
+            asyncWriter.close();
+            asyncWriter = null;
+        }
+    }
+
+    /**
+     * Enable or disable the coalescing of motor intensities while the asynchronous writes are enabled. When it is
+     * enabled, the intensities sent with activateMotor and analogWrite wait in a table with one place for each pin,
+     * so a new intensity replaces the previous one if it was not sent yet, and the writer thread sends all the
+     * waiting intensities together in one "activateMotor" message
+     * @param enabled True to coalesce the motor intensities
+     */
+    public synchronized void setMotorCoalescing(boolean enabled)
+    {
+        if (enabled == (coalescer != null))
+        {
+            return;
+        }
+
+        coalescer = enabled ? new MotorCoalescer() : null;
+
+        if (asyncWriter != null)
+        {
+            // The threads that read the previous table before the change may still add intensities to it, so
+            // the writer keeps writing it and it is drained after the change
+            asyncWriter.setCoalescer(coalescer);
+
+            if (!enabled)
+            {
+                asyncWriter.flush();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of motor intensities replaced by a newer one before being sent, since the coalescing was enabled
+     */
+    public long getMergedUpdates()
+    {
+        return coalescer == null ? 0 : coalescer.mergedUpdates();
+    }
+
+    /**
+     * Returns the number of combined "activateMotor" messages sent since the coalescing was enabled
+     */
+    public long getCoalescedFrames()
+    {
+        return coalescer == null ? 0 : coalescer.coalescedFrames();
+    }
+
+    /**
+     * Enable or disable the pin state cache. When it is enabled, the last value written to each pin with
+     * activateMotor, analogWrite and digitalWrite is kept, the pins that already have the value are removed from
+     * the messages and the messages without changed pins are not sent. The cache assumes that only this instance
+     * changes the pins, so call invalidatePinStates or resyncPinStates if the device was reset. The pins of a
+     * write that fails, and of the asynchronous writes discarded by the DROP_OLDEST policy or not written by the
+     * writer thread, are forgotten, so their next write is sent
+     * @param enabled True to keep the state of the pins
+     */
+    public synchronized void setPinStateCache(boolean enabled)
+    {
+        if (enabled != (pinStateCache != null))
+        {
+            pinStateCache = enabled ? new PinStateCache() : null;
+            AsyncWriter writer = asyncWriter;
+
+            if (writer != null)
+            {
+                writer.setPinStateCache(pinStateCache);
+            }
+        }
+    }
+
+    /**
+     * Forget the cached state of all the pins, so the next write of each pin is sent. The state is also
+     * forgotten when a port or transport is opened
+     */
+    public void invalidatePinStates()
+    {
+        PinStateCache cache = pinStateCache;
+
+        if (cache != null)
+        {
+            cache.invalidate();
+        }
+    }
+
+    /**
+     * Send again the cached value of each pin, for example after the device was reconnected. The pins are sent
+     * with one message for each write function
+     */
+    public void resyncPinStates()
+    {
+        PinStateCache cache = pinStateCache;
+
+        if (cache == null)
+        {
+            return;
+        }
+
+        int[] pins = new int[PinStateCache.PIN_COUNT];
+        int[] values = new int[PinStateCache.PIN_COUNT];
+        byte[] buffer = new byte[MessageGenerator.maxMessageLength(PinStateCache.PIN_COUNT)];
+
+        synchronized (cache)
+        {
+            resync(cache, MessageGenerator.ACTIVATE_MOTOR_FUNCTION_NUMBER, pins, values, buffer);
+            resync(cache, MessageGenerator.ANALOG_WRITE_FUNCTION_NUMBER, pins, values, buffer);
+            resync(cache, MessageGenerator.DIGITAL_WRITE_FUNCTION_NUMBER, pins, values, buffer);
+        }
+    }
+
+    /**
+     * Returns the number of bytes that the pin state cache did not send because the pins already had the values
+     */
+    public long getBytesSaved()
+    {
+        PinStateCache cache = pinStateCache;
+        return cache == null ? 0 : cache.bytesSaved();
+    }
+
+    /**
+     * Returns the number of writes that the pin state cache did not send because no pin changed
+     */
+    public long getSuppressedWrites()
+    {
+        PinStateCache cache = pinStateCache;
+        return cache == null ? 0 : cache.suppressedWrites();
+    }
+
+    /**
+     * Reopen the port or transport automatically when a write or a read fails because the device was
+     * disconnected. The messages sent from the call are tracked, so after the reconnection the motors, the pin
+     * modes, the last values written to the outputs and the sensor stream are sent again in one burst, before
+     * any other message. The writes made while the device is disconnected are lost, but their values are
+     * included in the burst. The pipelined reads waiting for an answer are completed exceptionally. The time
+     * from the failure to the reconnection is recorded in the RECOVERY latency of the metrics
+     * @param retryIntervalMillis Time between the attempts to reopen the port
+     */
+    public synchronized void enableAutoReconnect(long retryIntervalMillis)
+    {
+        if (reconnectSupervisor != null)
+        {
+            reconnectSupervisor.close();
+        }
+
+        communication.setStateTracking(true);
+        reconnectSupervisor = new ReconnectSupervisor(this, retryIntervalMillis);
+    }
+
+    /**
+     * Stop reopening the port automatically and stop tracking the state of the device
+     */
+    public synchronized void disableAutoReconnect()
+    {
+        if (reconnectSupervisor != null)
+        {
+            reconnectSupervisor.close();
+            reconnectSupervisor = null;
+            communication.setStateTracking(false);
+        }
+    }
+
+    /**
+     * Returns true if the device was disconnected and the port was not reopened yet
+     */
+    public synchronized boolean isReconnecting()
+    {
+        return reconnectSupervisor != null && reconnectSupervisor.isReconnecting();
+    }
+
+    /**
+     * Returns the number of attempts to reopen the port since the automatic reconnection was enabled
+     */
+    public synchronized long getReconnectAttempts()
+    {
+        return reconnectSupervisor == null ? 0 : reconnectSupervisor.attempts();
+    }
+
+    /**
+     * Pace the writes to the baudrate of the port, so the bytes waiting in the buffers of the operating system and
+     * the adapter stay below a backlog. A write that would exceed it waits until the link transmits the previous
+     * bytes. With the asynchronous writes the commands wait in the queue instead, so the backpressure policy
+     * applies when the producers are faster than the link: BLOCK waits, FAIL_FAST rejects the command and
+     * DROP_OLDEST discards the oldest one, and the coalesced intensities are merged while they wait
+     * @param maxBacklogMillis Maximum time that the written bytes can wait to be transmitted
+     */
+    public void enableFlowControl(long maxBacklogMillis)
+    {
+        Transport transport = communication.transport;
+        int baudRate = transport == null ? 0 : transport.getBaudRate();
+
+        if (baudRate <= 0)
+        {
+            throw new IllegalStateException("The baudrate of the transport is not known");
+        }
+
+        enableFlowControl(baudRate, maxBacklogMillis);
+    }
+
+    /**
+     * Pace the writes to a baudrate, for a transport that does not know it
+     * @param baudRate Data rate of the link in bits per second
+     * @param maxBacklogMillis Maximum time that the written bytes can wait to be transmitted
+     */
+    public void enableFlowControl(int baudRate, long maxBacklogMillis)
+    {
+        communication.setTransmitBudget(new TransmitBudget(baudRate, TimeUnit.MILLISECONDS.toNanos(maxBacklogMillis)));
+    }
+
+    /**
+     * Write without waiting for the link
+     */
+    public void disableFlowControl()
+    {
+        communication.setTransmitBudget(null);
+    }
+
+    /**
+     * Returns the number of bytes that can be written now without waiting for the link, so a producer can skip or
+     * simplify a frame instead of queuing it. Returns Integer.MAX_VALUE if the flow control is disabled
+     */
+    public int getTransmitCredits()
+    {
+        TransmitBudget budget = communication.transmitBudget();
+        return budget == null ? Integer.MAX_VALUE : budget.credits();
+    }
+
+    /**
+     * Returns the estimated time that the link needs to transmit the bytes already written, in nanoseconds, or 0
+     * if the flow control is disabled
+     */
+    public long getTransmitBacklogNanos()
+    {
+        TransmitBudget budget = communication.transmitBudget();
+        return budget == null ? 0 : budget.backlogNanos();
+    }
+
+    /**
+     * Returns the number of writes that waited for the link since the flow control was enabled
+     */
+    public long getPacedWrites()
+    {
+        TransmitBudget budget = communication.transmitBudget();
+        return budget == null ? 0 : budget.pacedWrites();
+    }
+
+    /**
+     * Returns a handle to know when the commands sent before the call have been written to the serial port.
+     * The handle is completed exceptionally if the last command was discarded or could not be written
+     * @return A future completed when the previous commands are written, already completed if the asynchronous writes are disabled
+     */
+    public CompletableFuture<Void> confirmWrites()
+    {
+        if (asyncWriter == null)
+        {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return asyncWriter.confirm();
+    }
+
+    /**
+     * Returns the number of commands discarded because the queue was full with the DROP_OLDEST policy
+     */
+    public long getDroppedCommands()
+    {
+        return asyncWriter == null ? 0 : asyncWriter.droppedCommands();
+    }
+
+    /**
+     * Returns the metrics of the communication with the device: latencies of each function number, transferred
+     * bytes, timeouts and errors. They can be registered in JMX with GloveMetrics.register
+     */
+    public GloveMetrics getMetrics()
+    {
+        return communication.metrics;
+    }
+
+    /**
+     * Start playing a vibration pattern. All the patterns are played from one scheduler thread, and the steps of
+     * different patterns that are due at the same time are sent together in one message
+     * @param pattern Pattern to play
+     * @return A handle to know when the pattern ends or to cancel it
+     */
+    public synchronized HapticPlayback play(HapticPattern pattern)
+    {
+        if (scheduler == null)
+        {
+            scheduler = new HapticScheduler(this);
+        }
+
+        return scheduler.play(pattern);
+    }
+
+    /**
+     * Start playing a haptic effect on motors. All the effects are played from one engine thread, one frame each
+     * HapticEffect.FRAME_MILLIS milliseconds. The intensities of the effects playing on the same motor are added
+     * and limited to 255, all the motors that changed are sent in one message each frame, and the motors left
+     * without effects are turned off
+     * @param effect Effect to play
+     * @param pins Array of pins where are connected the motors
+     * @return A handle to know when the effect ends or to cancel it
+     */
+    public synchronized EffectPlayback play(HapticEffect effect, int[] pins)
+    {
+        for (int pin : pins)
+        {
+            if (pin < 0 || pin >= MotorCoalescer.PIN_COUNT)
+            {
+                throw new IllegalArgumentException("Pins must be between 0 and " + (MotorCoalescer.PIN_COUNT - 1));
+            }
+        }
+
+        if (effectEngine == null)
+        {
+            effectEngine = new EffectEngine(this);
+        }
+
+        return effectEngine.play(effect, pins);
+    }
+
+    /**
+     * Stop the threads that play the patterns and the effects
+     */
+    private synchronized void stopPlayers()
+    {
+        if (scheduler != null)
+        {
+            scheduler.close();
+            scheduler = null;
+        }
+
+        if (effectEngine != null)
+        {
+            effectEngine.close();
+            effectEngine = null;
+        }
+    }
+
+    /**
+     * Start sending the intensities of motors at a fixed rate. The application writes the intensities with
+     * FrameLoop.setIntensity or setIntensities from any thread, and each tick the motors that changed are sent in
+     * one message. A frame loop already running is stopped
+     * @param pins Array of pins where are connected the motors
+     * @param rateHz Ticks each second, like 200 to 1000. Each frame must fit in the link at the baudrate
+     * @return The loop, which receives the intensities and reports the jitter and the overruns of the ticks
+     */
+    public synchronized FrameLoop startFrameLoop(int[] pins, int rateHz)
+    {
+        FrameLoop loop = new FrameLoop(this, pins, rateHz);
+        stopFrameLoop();
+        frameLoop = loop;
+        return loop;
+    }
+
+    /**
+     * Stop the frame loop. The motors keep their last intensities
+     */
+    public synchronized void stopFrameLoop()
+    {
+        if (frameLoop != null)
+        {
+            frameLoop.stop();
+            frameLoop = null;
+        }
+    }
+
+    /**
+     * Returns the publisher of the input voltage of an analog pin. The pin is read with the pipelined reads only
+     * while a subscriber has requested samples, and each read is shared by all the subscribers of the pin. The
+     * publishers of the glove take turns to read, with one read waiting for its answer at a time. The samples
+     * are given to onNext from the reader thread, so the subscribers must return quickly
+     * @param pin Number of the analog pin
+     * @return The same publisher for all the calls with the pin
+     */
+    public synchronized SensorPublisher publishAnalog(int pin)
+    {
+        return publisher(analogPublishers, pin, true);
+    }
+
+    /**
+     * Returns the publisher of the value of a digital pin, 1 for "HIGH" or 0 for "LOW". The pin is read like in
+     * publishAnalog
+     * @param pin Number of the digital pin
+     * @return The same publisher for all the calls with the pin
+     */
+    public synchronized SensorPublisher publishDigital(int pin)
+    {
+        return publisher(digitalPublishers, pin, false);
+    }
+
+    private SensorPublisher publisher(SensorPublisher[] publishers, int pin, boolean analog)
+    {
+        if (pin < 0 || pin >= publishers.length)
+        {
+            throw new IllegalArgumentException("Pin must be between 0 and " + (publishers.length - 1));
+        }
+
+        if (publishers[pin] == null)
+        {
+            publishers[pin] = new SensorPublisher(this, pin, analog, publisherTurns);
+        }
+
+        return publishers[pin];
+    }
+
+    /**
+     * Send an "activateMotor" message from a thread different from the caller of the other methods
+     * @param pins Array of pins
+     * @param values Array with the intensities of the pins
+     * @param count Number of pins to take from the arrays
+     * @param buffer Buffer of the calling thread where the message is encoded
+     */
+    void sendMotorFrame(int[] pins, int[] values, int count, byte[] buffer)
+    {
+        PinStateCache cache = pinStateCache;
+
+        if (cache == null)
+        {
+            sendPins(MessageGenerator.ACTIVATE_MOTOR_FUNCTION_NUMBER, pins, values, count, buffer, false);
+            return;
+        }
+
+        synchronized (cache)
+        {
+            int changed = cache.filter(MessageGenerator.ACTIVATE_MOTOR_FUNCTION_NUMBER, pins, values, count);
+
+            if (changed > 0)
+            {
+                sendChanged(cache, MessageGenerator.ACTIVATE_MOTOR_FUNCTION_NUMBER, changed, buffer, false);
+            }
+        }
+    }
+
+    /**
+     * Send a prepared command. While the pin state cache or the coalescing are enabled, the values go through
+     * them like the values of the other write methods, and the prepared message is not used
+     */
+    void sendPrepared(PreparedCommand command, int[] values)
+    {
+        int functionNumber = command.functionNumber();
+        boolean coalesce = functionNumber != MessageGenerator.DIGITAL_WRITE_FUNCTION_NUMBER;
+
+        if (pinStateCache != null || (coalesce && coalescer != null && asyncWriter != null))
+        {
+            writePins(functionNumber, command.pins(), values, coalesce);
+            return;
+        }
+
+        synchronized (command)
+        {
+            send(command.buffer(), command.encode(values));
+        }
+    }
+
+    /**
+     * Called by the reconnect supervisor after the port was reopened. The answers of the pipelined reads sent
+     * before the disconnection are lost
+     */
+    void reconnected()
+    {
+        ReadPipeline pipeline = readPipeline;
+
+        if (pipeline != null)
+        {
+            pipeline.failPending(new IllegalStateException("The device was reconnected"));
+        }
+    }
+
+    private void send(String message)
+    {
+        byte[] data = message.getBytes(StandardCharsets.US_ASCII);
+        send(data, data.length);
+    }
+
+    /**
+     * Send messages without waiting, with the asynchronous writer if it is enabled
+     */
+    void send(byte[] data, int length)
+    {
+        long start = communication.metrics.startTimer();
+        AsyncWriter writer = asyncWriter;
+
+        if (writer == null)
+        {
+            communication.write(data, length);
+        }
+
+        else
+        {
+            writer.submit(data, length, false);
+        }
+
+        communication.metrics.stopTimer(LatencyMetric.COMMAND, MessageGenerator.functionNumber(data, length), start);
+    }
+
+    /**
+     * Write pins with activateMotor, analogWrite or digitalWrite, removing the pins that did not change if the pin state cache is enabled
+     */
+    private void writePins(int functionNumber, int[] pins, int[] values, boolean coalesce)
+    {
+        PinStateCache cache = pinStateCache;
+
+        if (cache == null || pins.length == 0)
+        {
+            sendPins(functionNumber, pins, values, pins.length, null, coalesce);
+            return;
+        }
+
+        synchronized (cache)
+        {
+            int changed = cache.filter(functionNumber, pins, values, pins.length);
+
+            if (changed > 0)
+            {
+                sendChanged(cache, functionNumber, changed, null, coalesce);
+            }
+        }
+    }
+
+    private void sendPins(int functionNumber, int[] pins, int[] values, int count, byte[] buffer, boolean coalesce)
+    {
+        if (coalesce && coalesce(pins, values, count, functionNumber == MessageGenerator.ACTIVATE_MOTOR_FUNCTION_NUMBER))
+        {
+            return;
+        }
+
+        byte[] target = buffer == null ? messageBuffer(count) : buffer;
+        int length;
+
+        switch (functionNumber)
+        {
+            case MessageGenerator.ACTIVATE_MOTOR_FUNCTION_NUMBER:
+                length = messageGenerator.encodeActivateMotor(pins, values, count, target, 0);
+                break;
+
+            case MessageGenerator.DIGITAL_WRITE_FUNCTION_NUMBER:
+                length = messageGenerator.encodeDigitalWrite(pins, values, count, target, 0);
+                break;
+
+            default:
+                length = messageGenerator.encodeAnalogWrite(pins, values, count, target, 0);
+                break;
+        }
+
+        send(target, length);
+    }
+
+    private void sendChanged(PinStateCache cache, int functionNumber, int count, byte[] buffer, boolean coalesce)
+    {
+        try
+        {
+            sendPins(functionNumber, cache.changedPins(), cache.changedValues(), count, buffer, coalesce);
+        }
+
+        catch (RuntimeException e)
+        {
+            // The values that were not sent are unknown
+            cache.invalidate(cache.changedPins(), count);
+            throw e;
+        }
+    }
+
+    private void resync(PinStateCache cache, int functionNumber, int[] pins, int[] values, byte[] buffer)
+    {
+        int count = cache.collect(functionNumber, pins, values);
+
+        if (count > 0)
+        {
+            sendPins(functionNumber, pins, values, count, buffer, false);
+        }
+    }
+
+    private void invalidatePinStates(int[] pins)
+    {
+        PinStateCache cache = pinStateCache;
+
+        if (cache != null)
+        {
+            cache.invalidate(pins, pins.length);
+        }
+    }
+
+    private boolean coalesce(int[] pins, int[] values, int count, boolean digital)
+    {
+        AsyncWriter writer = asyncWriter;
+        MotorCoalescer current = coalescer;
+
+        if (writer == null || current == null || !MotorCoalescer.accepts(pins, values, count, digital))
+        {
+            return false;
+        }
+
+        current.update(pins, values, count, writer.submitted());
+        writer.wake();
+        return true;
+    }
+
+    private void sendAndWait(String message)
+    {
+        byte[] data = message.getBytes(StandardCharsets.US_ASCII);
+        sendAndWait(data, data.length);
+    }
+
+    private void sendAndWait(byte[] data, int length)
+    {
+        AsyncWriter writer = asyncWriter;
+
+        if (writer == null)
+        {
+            send(data, length);
+        }
+
+        else
+        {
+            long start = communication.metrics.startTimer();
+            writer.submit(data, length, true).join();
+            communication.metrics.stopTimer(LatencyMetric.COMMAND, MessageGenerator.functionNumber(data, length), start);
+        }
+    }
+
+    private ReadPipeline readPipeline()
+    {
+        ReadPipeline pipeline = readPipeline;
+
+        if (pipeline == null)
+        {
+            synchronized (this)
+            {
+                if (readPipeline == null)
+                {
+                    readPipeline = new ReadPipeline(communication, DEFAULT_READ_TIMEOUT_MILLIS);
+                }
+
+                pipeline = readPipeline;
+            }
+        }
+
+        return pipeline;
+    }
+
+    private synchronized SensorStream sensorStream()
+    {
+        if (sensorStream == null)
+        {
+            sensorStream = new SensorStream(DEFAULT_SAMPLE_CAPACITY);
+        }
+
+        return sensorStream;
+    }
+
+    private CompletableFuture<int[]> readValuesAsync(boolean analog, int[] pins, int[] values)
+    {
+        if (pins.length == 0)
+        {
+            throw new IllegalArgumentException("Array must have at least one element");
+        }
+
+        ReadPipeline pipeline = readPipeline();
+
+        synchronized (pipeline)
+        {
+            CompletableFuture<int[]> future = pipeline.expectValues(values, pins.length, analog
+                ? MessageGenerator.ANALOG_READ_MULTIPLE_FUNCTION_NUMBER : MessageGenerator.DIGITAL_READ_MULTIPLE_FUNCTION_NUMBER);
+            byte[] buffer = messageBuffer(pins.length);
+            int length = analog ? messageGenerator.encodeAnalogRead(pins, pins.length, buffer, 0)
+                : messageGenerator.encodeDigitalRead(pins, pins.length, buffer, 0);
+            sendRequest(pipeline, future, buffer, length);
+            return future;
+        }
+    }
+
+    private int readValue(boolean analog, int pin)
+    {
+        if (readPipeline != null)
+        {
+            try
+            {
+                return (analog ? analogReadAsync(pin) : digitalReadAsync(pin)).join();
+            }
+
+            catch (CompletionException e)
+            {
+                return Communication.NO_VALUE;
+            }
+        }
+
+        int function = analog ? MessageGenerator.ANALOG_READ_FUNCTION_NUMBER : MessageGenerator.DIGITAL_READ_FUNCTION_NUMBER;
+        byte[] buffer = messageBuffer(0);
+        int length = analog ? messageGenerator.encodeAnalogRead(pin, buffer, 0) : messageGenerator.encodeDigitalRead(pin, buffer, 0);
+        long start = communication.metrics.startTimer();
+        sendAndWait(buffer, length);
+        int value = communication.readInt();
+        communication.metrics.stopTimer(LatencyMetric.ROUND_TRIP, function, start);
+        return value;
+    }
+
+    private int[] readValues(boolean analog, int[] pins, int[] values)
+    {
+        try
+        {
+            return readValuesAsync(analog, pins, values).join();
+        }
+
+        catch (CompletionException e)
+        {
+            for (int i = 0; i < pins.length; i++)
+            {
+                values[i] = Communication.NO_VALUE;
+            }
+
+            return values;
+        }
+    }
+
+    private void sendRequest(ReadPipeline pipeline, CompletableFuture<?> future, byte[] data, int length)
+    {
+        if (future.isDone())
+        {
+            // The pipeline rejected the request while it synchronizes again, so the glove must not answer it
+            return;
+        }
+
+        try
+        {
+            send(data, length);
+        }
+
+        catch (RuntimeException e)
+        {
+            pipeline.cancelLast(e);
+            throw e;
+        }
+    }
+
+    private static String toText(CompletableFuture<Integer> future)
+    {
+        try
+        {
+            int value = future.join();
+            return value == Communication.NO_VALUE ? "" : Integer.toString(value);
+        }
+
+        catch (CompletionException e)
+        {
+            return "";
+        }
+    }
+
+    private static int count(int[] values, int length)
+    {
+        int count = 0;
+
+        for (int i = 0; i < length; i++)
+        {
+            if (values[i] != Communication.NO_VALUE)
+            {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the buffer where the calling thread encodes its messages, so many threads can send commands at the same time
+     */
+    private byte[] messageBuffer(int pinCount)
+    {
+        int maxLength = MessageGenerator.maxMessageLength(pinCount);
+        byte[] buffer = messageBuffers.get();
+
+        if (buffer == null || buffer.length < maxLength)
+        {
+            buffer = new byte[Math.max(maxLength, MessageGenerator.maxMessageLength(16))];
+            messageBuffers.set(buffer);
+        }
+
+        return buffer;
+    }
+
+    private static void checkReadLength(int[] pins, int[] values)
+    {
+        if (pins.length == 0)
+        {
+            throw new IllegalArgumentException("Array must have at least one element");
+        }
+
+        if (values.length < pins.length)
+        {
+            throw new IllegalArgumentException("Values array must have a place for each pin");
+        }
+    }
+
+    private static void checkLength(int[] pins, int[] values)
+    {
+        if (pins.length != values.length)
+        {
+            throw new IllegalArgumentException("Arrays length must be equal");
+        }
     }
     
 }
@@ -0,0 +1,236 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Keeps the last value sent to each pin and the function used to send it, like a shadow of the outputs of the
+ * device. The pins of a write that already have the same value are removed from the message, and a write
+ * without changed pins is not sent. The pins outside the table are always sent. The callers must hold the lock
+ * of the cache from the filter until the message is sent, so the cache follows the order of the messages
+ * @author Rodrigo Monsalve Lagos
+ */
+class PinStateCache {
+
+    /**
+     * Number of pins kept in the cache, from 0 to PIN_COUNT - 1
+     */
+    static final int PIN_COUNT = 256;
+
+    static final private int UNKNOWN = 0;
+
+    private final int[] values = new int[PIN_COUNT];
+    private final int[] functions = new int[PIN_COUNT];
+    private int[] changedPins = new int[16];
+    private int[] changedValues = new int[16];
+    private long bytesSaved;
+    private long suppressedWrites;
+    private final AtomicIntegerArray lostPins = new AtomicIntegerArray(PIN_COUNT);
+    private volatile boolean hasLostPins;
+
+    /**
+     * Compare a write with the cached values and store the new values. The changed pins are copied in
+     * changedPins and changedValues, in the same order as in the write
+     * @param functionNumber Function number of the write: activateMotor, digitalWrite or analogWrite
+     * @param pins Array of pins
+     * @param values Array with the values of the pins
+     * @param count Number of pins to take from the arrays
+     * @return The number of changed pins
+     */
+    synchronized int filter(int functionNumber, int[] pins, int[] values, int count)
+    {
+        forgetLostPins();
+
+        if (changedPins.length < count)
+        {
+            changedPins = new int[count];
+            changedValues = new int[count];
+        }
+
+        int changed = 0;
+        int saved = 0;
+
+        for (int i = 0; i < count; i++)
+        {
+            int pin = pins[i];
+            int value = values[i];
+
+            if (validPin(pin) && functions[pin] == functionNumber && this.values[pin] == value)
+            {
+                saved += 2 + MessageGenerator.intLength(pin) + MessageGenerator.intLength(value);
+                continue;
+            }
+
+            if (validPin(pin))
+            {
+                functions[pin] = functionNumber;
+                this.values[pin] = value;
+            }
+
+            changedPins[changed] = pin;
+            changedValues[changed] = value;
+            changed++;
+        }
+
+        if (changed == 0)
+        {
+            // The header and the terminal character are not sent either
+            saved += MessageGenerator.intLength(functionNumber) + 2 + MessageGenerator.intLength(count);
+            suppressedWrites++;
+        }
+
+        else
+        {
+            saved += MessageGenerator.intLength(count) - MessageGenerator.intLength(changed);
+        }
+
+        bytesSaved += saved;
+        return changed;
+    }
+
+    /**
+     * Store the values of a write without comparing them
+     * @param functionNumber Function number of the write
+     * @param pins Array of pins
+     * @param values Array with the values of the pins
+     * @param count Number of pins to take from the arrays
+     */
+    synchronized void record(int functionNumber, int[] pins, int[] values, int count)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            if (validPin(pins[i]))
+            {
+                functions[pins[i]] = functionNumber;
+                this.values[pins[i]] = values[i];
+            }
+        }
+    }
+
+    /**
+     * Returns the array with the pins changed in the last filter
+     */
+    int[] changedPins()
+    {
+        return changedPins;
+    }
+
+    /**
+     * Returns the array with the values of the pins changed in the last filter
+     */
+    int[] changedValues()
+    {
+        return changedValues;
+    }
+
+    /**
+     * Forget the values of pins, so their next write is sent
+     * @param pins Array of pins
+     * @param count Number of pins to take from the array
+     */
+    synchronized void invalidate(int[] pins, int count)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            if (validPin(pins[i]))
+            {
+                functions[pins[i]] = UNKNOWN;
+            }
+        }
+    }
+
+    /**
+     * Mark a pin whose write was discarded or failed after it was filtered. Does not take the lock, because the
+     * thread that loses the write may be needed by a caller that holds it
+     * @param pin Number of the pin
+     */
+    void lost(int pin)
+    {
+        if (validPin(pin))
+        {
+            lostPins.set(pin, 1);
+            hasLostPins = true;
+        }
+    }
+
+    /**
+     * Forget the values of all the pins
+     */
+    synchronized void invalidate()
+    {
+        for (int pin = 0; pin < PIN_COUNT; pin++)
+        {
+            functions[pin] = UNKNOWN;
+        }
+    }
+
+    /**
+     * Copy the cached pins written with a function
+     * @param functionNumber Function number of the writes
+     * @param pins Array where the pins are copied, with place for PIN_COUNT pins
+     * @param values Array where the values are copied, with place for PIN_COUNT pins
+     * @return The number of pins copied
+     */
+    synchronized int collect(int functionNumber, int[] pins, int[] values)
+    {
+        forgetLostPins();
+        int count = 0;
+
+        for (int pin = 0; pin < PIN_COUNT; pin++)
+        {
+            if (functions[pin] == functionNumber)
+            {
+                pins[count] = pin;
+                values[count] = this.values[pin];
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the number of bytes that were not sent because the pins did not change
+     */
+    synchronized long bytesSaved()
+    {
+        return bytesSaved;
+    }
+
+    /**
+     * Returns the number of writes that were not sent because no pin changed
+     */
+    synchronized long suppressedWrites()
+    {
+        return suppressedWrites;
+    }
+
+    private void forgetLostPins()
+    {
+        if (!hasLostPins)
+        {
+            return;
+        }
+
+        // The flag is cleared before the scan, so a pin marked during the scan is forgotten by the next filter
+        hasLostPins = false;
+
+        for (int pin = 0; pin < PIN_COUNT; pin++)
+        {
+            if (lostPins.get(pin) != 0 && lostPins.getAndSet(pin, 0) != 0)
+            {
+                functions[pin] = UNKNOWN;
+            }
+        }
+    }
+
+    private static boolean validPin(int pin)
+    {
+        return pin >= 0 && pin < PIN_COUNT;
+    }
+
+}
@@ -0,0 +1,214 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.Arrays;
+
+/**
+ * A write command for a fixed list of pins. The header and the pin numbers of the message are encoded once, and
+ * each send only writes the digits of the values in a reused buffer. While the values keep the same number of
+ * digits, the rest of the message is not copied again. A command shared by many threads sends one frame at a time. Create it with
+ * OpenGlove.prepareActivate, prepareAnalogWrite or prepareDigitalWrite
+ * @author Rodrigo Monsalve Lagos
+ */
+public class PreparedCommand {
+
+    private final OpenGlove glove;
+    private final int functionNumber;
+    private final int[] pins;
+    private final byte[] segments;
+    private final int[] segmentStarts;
+    private final int[] valueStarts;
+    private final int[] valueLengths;
+    private final int[] lastValues;
+    private final byte[] buffer;
+    private int length;
+
+    /**
+     * Encode the constant part of the message
+     * @param glove Glove where the command is sent
+     * @param functionNumber activateMotor, analogWrite or digitalWrite
+     * @param pins Array of pins, copied
+     */
+    PreparedCommand(OpenGlove glove, int functionNumber, int[] pins)
+    {
+        if (pins.length == 0)
+        {
+            throw new IllegalArgumentException("Array must have at least one element");
+        }
+
+        this.glove = glove;
+        this.functionNumber = functionNumber;
+        this.pins = pins.clone();
+        segmentStarts = new int[pins.length + 1];
+        valueStarts = new int[pins.length];
+        valueLengths = new int[pins.length];
+        lastValues = new int[pins.length];
+        buffer = new byte[MessageGenerator.maxMessageLength(pins.length)];
+
+        byte[] encoded = new byte[pins.length * (MessageGenerator.MAX_FIELD_LENGTH + 2)];
+        int position = 0;
+
+        for (int i = 0; i < pins.length; i++)
+        {
+            segmentStarts[i] = position;
+            encoded[position++] = MessageGenerator.SEPARATOR;
+            position = MessageGenerator.putInt(pins[i], encoded, position);
+            encoded[position++] = MessageGenerator.SEPARATOR;
+        }
+
+        segmentStarts[pins.length] = position;
+        segments = Arrays.copyOf(encoded, position);
+
+        position = MessageGenerator.putInt(functionNumber, buffer, 0);
+        buffer[position++] = MessageGenerator.SEPARATOR;
+        position = MessageGenerator.putInt(pins.length, buffer, position);
+        System.arraycopy(segments, 0, buffer, position, segmentStarts[1]);
+        valueStarts[0] = position + segmentStarts[1];
+        Arrays.fill(valueLengths, -1);
+    }
+
+    /**
+     * Send the command with new values. Each pin is written with the value in the same index
+     * @param values Array with the values: intensities between 0 and 255 or MessageGenerator.MOTOR_HIGH or
+     * MessageGenerator.MOTOR_LOW for activateMotor, between 0 and 255 for analogWrite, and
+     * MessageGenerator.DIGITAL_HIGH or MessageGenerator.DIGITAL_LOW for digitalWrite
+     */
+    public void send(int[] values)
+    {
+        if (values.length != pins.length)
+        {
+            throw new IllegalArgumentException("Values array must have one value for each pin");
+        }
+
+        glove.sendPrepared(this, values);
+    }
+
+    /**
+     * Returns the number of pins of the command
+     */
+    public int getPinCount()
+    {
+        return pins.length;
+    }
+
+    /**
+     * Returns a copy of the pins of the command
+     */
+    public int[] getPins()
+    {
+        return pins.clone();
+    }
+
+    int functionNumber()
+    {
+        return functionNumber;
+    }
+
+    int[] pins()
+    {
+        return pins;
+    }
+
+    /**
+     * Returns the buffer where encode writes the message
+     */
+    byte[] buffer()
+    {
+        return buffer;
+    }
+
+    /**
+     * Write the values in the message. The values equal to the previous call are not written, the values with
+     * the same number of digits are written in place, and the message is moved only after the first value whose
+     * length changed
+     * @param values Array with a value for each pin
+     * @return The length of the message in the buffer
+     */
+    int encode(int[] values)
+    {
+        for (int i = 0; i < pins.length; i++)
+        {
+            checkValue(values[i]);
+        }
+
+        int i = 0;
+
+        for (; i < pins.length; i++)
+        {
+            int value = values[i];
+
+            if (value == lastValues[i] && valueLengths[i] >= 0)
+            {
+                continue;
+            }
+
+            if (MessageGenerator.intLength(value) != valueLengths[i])
+            {
+                break;
+            }
+
+            MessageGenerator.putInt(value, buffer, valueStarts[i]);
+            lastValues[i] = value;
+        }
+
+        if (i == pins.length)
+        {
+            return length;
+        }
+
+        int position = valueStarts[i];
+
+        while (true)
+        {
+            int value = values[i];
+            valueStarts[i] = position;
+            position = MessageGenerator.putInt(value, buffer, position);
+            valueLengths[i] = position - valueStarts[i];
+            lastValues[i] = value;
+            i++;
+
+            if (i == pins.length)
+            {
+                break;
+            }
+
+            int segmentLength = segmentStarts[i + 1] - segmentStarts[i];
+            System.arraycopy(segments, segmentStarts[i], buffer, position, segmentLength);
+            position += segmentLength;
+        }
+
+        buffer[position++] = MessageGenerator.TERMINAL;
+        length = position;
+        return length;
+    }
+
+    private void checkValue(int value)
+    {
+        switch (functionNumber)
+        {
+            case MessageGenerator.ACTIVATE_MOTOR_FUNCTION_NUMBER:
+                if ((value > 255 || value < 0) && value != MessageGenerator.MOTOR_HIGH && value != MessageGenerator.MOTOR_LOW)
+                {
+                    throw new IllegalArgumentException("Values must be between 0 and 255");
+                }
+
+                break;
+
+            case MessageGenerator.DIGITAL_WRITE_FUNCTION_NUMBER:
+                if (value != MessageGenerator.DIGITAL_LOW && value != MessageGenerator.DIGITAL_HIGH)
+                {
+                    throw new IllegalArgumentException(value + " is not a valid value");
+                }
+
+                break;
+
+            default:
+                break;
+        }
+    }
+
+}
@@ -0,0 +1,454 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Allows many read requests to be sent without waiting for the answers. A reader thread reads the answer lines
+ * and gives each one to the oldest request without answer, because the protocol answers the requests in the
+ * order they were received and has no sequence tag. A lost answer can not be seen in the line that follows it,
+ * so until a request expires the following requests receive the answers of the requests sent after them.
+ * When a request has no answer after the timeout, or an answer has not the number of values of its request,
+ * the pipeline can not know which of the next answers belongs to which request, so it synchronizes again: the
+ * expired request is completed with a TimeoutException, the other requests waiting are completed with an
+ * IllegalStateException, and the new requests are completed with an IllegalStateException without being
+ * written, while the answer lines still received are dropped. When no answer line was received during one
+ * timeout, the answers of the old requests are considered lost and the new requests are accepted again. A
+ * reconnection ends the synchronization at once. The timeouts are checked each time a line is received or the
+ * read timeout of the port expires. While the port is read by a data listener, the lines are given to the
+ * pipeline by the listener, and the timeouts are checked by the reader thread
+ * @author Rodrigo Monsalve Lagos
+ */
+class ReadPipeline implements Runnable {
+
+    static final private long CLOSED_PORT_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * A read request waiting for its answer
+     */
+    static class PendingRead {
+
+        final CompletableFuture<Integer> value;
+        final CompletableFuture<int[]> values;
+        final int[] target;
+        final int count;
+        final int functionNumber;
+        final long startNanos;
+        final long deadline;
+
+        PendingRead(CompletableFuture<Integer> value, CompletableFuture<int[]> values, int[] target, int count,
+            int functionNumber, long startNanos, long deadline)
+        {
+            this.value = value;
+            this.values = values;
+            this.target = target;
+            this.count = count;
+            this.functionNumber = functionNumber;
+            this.startNanos = startNanos;
+            this.deadline = deadline;
+        }
+
+        void fail(Throwable cause)
+        {
+            if (value != null)
+            {
+                value.completeExceptionally(cause);
+            }
+
+            else
+            {
+                values.completeExceptionally(cause);
+            }
+        }
+
+    }
+
+    private final Communication communication;
+    private final GloveMetrics metrics;
+    private final ConcurrentLinkedQueue<PendingRead> pending = new ConcurrentLinkedQueue<PendingRead>();
+    private final long timeoutNanos;
+    private final Thread thread;
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong droppedAnswers = new AtomicLong();
+    private final AtomicLong synchronizations = new AtomicLong();
+    private final Object answerLock = new Object();
+    private boolean synchronizing;
+    private long synchronizedSince;
+    private long lastAnswerNanos;
+    private CompletableFuture<Void> synchronizedAgain = CompletableFuture.completedFuture(null);
+    private volatile boolean running = true;
+
+    /**
+     * Initialize a pipeline and start its reader thread
+     * @param communication Communication where the answers are read
+     * @param timeoutMillis Time to wait for the answer of each request
+     */
+    ReadPipeline(Communication communication, long timeoutMillis)
+    {
+        this.communication = communication;
+        this.metrics = communication.metrics;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        thread = new Thread(this, "OpenGlove reader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Register a request for one value. Must be called before the request is written, in the same order as the requests are written
+     * @param functionNumber Function number of the request, used to measure its round trip
+     * @return The future completed with the answer
+     */
+    CompletableFuture<Integer> expectValue(int functionNumber)
+    {
+        CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+        PendingRead read = new PendingRead(future, null, null, 1, functionNumber, metrics.startTimer(), System.nanoTime() + timeoutNanos);
+        add(read);
+        return future;
+    }
+
+    /**
+     * Register a request for multiple values. Must be called before the request is written, in the same order as the requests are written
+     * @param target Array where the values are stored, or null to create a new array
+     * @param count Number of values expected
+     * @param functionNumber Function number of the request, used to measure its round trip
+     * @return The future completed with the array of values
+     */
+    CompletableFuture<int[]> expectValues(int[] target, int count, int functionNumber)
+    {
+        CompletableFuture<int[]> future = new CompletableFuture<int[]>();
+        int[] values = target == null ? new int[count] : target;
+        add(new PendingRead(null, future, values, count, functionNumber, metrics.startTimer(), System.nanoTime() + timeoutNanos));
+        return future;
+    }
+
+    /**
+     * Fail the last registered request because it could not be written
+     */
+    void cancelLast(Throwable cause)
+    {
+        PendingRead last = null;
+
+        for (PendingRead read : pending)
+        {
+            last = read;
+        }
+
+        if (last != null && pending.remove(last))
+        {
+            last.fail(cause);
+        }
+    }
+
+    /**
+     * Returns the number of requests completed by timeout
+     */
+    long timeouts()
+    {
+        return timeouts.get();
+    }
+
+    /**
+     * Returns the number of answer lines dropped while the pipeline synchronized again
+     */
+    long droppedAnswers()
+    {
+        return droppedAnswers.get();
+    }
+
+    /**
+     * Returns the number of times that the pipeline synchronized again after a lost or wrong answer
+     */
+    long synchronizations()
+    {
+        return synchronizations.get();
+    }
+
+    /**
+     * Returns a future completed when the pipeline accepts requests, which is already completed unless the
+     * pipeline is synchronizing again
+     */
+    CompletableFuture<Void> whenSynchronized()
+    {
+        synchronized (answerLock)
+        {
+            return synchronizedAgain;
+        }
+    }
+
+    /**
+     * Returns the number of requests waiting for an answer
+     */
+    int pendingReads()
+    {
+        return pending.size();
+    }
+
+    /**
+     * Complete exceptionally all the requests without answer, for example because the device was reconnected and
+     * their answers were lost
+     * @param cause Exception given to the requests
+     */
+    void failPending(Throwable cause)
+    {
+        PendingRead read;
+
+        while ((read = pending.poll()) != null)
+        {
+            read.fail(cause);
+        }
+
+        // The answers of the old requests were lost with them, so the new requests can be matched at once
+        endSynchronization();
+    }
+
+    /**
+     * Stop the reader thread. The requests without answer are completed exceptionally
+     */
+    void close()
+    {
+        running = false;
+
+        try
+        {
+            thread.join();
+        }
+
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        failPending(new IllegalStateException("The pipelined reads were disabled"));
+    }
+
+    @Override
+    public void run()
+    {
+        while (running)
+        {
+            LineReader reader = communication.reader;
+
+            if (reader == null || !communication.isOpen() || communication.isListening())
+            {
+                expire();
+                LockSupport.parkNanos(this, CLOSED_PORT_PARK_NANOS);
+                continue;
+            }
+
+            boolean failed;
+
+            // The data listener uses the same buffers, so a streaming started during the read waits for the line
+            synchronized (reader)
+            {
+                if (communication.isListening())
+                {
+                    continue;
+                }
+
+                int length = reader.nextLine();
+
+                if (length >= 0)
+                {
+                    answer(reader.line(), length);
+                }
+
+                failed = length < 0 && reader.failed();
+            }
+
+            if (failed)
+            {
+                communication.failed();
+                LockSupport.parkNanos(this, CLOSED_PORT_PARK_NANOS);
+            }
+
+            expire();
+        }
+    }
+
+    /**
+     * Give an answer line to the oldest request without answer
+     * @param line Buffer with the line
+     * @param length Length of the line without the next line character
+     */
+    void answer(byte[] line, int length)
+    {
+        if (length > 0 && line[0] == SensorStream.SAMPLE_MARK)
+        {
+            // Samples streamed before the stop message was received are not answers
+            return;
+        }
+
+        PendingRead read;
+        boolean wrong;
+
+        // The lock keeps a request from expiring or being added between the check of the state and the poll
+        synchronized (answerLock)
+        {
+            lastAnswerNanos = System.nanoTime();
+
+            if (synchronizing)
+            {
+                droppedAnswers.incrementAndGet();
+                return;
+            }
+
+            read = pending.poll();
+
+            if (read == null)
+            {
+                return;
+            }
+
+            // An answer with other number of values belongs to another request, so the following ones do too
+            wrong = fieldCount(line, length) != read.count;
+
+            if (wrong)
+            {
+                startSynchronization();
+            }
+        }
+
+        if (wrong)
+        {
+            droppedAnswers.incrementAndGet();
+            read.fail(new IllegalStateException("The answer of the glove has not the values of the request"));
+            failWaiting();
+            return;
+        }
+
+        metrics.stopTimer(LatencyMetric.ROUND_TRIP, read.functionNumber, read.startNanos);
+
+        if (read.value != null)
+        {
+            read.value.complete(LineReader.parseInt(line, 0, length));
+        }
+
+        else
+        {
+            LineReader.parseInts(line, 0, length, read.target, read.count);
+            read.values.complete(read.target);
+        }
+    }
+
+    private void add(PendingRead read)
+    {
+        synchronized (answerLock)
+        {
+            if (!synchronizing)
+            {
+                pending.add(read);
+                return;
+            }
+        }
+
+        read.fail(new IllegalStateException("The pipelined reads are synchronizing after a lost answer"));
+    }
+
+    private void expire()
+    {
+        long now = System.nanoTime();
+        PendingRead read;
+        boolean silent;
+
+        synchronized (answerLock)
+        {
+            // The glove was silent for a whole timeout, so the answers of the failed requests were lost
+            silent = synchronizing && now - Math.max(lastAnswerNanos, synchronizedSince) >= timeoutNanos;
+        }
+
+        if (silent)
+        {
+            endSynchronization();
+        }
+
+        synchronized (answerLock)
+        {
+            read = pending.peek();
+
+            if (read == null || now - read.deadline <= 0 || !pending.remove(read))
+            {
+                return;
+            }
+
+            startSynchronization();
+        }
+
+        timeouts.incrementAndGet();
+        metrics.timeout();
+        read.fail(new TimeoutException("No answer from the glove"));
+        failWaiting();
+    }
+
+    /**
+     * Must be called with the lock of the answers
+     */
+    private void startSynchronization()
+    {
+        if (!synchronizing)
+        {
+            synchronizing = true;
+            synchronizedSince = System.nanoTime();
+            synchronizedAgain = new CompletableFuture<Void>();
+            synchronizations.incrementAndGet();
+        }
+    }
+
+    private void endSynchronization()
+    {
+        CompletableFuture<Void> future;
+
+        synchronized (answerLock)
+        {
+            if (!synchronizing)
+            {
+                return;
+            }
+
+            synchronizing = false;
+            future = synchronizedAgain;
+        }
+
+        future.complete(null);
+    }
+
+    /**
+     * Fail the requests that were waiting when the pipeline started to synchronize again
+     */
+    private void failWaiting()
+    {
+        PendingRead read;
+
+        while ((read = pending.poll()) != null)
+        {
+            read.fail(new IllegalStateException("An answer of the glove was lost, so the answers of the waiting reads are not known"));
+        }
+    }
+
+    /**
+     * Returns the number of values separated by commas in a line
+     */
+    private static int fieldCount(byte[] line, int length)
+    {
+        int count = 1;
+
+        for (int i = 0; i < length; i++)
+        {
+            if (line[i] == MessageGenerator.SEPARATOR)
+            {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+}
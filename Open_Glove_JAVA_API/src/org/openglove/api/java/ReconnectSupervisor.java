@@ -0,0 +1,146 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reconnects the device from a dedicated thread when a write or a read fails. The failures are only counted by
+ * the threads that find them, so a burst of failed writes causes one reconnection. The transport is reopened
+ * with the same settings until it succeeds, and the state of the device is replayed by Communication.reconnect
+ * @author Rodrigo Monsalve Lagos
+ */
+class ReconnectSupervisor implements Runnable {
+
+    static final private long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final OpenGlove glove;
+    private final Communication communication;
+    private final long retryNanos;
+    private final Thread thread;
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong attempts = new AtomicLong();
+    private volatile long handled;
+    private volatile boolean running = true;
+
+    /**
+     * Initialize a supervisor, start its thread and register it as the failure listener of the communication
+     * @param glove Glove whose communication is reconnected
+     * @param retryIntervalMillis Time between the attempts to reopen the transport
+     */
+    ReconnectSupervisor(OpenGlove glove, long retryIntervalMillis)
+    {
+        this.glove = glove;
+        this.communication = glove.communication;
+        this.retryNanos = TimeUnit.MILLISECONDS.toNanos(retryIntervalMillis);
+        thread = new Thread(this, "OpenGlove reconnect");
+        thread.setDaemon(true);
+        thread.start();
+        communication.setFailureListener(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                failures.incrementAndGet();
+                LockSupport.unpark(thread);
+            }
+        });
+    }
+
+    /**
+     * Returns the number of attempts to reopen the transport
+     */
+    long attempts()
+    {
+        return attempts.get();
+    }
+
+    /**
+     * Returns true if a failure was found and the transport was not reopened yet
+     */
+    boolean isReconnecting()
+    {
+        return failures.get() != handled;
+    }
+
+    /**
+     * Stop the thread and remove the failure listener. An attempt in progress is finished first
+     */
+    void close()
+    {
+        communication.setFailureListener(null);
+        running = false;
+        LockSupport.unpark(thread);
+
+        if (Thread.currentThread() == thread)
+        {
+            return;
+        }
+
+        try
+        {
+            thread.join();
+        }
+
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        while (running)
+        {
+            if (failures.get() == handled)
+            {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+
+            long start = System.nanoTime();
+
+            while (running && !reconnect())
+            {
+                long deadline = System.nanoTime() + retryNanos;
+
+                while (running && deadline - System.nanoTime() > 0)
+                {
+                    LockSupport.parkNanos(this, deadline - System.nanoTime());
+                }
+            }
+
+            if (!running)
+            {
+                return;
+            }
+
+            // The failures found while the transport was closed belong to the same disconnection
+            handled = failures.get();
+            glove.reconnected();
+            communication.metrics.reconnected(start);
+        }
+    }
+
+    private boolean reconnect()
+    {
+        attempts.incrementAndGet();
+
+        try
+        {
+            return communication.reconnect();
+        }
+
+        catch (RuntimeException e)
+        {
+            return false;
+        }
+    }
+
+}
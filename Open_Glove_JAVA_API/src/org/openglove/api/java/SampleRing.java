@@ -0,0 +1,114 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Preallocated ring buffer with the last samples of a pin. It is written by one thread and can be read by any
+ * thread; a reader detects the samples overwritten while it was copying them. The samples are kept in atomic
+ * arrays, so the count read after copying them can not be read before the samples, and a sample overwritten
+ * during the copy is always counted as overwritten
+ * @author Rodrigo Monsalve Lagos
+ */
+class SampleRing {
+
+    private final int mask;
+    private final AtomicIntegerArray values;
+    private final AtomicLongArray timestamps;
+    private volatile long written;
+
+    /**
+     * Initialize an empty ring
+     * @param capacity Number of samples kept. It is rounded up to a power of two
+     */
+    SampleRing(int capacity)
+    {
+        int size = Integer.highestOneBit(Math.max(capacity, 2));
+        size = size < capacity ? size << 1 : size;
+        mask = size - 1;
+        values = new AtomicIntegerArray(size);
+        timestamps = new AtomicLongArray(size);
+    }
+
+    /**
+     * Add a sample, replacing the oldest one if the ring is full. Must be called from one thread at a time
+     */
+    void add(int value, long timestampNanos)
+    {
+        long position = written;
+        values.set((int) (position & mask), value);
+        timestamps.set((int) (position & mask), timestampNanos);
+        written = position + 1;
+    }
+
+    /**
+     * Returns the last sample, or Communication.NO_VALUE if there are no samples
+     */
+    int latest()
+    {
+        long position = written;
+        return position == 0 ? Communication.NO_VALUE : values.get((int) ((position - 1) & mask));
+    }
+
+    /**
+     * Returns the number of samples added since the ring was created
+     */
+    long count()
+    {
+        return written;
+    }
+
+    /**
+     * Copy the most recent samples, from the oldest to the newest
+     * @param valueTarget Array where the values are copied
+     * @param timestampTarget Array where the timestamps are copied, or null
+     * @return The number of samples copied
+     */
+    int copy(int[] valueTarget, long[] timestampTarget)
+    {
+        long end = written;
+        int count = (int) Math.min(Math.min(end, mask + 1), valueTarget.length);
+
+        if (timestampTarget != null)
+        {
+            count = Math.min(count, timestampTarget.length);
+        }
+
+        long start = end - count;
+
+        for (int i = 0; i < count; i++)
+        {
+            int index = (int) ((start + i) & mask);
+            valueTarget[i] = values.get(index);
+
+            if (timestampTarget != null)
+            {
+                timestampTarget[i] = timestamps.get(index);
+            }
+        }
+
+        // The sample being written is not counted yet, so it is counted as overwritten too
+        long overwritten = written + 1 - (mask + 1) - start;
+
+        if (overwritten <= 0)
+        {
+            return count;
+        }
+
+        int valid = (int) Math.max(0, count - overwritten);
+        System.arraycopy(valueTarget, count - valid, valueTarget, 0, valid);
+
+        if (timestampTarget != null)
+        {
+            System.arraycopy(timestampTarget, count - valid, timestampTarget, 0, valid);
+        }
+
+        return valid;
+    }
+
+}
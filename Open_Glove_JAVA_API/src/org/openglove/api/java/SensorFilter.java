@@ -0,0 +1,417 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.Arrays;
+
+/**
+ * Describes the stages applied to the values of a sensor pin before they are given to the application: moving
+ * average, exponential smoothing, median, a one dimensional Kalman filter, a deadband that suppresses the
+ * values that did not change enough and a decimation that keeps one value of each group. The stages are applied in the order they were added. A filter can not be
+ * modified, each method returns a new filter with one more stage, so the same filter can be set on many pins;
+ * each pin keeps its own history in preallocated arrays, and filtering a value does not allocate objects
+ * @author Rodrigo Monsalve Lagos
+ */
+public class SensorFilter {
+
+    /**
+     * Filter without stages, which gives all the values unchanged
+     */
+    public static final SensorFilter NONE = new SensorFilter(new Stage[0]);
+
+    static final private int MAX_WINDOW = 1024;
+
+    /**
+     * One stage of the filter with its history
+     */
+    static abstract class Stage {
+
+        /**
+         * Returns the filtered value, or NaN to suppress the value
+         */
+        abstract double apply(double value);
+
+        /**
+         * Returns a stage with the same settings and without history
+         */
+        abstract Stage copy();
+
+    }
+
+    /**
+     * The stages of a filter with the history of one pin. Must be used from one thread at a time
+     */
+    static class Chain {
+
+        private final Stage[] stages;
+
+        Chain(Stage[] stages)
+        {
+            this.stages = stages;
+        }
+
+        /**
+         * Filter a value
+         * @return The filtered value, or Communication.NO_VALUE if the value is suppressed
+         */
+        int apply(int value)
+        {
+            double filtered = value;
+
+            for (Stage stage : stages)
+            {
+                filtered = stage.apply(filtered);
+
+                if (Double.isNaN(filtered))
+                {
+                    return Communication.NO_VALUE;
+                }
+            }
+
+            return (int) Math.round(filtered);
+        }
+
+    }
+
+    private static class MovingAverage extends Stage {
+
+        private final double[] window;
+        private int next;
+        private int count;
+        private double sum;
+
+        MovingAverage(int size)
+        {
+            window = new double[size];
+        }
+
+        @Override
+        double apply(double value)
+        {
+            if (count == window.length)
+            {
+                sum -= window[next];
+            }
+
+            else
+            {
+                count++;
+            }
+
+            window[next] = value;
+            next = next + 1 == window.length ? 0 : next + 1;
+            sum += value;
+            return sum / count;
+        }
+
+        @Override
+        Stage copy()
+        {
+            return new MovingAverage(window.length);
+        }
+
+    }
+
+    private static class ExponentialSmoothing extends Stage {
+
+        private final double alpha;
+        private boolean started;
+        private double smoothed;
+
+        ExponentialSmoothing(double alpha)
+        {
+            this.alpha = alpha;
+        }
+
+        @Override
+        double apply(double value)
+        {
+            smoothed = started ? smoothed + alpha * (value - smoothed) : value;
+            started = true;
+            return smoothed;
+        }
+
+        @Override
+        Stage copy()
+        {
+            return new ExponentialSmoothing(alpha);
+        }
+
+    }
+
+    /**
+     * Keeps the window in arrival order and sorted, so each value moves the sorted window without sorting it again
+     */
+    private static class Median extends Stage {
+
+        private final double[] window;
+        private final double[] sorted;
+        private int next;
+        private int count;
+
+        Median(int size)
+        {
+            window = new double[size];
+            sorted = new double[size];
+        }
+
+        @Override
+        double apply(double value)
+        {
+            if (count == window.length)
+            {
+                int old = Arrays.binarySearch(sorted, 0, count, window[next]);
+                System.arraycopy(sorted, old + 1, sorted, old, count - old - 1);
+                count--;
+            }
+
+            int position = Arrays.binarySearch(sorted, 0, count, value);
+            position = position < 0 ? -position - 1 : position;
+            System.arraycopy(sorted, position, sorted, position + 1, count - position);
+            sorted[position] = value;
+            count++;
+            window[next] = value;
+            next = next + 1 == window.length ? 0 : next + 1;
+            return (count & 1) == 1 ? sorted[count / 2] : (sorted[count / 2 - 1] + sorted[count / 2]) / 2;
+        }
+
+        @Override
+        Stage copy()
+        {
+            return new Median(window.length);
+        }
+
+    }
+
+    private static class Kalman extends Stage {
+
+        private final double processNoise;
+        private final double measurementNoise;
+        private boolean started;
+        private double estimate;
+        private double error;
+
+        Kalman(double processNoise, double measurementNoise)
+        {
+            this.processNoise = processNoise;
+            this.measurementNoise = measurementNoise;
+        }
+
+        @Override
+        double apply(double value)
+        {
+            if (!started)
+            {
+                started = true;
+                estimate = value;
+                error = measurementNoise;
+                return estimate;
+            }
+
+            error += processNoise;
+            double gain = error / (error + measurementNoise);
+            estimate += gain * (value - estimate);
+            error *= 1 - gain;
+            return estimate;
+        }
+
+        @Override
+        Stage copy()
+        {
+            return new Kalman(processNoise, measurementNoise);
+        }
+
+    }
+
+    private static class Deadband extends Stage {
+
+        private final double threshold;
+        private boolean started;
+        private double last;
+
+        Deadband(double threshold)
+        {
+            this.threshold = threshold;
+        }
+
+        @Override
+        double apply(double value)
+        {
+            if (started && Math.abs(value - last) < threshold)
+            {
+                return Double.NaN;
+            }
+
+            started = true;
+            last = value;
+            return value;
+        }
+
+        @Override
+        Stage copy()
+        {
+            return new Deadband(threshold);
+        }
+
+    }
+
+    private static class Decimation extends Stage {
+
+        private final int factor;
+        private int skipped;
+
+        Decimation(int factor)
+        {
+            this.factor = factor;
+        }
+
+        @Override
+        double apply(double value)
+        {
+            if (skipped > 0)
+            {
+                skipped--;
+                return Double.NaN;
+            }
+
+            skipped = factor - 1;
+            return value;
+        }
+
+        @Override
+        Stage copy()
+        {
+            return new Decimation(factor);
+        }
+
+    }
+
+    private final Stage[] stages;
+
+    private SensorFilter(Stage[] stages)
+    {
+        this.stages = stages;
+    }
+
+    /**
+     * Returns a filter with a stage that gives the average of the last values
+     * @param window Number of values averaged, between 1 and 1024
+     */
+    public SensorFilter movingAverage(int window)
+    {
+        checkWindow(window);
+        return add(new MovingAverage(window));
+    }
+
+    /**
+     * Returns a filter with a stage that gives an exponential moving average of the values
+     * @param alpha Weight of each new value, between 0 and 1. Smaller values smooth more and follow changes slower
+     */
+    public SensorFilter exponentialSmoothing(double alpha)
+    {
+        if (!(alpha > 0 && alpha <= 1))
+        {
+            throw new IllegalArgumentException("Alpha must be greater than 0 and at most 1");
+        }
+
+        return add(new ExponentialSmoothing(alpha));
+    }
+
+    /**
+     * Returns a filter with a stage that gives the median of the last values, which removes isolated spikes
+     * @param window Number of values, between 1 and 1024, usually odd
+     */
+    public SensorFilter median(int window)
+    {
+        checkWindow(window);
+        return add(new Median(window));
+    }
+
+    /**
+     * Returns a filter with a stage that estimates a value that changes slowly from noisy measurements
+     * @param processNoise Variance of the change of the value between two samples
+     * @param measurementNoise Variance of the noise of the samples
+     */
+    public SensorFilter kalman(double processNoise, double measurementNoise)
+    {
+        if (!(processNoise >= 0) || !(measurementNoise > 0))
+        {
+            throw new IllegalArgumentException("Process noise must not be negative and measurement noise must be positive");
+        }
+
+        return add(new Kalman(processNoise, measurementNoise));
+    }
+
+    /**
+     * Returns a filter with a stage that suppresses the values that differ from the last value given by less than
+     * a threshold, so the listeners are only called for significant changes
+     * @param threshold Minimum change of the value
+     */
+    public SensorFilter deadband(double threshold)
+    {
+        if (!(threshold >= 0))
+        {
+            throw new IllegalArgumentException("Threshold must not be negative");
+        }
+
+        return add(new Deadband(threshold));
+    }
+
+    /**
+     * Returns a filter with a stage that gives the first value of each group of values and suppresses the others,
+     * so the consumers receive the values at a lower rate. The stages before it still see all the values, so a
+     * smoothing stage before it averages the suppressed values too
+     * @param factor Number of values of each group, between 1 and 1024
+     */
+    public SensorFilter decimate(int factor)
+    {
+        if (factor < 1 || factor > MAX_WINDOW)
+        {
+            throw new IllegalArgumentException("Factor must be between 1 and " + MAX_WINDOW);
+        }
+
+        return add(new Decimation(factor));
+    }
+
+    /**
+     * Returns the number of stages of the filter
+     */
+    public int getStageCount()
+    {
+        return stages.length;
+    }
+
+    /**
+     * Returns the stages of the filter with a new history, for one pin
+     */
+    Chain newChain()
+    {
+        Stage[] copies = new Stage[stages.length];
+
+        for (int i = 0; i < stages.length; i++)
+        {
+            copies[i] = stages[i].copy();
+        }
+
+        return new Chain(copies);
+    }
+
+    private SensorFilter add(Stage stage)
+    {
+        Stage[] extended = Arrays.copyOf(stages, stages.length + 1);
+        extended[stages.length] = stage;
+        return new SensorFilter(extended);
+    }
+
+    private static void checkWindow(int window)
+    {
+        if (window < 1 || window > MAX_WINDOW)
+        {
+            throw new IllegalArgumentException("Window must be between 1 and " + MAX_WINDOW);
+        }
+    }
+
+}
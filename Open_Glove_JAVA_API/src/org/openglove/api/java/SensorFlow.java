@@ -0,0 +1,83 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+/**
+ * Interfaces of the reactive streams of sensor samples. They have the same methods and rules as the interfaces of
+ * java.util.concurrent.Flow, which is not available in Java 8, so a subscriber of Flow or of the Reactive Streams
+ * library is adapted with a class that forwards each method
+ * @author Rodrigo Monsalve Lagos
+ */
+public final class SensorFlow {
+
+    private SensorFlow()
+    {
+    }
+
+    /**
+     * Produces items for the subscribers that request them
+     * @param <T> Type of the items
+     */
+    public interface Publisher<T> {
+
+        /**
+         * Add a subscriber. Its onSubscribe is called before any other method
+         * @param subscriber Subscriber of the items
+         */
+        void subscribe(Subscriber<? super T> subscriber);
+
+    }
+
+    /**
+     * Receives the items of a publisher. The methods of one subscriber are never called at the same time
+     * @param <T> Type of the items
+     */
+    public interface Subscriber<T> {
+
+        /**
+         * Called first, with the subscription used to request the items
+         * @param subscription Subscription of this subscriber
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * Called for each item, never more times than the items requested
+         * @param item The item
+         */
+        void onNext(T item);
+
+        /**
+         * Called when the publisher fails. No other method is called after it
+         * @param throwable The cause of the failure
+         */
+        void onError(Throwable throwable);
+
+        /**
+         * Called when the publisher has no more items. No other method is called after it
+         */
+        void onComplete();
+
+    }
+
+    /**
+     * Link between a publisher and a subscriber
+     */
+    public interface Subscription {
+
+        /**
+         * Request more items
+         * @param n Number of items, which must be positive. Long.MAX_VALUE requests all the items
+         */
+        void request(long n);
+
+        /**
+         * Stop receiving items. Some items may be received after the call
+         */
+        void cancel();
+
+    }
+
+}
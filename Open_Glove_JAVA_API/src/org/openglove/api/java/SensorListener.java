@@ -0,0 +1,22 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+/**
+ * Receives the samples of the sensor pins streamed by the glove
+ * @author Rodrigo Monsalve Lagos
+ */
+public interface SensorListener {
+
+    /**
+     * Called from the event thread of the serial port for each received sample. It must return quickly
+     * @param pin Number of the pin
+     * @param value Value read from the pin
+     * @param timestampNanos Time when the sample was received, from System.nanoTime
+     */
+    void onSample(int pin, int value, long timestampNanos);
+
+}
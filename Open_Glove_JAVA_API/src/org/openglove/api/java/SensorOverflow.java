@@ -0,0 +1,30 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+/**
+ * Behaviour of a sensor subscription when samples are read for other subscribers and this one did not request
+ * them
+ * @author Rodrigo Monsalve Lagos
+ */
+public enum SensorOverflow {
+
+    /**
+     * Keep only the newest sample, which is delivered when the subscriber requests more
+     */
+    CONFLATE,
+
+    /**
+     * Keep the newest samples up to the buffer size, discarding the oldest one
+     */
+    DROP_OLDEST,
+
+    /**
+     * Keep the oldest samples up to the buffer size, discarding the new ones
+     */
+    DROP_NEWEST
+
+}
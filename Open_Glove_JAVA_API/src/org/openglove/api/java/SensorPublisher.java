@@ -0,0 +1,489 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Publishes the values of one sensor pin to many subscribers. The pin is read with the pipelined reads only while
+ * a subscriber has requested samples, and each read is shared by all the subscribers. Each sample goes to the
+ * subscribers that requested it; the others keep it according to their SensorOverflow, so a subscriber that
+ * requests slowly does not slow down the others. The samples are given to onNext from the reader thread of the
+ * pipelined reads. The publishers of a glove take turns to read, with at most one read waiting for its answer
+ * among all of them, because the answers have no pin: with reads of many pins waiting, a lost answer would give
+ * the value of each pin to the read of another one. A read without a valid answer is retried in the next turn
+ * of the pin, after the pipelined reads synchronize again. When the port is closed or a read can not be sent,
+ * the subscriptions end with onError, also while the glove reconnects, and the subscribers subscribe again to
+ * continue
+ * @author Rodrigo Monsalve Lagos
+ */
+public class SensorPublisher implements SensorFlow.Publisher<SensorSample> {
+
+    private final OpenGlove glove;
+    private final int pin;
+    private final boolean analog;
+    private final ReadTurns turns;
+    private final CopyOnWriteArrayList<PinSubscription> subscriptions = new CopyOnWriteArrayList<PinSubscription>();
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong missedReads = new AtomicLong();
+    private final AtomicLong suppressedSamples = new AtomicLong();
+    private volatile SensorFilter.Chain filter;
+    private final BiConsumer<Integer, Throwable> completion = new BiConsumer<Integer, Throwable>()
+    {
+        @Override
+        public void accept(Integer value, Throwable cause)
+        {
+            if (complete(value, cause))
+            {
+                endTurn();
+                return;
+            }
+
+            // The pipeline rejects the reads until it synchronizes again, so the turn is kept until then
+            glove.whenReadsSynchronized().whenComplete(new BiConsumer<Void, Throwable>()
+            {
+                @Override
+                public void accept(Void ignored, Throwable failure)
+                {
+                    endTurn();
+                }
+            });
+        }
+    };
+
+    /**
+     * The turns of the publishers of a glove to read their pins. The publishers with demand wait in order, and
+     * the publisher whose turn ended waits again at the end, so no pin starves the others
+     */
+    static class ReadTurns {
+
+        private final ArrayDeque<SensorPublisher> waiting = new ArrayDeque<SensorPublisher>();
+        private SensorPublisher reading;
+        private boolean starting;
+
+        /**
+         * Wait for a turn to read, unless the publisher is reading or already waiting
+         */
+        void request(SensorPublisher publisher)
+        {
+            synchronized (this)
+            {
+                if (reading == publisher || waiting.contains(publisher))
+                {
+                    return;
+                }
+
+                waiting.add(publisher);
+            }
+
+            startNext();
+        }
+
+        /**
+         * End the turn of a publisher and give it to the next one waiting
+         */
+        void release(SensorPublisher publisher)
+        {
+            synchronized (this)
+            {
+                if (reading != publisher)
+                {
+                    return;
+                }
+
+                reading = null;
+            }
+
+            startNext();
+        }
+
+        /**
+         * Start the reads of the next turns. Only one thread starts turns at a time, so a read answered before
+         * its turn is started does not start the next turn in a nested call
+         */
+        private void startNext()
+        {
+            synchronized (this)
+            {
+                if (starting)
+                {
+                    return;
+                }
+
+                starting = true;
+            }
+
+            while (true)
+            {
+                SensorPublisher next;
+
+                synchronized (this)
+                {
+                    if (reading != null || waiting.isEmpty())
+                    {
+                        starting = false;
+                        return;
+                    }
+
+                    next = waiting.poll();
+                    reading = next;
+                }
+
+                next.read();
+            }
+        }
+
+    }
+
+    /**
+     * A subscriber of the pin with the samples that it did not request yet
+     */
+    private class PinSubscription implements SensorFlow.Subscription {
+
+        final SensorFlow.Subscriber<? super SensorSample> subscriber;
+        final SensorOverflow overflow;
+        final int capacity;
+        final AtomicLong requested = new AtomicLong();
+        final AtomicInteger work = new AtomicInteger();
+        final AtomicLong dropped = new AtomicLong();
+        final ArrayDeque<SensorSample> samples = new ArrayDeque<SensorSample>();
+        volatile boolean cancelled;
+        volatile Throwable error;
+
+        PinSubscription(SensorFlow.Subscriber<? super SensorSample> subscriber, SensorOverflow overflow, int capacity)
+        {
+            this.subscriber = subscriber;
+            this.overflow = overflow;
+            this.capacity = overflow == SensorOverflow.CONFLATE ? 1 : capacity;
+        }
+
+        @Override
+        public void request(long n)
+        {
+            if (n <= 0)
+            {
+                fail(new IllegalArgumentException("The number of requested samples must be positive"));
+                return;
+            }
+
+            long current;
+
+            do
+            {
+                current = requested.get();
+            }
+            while (!requested.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+
+            drain();
+            demandChanged();
+        }
+
+        @Override
+        public void cancel()
+        {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        boolean wantsSample()
+        {
+            return !cancelled && error == null && requested.get() > 0;
+        }
+
+        void offer(SensorSample sample)
+        {
+            synchronized (samples)
+            {
+                if (samples.size() == capacity)
+                {
+                    if (overflow == SensorOverflow.DROP_NEWEST)
+                    {
+                        dropped.incrementAndGet();
+                        return;
+                    }
+
+                    samples.poll();
+                    dropped.incrementAndGet();
+                }
+
+                samples.add(sample);
+            }
+
+            drain();
+        }
+
+        void fail(Throwable cause)
+        {
+            error = cause;
+            subscriptions.remove(this);
+            drain();
+        }
+
+        /**
+         * Deliver the kept samples while they are requested. Only one thread delivers at a time, and the calls
+         * made while it delivers are repeated by that thread
+         */
+        void drain()
+        {
+            if (work.getAndIncrement() != 0)
+            {
+                return;
+            }
+
+            do
+            {
+                while (!cancelled && error == null && requested.get() > 0)
+                {
+                    SensorSample sample;
+
+                    synchronized (samples)
+                    {
+                        sample = samples.poll();
+                    }
+
+                    if (sample == null)
+                    {
+                        break;
+                    }
+
+                    if (requested.get() != Long.MAX_VALUE)
+                    {
+                        requested.decrementAndGet();
+                    }
+
+                    subscriber.onNext(sample);
+                }
+
+                if (error != null && !cancelled)
+                {
+                    cancelled = true;
+                    subscriber.onError(error);
+                }
+            }
+            while (work.decrementAndGet() != 0);
+        }
+
+    }
+
+    /**
+     * Initialize a publisher of a pin
+     * @param glove Glove whose pin is read
+     * @param pin Number of the pin
+     * @param analog True to read the analog value, false to read the digital value
+     * @param turns Turns to read shared by the publishers of the glove
+     */
+    SensorPublisher(OpenGlove glove, int pin, boolean analog, ReadTurns turns)
+    {
+        this.glove = glove;
+        this.pin = pin;
+        this.analog = analog;
+        this.turns = turns;
+    }
+
+    /**
+     * Add a subscriber that keeps only the newest sample that it did not request
+     * @param subscriber Subscriber of the samples
+     */
+    @Override
+    public void subscribe(SensorFlow.Subscriber<? super SensorSample> subscriber)
+    {
+        subscribe(subscriber, SensorOverflow.CONFLATE, 1);
+    }
+
+    /**
+     * Add a subscriber
+     * @param subscriber Subscriber of the samples
+     * @param overflow What to do with the samples read for other subscribers when this one did not request them
+     * @param bufferSize Number of samples kept for the subscriber, ignored for CONFLATE
+     */
+    public void subscribe(SensorFlow.Subscriber<? super SensorSample> subscriber, SensorOverflow overflow, int bufferSize)
+    {
+        if (bufferSize < 1)
+        {
+            throw new IllegalArgumentException("Buffer size must be positive");
+        }
+
+        PinSubscription subscription = new PinSubscription(subscriber, overflow, bufferSize);
+        subscriptions.add(subscription);
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * Filter the values of the pin once, before they are given to the subscribers. The values suppressed by the
+     * deadband or the decimation of the filter are not given, and the pin is read again while there is demand
+     * @param filter Filter of the values, or null to give the values unchanged
+     */
+    public void setFilter(SensorFilter filter)
+    {
+        this.filter = filter == null || filter.getStageCount() == 0 ? null : filter.newChain();
+    }
+
+    /**
+     * Returns the number of the pin
+     */
+    public int getPin()
+    {
+        return pin;
+    }
+
+    /**
+     * Returns the number of subscribers that did not cancel
+     */
+    public int getSubscriberCount()
+    {
+        return subscriptions.size();
+    }
+
+    /**
+     * Returns the number of reads of the pin
+     */
+    public long getReads()
+    {
+        return reads.get();
+    }
+
+    /**
+     * Returns the number of reads without a valid answer, which were retried in the next turn
+     */
+    public long getMissedReads()
+    {
+        return missedReads.get();
+    }
+
+    /**
+     * Returns the number of values suppressed by the filter
+     */
+    public long getSuppressedSamples()
+    {
+        return suppressedSamples.get();
+    }
+
+    /**
+     * Returns the number of samples discarded for the subscribers that did not request them
+     */
+    public long getDroppedSamples()
+    {
+        long dropped = 0;
+
+        for (PinSubscription subscription : subscriptions)
+        {
+            dropped += subscription.dropped.get();
+        }
+
+        return dropped;
+    }
+
+    /**
+     * Wait for a turn to read if a subscriber requested samples
+     */
+    private void demandChanged()
+    {
+        if (hasDemand())
+        {
+            turns.request(this);
+        }
+    }
+
+    /**
+     * Start a read in the turn of the publisher
+     */
+    private void read()
+    {
+        if (!hasDemand())
+        {
+            turns.release(this);
+            return;
+        }
+
+        CompletableFuture<Integer> future;
+
+        try
+        {
+            if (!glove.communication.isOpen())
+            {
+                throw new IllegalStateException("The port is closed");
+            }
+
+            future = analog ? glove.analogReadAsync(pin) : glove.digitalReadAsync(pin);
+        }
+
+        catch (RuntimeException e)
+        {
+            for (PinSubscription subscription : subscriptions)
+            {
+                subscription.fail(e);
+            }
+
+            turns.release(this);
+            return;
+        }
+
+        reads.incrementAndGet();
+        future.whenComplete(completion);
+    }
+
+    private void endTurn()
+    {
+        turns.release(this);
+        demandChanged();
+    }
+
+    /**
+     * Give the answer of a read to the subscribers
+     * @return False if the read had no valid answer
+     */
+    private boolean complete(Integer value, Throwable cause)
+    {
+        if (cause != null || value == null || value == Communication.NO_VALUE)
+        {
+            missedReads.incrementAndGet();
+            return false;
+        }
+
+        int filtered = value;
+        SensorFilter.Chain chain = filter;
+
+        if (chain != null)
+        {
+            // The reads of the pin are not concurrent, so the history of the filter is used by one thread at a time
+            filtered = chain.apply(filtered);
+
+            if (filtered == Communication.NO_VALUE)
+            {
+                suppressedSamples.incrementAndGet();
+                return true;
+            }
+        }
+
+        SensorSample sample = new SensorSample(pin, filtered, System.nanoTime());
+
+        for (PinSubscription subscription : subscriptions)
+        {
+            subscription.offer(sample);
+        }
+
+        return true;
+    }
+
+    private boolean hasDemand()
+    {
+        for (PinSubscription subscription : subscriptions)
+        {
+            if (subscription.wantsSample())
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+/**
+ * A value read from a sensor pin
+ * @author Rodrigo Monsalve Lagos
+ */
+public class SensorSample {
+
+    private final int pin;
+    private final int value;
+    private final long timestampNanos;
+
+    SensorSample(int pin, int value, long timestampNanos)
+    {
+        this.pin = pin;
+        this.value = value;
+        this.timestampNanos = timestampNanos;
+    }
+
+    /**
+     * Returns the number of the pin
+     */
+    public int getPin()
+    {
+        return pin;
+    }
+
+    /**
+     * Returns the value read from the pin
+     */
+    public int getValue()
+    {
+        return value;
+    }
+
+    /**
+     * Returns the time when the value was received, from System.nanoTime
+     */
+    public long getTimestampNanos()
+    {
+        return timestampNanos;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "pin=" + pin + ", value=" + value + ", timestampNanos=" + timestampNanos;
+    }
+
+}
@@ -0,0 +1,215 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Receives the sample lines streamed by the glove, filters each value with the filter of its pin, stores it in
+ * the ring buffer of the pin and calls the sensor listeners. The values suppressed by the filter are not stored
+ * and the listeners are not called. The other lines are given to the read pipeline
+ * @author Rodrigo Monsalve Lagos
+ */
+class SensorStream implements Communication.LineHandler {
+
+    static final byte SAMPLE_MARK = '#';
+
+    private final SampleRing[] rings = new SampleRing[SimulatedGlove.PIN_COUNT];
+    private volatile SensorFilter.Chain[] filters = new SensorFilter.Chain[SimulatedGlove.PIN_COUNT];
+    private final CopyOnWriteArrayList<SensorListener> listeners = new CopyOnWriteArrayList<SensorListener>();
+    private final int capacity;
+    private volatile int[] pins = new int[0];
+    private int[] values = new int[0];
+    private volatile ReadPipeline readPipeline;
+    private volatile long samples;
+    private volatile long invalidLines;
+    private volatile long suppressedSamples;
+
+    /**
+     * Initialize a stream
+     * @param capacity Number of samples kept for each pin
+     */
+    SensorStream(int capacity)
+    {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Set the pins of the streamed lines, in the order of their values
+     */
+    synchronized void subscribe(int[] streamPins)
+    {
+        for (int pin : streamPins)
+        {
+            if (pin < 0 || pin >= rings.length)
+            {
+                throw new IllegalArgumentException("Pins must be between 0 and " + (rings.length - 1));
+            }
+
+            if (rings[pin] == null)
+            {
+                rings[pin] = new SampleRing(capacity);
+            }
+        }
+
+        values = new int[streamPins.length];
+        pins = streamPins.clone();
+    }
+
+    /**
+     * Set the pipeline that receives the lines that are not samples
+     */
+    void setReadPipeline(ReadPipeline readPipeline)
+    {
+        this.readPipeline = readPipeline;
+    }
+
+    /**
+     * Set the filter of a pin. The history of the previous filter of the pin is discarded
+     * @param filter Filter of the values, or null to give the values unchanged
+     */
+    synchronized void setFilter(int pin, SensorFilter filter)
+    {
+        if (pin < 0 || pin >= rings.length)
+        {
+            throw new IllegalArgumentException("Pin must be between 0 and " + (rings.length - 1));
+        }
+
+        SensorFilter.Chain[] updated = filters.clone();
+        updated[pin] = filter == null || filter.getStageCount() == 0 ? null : filter.newChain();
+        filters = updated;
+    }
+
+    void addListener(SensorListener listener)
+    {
+        listeners.add(listener);
+    }
+
+    void removeListener(SensorListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void onLine(byte[] line, int length)
+    {
+        if (length == 0 || line[0] != SAMPLE_MARK)
+        {
+            ReadPipeline pipeline = readPipeline;
+
+            if (pipeline != null)
+            {
+                pipeline.answer(line, length);
+            }
+
+            return;
+        }
+
+        long timestamp = System.nanoTime();
+        int[] streamPins = pins;
+        int[] streamValues = values;
+
+        if (streamValues.length != streamPins.length || length < 2 || line[1] != MessageGenerator.SEPARATOR)
+        {
+            invalidLines++;
+            return;
+        }
+
+        int parsed = LineReader.parseInts(line, 2, length - 2, streamValues, streamPins.length);
+
+        if (parsed != streamPins.length)
+        {
+            invalidLines++;
+            return;
+        }
+
+        SensorFilter.Chain[] pinFilters = filters;
+
+        for (int i = 0; i < streamPins.length; i++)
+        {
+            int pin = streamPins[i];
+            int value = streamValues[i];
+
+            if (pinFilters[pin] != null)
+            {
+                value = pinFilters[pin].apply(value);
+
+                if (value == Communication.NO_VALUE)
+                {
+                    suppressedSamples++;
+                    continue;
+                }
+            }
+
+            rings[pin].add(value, timestamp);
+
+            for (SensorListener listener : listeners)
+            {
+                listener.onSample(pin, value, timestamp);
+            }
+        }
+
+        samples += streamPins.length;
+    }
+
+    /**
+     * Returns the last value received from a pin, or Communication.NO_VALUE if no samples were received
+     */
+    int latest(int pin)
+    {
+        SampleRing ring = ring(pin);
+        return ring == null ? Communication.NO_VALUE : ring.latest();
+    }
+
+    /**
+     * Returns the number of samples received from a pin
+     */
+    long count(int pin)
+    {
+        SampleRing ring = ring(pin);
+        return ring == null ? 0 : ring.count();
+    }
+
+    /**
+     * Copy the most recent samples of a pin, from the oldest to the newest
+     * @return The number of samples copied
+     */
+    int copy(int pin, int[] valueTarget, long[] timestampTarget)
+    {
+        SampleRing ring = ring(pin);
+        return ring == null ? 0 : ring.copy(valueTarget, timestampTarget);
+    }
+
+    /**
+     * Returns the number of samples received from all the pins
+     */
+    long samples()
+    {
+        return samples;
+    }
+
+    /**
+     * Returns the number of sample lines that could not be parsed
+     */
+    long invalidLines()
+    {
+        return invalidLines;
+    }
+
+    /**
+     * Returns the number of samples suppressed by the filters of the pins
+     */
+    long suppressedSamples()
+    {
+        return suppressedSamples;
+    }
+
+    private SampleRing ring(int pin)
+    {
+        return pin < 0 || pin >= rings.length ? null : rings[pin];
+    }
+
+}
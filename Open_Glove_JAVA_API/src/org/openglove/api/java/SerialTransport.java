@@ -0,0 +1,133 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import com.fazecast.jSerialComm.SerialPort;
+import com.fazecast.jSerialComm.SerialPortDataListener;
+import com.fazecast.jSerialComm.SerialPortEvent;
+
+/**
+ * Transport through a serial port, used to communicate with a real glove
+ * @author Rodrigo Monsalve Lagos
+ */
+public class SerialTransport implements Transport {
+
+    static final private int DEFAULT_READ_TIMEOUT_MILLIS = 200;
+
+    private final String portName;
+    private final int baudRate;
+    private final int readTimeoutMillis;
+    private SerialPort port;
+
+    /**
+     * Initialize a transport for the port and baudrate specified, without opening the port
+     * @param portName Name of the serial port
+     * @param baudRate Data rate in bits per second. Use one of these values: 300, 600, 1200, 2400, 4800, 9600, 14400, 19200, 28800, 38400, 57600, or 115200
+     */
+    public SerialTransport(String portName, int baudRate)
+    {
+        this(portName, baudRate, DEFAULT_READ_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Initialize a transport for the port and baudrate specified, without opening the port
+     * @param portName Name of the serial port
+     * @param baudRate Data rate in bits per second
+     * @param readTimeoutMillis Time that a read waits for the first byte
+     */
+    public SerialTransport(String portName, int baudRate, int readTimeoutMillis)
+    {
+        this.portName = portName;
+        this.baudRate = baudRate;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    /**
+     * Returns the name of the serial port
+     */
+    public String getPortName()
+    {
+        return portName;
+    }
+
+    /**
+     * Returns the data rate in bits per second
+     */
+    @Override
+    public int getBaudRate()
+    {
+        return baudRate;
+    }
+
+    @Override
+    public boolean open()
+    {
+        port = SerialPort.getCommPort(portName);
+        port.setBaudRate(baudRate);
+        boolean portOpen = port.openPort();
+        port.setComPortTimeouts(SerialPort.TIMEOUT_READ_SEMI_BLOCKING, readTimeoutMillis, 0);
+        return portOpen;
+    }
+
+    @Override
+    public void close()
+    {
+        if (port != null)
+        {
+            port.closePort();
+        }
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return port != null && port.isOpen();
+    }
+
+    @Override
+    public int write(byte[] data, int length)
+    {
+        return port.writeBytes(data, length);
+    }
+
+    @Override
+    public int bytesAvailable()
+    {
+        return port.bytesAvailable();
+    }
+
+    @Override
+    public int read(byte[] buffer, int length)
+    {
+        return port.readBytes(buffer, length);
+    }
+
+    @Override
+    public boolean setDataListener(final Runnable listener)
+    {
+        return port.addDataListener(new SerialPortDataListener()
+        {
+            @Override
+            public int getListeningEvents()
+            {
+                return SerialPort.LISTENING_EVENT_DATA_AVAILABLE;
+            }
+
+            @Override
+            public void serialEvent(SerialPortEvent event)
+            {
+                listener.run();
+            }
+        });
+    }
+
+    @Override
+    public void removeDataListener()
+    {
+        port.removeDataListener();
+    }
+
+}
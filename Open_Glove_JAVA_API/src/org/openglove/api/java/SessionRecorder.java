@@ -0,0 +1,213 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the messages sent to the glove and the lines received from it in a file, to reproduce a session with
+ * SessionReplay. The file is mapped in memory with its whole capacity when the recorder is created, so a record
+ * is a copy to memory and the operating system writes the pages to the disk in the background. Each thread
+ * reserves the place of its record with an atomic counter, so the writes of the messages do not wait for the
+ * reader thread. When the file is full the records are counted as dropped.
+ * <p>
+ * The file starts with a header of 24 bytes: the magic number 0x4F475231, the format version, the time of the
+ * start in milliseconds since the epoch and the time of the start of System.nanoTime. Each record is the length
+ * of the data, the direction, the nanoseconds since the start and the data. The length is stored negative when
+ * the place is reserved and positive after the data, so a record whose write did not finish is skipped, and a
+ * length 0 ends the recording. Closing the recorder waits for the records being written
+ * @author Rodrigo Monsalve Lagos
+ */
+public class SessionRecorder {
+
+    /**
+     * Direction of the messages sent to the glove, in ASCII, before the translation to binary frames
+     */
+    public static final byte OUTBOUND = 1;
+
+    /**
+     * Direction of the lines received from the glove, without the next line characters
+     */
+    public static final byte INBOUND = 2;
+
+    static final int MAGIC = 0x4F475231;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_LENGTH = 24;
+    static final int RECORD_HEADER_LENGTH = 13;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final long startNanos;
+    private final AtomicLong position = new AtomicLong(HEADER_LENGTH);
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong droppedRecords = new AtomicLong();
+    private final AtomicInteger writers = new AtomicInteger();
+    private final ThreadLocal<ByteBuffer> views = new ThreadLocal<ByteBuffer>();
+    private volatile boolean closed;
+
+    /**
+     * Create a recording file, replacing the file if it exists, and map it in memory
+     * @param fileName Name of the file
+     * @param capacityBytes Size of the file, which limits the length of the recording
+     * @throws IOException If the file can not be created or mapped
+     */
+    public SessionRecorder(String fileName, int capacityBytes) throws IOException
+    {
+        if (capacityBytes <= HEADER_LENGTH)
+        {
+            throw new IllegalArgumentException("Capacity must be greater than " + HEADER_LENGTH + " bytes");
+        }
+
+        file = new RandomAccessFile(fileName, "rw");
+
+        try
+        {
+            file.setLength(0);
+            file.setLength(capacityBytes);
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacityBytes);
+        }
+
+        catch (IOException e)
+        {
+            file.close();
+            throw e;
+        }
+
+        capacity = capacityBytes;
+        startNanos = System.nanoTime();
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, FORMAT_VERSION);
+        buffer.putLong(8, System.currentTimeMillis());
+        buffer.putLong(16, startNanos);
+    }
+
+    /**
+     * Append a record with the current time. Called by the write path and the reader thread
+     * @param direction OUTBOUND or INBOUND
+     * @param data Array with the bytes
+     * @param offset Position of the first byte
+     * @param length Number of bytes
+     */
+    void record(byte direction, byte[] data, int offset, int length)
+    {
+        // The writer is counted before the check, so close waits for it or it sees the recorder closed
+        writers.incrementAndGet();
+
+        try
+        {
+            if (!closed && length > 0)
+            {
+                write(direction, data, offset, length);
+            }
+        }
+
+        finally
+        {
+            writers.decrementAndGet();
+        }
+    }
+
+    private void write(byte direction, byte[] data, int offset, int length)
+    {
+        long time = System.nanoTime() - startNanos;
+        int recordLength = RECORD_HEADER_LENGTH + length;
+        long start = position.getAndAdd(recordLength);
+
+        if (start + recordLength > capacity)
+        {
+            droppedRecords.incrementAndGet();
+            return;
+        }
+
+        ByteBuffer view = views.get();
+
+        if (view == null)
+        {
+            // Each thread copies its records with its own position in the mapped pages
+            view = buffer.duplicate();
+            views.set(view);
+        }
+
+        int index = (int) start;
+        view.putInt(index, -length);
+        view.position(index + 4);
+        view.put(direction);
+        view.putLong(time);
+        view.put(data, offset, length);
+        view.putInt(index, length);
+        records.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of records written
+     */
+    public long getRecordCount()
+    {
+        return records.get();
+    }
+
+    /**
+     * Returns the number of records that did not fit in the file
+     */
+    public long getDroppedRecords()
+    {
+        return droppedRecords.get();
+    }
+
+    /**
+     * Returns the number of bytes of the file used by the header and the records
+     */
+    public long getLength()
+    {
+        return Math.min(position.get(), capacity);
+    }
+
+    /**
+     * Stop recording and write the recording to the disk. The records being written are finished first
+     */
+    public void close()
+    {
+        if (closed)
+        {
+            return;
+        }
+
+        closed = true;
+
+        while (writers.get() != 0)
+        {
+            Thread.yield();
+        }
+
+        buffer.force();
+
+        try
+        {
+            file.close();
+        }
+
+        catch (IOException e)
+        {
+            // The mapped pages are written by the operating system even if the file can not be closed
+        }
+    }
+
+    /**
+     * Returns true if the recorder was closed
+     */
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+}
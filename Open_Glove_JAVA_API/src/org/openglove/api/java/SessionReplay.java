@@ -0,0 +1,225 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends the messages of a recording made by SessionRecorder to a glove again, with the same time between them
+ * or faster. The messages go through OpenGlove, so the asynchronous writer, the binary frames and the flow
+ * control of the glove apply like to the messages of an application. Each line received in the recording is
+ * read from the glove at the same place of the sequence, so the requests wait for their answers like in the
+ * recorded session. Use it with a SimulatedTransport to measure changes of the API with the traffic of a real
+ * session
+ * @author Rodrigo Monsalve Lagos
+ */
+public class SessionReplay {
+
+    private final byte[] directions;
+    private final long[] times;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final byte[] data;
+    private final int recordCount;
+    private final int maxLength;
+    private long sentMessages;
+    private long receivedLines;
+    private long missingLines;
+
+    /**
+     * Load a recording
+     * @param fileName Name of the file written by SessionRecorder
+     * @throws IOException If the file can not be read or is not a recording
+     */
+    public SessionReplay(String fileName) throws IOException
+    {
+        MappedByteBuffer buffer;
+
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r"))
+        {
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        }
+
+        if (buffer.capacity() < SessionRecorder.HEADER_LENGTH || buffer.getInt(0) != SessionRecorder.MAGIC)
+        {
+            throw new IOException("The file is not an OpenGlove recording");
+        }
+
+        if (buffer.getInt(4) != SessionRecorder.FORMAT_VERSION)
+        {
+            throw new IOException("Unsupported recording version " + buffer.getInt(4));
+        }
+
+        int capacity = 64;
+        byte[] recordDirections = new byte[capacity];
+        long[] recordTimes = new long[capacity];
+        int[] recordOffsets = new int[capacity];
+        int[] recordLengths = new int[capacity];
+        byte[] recordData = new byte[buffer.capacity()];
+        int count = 0;
+        int dataLength = 0;
+        int longest = 0;
+        int position = SessionRecorder.HEADER_LENGTH;
+
+        while (position + SessionRecorder.RECORD_HEADER_LENGTH <= buffer.capacity())
+        {
+            int length = buffer.getInt(position);
+
+            if (length < 0 && length >= position + SessionRecorder.RECORD_HEADER_LENGTH - buffer.capacity())
+            {
+                // The place was reserved but its record was not finished
+                position += SessionRecorder.RECORD_HEADER_LENGTH - length;
+                continue;
+            }
+
+            if (length <= 0 || position + SessionRecorder.RECORD_HEADER_LENGTH + length > buffer.capacity())
+            {
+                break;
+            }
+
+            if (count == capacity)
+            {
+                capacity *= 2;
+                recordDirections = Arrays.copyOf(recordDirections, capacity);
+                recordTimes = Arrays.copyOf(recordTimes, capacity);
+                recordOffsets = Arrays.copyOf(recordOffsets, capacity);
+                recordLengths = Arrays.copyOf(recordLengths, capacity);
+            }
+
+            recordDirections[count] = buffer.get(position + 4);
+            recordTimes[count] = buffer.getLong(position + 5);
+            recordOffsets[count] = dataLength;
+            recordLengths[count] = length;
+
+            for (int i = 0; i < length; i++)
+            {
+                recordData[dataLength++] = buffer.get(position + SessionRecorder.RECORD_HEADER_LENGTH + i);
+            }
+
+            longest = Math.max(longest, length);
+            position += SessionRecorder.RECORD_HEADER_LENGTH + length;
+            count++;
+        }
+
+        directions = recordDirections;
+        times = recordTimes;
+        offsets = recordOffsets;
+        lengths = recordLengths;
+        data = Arrays.copyOf(recordData, dataLength);
+        recordCount = count;
+        maxLength = longest;
+    }
+
+    /**
+     * Returns the number of records of the recording
+     */
+    public int getRecordCount()
+    {
+        return recordCount;
+    }
+
+    /**
+     * Returns the time between the first and the last record
+     */
+    public long getDurationNanos()
+    {
+        return recordCount == 0 ? 0 : times[recordCount - 1] - times[0];
+    }
+
+    /**
+     * Send the recorded messages to a glove, waiting the recorded time between them divided by the speed. The
+     * pipelined reads of the glove must be disabled, because the answers are read by the replay
+     * @param glove Glove with an opened transport, usually a SimulatedTransport
+     * @param speed 1 for the recorded times, 2 for the double of speed, or Double.POSITIVE_INFINITY to send the
+     * messages without waiting
+     * @return The time that the replay took, in nanoseconds
+     */
+    public long replay(OpenGlove glove, double speed)
+    {
+        if (!(speed > 0))
+        {
+            throw new IllegalArgumentException("Speed must be positive");
+        }
+
+        if (glove.hasReadPipeline())
+        {
+            throw new IllegalStateException("The answers can not be read by the replay while the pipelined reads are enabled");
+        }
+
+        Communication communication = glove.communication;
+        byte[] message = new byte[maxLength];
+        long start = System.nanoTime();
+        sentMessages = 0;
+        receivedLines = 0;
+        missingLines = 0;
+
+        for (int i = 0; i < recordCount; i++)
+        {
+            long due = start + (long) ((times[i] - times[0]) / speed);
+            long now;
+
+            while ((now = System.nanoTime()) - due < 0)
+            {
+                LockSupport.parkNanos(this, due - now);
+            }
+
+            if (directions[i] == SessionRecorder.OUTBOUND)
+            {
+                System.arraycopy(data, offsets[i], message, 0, lengths[i]);
+                glove.send(message, lengths[i]);
+                sentMessages++;
+            }
+
+            else if (communication.isListening())
+            {
+                // The lines are taken by the data listener, like the sensor stream
+                continue;
+            }
+
+            else if (communication.skipLine())
+            {
+                receivedLines++;
+            }
+
+            else
+            {
+                missingLines++;
+            }
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Returns the number of writes sent by the last replay
+     */
+    public long getSentMessages()
+    {
+        return sentMessages;
+    }
+
+    /**
+     * Returns the number of recorded lines received from the glove in the last replay
+     */
+    public long getReceivedLines()
+    {
+        return receivedLines;
+    }
+
+    /**
+     * Returns the number of recorded lines that the glove did not send before the read timeout in the last replay
+     */
+    public long getMissingLines()
+    {
+        return missingLines;
+    }
+
+}
@@ -0,0 +1,421 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.Arrays;
+
+/**
+ * Simulates the control software of an OpenGlove device. Receives the bytes of the messages of the OpenGlove
+ * communication protocol, keeps the state of the pins and answers the reads deterministically, so the API can
+ * be used without a glove. Connect it to the API with a SimulatedTransport
+ * @author Rodrigo Monsalve Lagos
+ */
+public class SimulatedGlove {
+
+    /**
+     * Number of pins of the simulated device, from 0 to PIN_COUNT - 1
+     */
+    public static final int PIN_COUNT = 256;
+
+    /**
+     * Pin mode of the pins that were not initialized
+     */
+    public static final int MODE_NONE = 0;
+
+    /**
+     * Pin mode of the pins initialized like motors
+     */
+    public static final int MODE_MOTOR = 3;
+
+    static final private int MAX_STREAM_BACKLOG = 64;
+
+    private final int[] modes = new int[PIN_COUNT];
+    private final int[] outputs = new int[PIN_COUNT];
+    private final int[] analogInputs = new int[PIN_COUNT];
+    private final int[] digitalInputs = new int[PIN_COUNT];
+    private final MessageParser parser = new MessageParser();
+    private byte[] output = new byte[256];
+    private int outputStart;
+    private int outputEnd;
+    private long messageCount;
+    private int[] streamPins = new int[0];
+    private long streamPeriodNanos;
+    private long nextSampleNanos;
+    private boolean binarySupported = true;
+
+    /**
+     * Initialize a simulated device. The analog input of each pin is (pin * 37) % 1024 and the digital input is pin % 2 until they are changed
+     */
+    public SimulatedGlove()
+    {
+        for (int pin = 0; pin < PIN_COUNT; pin++)
+        {
+            analogInputs[pin] = (pin * 37) % 1024;
+            digitalInputs[pin] = pin % 2;
+        }
+    }
+
+    /**
+     * Receive bytes sent by the API. The messages are executed when their terminal character is received
+     * @param data Array with the received bytes
+     * @param offset Position of the first byte
+     * @param length Number of bytes received
+     */
+    public synchronized void receive(byte[] data, int offset, int length)
+    {
+        for (int i = offset; i < offset + length; i++)
+        {
+            if (parser.receive(data[i]))
+            {
+                messageCount++;
+                execute();
+            }
+        }
+    }
+
+    /**
+     * Returns true if the binary frames were negotiated
+     */
+    synchronized boolean isBinary()
+    {
+        return parser.isBinary();
+    }
+
+    /**
+     * Returns the number of answer bytes waiting to be read
+     */
+    public synchronized int available()
+    {
+        stream();
+        return outputEnd - outputStart;
+    }
+
+    /**
+     * Read answer bytes produced by the device
+     * @param buffer Array where the bytes are copied
+     * @param offset Position of the array where the bytes are copied
+     * @param length Maximum number of bytes to read
+     * @return The number of bytes read
+     */
+    public synchronized int read(byte[] buffer, int offset, int length)
+    {
+        stream();
+        int count = Math.min(length, outputEnd - outputStart);
+        System.arraycopy(output, outputStart, buffer, offset, count);
+        outputStart += count;
+        return count;
+    }
+
+    /**
+     * Set the value answered by the analog reads of a pin
+     * @param pin Number of the pin
+     * @param value Value between 0 and 1023
+     */
+    public synchronized void setAnalogInput(int pin, int value)
+    {
+        analogInputs[pin] = value;
+    }
+
+    /**
+     * Set the value answered by the digital reads of a pin
+     * @param pin Number of the pin
+     * @param value 1 for "HIGH" or 0 for "LOW"
+     */
+    public synchronized void setDigitalInput(int pin, int value)
+    {
+        digitalInputs[pin] = value;
+    }
+
+    /**
+     * Returns the last value written to a pin, the intensity of a motor or the value of an analog or digital write
+     * @param pin Number of the pin
+     */
+    public synchronized int getOutput(int pin)
+    {
+        return outputs[pin];
+    }
+
+    /**
+     * Returns the mode of a pin: MODE_NONE, MessageGenerator.MODE_INPUT, MessageGenerator.MODE_OUTPUT or MODE_MOTOR
+     * @param pin Number of the pin
+     */
+    public synchronized int getMode(int pin)
+    {
+        return modes[pin];
+    }
+
+    /**
+     * Returns the number of complete messages received
+     */
+    public synchronized long getMessageCount()
+    {
+        return messageCount;
+    }
+
+    /**
+     * Simulate a firmware with or without the binary frames. A firmware without them does not answer the
+     * "protocol" message, like the firmware before the versions, so the API keeps using ASCII
+     * @param supported True to accept the protocol version 1
+     */
+    public synchronized void setBinarySupported(boolean supported)
+    {
+        binarySupported = supported;
+    }
+
+    /**
+     * Reset the device like when it is powered again: the pins lose their modes and outputs, the stream stops, the
+     * protocol goes back to ASCII and the answers not read are lost. The inputs of the pins and the message count are kept
+     */
+    public synchronized void reset()
+    {
+        parser.setBinary(false);
+        Arrays.fill(modes, MODE_NONE);
+        Arrays.fill(outputs, 0);
+        streamPins = new int[0];
+        outputStart = 0;
+        outputEnd = 0;
+    }
+
+    /**
+     * Returns true if the values of pins are being streamed
+     */
+    synchronized boolean isStreaming()
+    {
+        return streamPins.length > 0;
+    }
+
+    /**
+     * Returns the time when the next streamed sample is due, from System.nanoTime
+     */
+    synchronized long nextSampleNanos()
+    {
+        return nextSampleNanos;
+    }
+
+    private void execute()
+    {
+        int function = parser.fields()[0];
+
+        switch (function)
+        {
+            case MessageGenerator.INITIALIZE_MOTOR_FUNCTION_NUMBER:
+            case MessageGenerator.INITIALIZE_MOTOR_TIME_TEST_FUNCTION_NUMBER:
+                setModes(MODE_MOTOR);
+                break;
+
+            case MessageGenerator.INITIALIZE_DIGITAL_INPUT_FUNCTION_NUMBER:
+                setModes(MessageGenerator.MODE_INPUT);
+                break;
+
+            case MessageGenerator.ANALOG_READ_FUNCTION_NUMBER:
+                answer(analogInputs, 1, 1);
+                break;
+
+            case MessageGenerator.DIGITAL_READ_FUNCTION_NUMBER:
+                answer(digitalInputs, 1, 1);
+                break;
+
+            case MessageGenerator.PIN_MODE_FUNCTION_NUMBER:
+                setPairs(modes);
+                break;
+
+            case MessageGenerator.ACTIVATE_MOTOR_FUNCTION_NUMBER:
+            case MessageGenerator.DIGITAL_WRITE_FUNCTION_NUMBER:
+            case MessageGenerator.ANALOG_WRITE_FUNCTION_NUMBER:
+                setPairs(outputs);
+                break;
+
+            case MessageGenerator.ANALOG_READ_MULTIPLE_FUNCTION_NUMBER:
+                answer(analogInputs, 2, parser.count(1));
+                break;
+
+            case MessageGenerator.DIGITAL_READ_MULTIPLE_FUNCTION_NUMBER:
+                answer(digitalInputs, 2, parser.count(1));
+                break;
+
+            case MessageGenerator.START_STREAM_FUNCTION_NUMBER:
+                startStream();
+                break;
+
+            case MessageGenerator.STOP_STREAM_FUNCTION_NUMBER:
+                streamPins = new int[0];
+                break;
+
+            case MessageGenerator.PROTOCOL_FUNCTION_NUMBER:
+                negotiate();
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    private void negotiate()
+    {
+        if (!binarySupported || parser.fieldCount() < 2)
+        {
+            return;
+        }
+
+        int version = Math.max(0, Math.min(parser.fields()[1], BinaryFraming.VERSION));
+        parser.setBinary(version == BinaryFraming.VERSION);
+        putInt(version);
+        put((byte) '\r');
+        put((byte) '\n');
+    }
+
+    private void startStream()
+    {
+        int[] fields = parser.fields();
+        int fieldCount = parser.fieldCount();
+
+        if (fieldCount < 3 || fields[1] < 1)
+        {
+            return;
+        }
+
+        int count = Math.max(0, Math.min(fields[2], fieldCount - 3));
+        streamPins = Arrays.copyOfRange(fields, 3, 3 + count);
+        streamPeriodNanos = 1000000000L / fields[1];
+        nextSampleNanos = System.nanoTime();
+    }
+
+    /**
+     * Add the sample lines due since the last call. A reader that falls behind loses the oldest samples, like the serial buffer of a device
+     */
+    private void stream()
+    {
+        if (streamPins.length == 0)
+        {
+            return;
+        }
+
+        long now = System.nanoTime();
+        long due = (now - nextSampleNanos) / streamPeriodNanos + 1;
+
+        if (due <= 0)
+        {
+            return;
+        }
+
+        if (due > MAX_STREAM_BACKLOG)
+        {
+            nextSampleNanos += (due - MAX_STREAM_BACKLOG) * streamPeriodNanos;
+            due = MAX_STREAM_BACKLOG;
+        }
+
+        for (long i = 0; i < due; i++)
+        {
+            put(SensorStream.SAMPLE_MARK);
+
+            for (int pin : streamPins)
+            {
+                put(MessageGenerator.SEPARATOR);
+                putInt(validPin(pin) ? analogInputs[pin] : 0);
+            }
+
+            put((byte) '\r');
+            put((byte) '\n');
+        }
+
+        nextSampleNanos += due * streamPeriodNanos;
+    }
+
+    private void setModes(int mode)
+    {
+        int[] fields = parser.fields();
+        int count = parser.count(1);
+
+        for (int i = 0; i < count; i++)
+        {
+            int pin = fields[2 + i];
+
+            if (validPin(pin))
+            {
+                modes[pin] = mode;
+                outputs[pin] = 0;
+            }
+        }
+    }
+
+    private void setPairs(int[] target)
+    {
+        int[] fields = parser.fields();
+        int count = parser.count(2);
+
+        for (int i = 0; i < count; i++)
+        {
+            int pin = fields[2 + i * 2];
+
+            if (validPin(pin))
+            {
+                target[pin] = fields[3 + i * 2];
+            }
+        }
+    }
+
+    private void answer(int[] inputs, int first, int count)
+    {
+        int[] fields = parser.fields();
+
+        if (first + count > parser.fieldCount())
+        {
+            return;
+        }
+
+        for (int i = 0; i < count; i++)
+        {
+            int pin = fields[first + i];
+
+            if (i > 0)
+            {
+                put(MessageGenerator.SEPARATOR);
+            }
+
+            putInt(validPin(pin) ? inputs[pin] : 0);
+        }
+
+        put((byte) '\r');
+        put((byte) '\n');
+    }
+
+    private static boolean validPin(int pin)
+    {
+        return pin >= 0 && pin < PIN_COUNT;
+    }
+
+    private void putInt(int value)
+    {
+        ensureOutput(MessageGenerator.MAX_FIELD_LENGTH);
+        outputEnd = MessageGenerator.putInt(value, output, outputEnd);
+    }
+
+    private void put(byte value)
+    {
+        ensureOutput(1);
+        output[outputEnd++] = value;
+    }
+
+    private void ensureOutput(int length)
+    {
+        if (outputEnd + length <= output.length)
+        {
+            return;
+        }
+
+        int pending = outputEnd - outputStart;
+
+        if (pending + length > output.length)
+        {
+            output = Arrays.copyOf(output, Math.max(output.length * 2, pending + length));
+        }
+
+        System.arraycopy(output, outputStart, output, 0, pending);
+        outputStart = 0;
+        outputEnd = pending;
+    }
+
+}
@@ -0,0 +1,597 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Transport connected to a SimulatedGlove in the same process, so the API can be measured without a glove. Each
+ * byte takes the time of ten bits at the baudrate in each direction, and each message is executed by the
+ * simulated firmware a processing time after its terminal character, or the last byte of its frame, is received, one message at a time. A
+ * thread executes the messages and calls the data listener at the simulated times, so the glove runs even when
+ * the API is not reading
+ * @author Rodrigo Monsalve Lagos
+ */
+public class SimulatedTransport implements Transport {
+
+    /**
+     * Baudrate used when none is specified
+     */
+    public static final int DEFAULT_BAUD_RATE = 115200;
+
+    /**
+     * Processing time of each message used when none is specified
+     */
+    public static final long DEFAULT_PROCESSING_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    static final private int BITS_PER_BYTE = 10;
+    static final private int TRANSMIT_BUFFER_SIZE = 4096;
+    static final private int DEVICE_BUFFER_SIZE = 64;
+    static final private long READ_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    static final private long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * Bytes of one direction of the link, each one with the time when it is received
+     */
+    static class TimedBytes {
+
+        private byte[] data = new byte[256];
+        private long[] times = new long[256];
+        private long head;
+        private long tail;
+
+        void add(byte value, long time)
+        {
+            if (tail - head == data.length)
+            {
+                grow();
+            }
+
+            int index = (int) (tail & (data.length - 1));
+            data[index] = value;
+            times[index] = time;
+            tail++;
+        }
+
+        int size()
+        {
+            return (int) (tail - head);
+        }
+
+        long time(int position)
+        {
+            return times[(int) ((head + position) & (data.length - 1))];
+        }
+
+        /**
+         * Returns the position of the last byte of the first message, or -1 if no message was completed
+         * @param frames True if the glove accepts binary frames, whose length is in their second byte
+         */
+        int messageEnd(boolean frames)
+        {
+            long i = head;
+
+            while (i < tail)
+            {
+                byte value = data[(int) (i & (data.length - 1))];
+
+                if (frames && value == BinaryFraming.SYNC)
+                {
+                    if (tail - i < 2)
+                    {
+                        return -1;
+                    }
+
+                    long end = i + 3 + (data[(int) ((i + 1) & (data.length - 1))] & 0xFF);
+                    return end < tail ? (int) (end - head) : -1;
+                }
+
+                if (value == MessageGenerator.TERMINAL)
+                {
+                    return (int) (i - head);
+                }
+
+                i++;
+            }
+
+            return -1;
+        }
+
+        boolean ready(long now)
+        {
+            return tail > head && times[(int) (head & (data.length - 1))] - now <= 0;
+        }
+
+        /**
+         * Remove the first bytes received before a time
+         * @return The number of bytes copied
+         */
+        int take(byte[] buffer, int length, long now)
+        {
+            int count = 0;
+
+            while (count < length && ready(now))
+            {
+                buffer[count++] = data[(int) (head & (data.length - 1))];
+                head++;
+            }
+
+            return count;
+        }
+
+        void clear()
+        {
+            head = tail;
+        }
+
+        private void grow()
+        {
+            byte[] newData = new byte[data.length * 2];
+            long[] newTimes = new long[times.length * 2];
+
+            for (long i = head; i < tail; i++)
+            {
+                newData[(int) (i & (newData.length - 1))] = data[(int) (i & (data.length - 1))];
+                newTimes[(int) (i & (newTimes.length - 1))] = times[(int) (i & (times.length - 1))];
+            }
+
+            data = newData;
+            times = newTimes;
+        }
+
+    }
+
+    private final SimulatedGlove glove;
+    private final int baudRate;
+    private final long byteNanos;
+    private final long processingNanos;
+    private final TimedBytes uplink = new TimedBytes();
+    private final TimedBytes downlink = new TimedBytes();
+    private final byte[] scratch = new byte[256];
+    private final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<Thread>();
+    private long uplinkFree;
+    private long downlinkFree;
+    private long firmwareFree;
+    private volatile boolean open;
+    private volatile boolean connected = true;
+    private final Object listenerLock = new Object();
+    private volatile Runnable dataListener;
+    private Thread gloveThread;
+
+    /**
+     * Initialize a transport connected to a new simulated glove, with the default baudrate and processing time
+     */
+    public SimulatedTransport()
+    {
+        this(new SimulatedGlove(), DEFAULT_BAUD_RATE, DEFAULT_PROCESSING_NANOS);
+    }
+
+    /**
+     * Initialize a transport connected to a new simulated glove
+     * @param baudRate Data rate in bits per second
+     * @param processingNanos Time that the firmware takes to execute each message
+     */
+    public SimulatedTransport(int baudRate, long processingNanos)
+    {
+        this(new SimulatedGlove(), baudRate, processingNanos);
+    }
+
+    /**
+     * Initialize a transport connected to a simulated glove
+     * @param glove Simulated glove that receives the messages
+     * @param baudRate Data rate in bits per second
+     * @param processingNanos Time that the firmware takes to execute each message
+     */
+    public SimulatedTransport(SimulatedGlove glove, int baudRate, long processingNanos)
+    {
+        if (baudRate <= 0)
+        {
+            throw new IllegalArgumentException("Baudrate must be positive");
+        }
+
+        if (processingNanos < 0)
+        {
+            throw new IllegalArgumentException("Processing time can not be negative");
+        }
+
+        this.glove = glove;
+        this.baudRate = baudRate;
+        this.byteNanos = TimeUnit.SECONDS.toNanos(BITS_PER_BYTE) / baudRate;
+        this.processingNanos = processingNanos;
+    }
+
+    /**
+     * Returns the data rate in bits per second
+     */
+    @Override
+    public int getBaudRate()
+    {
+        return baudRate;
+    }
+
+    /**
+     * Returns the simulated glove connected to this transport
+     */
+    public SimulatedGlove getGlove()
+    {
+        return glove;
+    }
+
+    /**
+     * Simulate that the cable or the adapter of the glove is disconnected or connected again. While it is
+     * disconnected the transport stays open, like a serial port whose device was removed, but the writes and
+     * reads fail, the bytes in transit are lost and the transport can not be opened again. The glove is reset,
+     * like a device that lost its power, so its pins must be configured again when it is connected
+     * @param connected False to disconnect the glove, true to connect it again
+     */
+    public void setConnected(boolean connected)
+    {
+        synchronized (this)
+        {
+            if (this.connected == connected)
+            {
+                return;
+            }
+
+            this.connected = connected;
+
+            if (!connected)
+            {
+                uplink.clear();
+                downlink.clear();
+                glove.reset();
+            }
+        }
+
+        wakeWaiters();
+    }
+
+    /**
+     * Returns false while the glove is disconnected
+     */
+    public boolean isConnected()
+    {
+        return connected;
+    }
+
+    @Override
+    public synchronized boolean open()
+    {
+        if (!connected)
+        {
+            return false;
+        }
+
+        if (open)
+        {
+            return true;
+        }
+
+        long now = System.nanoTime();
+        uplink.clear();
+        downlink.clear();
+        uplinkFree = now;
+        downlinkFree = now;
+        firmwareFree = now;
+        open = true;
+        gloveThread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                runGlove();
+            }
+        }, "OpenGlove simulated glove");
+        gloveThread.setDaemon(true);
+        gloveThread.start();
+        return true;
+    }
+
+    @Override
+    public void close()
+    {
+        Thread thread;
+
+        synchronized (this)
+        {
+            open = false;
+            dataListener = null;
+            thread = gloveThread;
+            gloveThread = null;
+        }
+
+        wakeWaiters();
+
+        if (thread != null && thread != Thread.currentThread())
+        {
+            LockSupport.unpark(thread);
+
+            try
+            {
+                thread.join();
+            }
+
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return open;
+    }
+
+    @Override
+    public int write(byte[] data, int length)
+    {
+        long transmitted;
+
+        synchronized (this)
+        {
+            if (!open || !connected)
+            {
+                return -1;
+            }
+
+            long now = System.nanoTime();
+            advance(now);
+
+            for (int i = 0; i < length; i++)
+            {
+                uplinkFree = Math.max(uplinkFree, now) + byteNanos;
+                uplink.add(data[i], uplinkFree);
+            }
+
+            transmitted = uplinkFree - TRANSMIT_BUFFER_SIZE * byteNanos;
+        }
+
+        wakeWaiters();
+        long remaining = transmitted - System.nanoTime();
+
+        while (remaining > 0)
+        {
+            LockSupport.parkNanos(this, remaining);
+            remaining = transmitted - System.nanoTime();
+        }
+
+        return length;
+    }
+
+    @Override
+    public synchronized int bytesAvailable()
+    {
+        long now = System.nanoTime();
+        advance(now);
+        int count = 0;
+
+        while (count < downlink.size() && downlink.time(count) - now <= 0)
+        {
+            count++;
+        }
+
+        return count;
+    }
+
+    @Override
+    public int read(byte[] buffer, int length)
+    {
+        if (!awaitBytes(System.nanoTime() + READ_TIMEOUT_NANOS))
+        {
+            return open && connected ? 0 : -1;
+        }
+
+        synchronized (this)
+        {
+            return downlink.take(buffer, length, System.nanoTime());
+        }
+    }
+
+    @Override
+    public synchronized boolean setDataListener(Runnable listener)
+    {
+        if (!open || dataListener != null)
+        {
+            return false;
+        }
+
+        dataListener = listener;
+        LockSupport.unpark(gloveThread);
+        return true;
+    }
+
+    @Override
+    public void removeDataListener()
+    {
+        dataListener = null;
+
+        synchronized (listenerLock)
+        {
+            // Waits for the listener call in progress
+        }
+    }
+
+    /**
+     * Execute the messages at their simulated times and call the data listener while there are bytes to read
+     */
+    private void runGlove()
+    {
+        Thread current = Thread.currentThread();
+
+        while (open)
+        {
+            long wake;
+            boolean ready;
+
+            synchronized (this)
+            {
+                long now = System.nanoTime();
+                advance(now);
+                ready = downlink.ready(now);
+                wake = nextEvent(now, now + IDLE_PARK_NANOS);
+
+                if (!ready || dataListener == null)
+                {
+                    waiters.add(current);
+                }
+            }
+
+            Runnable listener = dataListener;
+
+            if (ready && listener != null)
+            {
+                synchronized (listenerLock)
+                {
+                    if (dataListener == listener)
+                    {
+                        listener.run();
+                    }
+                }
+
+                continue;
+            }
+
+            LockSupport.parkNanos(this, wake - System.nanoTime());
+            waiters.remove(current);
+        }
+    }
+
+    /**
+     * Wait until received bytes can be read
+     * @param deadline Time when the wait ends, from System.nanoTime
+     * @return True if there are bytes to read, false if the deadline expired or the transport was closed
+     */
+    private boolean awaitBytes(long deadline)
+    {
+        Thread current = Thread.currentThread();
+
+        while (true)
+        {
+            long wake;
+
+            synchronized (this)
+            {
+                if (!open || !connected)
+                {
+                    return false;
+                }
+
+                long now = System.nanoTime();
+                advance(now);
+
+                if (downlink.ready(now))
+                {
+                    return true;
+                }
+
+                if (now - deadline >= 0)
+                {
+                    return false;
+                }
+
+                wake = nextEvent(now, deadline);
+                waiters.add(current);
+            }
+
+            LockSupport.parkNanos(this, wake - System.nanoTime());
+            waiters.remove(current);
+        }
+    }
+
+    private void wakeWaiters()
+    {
+        for (Thread waiter : waiters)
+        {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    /**
+     * Execute the messages whose processing ended before a time and transmit the answers of the glove
+     */
+    private void advance(long now)
+    {
+        int terminal;
+
+        while ((terminal = uplink.messageEnd(glove.isBinary())) >= 0)
+        {
+            long executed = Math.max(uplink.time(terminal), firmwareFree) + processingNanos;
+
+            if (executed - now > 0)
+            {
+                break;
+            }
+
+            int remaining = terminal + 1;
+
+            while (remaining > 0)
+            {
+                int count = uplink.take(scratch, Math.min(remaining, scratch.length), now);
+                glove.receive(scratch, 0, count);
+                remaining -= count;
+            }
+
+            firmwareFree = executed;
+            transmit(executed);
+        }
+
+        if (downlinkFree - now < DEVICE_BUFFER_SIZE * byteNanos)
+        {
+            transmit(now);
+        }
+    }
+
+    private void transmit(long start)
+    {
+        int count;
+
+        while ((count = glove.read(scratch, 0, scratch.length)) > 0)
+        {
+            for (int i = 0; i < count; i++)
+            {
+                downlinkFree = Math.max(downlinkFree, start) + byteNanos;
+                downlink.add(scratch[i], downlinkFree);
+            }
+        }
+    }
+
+    /**
+     * Returns the time of the next byte received, message executed or sample streamed, if it is before the deadline
+     */
+    private long nextEvent(long now, long deadline)
+    {
+        long next = deadline;
+
+        if (downlink.size() > 0 && downlink.time(0) - now > 0)
+        {
+            next = earlier(next, downlink.time(0));
+        }
+
+        int terminal = uplink.messageEnd(glove.isBinary());
+
+        if (terminal >= 0)
+        {
+            next = earlier(next, Math.max(uplink.time(terminal), firmwareFree) + processingNanos);
+        }
+
+        if (glove.isStreaming())
+        {
+            next = earlier(next, Math.max(glove.nextSampleNanos(), downlinkFree - DEVICE_BUFFER_SIZE * byteNanos));
+        }
+
+        return next;
+    }
+
+    private static long earlier(long first, long second)
+    {
+        return second - first < 0 ? second : first;
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces the writes to the rate that the serial link can transmit. The transmit buffer of the port can not be
+ * queried, so the budget keeps a virtual clock with the time when the link will have sent all the bytes written:
+ * each write moves the clock by the time of ten bits per byte at the baudrate. A write that would leave more
+ * than the maximum backlog waiting in the buffers of the operating system and the adapter waits until the link
+ * sends enough bytes, so the commands wait in the queues of the API, where they can be coalesced or dropped
+ * @author Rodrigo Monsalve Lagos
+ */
+class TransmitBudget {
+
+    static final private int BITS_PER_BYTE = 10;
+
+    private final long byteNanos;
+    private final long maxBacklogNanos;
+    private final AtomicLong linkFree = new AtomicLong(System.nanoTime());
+    private final AtomicLong pacedWrites = new AtomicLong();
+
+    /**
+     * Initialize a budget for a link
+     * @param baudRate Data rate of the link in bits per second
+     * @param maxBacklogNanos Maximum time that the written bytes can wait to be transmitted
+     */
+    TransmitBudget(int baudRate, long maxBacklogNanos)
+    {
+        if (baudRate <= 0)
+        {
+            throw new IllegalArgumentException("Baudrate must be positive");
+        }
+
+        if (maxBacklogNanos <= 0)
+        {
+            throw new IllegalArgumentException("Backlog must be positive");
+        }
+
+        this.byteNanos = TimeUnit.SECONDS.toNanos(BITS_PER_BYTE) / baudRate;
+        this.maxBacklogNanos = maxBacklogNanos;
+    }
+
+    /**
+     * Wait until the bytes fit in the backlog and count them as written. A write longer than the backlog waits
+     * until the link is idle
+     * @param length Number of bytes to write
+     * @return The time waited, in nanoseconds
+     */
+    long acquire(int length)
+    {
+        long allowed = Math.max(0, maxBacklogNanos - length * byteNanos);
+        long start = System.nanoTime();
+        long now = start;
+        long excess;
+
+        while ((excess = linkFree.get() - now - allowed) > 0)
+        {
+            LockSupport.parkNanos(this, excess);
+            now = System.nanoTime();
+        }
+
+        charge(length, now);
+
+        if (now != start)
+        {
+            pacedWrites.incrementAndGet();
+        }
+
+        return now - start;
+    }
+
+    /**
+     * Count bytes as written without waiting, like the burst sent after a reconnection
+     * @param length Number of bytes written
+     */
+    void charge(int length)
+    {
+        charge(length, System.nanoTime());
+    }
+
+    /**
+     * Returns the number of bytes that can be written now without waiting
+     */
+    int credits()
+    {
+        long backlog = backlogNanos();
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, (maxBacklogNanos - backlog) / byteNanos));
+    }
+
+    /**
+     * Returns the estimated time that the link needs to transmit the bytes already written
+     */
+    long backlogNanos()
+    {
+        return Math.max(0, linkFree.get() - System.nanoTime());
+    }
+
+    /**
+     * Returns the number of writes that waited for the link
+     */
+    long pacedWrites()
+    {
+        return pacedWrites.get();
+    }
+
+    private void charge(int length, long now)
+    {
+        long cost = length * byteNanos;
+        long free;
+
+        do
+        {
+            free = linkFree.get();
+        }
+        while (!linkFree.compareAndSet(free, Math.max(free, now) + cost));
+    }
+
+}
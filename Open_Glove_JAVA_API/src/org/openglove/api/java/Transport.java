@@ -0,0 +1,72 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+/**
+ * Link used by Communication to send bytes to the glove and receive its answers. The answers are split in
+ * lines by Communication, so a transport only moves bytes
+ * @author Rodrigo Monsalve Lagos
+ */
+public interface Transport {
+
+    /**
+     * Open the link with the glove
+     * @return True if the link was opened sucessfully
+     */
+    boolean open();
+
+    /**
+     * Close the link with the glove
+     */
+    void close();
+
+    /**
+     * Returns true if the link is open
+     */
+    boolean isOpen();
+
+    /**
+     * Send the first bytes of the array, waiting while the transmit buffer is full
+     * @param data Array with the bytes to send
+     * @param length Number of bytes to send, starting at the first element of the array
+     * @return The number of bytes sent, or -1 if there was an error
+     */
+    int write(byte[] data, int length);
+
+    /**
+     * Returns the number of received bytes that can be read without waiting
+     */
+    int bytesAvailable();
+
+    /**
+     * Read received bytes, waiting until at least one byte is received or the read timeout expires
+     * @param buffer Array where the bytes are copied, starting at the first element
+     * @param length Maximum number of bytes to read
+     * @return The number of bytes read, 0 if the timeout expired, or -1 if there was an error
+     */
+    int read(byte[] buffer, int length);
+
+    /**
+     * Call a listener from an event thread each time bytes are received, instead of waiting for them with read
+     * @param listener Listener that reads the available bytes
+     * @return True if the listener was registered
+     */
+    boolean setDataListener(Runnable listener);
+
+    /**
+     * Stop calling the data listener
+     */
+    void removeDataListener();
+
+    /**
+     * Returns the data rate of the link in bits per second, used to pace the writes, or 0 if it is not known
+     */
+    default int getBaudRate()
+    {
+        return 0;
+    }
+
+}
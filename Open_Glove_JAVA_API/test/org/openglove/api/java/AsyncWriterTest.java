@@ -0,0 +1,349 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the asynchronous writer with a slow transport: the policies when the queue is full, the completion of
+ * the confirmed commands and the bound of the queue
+ * @author Rodrigo Monsalve Lagos
+ */
+public class AsyncWriterTest {
+
+    static final private int CAPACITY = 4;
+    static final private int BOUNDED_CAPACITY = 4;
+    static final private int BOUNDED_COMMANDS = 200;
+    static final private long WRITE_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    static final private long WAIT_MILLIS = 5000;
+    static final private long QUIET_MILLIS = 200;
+
+    /**
+     * Transport whose writes take a fixed time and can be held until released, keeping the written commands
+     */
+    static class SlowTransport implements Transport {
+
+        private final List<String> written = new ArrayList<String>();
+        private final AtomicInteger entered = new AtomicInteger();
+        private volatile boolean held;
+        private volatile String failing;
+
+        @Override
+        public boolean open()
+        {
+            return true;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return true;
+        }
+
+        @Override
+        public int write(byte[] data, int length)
+        {
+            entered.incrementAndGet();
+            long end = System.nanoTime() + WRITE_NANOS;
+
+            while (held || System.nanoTime() - end < 0)
+            {
+                LockSupport.parkNanos(WRITE_NANOS);
+            }
+
+            String command = new String(data, 0, length, StandardCharsets.US_ASCII);
+
+            if (command.equals(failing))
+            {
+                throw new IllegalStateException("The write failed");
+            }
+
+            synchronized (written)
+            {
+                written.add(command);
+            }
+
+            return length;
+        }
+
+        @Override
+        public int bytesAvailable()
+        {
+            return 0;
+        }
+
+        @Override
+        public int read(byte[] buffer, int length)
+        {
+            return 0;
+        }
+
+        @Override
+        public boolean setDataListener(Runnable listener)
+        {
+            return false;
+        }
+
+        @Override
+        public void removeDataListener()
+        {
+        }
+
+        void hold()
+        {
+            held = true;
+        }
+
+        void release()
+        {
+            held = false;
+        }
+
+        /**
+         * Make the writes of a command fail
+         */
+        void fail(String command)
+        {
+            failing = command;
+        }
+
+        List<String> written()
+        {
+            synchronized (written)
+            {
+                return new ArrayList<String>(written);
+            }
+        }
+
+        /**
+         * Wait until a number of writes started
+         */
+        void awaitEntered(int count) throws InterruptedException
+        {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WAIT_MILLIS);
+
+            while (entered.get() < count)
+            {
+                if (System.nanoTime() - deadline > 0)
+                {
+                    fail("Started " + entered.get() + " writes of " + count);
+                }
+
+                Thread.sleep(1);
+            }
+        }
+
+    }
+
+    private final SlowTransport transport = new SlowTransport();
+    private final Communication communication = new Communication(transport);
+    private AsyncWriter writer;
+
+    @After
+    public void tearDown()
+    {
+        transport.release();
+
+        if (writer != null)
+        {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void blocksTheSenderWhileTheQueueIsFull() throws Exception
+    {
+        writer = new AsyncWriter(communication, CAPACITY, BackpressurePolicy.BLOCK);
+        fillWhileWriting();
+
+        Thread sender = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                submit(writer, "6");
+            }
+        };
+        sender.start();
+        Thread.sleep(QUIET_MILLIS);
+        assertTrue(sender.isAlive());
+        assertEquals(CAPACITY, writer.pendingCommands());
+
+        // The sender returns when the writer frees a place
+        transport.release();
+        sender.join(WAIT_MILLIS);
+        assertFalse(sender.isAlive());
+        writer.flush();
+        assertEquals(Arrays.asList("1", "2", "3", "4", "5", "6"), transport.written());
+        assertEquals(0, writer.droppedCommands());
+        assertEquals(0, writer.rejectedCommands());
+    }
+
+    @Test
+    public void dropsTheOldestCommandWhenTheQueueIsFull() throws Exception
+    {
+        writer = new AsyncWriter(communication, CAPACITY, BackpressurePolicy.DROP_OLDEST);
+        CompletableFuture<Void> oldest = fillWhileWriting();
+
+        // Only the oldest waiting command is dropped, the command being written does not keep a place
+        submit(writer, "6");
+        assertEquals(1, writer.droppedCommands());
+        assertEquals(CAPACITY, writer.pendingCommands());
+        assertCancelled(oldest);
+
+        transport.release();
+        writer.flush();
+        assertEquals(Arrays.asList("1", "3", "4", "5", "6"), transport.written());
+    }
+
+    @Test
+    public void rejectsTheNewCommandWhenTheQueueIsFull() throws Exception
+    {
+        writer = new AsyncWriter(communication, CAPACITY, BackpressurePolicy.FAIL_FAST);
+        fillWhileWriting();
+
+        try
+        {
+            submit(writer, "6");
+            fail("The command was queued");
+        }
+
+        catch (RejectedExecutionException e)
+        {
+            // The queue was full
+        }
+
+        assertEquals(1, writer.rejectedCommands());
+        transport.release();
+        writer.flush();
+        assertEquals(Arrays.asList("1", "2", "3", "4", "5"), transport.written());
+        assertEquals(0, writer.droppedCommands());
+    }
+
+    @Test
+    public void completesTheHandleWhenTheCommandIsWritten() throws Exception
+    {
+        writer = new AsyncWriter(communication, CAPACITY, BackpressurePolicy.BLOCK);
+        transport.hold();
+        CompletableFuture<Void> completion = submit(writer, "1", true);
+        CompletableFuture<Void> confirmed = writer.confirm();
+        Thread.sleep(QUIET_MILLIS);
+        assertFalse(completion.isDone());
+        assertFalse(confirmed.isDone());
+
+        transport.release();
+        completion.get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        confirmed.get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        assertEquals(Arrays.asList("1"), transport.written());
+
+        // The failure of the write completes the handle exceptionally, and the next commands are still written
+        transport.fail("2");
+        CompletableFuture<Void> failed = submit(writer, "2", true);
+
+        try
+        {
+            failed.get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            fail("The write did not fail");
+        }
+
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        submit(writer, "3", true).get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        assertEquals(Arrays.asList("1", "3"), transport.written());
+    }
+
+    @Test
+    public void keepsTheQueueInsideItsCapacity() throws Exception
+    {
+        writer = new AsyncWriter(communication, BOUNDED_CAPACITY, BackpressurePolicy.BLOCK);
+        List<String> sent = new ArrayList<String>();
+        int largest = 0;
+
+        // The commands are sent faster than the transport writes them, so the sender waits for the writer
+        for (int i = 0; i < BOUNDED_COMMANDS; i++)
+        {
+            String command = String.valueOf(i);
+            submit(writer, command);
+            sent.add(command);
+            largest = Math.max(largest, writer.pendingCommands());
+        }
+
+        writer.flush();
+        assertTrue(largest <= BOUNDED_CAPACITY && largest >= BOUNDED_CAPACITY - 1);
+        assertEquals(sent, transport.written());
+        assertEquals(BOUNDED_COMMANDS, writer.submitted());
+    }
+
+    /**
+     * Fill the queue with the commands 2 to 5 while the writer is held writing the command 1
+     * @return The completion of the command 2
+     */
+    private CompletableFuture<Void> fillWhileWriting() throws InterruptedException
+    {
+        transport.hold();
+        submit(writer, "1");
+        transport.awaitEntered(1);
+        CompletableFuture<Void> completion = submit(writer, "2", true);
+        submit(writer, "3");
+        submit(writer, "4");
+        submit(writer, "5");
+        assertEquals(CAPACITY, writer.pendingCommands());
+        return completion;
+    }
+
+    private static CompletableFuture<Void> submit(AsyncWriter writer, String command)
+    {
+        return submit(writer, command, false);
+    }
+
+    private static CompletableFuture<Void> submit(AsyncWriter writer, String command, boolean confirm)
+    {
+        byte[] data = command.getBytes(StandardCharsets.US_ASCII);
+        return writer.submit(data, data.length, confirm);
+    }
+
+    private static void assertCancelled(CompletableFuture<Void> completion) throws Exception
+    {
+        // The command is dropped by the thread that submits the new one, before submit returns
+        assertTrue(completion.isDone());
+
+        try
+        {
+            completion.get();
+            fail("The command was written");
+        }
+
+        catch (CancellationException e)
+        {
+            // The future gives the exception of the drop without wrapping it
+        }
+    }
+
+}
@@ -0,0 +1,242 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stress test of the frames written by many threads at the same time: each frame is written whole, and each
+ * thread receives the failure of the write that had its frame
+ * @author Rodrigo Monsalve Lagos
+ */
+public class FrameCombinerTest {
+
+    static final private int THREADS = 64;
+    static final private int FRAMES_PER_THREAD = 100;
+    static final private long WRITE_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    static final private long IDLE_MILLIS = 1500;
+
+    /**
+     * Transport whose writes take some time and fail at random, keeping the frames of each write
+     */
+    static class FailingTransport implements Transport {
+
+        private final Random random = new Random(7);
+        private final int failureRate;
+        private final Set<String> written = new HashSet<String>();
+        private final Set<String> failed = new HashSet<String>();
+        private final AtomicLong writes = new AtomicLong();
+
+        /**
+         * @param failureRate One of each failureRate writes fails, or 0 to never fail
+         */
+        FailingTransport(int failureRate)
+        {
+            this.failureRate = failureRate;
+        }
+
+        @Override
+        public boolean open()
+        {
+            return true;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return true;
+        }
+
+        @Override
+        public int write(byte[] data, int length)
+        {
+            long end = System.nanoTime() + WRITE_NANOS;
+
+            while (System.nanoTime() - end < 0)
+            {
+                LockSupport.parkNanos(end - System.nanoTime());
+            }
+
+            writes.incrementAndGet();
+            String frames = new String(data, 0, length, StandardCharsets.US_ASCII);
+
+            synchronized (this)
+            {
+                boolean fail = failureRate > 0 && random.nextInt(failureRate) == 0;
+
+                for (String frame : frames.split("s"))
+                {
+                    if (!frame.isEmpty())
+                    {
+                        (fail ? failed : written).add(frame);
+                    }
+                }
+
+                if (fail)
+                {
+                    throw new IllegalStateException("The write failed");
+                }
+            }
+
+            return length;
+        }
+
+        @Override
+        public int bytesAvailable()
+        {
+            return 0;
+        }
+
+        @Override
+        public int read(byte[] buffer, int length)
+        {
+            return 0;
+        }
+
+        @Override
+        public boolean setDataListener(Runnable listener)
+        {
+            return false;
+        }
+
+        @Override
+        public void removeDataListener()
+        {
+        }
+
+        synchronized boolean wasWritten(String frame)
+        {
+            return written.contains(frame);
+        }
+
+        synchronized boolean hasFailed(String frame)
+        {
+            return failed.contains(frame);
+        }
+
+        synchronized int frameCount()
+        {
+            return written.size() + failed.size();
+        }
+
+        synchronized int failedCount()
+        {
+            return failed.size();
+        }
+
+    }
+
+    @Test
+    public void writesTheFramesOfManyThreadsWhole() throws InterruptedException
+    {
+        FailingTransport transport = new FailingTransport(0);
+        Communication communication = new Communication(transport);
+        AtomicInteger mismatches = new AtomicInteger();
+        writeConcurrently(communication, transport, mismatches, new AtomicInteger());
+
+        // A frame mixed with the bytes of another one would be a different text
+        assertEquals(0, mismatches.get());
+        assertEquals(THREADS * FRAMES_PER_THREAD, transport.frameCount());
+        assertTrue(transport.writes.get() < THREADS * FRAMES_PER_THREAD);
+    }
+
+    @Test
+    public void reportsTheFailureToTheThreadsOfEachFrame() throws InterruptedException
+    {
+        FailingTransport transport = new FailingTransport(4);
+        Communication communication = new Communication(transport);
+        AtomicInteger mismatches = new AtomicInteger();
+        AtomicInteger thrown = new AtomicInteger();
+        writeConcurrently(communication, transport, mismatches, thrown);
+
+        assertEquals(0, mismatches.get());
+        assertEquals(THREADS * FRAMES_PER_THREAD, transport.frameCount());
+        assertEquals(transport.failedCount(), thrown.get());
+        assertTrue(thrown.get() > 0);
+    }
+
+    @Test
+    public void writesAgainAfterTheConsumerStopped() throws InterruptedException
+    {
+        FailingTransport transport = new FailingTransport(0);
+        Communication communication = new Communication(transport);
+        write(communication, "1,1");
+
+        // The consumer thread stops after one second without frames and the next frame starts another one
+        Thread.sleep(IDLE_MILLIS);
+        write(communication, "1,2");
+        assertTrue(transport.wasWritten("1,1"));
+        assertTrue(transport.wasWritten("1,2"));
+    }
+
+    private static void writeConcurrently(final Communication communication, final FailingTransport transport,
+        final AtomicInteger mismatches, final AtomicInteger thrown) throws InterruptedException
+    {
+        Thread[] threads = new Thread[THREADS];
+
+        for (int t = 0; t < threads.length; t++)
+        {
+            final int id = t;
+            threads[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for (int i = 0; i < FRAMES_PER_THREAD; i++)
+                    {
+                        String frame = id + "," + i;
+                        boolean failed = false;
+
+                        try
+                        {
+                            write(communication, frame);
+                        }
+
+                        catch (IllegalStateException e)
+                        {
+                            failed = true;
+                            thrown.incrementAndGet();
+                        }
+
+                        // The frame must be in the write whose result was returned to this thread
+                        if (failed != transport.hasFailed(frame) || failed == transport.wasWritten(frame))
+                        {
+                            mismatches.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+    }
+
+    private static void write(Communication communication, String frame)
+    {
+        byte[] data = (frame + "s").getBytes(StandardCharsets.US_ASCII);
+        communication.write(data, data.length);
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Drives many simulated gloves with a manager, with one slow glove at 9600 baud among them
+ * @author Rodrigo Monsalve Lagos
+ */
+public class GloveManagerTest {
+
+    static final private int FRAMES = 200;
+    static final private int[] BROADCAST_PINS = {0, 1, 2, 3};
+    static final private int SLOW_BAUD_RATE = 9600;
+    static final private long SLOW_PROCESSING_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    static final private long WAIT_MILLIS = 10000;
+
+    private final GloveManager manager = new GloveManager();
+
+    @After
+    public void tearDown()
+    {
+        manager.close();
+    }
+
+    @Test
+    public void drivesFourGloves() throws Exception
+    {
+        drive(4);
+    }
+
+    @Test
+    public void drivesSixteenGloves() throws Exception
+    {
+        drive(16);
+    }
+
+    @Test
+    public void drivesSixtyFourGloves() throws Exception
+    {
+        drive(64);
+    }
+
+    /**
+     * Send broadcast and fan-out frames to fast gloves and one slow glove, and check that all of them end with
+     * the last frame without the slow glove delaying the calls
+     * @param count Number of fast gloves
+     */
+    private void drive(int count) throws Exception
+    {
+        SimulatedGlove[] devices = new SimulatedGlove[count + 1];
+
+        for (int i = 0; i < count; i++)
+        {
+            SimulatedTransport transport = new SimulatedTransport();
+            devices[i] = transport.getGlove();
+            manager.add(transport);
+        }
+
+        SimulatedTransport slow = new SimulatedTransport(SLOW_BAUD_RATE, SLOW_PROCESSING_NANOS);
+        devices[count] = slow.getGlove();
+        manager.add(slow);
+        assertEquals(count + 1, manager.getGloveCount());
+
+        int[][] fanOutPins = new int[count + 1][];
+        int[][] fanOutValues = new int[count + 1][];
+
+        for (int i = 0; i <= count; i++)
+        {
+            fanOutPins[i] = new int[] {4 + i % 8};
+            fanOutValues[i] = new int[1];
+        }
+
+        int[] broadcastValues = new int[BROADCAST_PINS.length];
+        long start = System.nanoTime();
+
+        for (int frame = 1; frame <= FRAMES; frame++)
+        {
+            for (int i = 0; i < broadcastValues.length; i++)
+            {
+                broadcastValues[i] = (frame + i) % 256;
+            }
+
+            manager.broadcast(BROADCAST_PINS, broadcastValues);
+
+            for (int i = 0; i <= count; i++)
+            {
+                fanOutValues[i][0] = (frame + i) % 256;
+            }
+
+            manager.fanOut(fanOutPins, fanOutValues);
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        // Written from the calling thread, each frame would wait for the slow glove to receive its messages
+        long slowFrameNanos = TimeUnit.SECONDS.toNanos(10) * minimumMessageLength(BROADCAST_PINS.length) / SLOW_BAUD_RATE;
+        assertTrue("The calls took " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms", elapsed < FRAMES * slowFrameNanos / 2);
+
+        try
+        {
+            manager.confirmWrites().get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        catch (ExecutionException | TimeoutException e)
+        {
+            throw new AssertionError("The writes were not confirmed", e);
+        }
+
+        for (int i = 0; i <= count; i++)
+        {
+            awaitOutput(devices[i], BROADCAST_PINS[BROADCAST_PINS.length - 1], (FRAMES + BROADCAST_PINS.length - 1) % 256);
+            awaitOutput(devices[i], fanOutPins[i][0], (FRAMES + i) % 256);
+
+            for (int j = 0; j < BROADCAST_PINS.length; j++)
+            {
+                assertEquals((FRAMES + j) % 256, devices[i].getOutput(BROADCAST_PINS[j]));
+            }
+        }
+
+        // The slow glove can not receive every frame, so its intensities are merged
+        assertTrue(manager.getGlove(count).getMergedUpdates() > 0);
+        assertEquals(0, manager.getDroppedCommands());
+        assertTrue(manager.getMetrics().getMessagesWritten() >= count + 1);
+        assertEquals(0, manager.getMetrics().getErrors());
+    }
+
+    /**
+     * Returns the length of an "activateMotor" message whose pins and values have one digit
+     */
+    private static long minimumMessageLength(int pins)
+    {
+        return 4 + pins * 4;
+    }
+
+    private static void awaitOutput(SimulatedGlove device, int pin, int value) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WAIT_MILLIS);
+
+        while (device.getOutput(pin) != value)
+        {
+            if (System.nanoTime() - deadline > 0)
+            {
+                fail("Pin " + pin + " has " + device.getOutput(pin) + " instead of " + value);
+            }
+
+            Thread.sleep(1);
+        }
+    }
+
+}
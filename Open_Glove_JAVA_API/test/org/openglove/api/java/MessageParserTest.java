@@ -0,0 +1,174 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the parser of the ASCII messages and the binary frames received by the firmware
+ * @author Rodrigo Monsalve Lagos
+ */
+public class MessageParserTest {
+
+    private final MessageParser parser = new MessageParser();
+
+    @Test
+    public void parsesTheMessagesOfEachFunction()
+    {
+        assertArrayEquals(new int[] {1, 2, 3, 5}, parse("1,2,3,5s"));
+        assertArrayEquals(new int[] {2, 2, 3, 255, 5, 0}, parse("2,2,3,255,5,0s"));
+        assertArrayEquals(new int[] {3, 7}, parse("3,7s"));
+        assertArrayEquals(new int[] {4, 7}, parse("4,7s"));
+        assertArrayEquals(new int[] {5, 1, 8}, parse("5,1,8s"));
+        assertArrayEquals(new int[] {6, 1, 4, 2}, parse("6,1,4,2s"));
+        assertArrayEquals(new int[] {7, 1, 4, 1}, parse("7,1,4,1s"));
+        assertArrayEquals(new int[] {8, 1, 9, 128}, parse("8,1,9,128s"));
+        assertArrayEquals(new int[] {9, 1, 3}, parse("9,1,3s"));
+        assertArrayEquals(new int[] {10, 2, 1, 2}, parse("10,2,1,2s"));
+        assertArrayEquals(new int[] {11, 2, 1, 2}, parse("11,2,1,2s"));
+        assertArrayEquals(new int[] {12, 100, 2, 1, 2}, parse("12,100,2,1,2s"));
+        assertArrayEquals(new int[] {13}, parse("13s"));
+        assertArrayEquals(new int[] {14, 1}, parse("14,1s"));
+    }
+
+    @Test
+    public void parsesTheMessagesOfTheGenerator()
+    {
+        MessageGenerator generator = new MessageGenerator();
+        assertArrayEquals(new int[] {2, 2, 3, 200, 5, 10}, parse(generator.activateMotor(Arrays.asList(3, 5), Arrays.asList("200", "10"))));
+        assertArrayEquals(new int[] {10, 2, 1, 2}, parse(generator.analogRead(Arrays.asList(1, 2))));
+        assertArrayEquals(new int[] {12, 100, 1, 6}, parse(generator.startStream(100, Arrays.asList(6))));
+    }
+
+    @Test
+    public void acceptsNegativeNumbersAndIgnoresWhitespace()
+    {
+        assertArrayEquals(new int[] {8, 1, 9, -1}, parse("8, 1,9,-1s"));
+        assertArrayEquals(new int[] {3, 7}, parse("\r\n3,7s"));
+    }
+
+    @Test
+    public void rejectsInvalidMessages()
+    {
+        assertNull(parse("3,xs"));
+        assertNull(parse("3,,7s"));
+        assertNull(parse("s"));
+
+        // A rejected message does not affect the next one
+        assertArrayEquals(new int[] {4, 1}, parse("4,1s"));
+    }
+
+    @Test
+    public void completesAMessageOnlyWithItsTerminal()
+    {
+        byte[] data = "2,1,3,40s".getBytes(StandardCharsets.US_ASCII);
+
+        for (int i = 0; i < data.length - 1; i++)
+        {
+            assertFalse(parser.receive(data[i]));
+        }
+
+        assertTrue(parser.receive(data[data.length - 1]));
+        assertEquals(4, parser.fieldCount());
+    }
+
+    @Test
+    public void countsOnlyTheEntriesReceived()
+    {
+        parse("2,5,3,40s");
+        assertEquals(1, parser.count(2));
+        parse("1,2,3,5s");
+        assertEquals(2, parser.count(1));
+        parse("13s");
+        assertEquals(0, parser.count(1));
+    }
+
+    @Test
+    public void decodesTheFramesLikeTheirAsciiMessages()
+    {
+        String[] messages = {"1,2,3,5s", "2,2,3,255,5,0s", "3,7s", "4,7s", "5,1,8s", "6,1,4,2s", "7,1,4,1s",
+            "8,1,9,128s", "10,2,1,2s", "11,2,1,2s"};
+        parser.setBinary(true);
+
+        for (String message : messages)
+        {
+            int[] fields = parse(message);
+            byte[] frame = new byte[259];
+            int length = BinaryFraming.encode(fields, fields.length, frame);
+            assertTrue(message, length > 0);
+            assertArrayEquals(message, fields, parse(frame, length));
+        }
+    }
+
+    @Test
+    public void rejectsFramesWithAWrongChecksumOrFunction()
+    {
+        parser.setBinary(true);
+        byte[] frame = new byte[259];
+        int length = BinaryFraming.encode(new int[] {2, 1, 3, 40}, 4, frame);
+        frame[length - 1]++;
+        assertNull(parse(frame, length));
+
+        // The functions without binary form are only accepted in ASCII
+        frame = new byte[] {BinaryFraming.SYNC, 0, (byte) MessageGenerator.STOP_STREAM_FUNCTION_NUMBER, 0};
+        frame[3] = BinaryFraming.crc(BinaryFraming.crc((byte) 0, frame[1]), frame[2]);
+        assertNull(parse(frame, frame.length));
+        assertArrayEquals(new int[] {13}, parse("13s"));
+    }
+
+    @Test
+    public void ignoresTheFramesUntilTheyAreEnabled()
+    {
+        byte[] frame = new byte[259];
+        int length = BinaryFraming.encode(new int[] {3, 7}, 2, frame);
+        assertNull(parse(frame, length));
+        assertFalse(parser.isBinary());
+    }
+
+    @Test
+    public void discardsTheAsciiMessageInterruptedByAFrame()
+    {
+        parser.setBinary(true);
+        byte[] partial = "2,1,3".getBytes(StandardCharsets.US_ASCII);
+        assertNull(parse(partial, partial.length));
+        byte[] frame = new byte[259];
+        int length = BinaryFraming.encode(new int[] {4, 9}, 2, frame);
+        assertArrayEquals(new int[] {4, 9}, parse(frame, length));
+    }
+
+    /**
+     * Give the bytes of a text to the parser
+     * @return The fields of the last message completed, or null if none was completed
+     */
+    private int[] parse(String message)
+    {
+        byte[] data = message.getBytes(StandardCharsets.US_ASCII);
+        return parse(data, data.length);
+    }
+
+    private int[] parse(byte[] data, int length)
+    {
+        int[] fields = null;
+
+        for (int i = 0; i < length; i++)
+        {
+            if (parser.receive(data[i]))
+            {
+                fields = Arrays.copyOf(parser.fields(), parser.fieldCount());
+            }
+        }
+
+        return fields;
+    }
+
+}
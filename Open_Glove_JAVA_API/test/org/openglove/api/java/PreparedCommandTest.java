@@ -0,0 +1,109 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the messages of the prepared commands against the messages of the generator, when the values keep their
+ * number of digits and when the message is moved after a value whose number of digits changed
+ * @author Rodrigo Monsalve Lagos
+ */
+public class PreparedCommandTest {
+
+    static final private int[] PINS = {3, 10, 11, 255};
+    static final private int[] VALUES = {9, 10, 255, 0, 99, 100, MessageGenerator.MOTOR_HIGH, MessageGenerator.MOTOR_LOW};
+    static final private int RANDOM_SENDS = 1000;
+
+    private final MessageGenerator generator = new MessageGenerator();
+
+    @Test
+    public void movesTheMessageWhenTheDigitsOfAValueChange()
+    {
+        // Each pin goes through one, two, three and one digits while the other pins keep their values
+        for (int pin = 0; pin < PINS.length; pin++)
+        {
+            PreparedCommand command = activate();
+            int[] values = {5, 5, 5, 5};
+            assertEncodes(command, values);
+
+            for (int value : new int[] {9, 10, 255, 0})
+            {
+                values[pin] = value;
+                assertEncodes(command, values);
+            }
+        }
+    }
+
+    @Test
+    public void writesTheValuesInPlaceWhenTheDigitsDoNotChange()
+    {
+        PreparedCommand command = activate();
+        assertEncodes(command, 100, 200, 10, 1);
+        assertEncodes(command, 101, 255, 99, 9);
+        assertEncodes(command, 101, 255, 99, 9);
+        assertEncodes(command, 9, 10, 255, 0);
+    }
+
+    @Test
+    public void encodesAnySequenceOfValuesLikeTheGenerator()
+    {
+        PreparedCommand command = activate();
+        Random random = new Random(13);
+        int[] values = new int[PINS.length];
+
+        for (int i = 0; i < RANDOM_SENDS; i++)
+        {
+            for (int pin = 0; pin < values.length; pin++)
+            {
+                // Some values are kept, to mix unchanged values with the changed ones
+                if (random.nextBoolean())
+                {
+                    values[pin] = VALUES[random.nextInt(VALUES.length)];
+                }
+            }
+
+            assertEncodes(command, values);
+        }
+    }
+
+    private PreparedCommand activate()
+    {
+        return new PreparedCommand(new OpenGlove(), MessageGenerator.ACTIVATE_MOTOR_FUNCTION_NUMBER, PINS);
+    }
+
+    private void assertEncodes(PreparedCommand command, int... values)
+    {
+        List<Integer> pins = new ArrayList<Integer>();
+        List<String> intensities = new ArrayList<String>();
+
+        for (int i = 0; i < PINS.length; i++)
+        {
+            pins.add(PINS[i]);
+            intensities.add(intensity(values[i]));
+        }
+
+        int length = command.encode(values);
+        String expected = generator.activateMotor(pins, intensities);
+        assertEquals(expected, new String(command.buffer(), 0, length, StandardCharsets.US_ASCII));
+    }
+
+    private static String intensity(int value)
+    {
+        if (value == MessageGenerator.MOTOR_HIGH)
+        {
+            return "HIGH";
+        }
+
+        return value == MessageGenerator.MOTOR_LOW ? "LOW" : String.valueOf(value);
+    }
+
+}
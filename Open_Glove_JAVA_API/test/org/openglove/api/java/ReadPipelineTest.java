@@ -0,0 +1,265 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that the pipelined reads synchronize again after the glove loses an answer, so the following reads
+ * receive the values of their own pins
+ * @author Rodrigo Monsalve Lagos
+ */
+public class ReadPipelineTest {
+
+    static final private long TIMEOUT_MILLIS = 300;
+    static final private long WAIT_MILLIS = 5000;
+    static final private int PINS = 6;
+    static final private int READS = 20;
+
+    /**
+     * Transport that drops answer lines received from a simulated transport, keeping the streamed samples
+     */
+    static class LossyTransport implements Transport {
+
+        final SimulatedTransport transport = new SimulatedTransport(115200, 0);
+        private int drops;
+        private boolean lineStart = true;
+        private boolean dropping;
+
+        /**
+         * Drop the next answer lines received
+         * @param count Number of lines to drop
+         */
+        synchronized void drop(int count)
+        {
+            drops += count;
+        }
+
+        @Override
+        public boolean open()
+        {
+            return transport.open();
+        }
+
+        @Override
+        public void close()
+        {
+            transport.close();
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return transport.isOpen();
+        }
+
+        @Override
+        public int write(byte[] data, int length)
+        {
+            return transport.write(data, length);
+        }
+
+        @Override
+        public int bytesAvailable()
+        {
+            return transport.bytesAvailable();
+        }
+
+        @Override
+        public synchronized int read(byte[] buffer, int length)
+        {
+            int read = transport.read(buffer, length);
+            int kept = 0;
+
+            for (int i = 0; i < read; i++)
+            {
+                byte value = buffer[i];
+
+                if (lineStart && drops > 0 && value != SensorStream.SAMPLE_MARK)
+                {
+                    dropping = true;
+                    drops--;
+                }
+
+                if (!dropping)
+                {
+                    buffer[kept++] = value;
+                }
+
+                lineStart = value == '\n';
+
+                if (lineStart)
+                {
+                    dropping = false;
+                }
+            }
+
+            return read < 0 ? read : kept;
+        }
+
+        @Override
+        public boolean setDataListener(Runnable listener)
+        {
+            return transport.setDataListener(listener);
+        }
+
+        @Override
+        public void removeDataListener()
+        {
+            transport.removeDataListener();
+        }
+
+    }
+
+    private final LossyTransport transport = new LossyTransport();
+    private final OpenGlove glove = new OpenGlove();
+
+    @Before
+    public void setUp()
+    {
+        for (int pin = 0; pin < PINS; pin++)
+        {
+            transport.transport.getGlove().setAnalogInput(pin, 10 * (pin + 1));
+        }
+
+        assertTrue(glove.open(transport));
+        glove.enablePipelinedReads(TIMEOUT_MILLIS);
+    }
+
+    @After
+    public void tearDown()
+    {
+        glove.closePort();
+    }
+
+    @Test
+    public void recoversAfterALostAnswer() throws Exception
+    {
+        assertEquals(10, read(0));
+        transport.drop(1);
+        expectFailure(glove.analogReadAsync(1), TimeoutException.class);
+
+        // The reads made while the pipeline synchronizes again are not sent, so their answers can not be misplaced
+        CompletableFuture<Integer> rejected = glove.analogReadAsync(2);
+        glove.whenReadsSynchronized().get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        expectFailure(rejected, IllegalStateException.class);
+
+        readAllPins();
+        assertEquals(1, glove.getReadTimeouts());
+        assertEquals(1, glove.getReadSynchronizations());
+    }
+
+    @Test
+    public void recoversWhileStreaming() throws Exception
+    {
+        assertTrue(glove.startStreaming(new int[] {0}, 100));
+        transport.drop(1);
+        expectFailure(glove.analogReadAsync(1), TimeoutException.class);
+
+        // The samples keep arriving, so the pipeline can not wait for the glove to be silent
+        glove.whenReadsSynchronized().get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        readAllPins();
+        assertEquals(1, glove.getReadSynchronizations());
+    }
+
+    @Test
+    public void recoversWhilePolling() throws Exception
+    {
+        transport.drop(1);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WAIT_MILLIS);
+        int correct = 0;
+        int pin = 0;
+
+        // The reads are requested without pause, so the pipeline is never idle
+        while (correct < READS)
+        {
+            if (System.nanoTime() - deadline > 0)
+            {
+                fail("The reads did not recover after the lost answer");
+            }
+
+            pin = (pin + 1) % PINS;
+            int value = read(pin);
+
+            if (value == 10 * (pin + 1))
+            {
+                correct++;
+            }
+
+            else if (value != Communication.NO_VALUE)
+            {
+                correct = 0;
+            }
+        }
+
+        readAllPins();
+    }
+
+    @Test
+    public void synchronizesWhenAnAnswerHasOtherValues() throws Exception
+    {
+        transport.drop(1);
+        CompletableFuture<Integer> single = glove.analogReadAsync(1);
+        CompletableFuture<int[]> multiple = glove.analogReadAsync(new int[] {2, 3});
+
+        // The single read receives the answer of the multiple read, which has two values
+        expectFailure(single, IllegalStateException.class);
+        expectFailure(multiple, IllegalStateException.class);
+        glove.whenReadsSynchronized().get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+
+        readAllPins();
+        assertEquals(1, glove.getReadSynchronizations());
+    }
+
+    private void readAllPins()
+    {
+        for (int i = 0; i < READS; i++)
+        {
+            int pin = i % PINS;
+            assertEquals(10 * (pin + 1), read(pin));
+        }
+
+        assertEquals(30, glove.analogReadAsync(new int[] {1, 2}).join()[1]);
+    }
+
+    private int read(int pin)
+    {
+        try
+        {
+            return glove.analogReadAsync(pin).join();
+        }
+
+        catch (CompletionException e)
+        {
+            return Communication.NO_VALUE;
+        }
+    }
+
+    private static void expectFailure(CompletableFuture<?> future, Class<? extends Throwable> type) throws Exception
+    {
+        try
+        {
+            future.get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            fail("The read must fail");
+        }
+
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause().toString(), type.isInstance(e.getCause()));
+        }
+    }
+
+}
@@ -0,0 +1,300 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the automatic reconnection with a simulated glove that is unplugged and plugged again
+ * @author Rodrigo Monsalve Lagos
+ */
+public class ReconnectTest {
+
+    static final private long RETRY_MILLIS = 5;
+    static final private long WAIT_MILLIS = 5000;
+
+    /**
+     * Transport that keeps a copy of each write made to a simulated transport
+     */
+    static class RecordingTransport implements Transport {
+
+        final SimulatedTransport transport = new SimulatedTransport(115200, 0);
+        private final List<String> writes = new ArrayList<String>();
+
+        @Override
+        public boolean open()
+        {
+            return transport.open();
+        }
+
+        @Override
+        public void close()
+        {
+            transport.close();
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return transport.isOpen();
+        }
+
+        @Override
+        public int write(byte[] data, int length)
+        {
+            int written = transport.write(data, length);
+
+            if (written >= 0)
+            {
+                synchronized (writes)
+                {
+                    writes.add(new String(data, 0, length, StandardCharsets.US_ASCII));
+                }
+            }
+
+            return written;
+        }
+
+        @Override
+        public int bytesAvailable()
+        {
+            return transport.bytesAvailable();
+        }
+
+        @Override
+        public int read(byte[] buffer, int length)
+        {
+            return transport.read(buffer, length);
+        }
+
+        @Override
+        public boolean setDataListener(Runnable listener)
+        {
+            return transport.setDataListener(listener);
+        }
+
+        @Override
+        public void removeDataListener()
+        {
+            transport.removeDataListener();
+        }
+
+        int writeCount()
+        {
+            synchronized (writes)
+            {
+                return writes.size();
+            }
+        }
+
+        String write(int index)
+        {
+            synchronized (writes)
+            {
+                return writes.get(index);
+            }
+        }
+
+    }
+
+    private RecordingTransport transport;
+    private SimulatedGlove device;
+    private OpenGlove glove;
+
+    @Before
+    public void setUp()
+    {
+        transport = new RecordingTransport();
+        device = transport.transport.getGlove();
+        glove = new OpenGlove(transport);
+        glove.enableAutoReconnect(RETRY_MILLIS);
+    }
+
+    @After
+    public void tearDown()
+    {
+        glove.closePort();
+    }
+
+    @Test
+    public void replaysTheStateInOneBurstAfterReplugging() throws InterruptedException
+    {
+        glove.initializeMotor(new int[] {3, 5});
+        glove.activateMotor(new int[] {3, 5}, new int[] {120, 200});
+        glove.pinMode(new int[] {7, 8}, new int[] {MessageGenerator.MODE_OUTPUT, MessageGenerator.MODE_INPUT});
+        glove.digitalWrite(new int[] {7}, new int[] {1});
+        awaitMessages(4);
+
+        unplug();
+
+        // The values written while the glove is unplugged are lost, but they are part of the replayed state
+        glove.activateMotor(new int[] {3}, new int[] {60});
+        assertEquals(SimulatedGlove.MODE_NONE, device.getMode(3));
+        int writesBeforeReplug = transport.writeCount();
+
+        transport.transport.setConnected(true);
+        awaitReconnected();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WAIT_MILLIS);
+
+        while (device.getOutput(7) != 1 && System.nanoTime() - deadline < 0)
+        {
+            Thread.sleep(1);
+        }
+
+        assertEquals("The state must be replayed with one write", writesBeforeReplug + 1, transport.writeCount());
+        String burst = transport.write(writesBeforeReplug);
+        assertTrue(burst, messageCount(burst) >= 4);
+        assertEquals(SimulatedGlove.MODE_MOTOR, device.getMode(3));
+        assertEquals(SimulatedGlove.MODE_MOTOR, device.getMode(5));
+        assertEquals(MessageGenerator.MODE_OUTPUT, device.getMode(7));
+        assertEquals(MessageGenerator.MODE_INPUT, device.getMode(8));
+        assertEquals(60, device.getOutput(3));
+        assertEquals(200, device.getOutput(5));
+        assertEquals(1, device.getOutput(7));
+    }
+
+    @Test
+    public void reportsTheReconnection() throws InterruptedException
+    {
+        glove.activateMotor(new int[] {3}, new int[] {100});
+        assertFalse(glove.isReconnecting());
+        assertEquals(0, glove.getReconnectAttempts());
+
+        unplug();
+        assertTrue(glove.isReconnecting());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WAIT_MILLIS);
+
+        // The transport can not be opened while the glove is unplugged, so the attempts are repeated
+        while (glove.getReconnectAttempts() < 3 && System.nanoTime() - deadline < 0)
+        {
+            Thread.sleep(1);
+        }
+
+        assertTrue(glove.getReconnectAttempts() >= 3);
+        assertTrue(glove.isReconnecting());
+
+        transport.transport.setConnected(true);
+        awaitReconnected();
+        long attempts = glove.getReconnectAttempts();
+        Thread.sleep(10 * RETRY_MILLIS);
+        assertEquals("No attempts are made after the reconnection", attempts, glove.getReconnectAttempts());
+    }
+
+    @Test
+    public void failsThePendingReadsWithTheReconnection() throws InterruptedException
+    {
+        glove.enablePipelinedReads(TimeUnit.MINUTES.toMillis(1));
+        unplug();
+
+        CompletableFuture<Integer> read = glove.analogReadAsync(4);
+        assertFalse(read.isDone());
+
+        transport.transport.setConnected(true);
+        awaitReconnected();
+
+        try
+        {
+            read.get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            fail("The read sent while the glove was unplugged must fail");
+        }
+
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            assertEquals("The device was reconnected", e.getCause().getMessage());
+        }
+
+        catch (TimeoutException e)
+        {
+            fail("The read was not completed after the reconnection");
+        }
+
+        // The reads after the reconnection are answered again
+        assertEquals(Integer.valueOf((4 * 37) % 1024), read(4));
+    }
+
+    /**
+     * Unplug the glove and make a write fail, so the failure is found
+     */
+    private void unplug()
+    {
+        transport.transport.setConnected(false);
+        glove.activateMotor(new int[] {0}, new int[] {0});
+        assertTrue(glove.isReconnecting());
+    }
+
+    private void awaitReconnected() throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WAIT_MILLIS);
+
+        while (glove.isReconnecting())
+        {
+            if (System.nanoTime() - deadline > 0)
+            {
+                fail("The glove was not reconnected");
+            }
+
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Wait until the simulated glove executed a number of messages
+     */
+    private void awaitMessages(long count) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WAIT_MILLIS);
+
+        while (device.getMessageCount() < count)
+        {
+            if (System.nanoTime() - deadline > 0)
+            {
+                fail("The glove executed " + device.getMessageCount() + " messages of " + count);
+            }
+
+            Thread.sleep(1);
+        }
+    }
+
+    private static int messageCount(String data)
+    {
+        int count = 0;
+
+        for (int i = 0; i < data.length(); i++)
+        {
+            count += data.charAt(i) == MessageGenerator.TERMINAL ? 1 : 0;
+        }
+
+        return count;
+    }
+
+    private Integer read(int pin) throws InterruptedException
+    {
+        try
+        {
+            return glove.analogReadAsync(pin).get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        catch (ExecutionException | TimeoutException e)
+        {
+            throw new AssertionError(e);
+        }
+    }
+
+}
@@ -0,0 +1,202 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the stages of the sensor filters with known sequences of values, and the values suppressed by a filter
+ * in the sensor stream
+ * @author Rodrigo Monsalve Lagos
+ */
+public class SensorFilterTest {
+
+    static final private int NO = Communication.NO_VALUE;
+    static final private int NOISY_SAMPLES = 10000;
+
+    /**
+     * Listener that counts its calls
+     */
+    static class CountingListener implements SensorListener {
+
+        int calls;
+        int last = NO;
+
+        @Override
+        public void onSample(int pin, int value, long timestampNanos)
+        {
+            calls++;
+            last = value;
+        }
+
+    }
+
+    @Test
+    public void averagesTheLastValues()
+    {
+        assertArrayEquals(new int[] {3, 5, 6, 9, 12}, apply(SensorFilter.NONE.movingAverage(3), 3, 6, 9, 12, 15));
+    }
+
+    @Test
+    public void smoothesTheValues()
+    {
+        assertArrayEquals(new int[] {0, 5, 8, 9}, apply(SensorFilter.NONE.exponentialSmoothing(0.5), 0, 10, 10, 10));
+    }
+
+    @Test
+    public void givesTheMedianAfterTheWindowWrapsAround()
+    {
+        // From the fourth value, the oldest value leaves the window each time
+        assertArrayEquals(new int[] {5, 3, 5, 2, 8, 7, 8},
+            apply(SensorFilter.NONE.median(3), 5, 1, 9, 2, 8, 7, 100));
+    }
+
+    @Test
+    public void removesOneCopyOfARepeatedValueFromTheMedian()
+    {
+        assertArrayEquals(new int[] {4, 4, 4, 4, 1, 1, 9},
+            apply(SensorFilter.NONE.median(3), 4, 4, 4, 1, 1, 9, 9));
+        assertArrayEquals(new int[] {7, 7, 7, 7, 7, 7},
+            apply(SensorFilter.NONE.median(4), 7, 7, 7, 7, 7, 7));
+    }
+
+    @Test
+    public void removesIsolatedSpikesWithTheMedian()
+    {
+        assertArrayEquals(new int[] {500, 762, 500, 500, 500},
+            apply(SensorFilter.NONE.median(3), 500, 1023, 500, 0, 500));
+    }
+
+    @Test
+    public void estimatesTheValueWithTheKalmanFilter()
+    {
+        // The first gain is 4.01 / 8.01, so the second estimate moves half of the way to the measurement
+        int[] step = apply(SensorFilter.NONE.kalman(0.01, 4), 100, 200, 200, 200, 200);
+        assertEquals(100, step[0]);
+        assertEquals(150, step[1]);
+
+        for (int i = 2; i < step.length; i++)
+        {
+            assertTrue(step[i] > step[i - 1] && step[i] <= 200);
+        }
+
+        // The estimate of a constant value with noise varies much less than the measurements
+        SensorFilter.Chain chain = SensorFilter.NONE.kalman(0.01, 100).newChain();
+        Random random = new Random(3);
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+
+        for (int i = 0; i < 1000; i++)
+        {
+            int estimate = chain.apply(500 + random.nextInt(41) - 20);
+
+            if (i >= 100)
+            {
+                min = Math.min(min, estimate);
+                max = Math.max(max, estimate);
+            }
+        }
+
+        assertTrue(max - min <= 8);
+    }
+
+    @Test
+    public void suppressesTheValuesInsideTheDeadband()
+    {
+        // A change equal to the threshold is given, and the next changes are measured from the last value given
+        assertArrayEquals(new int[] {100, NO, NO, 105, NO, 111, NO, 100},
+            apply(SensorFilter.NONE.deadband(5), 100, 102, 104, 105, 106, 111, 107, 100));
+    }
+
+    @Test
+    public void keepsOneValueOfEachGroup()
+    {
+        assertArrayEquals(new int[] {1, NO, NO, 4, NO, NO, 7}, apply(SensorFilter.NONE.decimate(3), 1, 2, 3, 4, 5, 6, 7));
+        assertArrayEquals(new int[] {1, 2, 3}, apply(SensorFilter.NONE.decimate(1), 1, 2, 3));
+    }
+
+    @Test
+    public void stopsTheChainAtTheSuppressingStage()
+    {
+        // The suppressed values do not reach the stages after the deadband
+        assertArrayEquals(new int[] {100, NO, 105, NO, 113},
+            apply(SensorFilter.NONE.deadband(5).movingAverage(2), 100, 102, 110, 112, 116));
+
+        // The stages before the decimation see all the values
+        assertArrayEquals(new int[] {10, NO, 20},
+            apply(SensorFilter.NONE.movingAverage(2).decimate(2), 10, 20, 20));
+    }
+
+    @Test
+    public void countsTheSamplesSuppressedInTheStream()
+    {
+        SensorStream stream = new SensorStream(16);
+        CountingListener listener = new CountingListener();
+        stream.subscribe(new int[] {1, 2});
+        stream.setFilter(1, SensorFilter.NONE.deadband(5));
+        stream.addListener(listener);
+
+        for (int value : new int[] {100, 102, 104, 105, 106, 111})
+        {
+            onLine(stream, "#," + value + ",7");
+        }
+
+        // The samples of pin 2 have no filter, so only the three values of pin 1 inside the deadband are suppressed
+        assertEquals(3, stream.suppressedSamples());
+        assertEquals(9, listener.calls);
+        assertEquals(3, stream.count(1));
+        assertEquals(111, stream.latest(1));
+        assertEquals(6, stream.count(2));
+    }
+
+    @Test
+    public void reducesTheCallsOfANoisyPin()
+    {
+        SensorStream stream = new SensorStream(16);
+        CountingListener listener = new CountingListener();
+        stream.subscribe(new int[] {1});
+        stream.setFilter(1, SensorFilter.NONE.median(5).exponentialSmoothing(0.2).deadband(8));
+        stream.addListener(listener);
+        Random random = new Random(42);
+
+        // The pin stays at 400, moves to 600 in 1000 samples and stays there, with noise of 20 on each sample
+        for (int i = 0; i < NOISY_SAMPLES; i++)
+        {
+            int position = 400 + 200 * Math.max(0, Math.min(1000, i - 4500)) / 1000;
+            onLine(stream, "#," + (position + random.nextInt(41) - 20));
+        }
+
+        // The numbers of the README
+        assertEquals(NOISY_SAMPLES - listener.calls, stream.suppressedSamples());
+        assertEquals(418, listener.calls);
+        assertTrue(Math.abs(listener.last - 600) < 8);
+    }
+
+    private static int[] apply(SensorFilter filter, int... values)
+    {
+        SensorFilter.Chain chain = filter.newChain();
+        int[] filtered = new int[values.length];
+
+        for (int i = 0; i < values.length; i++)
+        {
+            filtered[i] = chain.apply(values[i]);
+        }
+
+        return filtered;
+    }
+
+    private static void onLine(SensorStream stream, String line)
+    {
+        byte[] data = line.getBytes(StandardCharsets.US_ASCII);
+        stream.onLine(data, data.length);
+    }
+
+}
@@ -0,0 +1,298 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the publishers of the sensor pins with a simulated glove: the pins are read only on demand, the samples
+ * not requested are kept according to the overflow policy, and a lost answer does not mix the pins
+ * @author Rodrigo Monsalve Lagos
+ */
+public class SensorPublisherTest {
+
+    static final private long TIMEOUT_MILLIS = 300;
+    static final private long WAIT_MILLIS = 5000;
+    static final private long QUIET_MILLIS = 200;
+    static final private int PINS = 4;
+
+    /**
+     * Subscriber that keeps the samples received
+     */
+    static class RecordingSubscriber implements SensorFlow.Subscriber<SensorSample> {
+
+        private final List<SensorSample> samples = new ArrayList<SensorSample>();
+        private volatile SensorFlow.Subscription subscription;
+        private volatile Throwable error;
+        private volatile boolean nextAfterError;
+
+        @Override
+        public void onSubscribe(SensorFlow.Subscription subscription)
+        {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(SensorSample item)
+        {
+            if (error != null)
+            {
+                nextAfterError = true;
+            }
+
+            synchronized (samples)
+            {
+                samples.add(item);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable)
+        {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete()
+        {
+        }
+
+        void request(long n)
+        {
+            subscription.request(n);
+        }
+
+        List<SensorSample> samples()
+        {
+            synchronized (samples)
+            {
+                return new ArrayList<SensorSample>(samples);
+            }
+        }
+
+        List<SensorSample> awaitSamples(int count) throws InterruptedException
+        {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WAIT_MILLIS);
+
+            while (samples().size() < count)
+            {
+                if (System.nanoTime() - deadline > 0)
+                {
+                    fail("Received " + samples().size() + " samples of " + count);
+                }
+
+                Thread.sleep(1);
+            }
+
+            return samples();
+        }
+
+        Throwable awaitError() throws InterruptedException
+        {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WAIT_MILLIS);
+
+            while (error == null)
+            {
+                if (System.nanoTime() - deadline > 0)
+                {
+                    fail("The subscription did not end with onError");
+                }
+
+                Thread.sleep(1);
+            }
+
+            return error;
+        }
+
+    }
+
+    private final ReadPipelineTest.LossyTransport transport = new ReadPipelineTest.LossyTransport();
+    private final OpenGlove glove = new OpenGlove();
+
+    @Before
+    public void setUp()
+    {
+        for (int pin = 0; pin < PINS; pin++)
+        {
+            transport.transport.getGlove().setAnalogInput(pin, 10 * (pin + 1));
+        }
+
+        assertTrue(glove.open(transport));
+        glove.enablePipelinedReads(TIMEOUT_MILLIS);
+    }
+
+    @After
+    public void tearDown()
+    {
+        glove.closePort();
+    }
+
+    @Test
+    public void readsOnlyTheRequestedSamples() throws Exception
+    {
+        SensorPublisher publisher = glove.publishAnalog(1);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        Thread.sleep(QUIET_MILLIS);
+        assertEquals(0, publisher.getReads());
+
+        subscriber.request(3);
+        List<SensorSample> samples = subscriber.awaitSamples(3);
+        Thread.sleep(QUIET_MILLIS);
+
+        assertEquals(3, publisher.getReads());
+        assertEquals(3, subscriber.samples().size());
+
+        for (SensorSample sample : samples)
+        {
+            assertEquals(1, sample.getPin());
+            assertEquals(20, sample.getValue());
+        }
+    }
+
+    @Test
+    public void conflatesTheSamplesNotRequested() throws Exception
+    {
+        SensorPublisher publisher = glove.publishAnalog(1);
+        RecordingSubscriber slow = new RecordingSubscriber();
+        List<SensorSample> fast = readWithSlowSubscriber(publisher, slow, SensorOverflow.CONFLATE, 1);
+
+        // The slow subscriber received the first sample and kept only the newest of the other nine
+        slow.request(5);
+        List<SensorSample> samples = slow.awaitSamples(2);
+        assertSame(fast.get(0), samples.get(0));
+        assertSame(fast.get(9), samples.get(1));
+        assertEquals(8, publisher.getDroppedSamples());
+    }
+
+    @Test
+    public void dropsTheOldestSamplesNotRequested() throws Exception
+    {
+        SensorPublisher publisher = glove.publishAnalog(1);
+        RecordingSubscriber slow = new RecordingSubscriber();
+        List<SensorSample> fast = readWithSlowSubscriber(publisher, slow, SensorOverflow.DROP_OLDEST, 3);
+
+        slow.request(3);
+        List<SensorSample> samples = slow.awaitSamples(4);
+        assertSame(fast.get(7), samples.get(1));
+        assertSame(fast.get(8), samples.get(2));
+        assertSame(fast.get(9), samples.get(3));
+        assertEquals(6, publisher.getDroppedSamples());
+    }
+
+    @Test
+    public void dropsTheNewestSamplesNotRequested() throws Exception
+    {
+        SensorPublisher publisher = glove.publishAnalog(1);
+        RecordingSubscriber slow = new RecordingSubscriber();
+        List<SensorSample> fast = readWithSlowSubscriber(publisher, slow, SensorOverflow.DROP_NEWEST, 3);
+
+        slow.request(3);
+        List<SensorSample> samples = slow.awaitSamples(4);
+        assertSame(fast.get(1), samples.get(1));
+        assertSame(fast.get(2), samples.get(2));
+        assertSame(fast.get(3), samples.get(3));
+        assertEquals(6, publisher.getDroppedSamples());
+    }
+
+    @Test
+    public void endsTheSubscriptionsWhenThePortIsClosed() throws Exception
+    {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        glove.publishAnalog(1).subscribe(subscriber);
+        subscriber.request(Long.MAX_VALUE);
+        subscriber.awaitSamples(3);
+
+        glove.closePort();
+        assertTrue(subscriber.awaitError() instanceof IllegalStateException);
+        int received = subscriber.samples().size();
+        Thread.sleep(QUIET_MILLIS);
+        assertEquals(received, subscriber.samples().size());
+        assertTrue(!subscriber.nextAfterError);
+    }
+
+    @Test
+    public void keepsThePinsApartAfterALostAnswer() throws Exception
+    {
+        SensorPublisher first = glove.publishAnalog(1);
+        SensorPublisher second = glove.publishAnalog(2);
+        RecordingSubscriber firstSubscriber = new RecordingSubscriber();
+        RecordingSubscriber secondSubscriber = new RecordingSubscriber();
+        first.subscribe(firstSubscriber);
+        second.subscribe(secondSubscriber);
+        firstSubscriber.request(Long.MAX_VALUE);
+        secondSubscriber.request(Long.MAX_VALUE);
+        firstSubscriber.awaitSamples(5);
+        secondSubscriber.awaitSamples(5);
+
+        transport.drop(1);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WAIT_MILLIS);
+
+        while (first.getMissedReads() + second.getMissedReads() == 0)
+        {
+            if (System.nanoTime() - deadline > 0)
+            {
+                fail("The answer was not lost");
+            }
+
+            Thread.sleep(1);
+        }
+
+        // Both pins are read again after the pipeline synchronizes, so neither of them starves
+        int firstCount = firstSubscriber.samples().size();
+        int secondCount = secondSubscriber.samples().size();
+        firstSubscriber.awaitSamples(firstCount + 20);
+        secondSubscriber.awaitSamples(secondCount + 20);
+
+        for (SensorSample sample : firstSubscriber.samples())
+        {
+            assertEquals(20, sample.getValue());
+        }
+
+        for (SensorSample sample : secondSubscriber.samples())
+        {
+            assertEquals(30, sample.getValue());
+        }
+
+        assertEquals(1, first.getMissedReads() + second.getMissedReads());
+        assertEquals(1, glove.getReadSynchronizations());
+    }
+
+    /**
+     * Read ten samples for a fast subscriber while a slow one requested only the first
+     * @return The samples of the fast subscriber
+     */
+    private static List<SensorSample> readWithSlowSubscriber(SensorPublisher publisher, RecordingSubscriber slow,
+        SensorOverflow overflow, int bufferSize) throws InterruptedException
+    {
+        RecordingSubscriber fast = new RecordingSubscriber();
+        publisher.subscribe(slow, overflow, bufferSize);
+        publisher.subscribe(fast, SensorOverflow.DROP_NEWEST, 16);
+        slow.request(1);
+        fast.request(10);
+
+        List<SensorSample> samples = fast.awaitSamples(10);
+        Thread.sleep(QUIET_MILLIS);
+        assertEquals(10, publisher.getReads());
+        assertEquals(1, slow.samples().size());
+        return samples;
+    }
+
+    private static void assertSame(SensorSample expected, SensorSample actual)
+    {
+        assertEquals(expected.getTimestampNanos(), actual.getTimestampNanos());
+        assertEquals(expected.getValue(), actual.getValue());
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the recordings of the sessions: a recording is replayed with the same messages and lines, a record whose
+ * write did not finish is skipped, and the records written while the recorder is closed are all replayed
+ * @author Rodrigo Monsalve Lagos
+ */
+public class SessionRecorderTest {
+
+    static final private int CAPACITY_BYTES = 1 << 20;
+    static final private int THREADS = 8;
+    static final private int MESSAGES_PER_THREAD = 2000;
+    static final private int FIRST_PIN = 2;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replaysTheRecordedMessagesAndLines() throws IOException
+    {
+        String fileName = file();
+        SimulatedTransport recorded = new SimulatedTransport(115200, 0);
+        recorded.getGlove().setAnalogInput(4, 321);
+        OpenGlove glove = new OpenGlove();
+        assertTrue(glove.open(recorded));
+        SessionRecorder recorder = glove.startRecording(fileName, CAPACITY_BYTES);
+
+        glove.initializeMotor(new int[] {3});
+        glove.activateMotor(new int[] {3}, new int[] {120});
+        assertEquals("321", glove.analogRead(4));
+        glove.closePort();
+        assertTrue(recorder.isClosed());
+
+        // Three messages sent and the answer of the read
+        SessionReplay replay = new SessionReplay(fileName);
+        assertEquals(4, recorder.getRecordCount());
+        assertEquals(4, replay.getRecordCount());
+
+        SimulatedTransport replayed = new SimulatedTransport(115200, 0);
+        replayed.getGlove().setAnalogInput(4, 321);
+        OpenGlove target = new OpenGlove();
+        assertTrue(target.open(replayed));
+        replay.replay(target, Double.POSITIVE_INFINITY);
+        target.closePort();
+
+        assertEquals(3, replay.getSentMessages());
+        assertEquals(1, replay.getReceivedLines());
+        assertEquals(0, replay.getMissingLines());
+        assertEquals(120, replayed.getGlove().getOutput(3));
+    }
+
+    @Test
+    public void skipsARecordWhoseWriteDidNotFinish() throws IOException
+    {
+        String fileName = file();
+        SessionRecorder recorder = new SessionRecorder(fileName, CAPACITY_BYTES);
+        record(recorder, "first");
+        record(recorder, "second");
+        record(recorder, "third");
+        recorder.close();
+
+        // The length of the second record is left like at the reservation of its place
+        int position = SessionRecorder.HEADER_LENGTH + SessionRecorder.RECORD_HEADER_LENGTH + "first".length();
+
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "rw"))
+        {
+            file.seek(position);
+            file.writeInt(-"second".length());
+        }
+
+        assertEquals(2, new SessionReplay(fileName).getRecordCount());
+    }
+
+    @Test
+    public void replaysAllTheRecordsWrittenWhileClosing() throws Exception
+    {
+        String fileName = file();
+        final SessionRecorder recorder = new SessionRecorder(fileName, CAPACITY_BYTES);
+        final MessageGenerator generator = new MessageGenerator();
+        Thread[] threads = new Thread[THREADS];
+
+        for (int t = 0; t < threads.length; t++)
+        {
+            final int pin = FIRST_PIN + t;
+            threads[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for (int i = 0; i < MESSAGES_PER_THREAD; i++)
+                    {
+                        record(recorder, activateMotor(generator, pin, i % 256));
+                    }
+                }
+            };
+            threads[t].start();
+        }
+
+        // The recorder is closed while the threads are writing their records
+        while (recorder.getRecordCount() < THREADS * MESSAGES_PER_THREAD / 4)
+        {
+            Thread.yield();
+        }
+
+        recorder.close();
+        long recorded = recorder.getRecordCount();
+
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        assertEquals(recorded, recorder.getRecordCount());
+        assertEquals(0, recorder.getDroppedRecords());
+
+        SessionReplay replay = new SessionReplay(fileName);
+        assertEquals(recorded, replay.getRecordCount());
+
+        ReconnectTest.RecordingTransport transport = new ReconnectTest.RecordingTransport();
+        OpenGlove target = new OpenGlove();
+        assertTrue(target.open(transport));
+        replay.replay(target, Double.POSITIVE_INFINITY);
+        target.closePort();
+        assertEquals(recorded, replay.getSentMessages());
+        assertEquals(recorded, transport.writeCount());
+
+        // Each replayed message is whole, and the messages of each pin keep their order
+        Map<Integer, Integer> next = new HashMap<Integer, Integer>();
+
+        for (int i = 0; i < transport.writeCount(); i++)
+        {
+            String message = transport.write(i);
+            boolean found = false;
+
+            for (int pin = FIRST_PIN; pin < FIRST_PIN + THREADS && !found; pin++)
+            {
+                int value = next.containsKey(pin) ? next.get(pin) : 0;
+
+                if (message.equals(activateMotor(generator, pin, value)))
+                {
+                    next.put(pin, (value + 1) % 256);
+                    found = true;
+                }
+            }
+
+            assertTrue(message, found);
+        }
+    }
+
+    private String file() throws IOException
+    {
+        File file = folder.newFile();
+        return file.getPath();
+    }
+
+    private static String activateMotor(MessageGenerator generator, int pin, int value)
+    {
+        return generator.activateMotor(Arrays.asList(pin), Arrays.asList(String.valueOf(value)));
+    }
+
+    private static void record(SessionRecorder recorder, String message)
+    {
+        byte[] data = message.getBytes(StandardCharsets.US_ASCII);
+        recorder.record(SessionRecorder.OUTBOUND, data, 0, data.length);
+    }
+
+}
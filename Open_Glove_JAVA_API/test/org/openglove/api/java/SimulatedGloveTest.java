@@ -0,0 +1,201 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the answers and the state of the simulated device for each function number
+ * @author Rodrigo Monsalve Lagos
+ */
+public class SimulatedGloveTest {
+
+    static final private long PERIOD_NANOS = 10000000L;
+
+    private final SimulatedGlove glove = new SimulatedGlove();
+
+    @Test
+    public void initializesThePins()
+    {
+        send("1,2,3,5s");
+        assertEquals(SimulatedGlove.MODE_MOTOR, glove.getMode(3));
+        assertEquals(SimulatedGlove.MODE_MOTOR, glove.getMode(5));
+        send("5,1,8s");
+        assertEquals(MessageGenerator.MODE_INPUT, glove.getMode(8));
+        send("6,2,4,2,8,1s");
+        assertEquals(MessageGenerator.MODE_OUTPUT, glove.getMode(4));
+        assertEquals(MessageGenerator.MODE_INPUT, glove.getMode(8));
+        send("9,1,6s");
+        assertEquals(SimulatedGlove.MODE_MOTOR, glove.getMode(6));
+        assertEquals(SimulatedGlove.MODE_NONE, glove.getMode(7));
+        assertEquals(4, glove.getMessageCount());
+        assertEquals(0, glove.available());
+    }
+
+    @Test
+    public void writesTheOutputs()
+    {
+        send("2,2,3,120,5,255s");
+        send("7,1,4,1s");
+        send("8,1,9,128s");
+        assertEquals(120, glove.getOutput(3));
+        assertEquals(255, glove.getOutput(5));
+        assertEquals(1, glove.getOutput(4));
+        assertEquals(128, glove.getOutput(9));
+
+        // Initializing a pin turns its output off
+        send("1,1,3s");
+        assertEquals(0, glove.getOutput(3));
+        assertEquals(0, glove.available());
+    }
+
+    @Test
+    public void answersTheReads()
+    {
+        send("3,7s");
+        assertEquals("259\r\n", answer());
+        send("4,7s");
+        assertEquals("1\r\n", answer());
+        glove.setAnalogInput(7, 1000);
+        glove.setDigitalInput(8, 1);
+        send("10,3,7,8,300s");
+        assertEquals("1000,296,0\r\n", answer());
+        send("11,2,7,8s");
+        assertEquals("1,1\r\n", answer());
+    }
+
+    @Test
+    public void answersTheReadsInOrder()
+    {
+        send("3,1s3,2s4,3s");
+        assertEquals("37\r\n74\r\n1\r\n", answer());
+    }
+
+    @Test
+    public void streamsTheSamplesAtTheRate() throws InterruptedException
+    {
+        glove.setAnalogInput(1, 11);
+        glove.setAnalogInput(2, 22);
+        send("12,100,2,1,2s");
+        assertTrue(glove.isStreaming());
+        long first = glove.nextSampleNanos();
+        String sample = new String(new byte[] {SensorStream.SAMPLE_MARK}, StandardCharsets.US_ASCII) + ",11,22\r\n";
+
+        // The first sample is due at once, and each sample moves the next one by the period of the rate
+        String samples = answer();
+        assertTrue(samples.startsWith(sample));
+        long read = lineCount(samples);
+        assertEquals(first + read * PERIOD_NANOS, glove.nextSampleNanos());
+
+        while (System.nanoTime() - (first + 3 * PERIOD_NANOS) < 0)
+        {
+            Thread.sleep(1);
+        }
+
+        samples = answer();
+        read += lineCount(samples);
+        assertTrue(samples, read >= 4);
+        assertEquals(samples.length(), sample.length() * lineCount(samples));
+        assertEquals(first + read * PERIOD_NANOS, glove.nextSampleNanos());
+
+        send("13s");
+        assertFalse(glove.isStreaming());
+        Thread.sleep(20);
+        assertEquals("", answer());
+    }
+
+    @Test
+    public void keepsTheNewestSamplesOfAReaderThatFellBehind() throws InterruptedException
+    {
+        send("12,1000,1,1s");
+        Thread.sleep(100);
+        assertEquals(64, lineCount(answer()));
+    }
+
+    @Test
+    public void negotiatesTheBinaryFrames()
+    {
+        send("14,1s");
+        assertEquals("1\r\n", answer());
+        assertTrue(glove.isBinary());
+        byte[] frame = new byte[259];
+        int length = BinaryFraming.encode(new int[] {2, 1, 3, 90}, 4, frame);
+        glove.receive(frame, 0, length);
+        assertEquals(90, glove.getOutput(3));
+        length = BinaryFraming.encode(new int[] {3, 7}, 2, frame);
+        glove.receive(frame, 0, length);
+        assertEquals("259\r\n", answer());
+
+        // The ASCII messages are still accepted
+        send("8,1,3,10s");
+        assertEquals(10, glove.getOutput(3));
+    }
+
+    @Test
+    public void staysInAsciiWithoutBinarySupport()
+    {
+        glove.setBinarySupported(false);
+        send("14,1s");
+        assertEquals("", answer());
+        assertFalse(glove.isBinary());
+        send("14,0s");
+        assertFalse(glove.isBinary());
+    }
+
+    @Test
+    public void losesTheStateWhenReset()
+    {
+        send("1,1,3s2,1,3,90s14,1s12,100,1,1s");
+        glove.reset();
+        assertEquals(SimulatedGlove.MODE_NONE, glove.getMode(3));
+        assertEquals(0, glove.getOutput(3));
+        assertFalse(glove.isBinary());
+        assertFalse(glove.isStreaming());
+        assertEquals(0, glove.available());
+        assertEquals(4, glove.getMessageCount());
+    }
+
+    @Test
+    public void ignoresInvalidMessagesAndPins()
+    {
+        send("2,1,3,x,s");
+        send("2,1,999,40s");
+        send("3,999s");
+        assertEquals(0, glove.getOutput(3));
+        assertEquals(2, glove.getMessageCount());
+        assertEquals("0\r\n", answer());
+    }
+
+    private void send(String message)
+    {
+        byte[] data = message.getBytes(StandardCharsets.US_ASCII);
+        glove.receive(data, 0, data.length);
+    }
+
+    private String answer()
+    {
+        byte[] buffer = new byte[4096];
+        int length = glove.read(buffer, 0, buffer.length);
+        return new String(buffer, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    private static int lineCount(String text)
+    {
+        int count = 0;
+
+        for (int i = 0; i < text.length(); i++)
+        {
+            count += text.charAt(i) == '\n' ? 1 : 0;
+        }
+
+        return count;
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the timing of the simulated link: the bytes take the time of the baudrate in each direction, and the
+ * firmware takes its processing time for each message
+ * @author Rodrigo Monsalve Lagos
+ */
+public class SimulatedTransportTest {
+
+    static final private int BAUD_RATE = 9600;
+    static final private long PROCESSING_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    static final private long BYTE_NANOS = TimeUnit.SECONDS.toNanos(10) / BAUD_RATE;
+    static final private long WAIT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final SimulatedTransport transport = new SimulatedTransport(BAUD_RATE, PROCESSING_NANOS);
+
+    @After
+    public void tearDown()
+    {
+        transport.close();
+    }
+
+    @Test
+    public void answersAfterTheTimeOfTheLink()
+    {
+        assertTrue(transport.open());
+        long start = System.nanoTime();
+        write("3,7s");
+
+        // The request, the processing and the answer "259\r\n" must all be transmitted first
+        long earliest = start + 4 * BYTE_NANOS + PROCESSING_NANOS + 5 * BYTE_NANOS;
+        assertEquals(0, transport.bytesAvailable());
+        String answer = readAnswer(5);
+        assertTrue(System.nanoTime() - earliest >= 0);
+        assertEquals("259\r\n", answer);
+    }
+
+    @Test
+    public void processesTheMessagesOneAtATime()
+    {
+        assertTrue(transport.open());
+        long start = System.nanoTime();
+        write("3,1s3,2s");
+
+        // The processing is longer than a message, so the second message waits for the processing of the first
+        long earliest = start + 4 * BYTE_NANOS + 2 * PROCESSING_NANOS + 4 * BYTE_NANOS;
+        String answer = readAnswer(8);
+        assertTrue(System.nanoTime() - earliest >= 0);
+        assertEquals("37\r\n74\r\n", answer);
+        assertEquals(2, transport.getGlove().getMessageCount());
+    }
+
+    @Test
+    public void failsWhileTheGloveIsUnplugged()
+    {
+        assertTrue(transport.open());
+        write("2,1,3,90s");
+        transport.setConnected(false);
+        assertEquals(-1, transport.write(new byte[] {'1', 's'}, 2));
+        assertEquals(-1, transport.read(new byte[8], 8));
+        assertFalse(transport.open());
+        assertEquals(0, transport.getGlove().getOutput(3));
+
+        transport.setConnected(true);
+        transport.close();
+        assertTrue(transport.open());
+        write("3,7s");
+        assertEquals("259\r\n", readAnswer(5));
+    }
+
+    private void write(String message)
+    {
+        byte[] data = message.getBytes(StandardCharsets.US_ASCII);
+        assertEquals(data.length, transport.write(data, data.length));
+    }
+
+    /**
+     * Read a number of bytes, waiting for them
+     */
+    private String readAnswer(int length)
+    {
+        byte[] buffer = new byte[length];
+        int count = 0;
+        long deadline = System.nanoTime() + WAIT_NANOS;
+
+        while (count < length && System.nanoTime() - deadline < 0)
+        {
+            byte[] part = new byte[length - count];
+            int read = transport.read(part, part.length);
+            assertTrue(read >= 0);
+            System.arraycopy(part, 0, buffer, count, read);
+            count += read;
+        }
+
+        return new String(buffer, 0, count, StandardCharsets.US_ASCII);
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the budget of a serial link with known baudrates: the credits left after charging bytes, and the time
+ * that a write waits for the link to send the backlog
+ * @author Rodrigo Monsalve Lagos
+ */
+public class TransmitBudgetTest {
+
+    static final private long SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    @Test
+    public void countsTheCreditsOfTheBytesCharged()
+    {
+        // At 300 bauds a byte takes 33.3 ms, so one second of backlog holds 30 bytes, and the time spent by the
+        // test is far below the time of one byte
+        TransmitBudget budget = new TransmitBudget(300, TimeUnit.SECONDS.toNanos(1));
+        assertEquals(30, budget.credits());
+        assertEquals(0, budget.backlogNanos());
+
+        budget.charge(10);
+        assertEquals(20, budget.credits());
+        long backlog = budget.backlogNanos();
+        assertTrue(backlog <= 10 * byteNanos(300) && backlog > 9 * byteNanos(300));
+
+        // A backlog longer than the maximum leaves no credits
+        budget.charge(40);
+        assertEquals(0, budget.credits());
+        assertEquals(0, budget.pacedWrites());
+    }
+
+    @Test
+    public void waitsUntilTheLinkSendsTheBacklog() throws InterruptedException
+    {
+        // At 1200 bauds a byte takes 8.3 ms, so a backlog of 50 ms holds 6 bytes
+        long byteNanos = byteNanos(1200);
+        TransmitBudget budget = new TransmitBudget(1200, TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(6, budget.credits());
+
+        long start = System.nanoTime();
+        assertEquals(0, budget.acquire(6));
+        assertEquals(0, budget.credits());
+
+        // The second write waits until the link sent the first one
+        long waited = budget.acquire(6);
+        long elapsed = System.nanoTime() - start;
+        assertTrue(elapsed >= 6 * byteNanos - 2);
+        assertTrue(waited > 5 * byteNanos && waited <= 6 * byteNanos + SLACK_NANOS);
+        assertEquals(1, budget.pacedWrites());
+
+        // The credits come back at the baudrate while the link sends the second write
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(3 * byteNanos) + 1);
+        int credits = budget.credits();
+        assertTrue(credits >= 3 && credits <= 6);
+    }
+
+    @Test
+    public void waitsForAnIdleLinkBeforeAWriteLongerThanTheBacklog()
+    {
+        long byteNanos = byteNanos(1200);
+        TransmitBudget budget = new TransmitBudget(1200, TimeUnit.MILLISECONDS.toNanos(20));
+        budget.charge(3);
+
+        long waited = budget.acquire(10);
+        assertTrue(waited > 2 * byteNanos && waited <= 3 * byteNanos + SLACK_NANOS);
+        assertEquals(0, budget.credits());
+    }
+
+    private static long byteNanos(int baudRate)
+    {
+        return TimeUnit.SECONDS.toNanos(10) / baudRate;
+    }
+
+}
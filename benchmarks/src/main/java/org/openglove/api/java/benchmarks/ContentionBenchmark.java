@@ -0,0 +1,102 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openglove.api.java.OpenGlove;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Many threads sending "activateMotor" frames of 4 pins to the same glove, through the lock-free command path
+ * and through a synchronized block around each call. Each write of the transport costs one microsecond, like a
+ * system call. The number of threads is chosen with the -t option, for example -t 1, -t 4, -t 16 and -t 64
+ * @author Rodrigo Monsalve Lagos
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContentionBenchmark {
+
+    static final private long WRITE_NANOS = 1000;
+
+    /**
+     * The pins and intensities of one thread
+     */
+    @State(Scope.Thread)
+    public static class Producer {
+
+        private static int nextBase;
+
+        int[] pins = new int[4];
+        int[] values = new int[4];
+        int frame;
+
+        @Setup
+        public void setUp()
+        {
+            int base;
+
+            synchronized (Producer.class)
+            {
+                base = nextBase;
+                nextBase = (nextBase + 4) % 240;
+            }
+
+            for (int i = 0; i < pins.length; i++)
+            {
+                pins[i] = base + i;
+            }
+        }
+
+    }
+
+    private OpenGlove glove;
+
+    @Setup
+    public void setUp()
+    {
+        glove = new OpenGlove(new SlowWriteTransport(WRITE_NANOS));
+        glove.getMetrics().setEnabled(false);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        glove.closePort();
+    }
+
+    @Benchmark
+    public void lockFree(Producer producer)
+    {
+        producer.values[0] = producer.frame++ & 255;
+        glove.activateMotor(producer.pins, producer.values);
+    }
+
+    @Benchmark
+    public void synchronizedCall(Producer producer)
+    {
+        producer.values[0] = producer.frame++ & 255;
+
+        synchronized (glove)
+        {
+            glove.activateMotor(producer.pins, producer.values);
+        }
+    }
+
+}
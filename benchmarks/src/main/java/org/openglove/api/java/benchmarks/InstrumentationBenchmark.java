@@ -0,0 +1,101 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openglove.api.java.Communication;
+import org.openglove.api.java.GloveMetrics;
+import org.openglove.api.java.MessageGenerator;
+import org.openglove.api.java.OpenGlove;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the metrics on the hot paths: a command sent by OpenGlove, which records the command and write
+ * latencies and counts the bytes, and a value read by Communication, which counts the bytes and the timeouts.
+ * Compare the results with the metrics disabled, measuring all the latencies and sampling one of 16
+ * @author Rodrigo Monsalve Lagos
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstrumentationBenchmark {
+
+    /**
+     * Glove and communication connected to a transport that discards the commands and answers "1023"
+     */
+    @State(Scope.Benchmark)
+    public static class Glove {
+
+        @Param({"disabled", "all", "sampled16"})
+        String metrics;
+
+        OpenGlove glove;
+        Communication communication;
+        byte[] message;
+        int messageLength;
+        int[] pins = {3};
+        int[] values = {200};
+
+        @Setup
+        public void setUp()
+        {
+            byte[] answer = "1023\r\n".getBytes(StandardCharsets.US_ASCII);
+            glove = new OpenGlove(new ReplayTransport(answer));
+            communication = new Communication(new ReplayTransport(answer));
+            configure(glove.getMetrics());
+            configure(communication.getMetrics());
+            message = new byte[MessageGenerator.maxMessageLength(1)];
+            messageLength = new MessageGenerator().encodeActivateMotor(pins, values, 1, message, 0);
+        }
+
+        private void configure(GloveMetrics gloveMetrics)
+        {
+            gloveMetrics.setEnabled(!metrics.equals("disabled"));
+            gloveMetrics.setSamplingInterval(metrics.equals("sampled16") ? 16 : 1);
+        }
+
+    }
+
+    @Benchmark
+    public void activateMotor(Glove state)
+    {
+        state.glove.activateMotor(state.pins, state.values);
+    }
+
+    @Benchmark
+    public void write(Glove state)
+    {
+        state.communication.write(state.message, state.messageLength);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void writeFromFourThreads(Glove state)
+    {
+        state.communication.write(state.message, state.messageLength);
+    }
+
+    @Benchmark
+    public int readInt(Glove state)
+    {
+        return state.communication.readInt();
+    }
+
+}
@@ -0,0 +1,242 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openglove.api.java.MessageGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the MessageGenerator methods for many pins: the string methods, the encoders that write in a
+ * byte array and the encoders that write in a heap or direct ByteBuffer
+ * @author Rodrigo Monsalve Lagos
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiPinEncodingBenchmark {
+
+    @Param({"1", "4", "16", "64"})
+    private int pinCount;
+
+    private final MessageGenerator messageGenerator = new MessageGenerator();
+    private int[] pins;
+    private int[] motorValues;
+    private int[] modes;
+    private int[] digitalValues;
+    private int[] analogValues;
+    private List<Integer> pinList;
+    private List<String> motorValueList;
+    private List<String> modeList;
+    private List<String> digitalValueList;
+    private List<Integer> analogValueList;
+    private byte[] buffer;
+    private ByteBuffer heapBuffer;
+    private ByteBuffer directBuffer;
+
+    @Setup
+    public void setUp()
+    {
+        pins = new int[pinCount];
+        motorValues = new int[pinCount];
+        modes = new int[pinCount];
+        digitalValues = new int[pinCount];
+        analogValues = new int[pinCount];
+        pinList = new ArrayList<Integer>();
+        motorValueList = new ArrayList<String>();
+        modeList = new ArrayList<String>();
+        digitalValueList = new ArrayList<String>();
+        analogValueList = new ArrayList<Integer>();
+
+        for (int i = 0; i < pinCount; i++)
+        {
+            pins[i] = (i * 3) % 256;
+            motorValues[i] = (i * 41) % 256;
+            modes[i] = i % 2 == 0 ? MessageGenerator.MODE_OUTPUT : MessageGenerator.MODE_INPUT;
+            digitalValues[i] = i % 2;
+            analogValues[i] = (i * 97) % 256;
+            pinList.add(pins[i]);
+            motorValueList.add(i % 5 == 0 ? "HIGH" : Integer.toString(motorValues[i]));
+            modeList.add(modes[i] == MessageGenerator.MODE_OUTPUT ? "OUTPUT" : "INPUT");
+            digitalValueList.add(digitalValues[i] == MessageGenerator.DIGITAL_HIGH ? "HIGH" : "LOW");
+            analogValueList.add(analogValues[i]);
+        }
+
+        int length = MessageGenerator.maxMessageLength(pinCount + 1);
+        buffer = new byte[length];
+        heapBuffer = ByteBuffer.allocate(length);
+        directBuffer = ByteBuffer.allocateDirect(length);
+    }
+
+    @Benchmark
+    public String initializeMotor()
+    {
+        return messageGenerator.initializeMotor(pinList);
+    }
+
+    @Benchmark
+    public String activateMotor()
+    {
+        return messageGenerator.activateMotor(pinList, motorValueList);
+    }
+
+    @Benchmark
+    public String analogRead()
+    {
+        return messageGenerator.analogRead(pinList);
+    }
+
+    @Benchmark
+    public String digitalRead()
+    {
+        return messageGenerator.digitalRead(pinList);
+    }
+
+    @Benchmark
+    public String startStream()
+    {
+        return messageGenerator.startStream(100, pinList);
+    }
+
+    @Benchmark
+    public String pinMode()
+    {
+        return messageGenerator.pinMode(pinList, modeList);
+    }
+
+    @Benchmark
+    public String digitalWrite()
+    {
+        return messageGenerator.digitalWrite(pinList, digitalValueList);
+    }
+
+    @Benchmark
+    public String analogWrite()
+    {
+        return messageGenerator.analogWrite(pinList, analogValueList);
+    }
+
+    @Benchmark
+    public int encodeInitializeMotor()
+    {
+        return messageGenerator.encodeInitializeMotor(pins, pinCount, buffer, 0);
+    }
+
+    @Benchmark
+    public int encodeActivateMotor()
+    {
+        return messageGenerator.encodeActivateMotor(pins, motorValues, pinCount, buffer, 0);
+    }
+
+    @Benchmark
+    public int encodeAnalogRead()
+    {
+        return messageGenerator.encodeAnalogRead(pins, pinCount, buffer, 0);
+    }
+
+    @Benchmark
+    public int encodeDigitalRead()
+    {
+        return messageGenerator.encodeDigitalRead(pins, pinCount, buffer, 0);
+    }
+
+    @Benchmark
+    public int encodeStartStream()
+    {
+        return messageGenerator.encodeStartStream(100, pins, pinCount, buffer, 0);
+    }
+
+    @Benchmark
+    public int encodePinMode()
+    {
+        return messageGenerator.encodePinMode(pins, modes, pinCount, buffer, 0);
+    }
+
+    @Benchmark
+    public int encodeDigitalWrite()
+    {
+        return messageGenerator.encodeDigitalWrite(pins, digitalValues, pinCount, buffer, 0);
+    }
+
+    @Benchmark
+    public int encodeAnalogWrite()
+    {
+        return messageGenerator.encodeAnalogWrite(pins, analogValues, pinCount, buffer, 0);
+    }
+
+    @Benchmark
+    public int encodeInitializeMotorHeapBuffer()
+    {
+        heapBuffer.clear();
+        return messageGenerator.encodeInitializeMotor(pins, pinCount, heapBuffer);
+    }
+
+    @Benchmark
+    public int encodeActivateMotorHeapBuffer()
+    {
+        heapBuffer.clear();
+        return messageGenerator.encodeActivateMotor(pins, motorValues, pinCount, heapBuffer);
+    }
+
+    @Benchmark
+    public int encodeActivateMotorDirectBuffer()
+    {
+        directBuffer.clear();
+        return messageGenerator.encodeActivateMotor(pins, motorValues, pinCount, directBuffer);
+    }
+
+    @Benchmark
+    public int encodeAnalogReadHeapBuffer()
+    {
+        heapBuffer.clear();
+        return messageGenerator.encodeAnalogRead(pins, pinCount, heapBuffer);
+    }
+
+    @Benchmark
+    public int encodeDigitalReadHeapBuffer()
+    {
+        heapBuffer.clear();
+        return messageGenerator.encodeDigitalRead(pins, pinCount, heapBuffer);
+    }
+
+    @Benchmark
+    public int encodePinModeHeapBuffer()
+    {
+        heapBuffer.clear();
+        return messageGenerator.encodePinMode(pins, modes, pinCount, heapBuffer);
+    }
+
+    @Benchmark
+    public int encodeDigitalWriteHeapBuffer()
+    {
+        heapBuffer.clear();
+        return messageGenerator.encodeDigitalWrite(pins, digitalValues, pinCount, heapBuffer);
+    }
+
+    @Benchmark
+    public int encodeAnalogWriteHeapBuffer()
+    {
+        heapBuffer.clear();
+        return messageGenerator.encodeAnalogWrite(pins, analogValues, pinCount, heapBuffer);
+    }
+
+}
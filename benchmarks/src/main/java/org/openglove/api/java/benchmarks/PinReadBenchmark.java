@@ -0,0 +1,75 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openglove.api.java.OpenGlove;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of a read of one pin with OpenGlove: the string methods, which allocate the message and the answer, and
+ * the methods that return the value parsed from the received bytes. Run it with -prof gc to compare the bytes
+ * allocated by each read
+ * @author Rodrigo Monsalve Lagos
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PinReadBenchmark {
+
+    /**
+     * Glove connected to a transport that discards the requests and answers "1"
+     */
+    @State(Scope.Thread)
+    public static class Glove {
+
+        OpenGlove glove;
+
+        @Setup
+        public void setUp()
+        {
+            glove = new OpenGlove(new ReplayTransport("1\r\n".getBytes(StandardCharsets.US_ASCII)));
+        }
+
+    }
+
+    @Benchmark
+    public int analogReadString(Glove state)
+    {
+        return Integer.parseInt(state.glove.analogRead(3));
+    }
+
+    @Benchmark
+    public int analogReadInt(Glove state)
+    {
+        return state.glove.analogReadInt(3);
+    }
+
+    @Benchmark
+    public boolean digitalReadString(Glove state)
+    {
+        return Integer.parseInt(state.glove.digitalRead(3)) == 1;
+    }
+
+    @Benchmark
+    public boolean digitalReadBoolean(Glove state)
+    {
+        return state.glove.digitalReadBoolean(3);
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openglove.api.java.OpenGlove;
+import org.openglove.api.java.PreparedCommand;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * An "activateMotor" frame for the same pins sent with the list method, the array method and a prepared
+ * command, to a transport that discards the bytes. The intensities change each frame, keeping their number of
+ * digits, like the frames of an animation. The metrics are disabled
+ * @author Rodrigo Monsalve Lagos
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PreparedCommandBenchmark {
+
+    @Param({"4", "16"})
+    int pinCount;
+
+    private OpenGlove glove;
+    private PreparedCommand command;
+    private int[] pins;
+    private int[] values;
+    private List<Integer> pinList;
+    private List<String> valueList;
+    private int frame;
+
+    @Setup
+    public void setUp()
+    {
+        glove = new OpenGlove(new ReplayTransport(new byte[] {'\n'}));
+        glove.getMetrics().setEnabled(false);
+        pins = new int[pinCount];
+        values = new int[pinCount];
+        pinList = new ArrayList<Integer>();
+        valueList = new ArrayList<String>();
+
+        for (int i = 0; i < pinCount; i++)
+        {
+            pins[i] = i * 3 + 2;
+            values[i] = 100 + i;
+            pinList.add(pins[i]);
+            valueList.add(Integer.toString(values[i]));
+        }
+
+        command = glove.prepareActivate(pins);
+    }
+
+    @Benchmark
+    public void activateMotorList()
+    {
+        glove.activateMotor(pinList, valueList);
+    }
+
+    @Benchmark
+    public void activateMotorArray()
+    {
+        values[0] = 100 + (frame++ & 127);
+        glove.activateMotor(pins, values);
+    }
+
+    @Benchmark
+    public void preparedCommand()
+    {
+        values[0] = 100 + (frame++ & 127);
+        command.send(values);
+    }
+
+}
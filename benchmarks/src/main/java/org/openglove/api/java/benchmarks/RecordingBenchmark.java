@@ -0,0 +1,105 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openglove.api.java.OpenGlove;
+import org.openglove.api.java.SessionRecorder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the session recorder on the write path: an "activateMotor" frame of 4 pins and an analog read sent by
+ * OpenGlove, without recording and recording to a memory-mapped file. A new file is created for each iteration,
+ * so the records are not dropped
+ * @author Rodrigo Monsalve Lagos
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordingBenchmark {
+
+    static final private int CAPACITY = 1 << 30;
+
+    /**
+     * Glove connected to a transport that discards the commands and answers "1023"
+     */
+    @State(Scope.Thread)
+    public static class Glove {
+
+        @Param({"false", "true"})
+        boolean recording;
+
+        OpenGlove glove;
+        File file;
+        SessionRecorder recorder;
+        int[] pins = {2, 3, 4, 5};
+        int[] values = {200, 200, 200, 200};
+
+        @Setup(Level.Trial)
+        public void setUp()
+        {
+            glove = new OpenGlove(new ReplayTransport("1023\r\n".getBytes(StandardCharsets.US_ASCII)));
+        }
+
+        @Setup(Level.Iteration)
+        public void startRecording() throws IOException
+        {
+            if (recording)
+            {
+                file = File.createTempFile("openglove", ".rec");
+                recorder = glove.startRecording(file.getPath(), CAPACITY);
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void stopRecording()
+        {
+            if (recording)
+            {
+                glove.stopRecording();
+
+                if (recorder.getDroppedRecords() > 0)
+                {
+                    throw new IllegalStateException("The recording is too short for the iteration");
+                }
+
+                file.delete();
+            }
+        }
+
+    }
+
+    @Benchmark
+    public void activateMotor(Glove state)
+    {
+        state.values[0] = state.values[0] ^ 1;
+        state.glove.activateMotor(state.pins, state.values);
+    }
+
+    @Benchmark
+    public int analogReadInt(Glove state)
+    {
+        return state.glove.analogReadInt(3);
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java.benchmarks;
+
+import org.openglove.api.java.Transport;
+
+/**
+ * Transport that receives the same bytes again and again without waiting, so the parsing of the answers can be
+ * measured without the time of the link. The written bytes are discarded
+ * @author Rodrigo Monsalve Lagos
+ */
+class ReplayTransport implements Transport {
+
+    private final byte[] answer;
+    private int position;
+    private boolean open;
+
+    /**
+     * Initialize a transport that receives the bytes of an answer repeatedly
+     * @param answer Bytes received, usually a line ended by "\r\n"
+     */
+    ReplayTransport(byte[] answer)
+    {
+        this.answer = answer.clone();
+    }
+
+    @Override
+    public boolean open()
+    {
+        open = true;
+        return true;
+    }
+
+    @Override
+    public void close()
+    {
+        open = false;
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return open;
+    }
+
+    @Override
+    public int write(byte[] data, int length)
+    {
+        return length;
+    }
+
+    @Override
+    public int bytesAvailable()
+    {
+        return answer.length;
+    }
+
+    @Override
+    public int read(byte[] buffer, int length)
+    {
+        for (int i = 0; i < length; i++)
+        {
+            buffer[i] = answer[position];
+            position = position + 1 == answer.length ? 0 : position + 1;
+        }
+
+        return length;
+    }
+
+    @Override
+    public boolean setDataListener(Runnable listener)
+    {
+        return false;
+    }
+
+    @Override
+    public void removeDataListener()
+    {
+    }
+
+}
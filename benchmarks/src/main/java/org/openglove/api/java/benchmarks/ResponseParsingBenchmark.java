@@ -0,0 +1,103 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openglove.api.java.Communication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the parsing of the answers of the glove in Communication: framing a line and building a string
+ * with readLine, and parsing the values without a string with readInt and readInts
+ * @author Rodrigo Monsalve Lagos
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseParsingBenchmark {
+
+    /**
+     * Communication that receives a line with one value
+     */
+    @State(Scope.Thread)
+    public static class SingleValue {
+
+        Communication communication;
+
+        @Setup
+        public void setUp()
+        {
+            communication = new Communication(new ReplayTransport("1023\r\n".getBytes(StandardCharsets.US_ASCII)));
+        }
+
+    }
+
+    /**
+     * Communication that receives a line with many values separated by commas
+     */
+    @State(Scope.Thread)
+    public static class MultipleValues {
+
+        @Param({"1", "4", "16", "64"})
+        int valueCount;
+
+        Communication communication;
+        int[] values;
+
+        @Setup
+        public void setUp()
+        {
+            StringBuilder line = new StringBuilder();
+
+            for (int i = 0; i < valueCount; i++)
+            {
+                if (i > 0)
+                {
+                    line.append(',');
+                }
+
+                line.append((i * 37) % 1024);
+            }
+
+            line.append("\r\n");
+            communication = new Communication(new ReplayTransport(line.toString().getBytes(StandardCharsets.US_ASCII)));
+            values = new int[valueCount];
+        }
+
+    }
+
+    @Benchmark
+    public String readLine(MultipleValues state)
+    {
+        return state.communication.readLine();
+    }
+
+    @Benchmark
+    public int readInts(MultipleValues state)
+    {
+        return state.communication.readInts(state.values, state.valueCount);
+    }
+
+    @Benchmark
+    public int readInt(SingleValue state)
+    {
+        return state.communication.readInt();
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openglove.api.java.MessageGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the MessageGenerator methods for one pin, the string methods and the encoders that write in a byte array
+ * @author Rodrigo Monsalve Lagos
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SinglePinEncodingBenchmark {
+
+    private final MessageGenerator messageGenerator = new MessageGenerator();
+    private final byte[] buffer = new byte[MessageGenerator.maxMessageLength(1)];
+    private int pin = 13;
+    private int value = 200;
+
+    @Benchmark
+    public String analogRead()
+    {
+        return messageGenerator.analogRead(pin);
+    }
+
+    @Benchmark
+    public String digitalRead()
+    {
+        return messageGenerator.digitalRead(pin);
+    }
+
+    @Benchmark
+    public String pinMode()
+    {
+        return messageGenerator.pinMode(pin, "OUTPUT");
+    }
+
+    @Benchmark
+    public String digitalWrite()
+    {
+        return messageGenerator.digitalWrite(pin, "HIGH");
+    }
+
+    @Benchmark
+    public String analogWrite()
+    {
+        return messageGenerator.analogWrite(pin, value);
+    }
+
+    @Benchmark
+    public String stopStream()
+    {
+        return messageGenerator.stopStream();
+    }
+
+    @Benchmark
+    public int encodeAnalogRead()
+    {
+        return messageGenerator.encodeAnalogRead(pin, buffer, 0);
+    }
+
+    @Benchmark
+    public int encodeDigitalRead()
+    {
+        return messageGenerator.encodeDigitalRead(pin, buffer, 0);
+    }
+
+    @Benchmark
+    public int encodePinMode()
+    {
+        return messageGenerator.encodePinMode(pin, MessageGenerator.MODE_OUTPUT, buffer, 0);
+    }
+
+    @Benchmark
+    public int encodeDigitalWrite()
+    {
+        return messageGenerator.encodeDigitalWrite(pin, MessageGenerator.DIGITAL_HIGH, buffer, 0);
+    }
+
+    @Benchmark
+    public int encodeAnalogWrite()
+    {
+        return messageGenerator.encodeAnalogWrite(pin, value, buffer, 0);
+    }
+
+    @Benchmark
+    public int encodeStopStream()
+    {
+        return messageGenerator.encodeStopStream(buffer, 0);
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.openglove.api.java.benchmarks;
+
+import org.openglove.api.java.Transport;
+
+/**
+ * Transport whose writes take a fixed time, spent spinning like the system call of a serial port. The written
+ * bytes are discarded and nothing is received
+ * @author Rodrigo Monsalve Lagos
+ */
+class SlowWriteTransport implements Transport {
+
+    private final long writeNanos;
+    private volatile boolean open;
+
+    /**
+     * Initialize a transport with the time of each write
+     * @param writeNanos Time spent by each write, in nanoseconds
+     */
+    SlowWriteTransport(long writeNanos)
+    {
+        this.writeNanos = writeNanos;
+    }
+
+    @Override
+    public boolean open()
+    {
+        open = true;
+        return true;
+    }
+
+    @Override
+    public void close()
+    {
+        open = false;
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return open;
+    }
+
+    @Override
+    public int write(byte[] data, int length)
+    {
+        long start = System.nanoTime();
+
+        while (System.nanoTime() - start < writeNanos)
+        {
+            // Busy like the system call of a write
+        }
+
+        return length;
+    }
+
+    @Override
+    public int bytesAvailable()
+    {
+        return 0;
+    }
+
+    @Override
+    public int read(byte[] buffer, int length)
+    {
+        return 0;
+    }
+
+    @Override
+    public boolean setDataListener(Runnable listener)
+    {
+        return false;
+    }
+
+    @Override
+    public void removeDataListener()
+    {
+    }
+
+}